@@ -85,4 +85,13 @@ public final class HardwareTokenInfo {
         data.put("Max PIN length", Long.toString(info.getMaxPinLen()));
     }
 
+    static void fillInSessionPoolInfo(HardwareTokenSessionPool pool, Map<String, String> data) {
+        data.put("Sign session pool size", Integer.toString(pool.getSize()));
+        data.put("Sign sessions open", Integer.toString(pool.getOpenSessions()));
+        data.put("Sign sessions in use", Integer.toString(pool.getSessionsInUse()));
+        data.put("Sign operations", Long.toString(pool.getSignCount()));
+        data.put("Sign session average wait (us)", Long.toString(pool.getAverageWaitMicros()));
+        data.put("Sign sessions discarded", Long.toString(pool.getInvalidatedCount()));
+    }
+
 }
@@ -0,0 +1,280 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.TokenException;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+
+/**
+ * Pool of sessions used for signing with a hardware token.
+ *
+ * Sessions are opened on demand up to the pool size. The login state of a token is shared by all
+ * sessions of the application, so the pooled sessions are usable after the user has logged in on
+ * any session of the token. Sessions that the token reports as closed or invalid are discarded
+ * and replaced by new ones.
+ *
+ * Closing the pool waits for the borrowed sessions to be returned, so that the user is not logged
+ * out of the token while a signature is being calculated.
+ */
+@Slf4j
+final class HardwareTokenSessionPool {
+
+    private static final long BORROW_POLL_INTERVAL_MS = 100;
+
+    private final String tokenId;
+
+    private final Token token;
+
+    private final int size;
+
+    private final BlockingQueue<Session> idleSessions = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicInteger sessionsInUse = new AtomicInteger();
+
+    private final AtomicLong signCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong invalidatedCount = new AtomicLong();
+
+    private final Object releaseMonitor = new Object();
+
+    private volatile boolean closed;
+
+    HardwareTokenSessionPool(String tokenId, Token token, int size) {
+        this.tokenId = tokenId;
+        this.token = token;
+        this.size = size;
+    }
+
+    /**
+     * Takes a session from the pool, opening a new one if the pool is not full. Waits for a session
+     * to be released if all sessions are in use.
+     * @return the session
+     * @throws Exception if the pool is closed or a session cannot be opened
+     */
+    Session borrow() throws Exception {
+        long start = System.nanoTime();
+
+        try {
+            while (true) {
+                assertOpen();
+
+                Session session = idleSessions.poll();
+
+                if (session == null && reserveSession()) {
+                    session = openSession();
+                }
+
+                if (session == null) {
+                    session = idleSessions.poll(BORROW_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                }
+
+                if (session != null) {
+                    sessionsInUse.incrementAndGet();
+
+                    if (closed) {
+                        // Closed after the session was taken, close() may already be waiting for it
+                        release(session, null);
+                        assertOpen();
+                    }
+
+                    signCount.incrementAndGet();
+
+                    return session;
+                }
+            }
+        } finally {
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns a session to the pool. If the session failed with an error indicating that the session
+     * is no longer usable, the session is closed instead.
+     * @param session the session
+     * @param error the error that occurred while using the session or null
+     */
+    void release(Session session, Exception error) {
+        if (isSessionInvalid(error)) {
+            log.warn("Discarding invalid signing session on token '{}': {}", tokenId, error.getMessage());
+
+            invalidatedCount.incrementAndGet();
+            discard(session);
+        } else if (closed) {
+            discard(session);
+        } else {
+            idleSessions.offer(session);
+        }
+
+        // Decremented last, so that close() also sees a session that was returned while closing
+        if (sessionsInUse.decrementAndGet() == 0 && closed) {
+            synchronized (releaseMonitor) {
+                releaseMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Closes the pool. New sessions are no longer handed out, idle sessions are closed and the
+     * borrowed sessions are waited for until the timeout elapses. Sessions that are still borrowed
+     * after the timeout are closed when they are released.
+     * @param timeoutMs maximum time to wait for the borrowed sessions in milliseconds
+     * @return true if all sessions were returned and closed
+     */
+    boolean close(long timeoutMs) {
+        closed = true;
+
+        discardIdleSessions();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        synchronized (releaseMonitor) {
+            long remaining;
+
+            while (sessionsInUse.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(releaseMonitor, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    break;
+                }
+            }
+        }
+
+        discardIdleSessions();
+
+        int inUse = sessionsInUse.get();
+
+        if (inUse > 0) {
+            log.warn("Signing session pool of token '{}' closed with {} sessions still in use", tokenId, inUse);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    int getSessionsInUse() {
+        return sessionsInUse.get();
+    }
+
+    long getSignCount() {
+        return signCount.get();
+    }
+
+    long getInvalidatedCount() {
+        return invalidatedCount.get();
+    }
+
+    long getAverageWaitMicros() {
+        long count = signCount.get();
+
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / count);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private boolean reserveSession() {
+        int open;
+
+        do {
+            open = openSessions.get();
+
+            if (open >= size) {
+                return false;
+            }
+        } while (!openSessions.compareAndSet(open, open + 1));
+
+        return true;
+    }
+
+    private Session openSession() throws TokenException {
+        try {
+            return token.openSession(SERIAL_SESSION, true, null, null);
+        } catch (TokenException | RuntimeException e) {
+            openSessions.decrementAndGet();
+
+            throw e;
+        }
+    }
+
+    private void discardIdleSessions() {
+        Session session;
+
+        while ((session = idleSessions.poll()) != null) {
+            discard(session);
+        }
+    }
+
+    private void discard(Session session) {
+        openSessions.decrementAndGet();
+
+        try {
+            session.closeSession();
+        } catch (Exception e) {
+            log.debug("Failed to close signing session", e);
+        }
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("Signing session pool of token '" + tokenId + "' is closed");
+        }
+    }
+
+    private static boolean isSessionInvalid(Exception error) {
+        if (!(error instanceof PKCS11Exception)) {
+            return false;
+        }
+
+        long errorCode = ((PKCS11Exception) error).getErrorCode();
+
+        return errorCode == PKCS11Constants.CKR_SESSION_HANDLE_INVALID
+                || errorCode == PKCS11Constants.CKR_SESSION_CLOSED
+                || errorCode == PKCS11Constants.CKR_DEVICE_REMOVED
+                || errorCode == PKCS11Constants.CKR_TOKEN_NOT_PRESENT;
+    }
+}
@@ -25,6 +25,7 @@
 package ee.ria.xroad.signer.tokenmanager.token;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.PasswordStore;
 import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
@@ -35,8 +36,11 @@ import ee.ria.xroad.signer.protocol.message.ActivateToken;
 import ee.ria.xroad.signer.protocol.message.GenerateKey;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
 import ee.ria.xroad.signer.tokenmanager.module.ModuleConf;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
 import ee.ria.xroad.signer.util.SignerUtil;
 
+import akka.actor.ActorRef;
 import iaik.pkcs.pkcs11.Mechanism;
 import iaik.pkcs.pkcs11.Session;
 import iaik.pkcs.pkcs11.Token;
@@ -93,12 +97,19 @@ import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
 
 /**
  * Token worker for hardware tokens.
+ *
+ * If the module has a sign session pool size greater than one, signatures are calculated in
+ * parallel on a pool of sessions by as many signing threads. Other token operations, and signing
+ * on tokens that require PIN verification per signing, use the single active session of the worker.
  */
 @Slf4j
 public class HardwareTokenWorker extends AbstractTokenWorker {
 
     private static final Mechanism KEYGEN_MECHANISM = Mechanism.get(PKCS11Constants.CKM_RSA_PKCS_KEY_PAIR_GEN);
 
+    // How long logout waits for the signatures being calculated on the session pool
+    private static final long SIGN_SESSION_POOL_CLOSE_TIMEOUT_MS = 5000;
+
     private final HardwareTokenType tokenType;
 
     // maps signature algorithm id and signing mechanism
@@ -110,6 +121,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
     private Session activeSession;
 
+    private final TokenSigningExecutor signingExecutor;
+
+    private HardwareTokenSessionPool signSessionPool;
+
     /**
      * @param tokenInfo the token info
      * @param tokenType the token type
@@ -119,6 +134,29 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
         this.tokenType = tokenType;
         this.signMechanisms = createSignMechanisms(tokenType.getSignMechanismName());
+        this.signingExecutor = usesSignSessionPool(tokenType) ? createSigningExecutor(tokenType) : null;
+    }
+
+    private static boolean usesSignSessionPool(HardwareTokenType tokenType) {
+        if (tokenType.getSignSessionPoolSize() <= 1) {
+            return false;
+        }
+
+        if (tokenType.isPinVerificationPerSigning()) {
+            // Login state is shared by all sessions, so signing with PIN verification cannot be parallel
+            log.warn("Sign session pool is not used for token '{}' since it requires PIN verification per signing",
+                    tokenType.getId());
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private static TokenSigningExecutor createSigningExecutor(HardwareTokenType tokenType) {
+        // Signing tasks wait for a free session, so a full queue is rejected instead of blocking the worker
+        return new TokenSigningExecutor("hardware-token-signer-", tokenType.getSignSessionPoolSize(),
+                SystemProperties.getHardwareTokenSigningQueueSize(), false);
     }
 
     private static Map<String, Mechanism> createSignMechanisms(String signMechanismName) {
@@ -199,6 +237,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         } catch (Exception e) {
             log.warn("Failed to close active session", e);
         }
+
+        if (signingExecutor != null) {
+            signingExecutor.shutdown();
+        }
     }
 
     @Override
@@ -393,6 +435,60 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    @Override
+    protected void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+        if (signSessionPool == null) {
+            super.handleCalculateSignature(signRequest);
+
+            return;
+        }
+
+        ActorRef sender = getSender();
+        ActorRef self = getSelf();
+        HardwareTokenSessionPool pool = signSessionPool;
+
+        try {
+            String keyId = signRequest.getKeyId();
+            String signatureAlgorithmId = signRequest.getSignatureAlgorithmId();
+
+            log.trace("sign({}, {})", keyId, signatureAlgorithmId);
+
+            byte[] data = SignerUtil.createDataToSign(signRequest.getDigest(), signatureAlgorithmId);
+            RSAPrivateKey key = getPrivateKey(keyId);
+            Mechanism signMechanism = getSignMechanism(signatureAlgorithmId);
+
+            log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
+
+            // Rejected when the queue is full or the worker has stopped, the requester gets a failure reply below
+            signingExecutor.execute(() ->
+                    sender.tell(calculateSignature(signRequest, pool, signMechanism, key, data), self));
+        } catch (Exception e) {
+            sender.tell(signatureFailed(signRequest, e), self);
+        }
+    }
+
+    private CalculatedSignature calculateSignature(CalculateSignature signRequest, HardwareTokenSessionPool pool,
+            Mechanism signMechanism, RSAPrivateKey key, byte[] data) {
+        try {
+            Session session = pool.borrow();
+            Exception error = null;
+
+            try {
+                session.signInit(signMechanism, key);
+
+                return new CalculatedSignature(signRequest, session.sign(data), null);
+            } catch (Exception e) {
+                error = e;
+
+                throw e;
+            } finally {
+                pool.release(session, error);
+            }
+        } catch (Exception e) {
+            return signatureFailed(signRequest, e);
+        }
+    }
+
     @Override
     protected byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
         log.trace("sign({}, {})", keyId, signatureAlgorithmId);
@@ -409,26 +505,12 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             }
         }
 
-        if (!isKeyAvailable(keyId)) {
-            throw keyNotAvailable(keyId);
-        }
-
-        RSAPrivateKey key = privateKeys.get(keyId);
-
-        if (key == null) {
-            throw CodedException.tr(X_KEY_NOT_FOUND, "key_not_found_on_token", "Key '%s' not found on token '%s'",
-                    keyId, tokenId);
-        }
+        RSAPrivateKey key = getPrivateKey(keyId);
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
 
         try {
-            Mechanism signMechanism = signMechanisms.get(signatureAlgorithmId);
-
-            if (signMechanism == null) {
-                throw CodedException.tr(X_UNSUPPORTED_SIGN_ALGORITHM, "unsupported_sign_algorithm",
-                        "Unsupported signature algorithm '%s'", signatureAlgorithmId);
-            }
+            Mechanism signMechanism = getSignMechanism(signatureAlgorithmId);
 
             activeSession.signInit(signMechanism, key);
 
@@ -444,6 +526,32 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    private RSAPrivateKey getPrivateKey(String keyId) {
+        if (!isKeyAvailable(keyId)) {
+            throw keyNotAvailable(keyId);
+        }
+
+        RSAPrivateKey key = privateKeys.get(keyId);
+
+        if (key == null) {
+            throw CodedException.tr(X_KEY_NOT_FOUND, "key_not_found_on_token", "Key '%s' not found on token '%s'",
+                    keyId, tokenId);
+        }
+
+        return key;
+    }
+
+    private Mechanism getSignMechanism(String signatureAlgorithmId) {
+        Mechanism signMechanism = signMechanisms.get(signatureAlgorithmId);
+
+        if (signMechanism == null) {
+            throw CodedException.tr(X_UNSUPPORTED_SIGN_ALGORITHM, "unsupported_sign_algorithm",
+                    "Unsupported signature algorithm '%s'", signatureAlgorithmId);
+        }
+
+        return signMechanism;
+    }
+
     // ------------------------------------------------------------------------
 
     private void findKeysNotInConf() throws Exception {
@@ -591,6 +699,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             setTokenStatus(tokenId, TokenStatusInfo.OK);
             setTokenActive(tokenId, true);
             loadPrivateKeys();
+            openSignSessionPool();
         } catch (PKCS11Exception e) {
             setTokenStatusFromErrorCode(e.getErrorCode());
 
@@ -599,6 +708,8 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     }
 
     private void logout() throws Exception {
+        closeSignSessionPool();
+
         if (activeSession == null) {
             return;
         }
@@ -622,6 +733,23 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    private void openSignSessionPool() {
+        if (signingExecutor != null && signSessionPool == null) {
+            log.info("Signing with token '{}' using up to {} sessions", getWorkerId(),
+                    tokenType.getSignSessionPoolSize());
+
+            signSessionPool = new HardwareTokenSessionPool(getWorkerId(), getToken(),
+                    tokenType.getSignSessionPoolSize());
+        }
+    }
+
+    private void closeSignSessionPool() {
+        if (signSessionPool != null) {
+            signSessionPool.close(SIGN_SESSION_POOL_CLOSE_TIMEOUT_MS);
+            signSessionPool = null;
+        }
+    }
+
     private void createSession() throws Exception {
         closeActiveSession();
 
@@ -688,6 +816,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             Map<String, String> tokenInfo = new HashMap<>();
             HardwareTokenInfo.fillInTokenInfo(getToken().getTokenInfo(), tokenInfo);
 
+            if (signSessionPool != null) {
+                HardwareTokenInfo.fillInSessionPoolInfo(signSessionPool, tokenInfo);
+            }
+
             setTokenInfo(tokenId, tokenInfo);
         } catch (Exception e) {
             log.error("Failed to update token info", e);
@@ -0,0 +1,226 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link HardwareTokenSessionPool}.
+ */
+public class HardwareTokenSessionPoolTest {
+
+    private Token token;
+
+    @Before
+    public void setUp() throws Exception {
+        token = mock(Token.class);
+
+        when(token.openSession(eq(Token.SessionType.SERIAL_SESSION), anyBoolean(), any(), any()))
+                .thenAnswer(invocation -> mock(Session.class));
+    }
+
+    /**
+     * Tests that a released session is reused.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void reusesReleasedSession() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 2);
+
+        Session session = pool.borrow();
+        pool.release(session, null);
+
+        assertSame(session, pool.borrow());
+        assertEquals(1, pool.getOpenSessions());
+        assertEquals(1, pool.getSessionsInUse());
+    }
+
+    /**
+     * Tests that a session failing with a session error is closed and replaced.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void discardsInvalidSession() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 1);
+
+        Session session = pool.borrow();
+        pool.release(session, new PKCS11Exception(PKCS11Constants.CKR_SESSION_HANDLE_INVALID));
+
+        verify(session).closeSession();
+        assertEquals(1, pool.getInvalidatedCount());
+        assertNotSame(session, pool.borrow());
+    }
+
+    /**
+     * Tests that borrowing waits for a session when all sessions are in use.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void borrowWaitsForReleasedSession() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 1);
+
+        Session session = pool.borrow();
+        CompletableFuture<Session> waiting = borrowAsync(pool);
+
+        assertNotDone(waiting);
+
+        pool.release(session, null);
+
+        assertSame(session, waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that closing the pool waits for the borrowed sessions to be returned before closing them.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void closeWaitsForBorrowedSessions() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 2);
+
+        Session idle = pool.borrow();
+        Session borrowed = pool.borrow();
+        pool.release(idle, null);
+
+        CompletableFuture<Boolean> closing = CompletableFuture.supplyAsync(() -> pool.close(5000));
+
+        assertNotDone(closing);
+        verify(idle).closeSession();
+        verify(borrowed, never()).closeSession();
+
+        pool.release(borrowed, null);
+
+        assertTrue(closing.get(5, TimeUnit.SECONDS));
+        verify(borrowed).closeSession();
+        assertEquals(0, pool.getOpenSessions());
+    }
+
+    /**
+     * Tests that a session still borrowed when closing times out is closed when it is released,
+     * and that no sessions are handed out after closing.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void closesLateSessionOnRelease() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 1);
+
+        Session borrowed = pool.borrow();
+
+        assertFalse(pool.close(10));
+
+        pool.release(borrowed, null);
+
+        verify(borrowed).closeSession();
+        assertEquals(0, pool.getOpenSessions());
+        assertEquals(0, pool.getSessionsInUse());
+
+        try {
+            pool.borrow();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // pool is closed
+        }
+    }
+
+    /**
+     * Tests that a borrower waiting for a session fails when the pool is closed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void closeFailsWaitingBorrower() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 1);
+
+        Session borrowed = pool.borrow();
+        CompletableFuture<Session> waiting = borrowAsync(pool);
+
+        assertNotDone(waiting);
+
+        CompletableFuture<Boolean> closing = CompletableFuture.supplyAsync(() -> pool.close(5000));
+
+        assertNotDone(closing);
+
+        pool.release(borrowed, null);
+
+        assertTrue(closing.get(5, TimeUnit.SECONDS));
+
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            fail("Expected the waiting borrower to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        verify(borrowed).closeSession();
+    }
+
+    private static CompletableFuture<Session> borrowAsync(HardwareTokenSessionPool pool) {
+        CompletableFuture<Session> result = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(pool.borrow());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+
+        return result;
+    }
+
+    private static void assertNotDone(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            fail("Expected the operation to wait");
+        } catch (TimeoutException expected) {
+            // still waiting
+        }
+    }
+}
@@ -57,6 +57,8 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
 import java.util.zip.ZipEntry;
@@ -73,6 +75,8 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private static final int RANDOM_LENGTH = 10;
     private static final int MAX_RANDOM_GEN_ATTEMPTS = 1000;
 
+    private static final String BULK_FILENAME = "signed-documents";
+
     static final String PARAM_INSTANCE_IDENTIFIER = "xRoadInstance";
     static final String PARAM_MEMBER_CLASS = "memberClass";
     static final String PARAM_MEMBER_CODE = "memberCode";
@@ -89,6 +93,9 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private static final String MISSING_CONSTRAINT_FAULT_MESSAGE = "Parameter \"" + PARAM_UNIQUE
             + "\" not applicable without \"" + PARAM_REQUEST_ONLY + "\" or \"" + PARAM_RESPONSE_ONLY + "\".";
 
+    private static final String MULTIPLE_QUERY_IDS_FAULT_MESSAGE = "Parameter \"" + PARAM_UNIQUE
+            + "\" not applicable with multiple \"" + PARAM_QUERY_ID + "\" parameters.";
+
     private static final String MISSING_PARAMETER_FAULT_MESSAGE = "Parameter \"%s\"  must be specified.";
 
     private static final String DOCUMENTS_NOT_FOUND_FAULT_MESSAGE = "No signed documents found";
@@ -172,7 +179,8 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     }
 
     private void handleAsicRequest(ClientId clientId) throws Exception {
-        String queryId = getParameter(PARAM_QUERY_ID, false);
+        String[] queryIds = getParameterValues(PARAM_QUERY_ID);
+        String queryId = queryIds[0];
 
         AsicContainerNameGenerator nameGen = new AsicContainerNameGenerator(
                 AsicContainerClientRequestProcessor::getRandomAlphanumeric, MAX_RANDOM_GEN_ATTEMPTS);
@@ -187,6 +195,20 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         Boolean response = responseOnly ? Boolean.TRUE : (requestOnly ? Boolean.FALSE : null);
         boolean unique = hasParameter(PARAM_UNIQUE);
 
+        if (queryIds.length > 1) {
+            if (unique) {
+                throw new CodedExceptionWithHttpStatus(HttpServletResponse.SC_BAD_REQUEST, ErrorCodes.X_BAD_REQUEST,
+                        MULTIPLE_QUERY_IDS_FAULT_MESSAGE);
+            }
+
+            // Signed documents of several transactions, the records are read in one pass for each step
+            List<String> queryIdList = Arrays.asList(queryIds);
+            ensureTimestamped(clientId, queryIdList, response, hasParameter(PARAM_FORCE));
+            writeContainers(clientId, queryIdList, nameGen, response);
+
+            return;
+        }
+
         ensureTimestamped(clientId, queryId, response, hasParameter(PARAM_FORCE));
 
         if (unique && response != null) {
@@ -207,6 +229,29 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
                     DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
         }
 
+        ensureTimestamped(records, force, MISSING_TIMESTAMP_FAULT_MESSAGE);
+    }
+
+    private void ensureTimestamped(ClientId id, List<String> queryIds, Boolean response, boolean force)
+            throws Exception {
+        final List<MessageRecord> notTimestamped = new ArrayList<>();
+
+        final long found = LogRecordManager.getByQueryIds(queryIds, id, response, record -> {
+            if (record.getTimestampRecord() == null) {
+                notTimestamped.add(record);
+            }
+        });
+
+        if (found == 0) {
+            throw new CodedExceptionWithHttpStatus(HttpServletResponse.SC_NOT_FOUND, ErrorCodes.X_NOT_FOUND,
+                    DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
+        }
+
+        ensureTimestamped(notTimestamped, force, MISSING_TIMESTAMPS_FAULT_MESSAGE);
+    }
+
+    private static void ensureTimestamped(List<MessageRecord> records, boolean force, String missingTimestampMessage)
+            throws Exception {
         for (MessageRecord record : records) {
             if (record.getTimestampRecord() == null) {
                 if (force) {
@@ -214,7 +259,7 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
                         throw new Exception(TIMESTAMPING_FAILED_FAULT_MESSAGE);
                     }
                 } else {
-                    throw new Exception(MISSING_TIMESTAMP_FAULT_MESSAGE);
+                    throw new Exception(missingTimestampMessage);
                 }
             }
         }
@@ -238,20 +283,7 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
             try (ZipOutputStream zos = startZipResponse(filename)) {
                 zos.setLevel(0);
                 for (MessageRecord record : records) {
-                    if (record.getTimestampRecord() == null) {
-                        // Only happens if there are matching messages that are sent after
-                        // the ensureTimestamped check was made. Ignore to emulate the previous behavior.
-                        continue;
-                    }
-                    String type = record.isResponse() ? AsicContainerNameGenerator.TYPE_RESPONSE
-                            : AsicContainerNameGenerator.TYPE_REQUEST;
-                    zos.putNextEntry(new ZipEntry(nameGen.getArchiveFilename(queryId, type)));
-
-                    try (EntryStream es = new EntryStream(zos)) {
-                        record.toAsicContainer().write(es);
-                    }
-
-                    zos.closeEntry();
+                    writeContainer(zos, record, nameGen);
                 }
             } catch (CodedException ce) {
                 throw ce;
@@ -262,6 +294,44 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         });
     }
 
+    private void writeContainers(ClientId clientId, List<String> queryIds, AsicContainerNameGenerator nameGen,
+            Boolean response) throws Exception {
+
+        final String filename = BULK_FILENAME + (response == null ? "" : (response ? "-response" : "-request"));
+
+        // the records were found by ensureTimestamped
+        try (ZipOutputStream zos = startZipResponse(filename)) {
+            zos.setLevel(0);
+            LogRecordManager.getByQueryIds(queryIds, clientId, response, record -> {
+                try {
+                    writeContainer(zos, record, nameGen);
+                } catch (CodedException ce) {
+                    throw ce;
+                } catch (Exception e) {
+                    throw new CodedException(X_INTERNAL_ERROR, e);
+                }
+            });
+        }
+    }
+
+    private static void writeContainer(ZipOutputStream zos, MessageRecord record, AsicContainerNameGenerator nameGen)
+            throws Exception {
+        if (record.getTimestampRecord() == null) {
+            // Only happens if there are matching messages that are sent after
+            // the ensureTimestamped check was made. Ignore to emulate the previous behavior.
+            return;
+        }
+        String type = record.isResponse() ? AsicContainerNameGenerator.TYPE_RESPONSE
+                : AsicContainerNameGenerator.TYPE_REQUEST;
+        zos.putNextEntry(new ZipEntry(nameGen.getArchiveFilename(record.getQueryId(), type)));
+
+        try (EntryStream es = new EntryStream(zos)) {
+            record.toAsicContainer().write(es);
+        }
+
+        zos.closeEntry();
+    }
+
     /**
      * It seems that ZipOutputStream#finish is broken and leaks native memory. Therefore, we need to
      * use ZipOutputStream#close and avoid closing the underlying stream; therefore this filter.
@@ -325,6 +395,17 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         return ClientId.create(instanceIdentifier, memberClass, memberCode, subsystemCode);
     }
 
+    private String[] getParameterValues(String param) {
+        String[] paramValues = servletRequest.getParameterValues(param);
+
+        if (paramValues == null || paramValues.length == 0) {
+            throw new CodedExceptionWithHttpStatus(HttpServletResponse.SC_BAD_REQUEST, ErrorCodes.X_BAD_REQUEST,
+                    String.format(MISSING_PARAMETER_FAULT_MESSAGE, param));
+        }
+
+        return paramValues;
+    }
+
     private String getParameter(String param, boolean optional) {
         String paramValue = servletRequest.getParameter(param);
 
@@ -54,11 +54,15 @@ abstract class AbstractTimestampRequest {
 
     protected final Long[] logRecords;
 
+    private TspStatistics tspStatistics;
+
     abstract byte[] getRequestData() throws Exception;
 
     abstract Timestamper.TimestampResult result(TimeStampResponse tsResponse, String url) throws Exception;
 
-    Timestamper.TimestampResult execute(List<String> tspUrls) throws Exception {
+    Timestamper.TimestampResult execute(List<String> tspUrls, TspStatistics statistics) throws Exception {
+        tspStatistics = statistics;
+
         TimeStampRequest tsRequest = createTimestampRequest(getRequestData());
 
         return makeTsRequest(tsRequest, tspUrls);
@@ -79,6 +83,8 @@ abstract class AbstractTimestampRequest {
                                       List<String> tspUrls) throws Exception {
         log.debug("tspUrls: {}", tspUrls);
         for (String url: tspUrls) {
+            long start = System.currentTimeMillis();
+
             try {
                 log.debug("Sending time-stamp request to {}", url);
 
@@ -89,9 +95,13 @@ abstract class AbstractTimestampRequest {
 
                 verify(tsRequest, tsResponse);
 
-                return result(tsResponse, url);
+                Timestamper.TimestampResult result = result(tsResponse, url);
+                tspStatistics.recordSuccess(url, System.currentTimeMillis() - start);
+
+                return result;
 
             } catch (Exception ex) {
+                tspStatistics.recordFailure(url, System.currentTimeMillis() - start);
                 log.error("Failed to get time stamp from " + url, ex);
             }
         }
@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+
+/**
+ * Creates ASiC containers of archived message records on a worker pool. The created containers are handed to the
+ * consumer in the order the records were submitted, so that the archive file and its linking info are written
+ * sequentially. At most a bounded number of created containers is kept in memory.
+ */
+class AsicContainerPipeline {
+
+    /**
+     * Consumer of the created ASiC containers.
+     */
+    @FunctionalInterface
+    interface ContainerConsumer {
+        void accept(MessageRecord messageRecord, byte[] asicContainer) throws Exception;
+    }
+
+    private final Executor executor;
+    private final int maxPending;
+    private final ContainerConsumer consumer;
+
+    private final Deque<PendingContainer> pending = new ArrayDeque<>();
+
+    /**
+     * Creates the pipeline.
+     * @param executor executor creating the containers
+     * @param maxPending maximum number of containers submitted but not yet handed to the consumer
+     * @param consumer consumer of the created containers
+     */
+    AsicContainerPipeline(Executor executor, int maxPending, ContainerConsumer consumer) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("Maximum number of pending containers must be positive");
+        }
+
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Submits the message record for creating its ASiC container. Blocks while the eldest container is created
+     * if the maximum number of pending containers is exceeded.
+     * @param messageRecord the message record
+     * @throws Exception if creating or consuming a container fails
+     */
+    void submit(MessageRecord messageRecord) throws Exception {
+        pending.add(new PendingContainer(messageRecord,
+                CompletableFuture.supplyAsync(() -> createContainer(messageRecord), executor)));
+
+        while (pending.size() > maxPending) {
+            consumeNext();
+        }
+    }
+
+    /**
+     * Hands all the submitted containers to the consumer.
+     * @throws Exception if creating or consuming a container fails
+     */
+    void flush() throws Exception {
+        while (!pending.isEmpty()) {
+            consumeNext();
+        }
+    }
+
+    /**
+     * Discards the containers not yet handed to the consumer.
+     */
+    void cancel() {
+        pending.forEach(p -> p.container.cancel(false));
+        pending.clear();
+    }
+
+    /**
+     * @return the number of containers submitted but not yet handed to the consumer
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private void consumeNext() throws Exception {
+        PendingContainer next = pending.poll();
+        byte[] container;
+
+        try {
+            container = next.container.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+
+        consumer.accept(next.messageRecord, container);
+    }
+
+    static byte[] createContainer(MessageRecord messageRecord) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            messageRecord.toAsicContainer().write(out);
+
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new CodedException(X_INTERNAL_ERROR, e);
+        }
+    }
+
+    private static final class PendingContainer {
+        private final MessageRecord messageRecord;
+        private final CompletableFuture<byte[]> container;
+
+        private PendingContainer(MessageRecord messageRecord, CompletableFuture<byte[]> container) {
+            this.messageRecord = messageRecord;
+            this.container = container;
+        }
+    }
+}
@@ -35,7 +35,6 @@ import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
 
 import akka.actor.UntypedAbstractActor;
 import lombok.RequiredArgsConstructor;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.hibernate.Session;
@@ -50,11 +49,17 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransactionBatchSize;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransferCommand;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveWorkerThreads;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -62,6 +67,11 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 /**
  * Reads all non-archived time-stamped records from the database, writes them
  * to archive file and marks the records as archived.
+ *
+ * The records are read in primary key order, continuing after the last archived
+ * time-stamp record. ASiC containers of the message records are created in parallel
+ * by worker threads and written to the archive file sequentially, and the records
+ * are marked as archived in bulk at the end of each transaction.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -69,6 +79,8 @@ public class LogArchiver extends UntypedAbstractActor {
 
     private static final int MAX_RECORDS_IN_ARCHIVE = 10;
     private static final int MAX_RECORDS_IN_BATCH = 360;
+    private static final int PENDING_CONTAINERS_PER_THREAD = 8;
+    private static final long MILLIS_PER_SECOND = 1000;
     private static final String PROPERTY_NAME_ARCHIVED = "archived";
 
     public static final String START_ARCHIVING = "doArchive";
@@ -76,6 +88,22 @@ public class LogArchiver extends UntypedAbstractActor {
     private final Path archivePath;
     private final Path workingPath;
 
+    private ExecutorService containerExecutor;
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+
+        containerExecutor = createContainerExecutor(getArchiveWorkerThreads());
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        containerExecutor.shutdownNow();
+
+        super.postStop();
+    }
+
     @Override
     public void onReceive(Object message) {
         log.trace("onReceive({})", message);
@@ -84,8 +112,14 @@ public class LogArchiver extends UntypedAbstractActor {
             try {
                 Long maxTimestampId = doInTransaction(session -> getMaxTimestampId(session));
                 if (maxTimestampId != null) {
-                    while (handleArchive(maxTimestampId)) {
+                    ArchiveRun run = new ArchiveRun(maxTimestampId,
+                            doInTransaction(session -> countNonArchivedTimestampRecords(session, maxTimestampId)));
+
+                    while (handleArchive(run)) {
                     }
+
+                    log.info("Archived {} log records in {} ms ({} records/s)", run.recordsArchived,
+                            run.getElapsedMillis(), run.getRecordsPerSecond());
                 }
             } catch (Exception ex) {
                 log.error("Failed to archive log records", ex);
@@ -95,10 +129,10 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
-    private boolean handleArchive(long maxTimestampId) throws Exception {
+    private boolean handleArchive(ArchiveRun run) throws Exception {
         return doInTransaction(session -> {
-            final List<TimestampRecord> batch =
-                    getNonArchivedTimestampRecords(session, MAX_RECORDS_IN_BATCH, maxTimestampId);
+            final List<TimestampRecord> batch = getNonArchivedTimestampRecords(session, MAX_RECORDS_IN_BATCH,
+                    run.lastTimestampId, run.maxTimestampId);
 
             if (batch.isEmpty()) {
                 log.info("No records to be archived at this time");
@@ -106,37 +140,21 @@ public class LogArchiver extends UntypedAbstractActor {
             }
 
             long start = System.currentTimeMillis();
-            int recordsArchived = 0;
-            final int limit = getArchiveTransactionBatchSize();
+            final HibernateLogArchiveBase archiveBase = this.new HibernateLogArchiveBase(session);
+            final BatchProgress progress = new BatchProgress(getArchiveTransactionBatchSize());
             log.info("Archiving log records...");
 
-            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
-                for (TimestampRecord ts : batch) {
-
-                    try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, ts.getId())) {
-                        recordsArchived += records.peek(record -> {
-                            try {
-                                if (archiveWriter.write(record)) {
-                                    runTransferCommand(getArchiveTransferCommand());
-                                }
-                                //evict record from persistence context to avoid running out of memory
-                                session.detach(record);
-                            } catch (Exception e) {
-                                throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
-                            }
-                        }).count();
-
-                        archiveWriter.write(ts);
-                        recordsArchived++;
-                        session.flush();
-                        session.detach(ts);
-                    }
-
-                    if (recordsArchived >= limit) {
-                        log.info("Archived {} log records in {} ms", recordsArchived,
-                                System.currentTimeMillis() - start);
-                        return true;
-                    }
+            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(archiveBase)) {
+                AsicContainerPipeline pipeline = new AsicContainerPipeline(containerExecutor,
+                        getArchiveWorkerThreads() * PENDING_CONTAINERS_PER_THREAD,
+                        (record, container) -> writeToArchive(archiveWriter, record, container));
+
+                try {
+                    archiveBatch(session, batch, run, archiveWriter, pipeline, progress);
+                    pipeline.flush();
+                    archiveBase.updateArchivedRecords();
+                } finally {
+                    pipeline.cancel();
                 }
             } catch (Exception e) {
                 throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
@@ -144,17 +162,94 @@ public class LogArchiver extends UntypedAbstractActor {
                 runTransferCommand(getArchiveTransferCommand());
             }
 
-            log.info("Archived {} log records in {} ms", recordsArchived, System.currentTimeMillis() - start);
+            run.add(progress);
 
-            //try to continue if the batch was full (there might be more)
-            return batch.size() == MAX_RECORDS_IN_BATCH;
+            long elapsed = System.currentTimeMillis() - start;
+            log.info("Archived {} log records in {} ms ({} records/s), {} time-stamped records left to archive",
+                    progress.recordsArchived, elapsed, recordsPerSecond(progress.recordsArchived, elapsed),
+                    run.getBacklog());
+
+            //try to continue if the transaction batch limit was reached or the batch was full (there might be more)
+            return progress.isLimitReached() || batch.size() == MAX_RECORDS_IN_BATCH;
         });
     }
 
-    private LogArchiveWriter createLogArchiveWriter(Session session) {
+    /**
+     * Reads the message records of the time-stamp records in the batch in one pass and submits them to the
+     * pipeline creating their ASiC containers. Stops after the time-stamp record that reaches the transaction
+     * batch limit.
+     */
+    private void archiveBatch(Session session, List<TimestampRecord> batch, ArchiveRun run,
+            LogArchiveWriter archiveWriter, AsicContainerPipeline pipeline, BatchProgress progress) throws Exception {
+        Iterator<TimestampRecord> timestamps = batch.iterator();
+        TimestampRecord timestamp = timestamps.next();
+
+        try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, run.lastTimestampId,
+                batch.get(batch.size() - 1).getId())) {
+            Iterator<MessageRecord> iterator = records.iterator();
+
+            while (iterator.hasNext()) {
+                MessageRecord record = iterator.next();
+
+                while (record.getTimestampRecord().getId() > timestamp.getId()) {
+                    archiveTimestamp(timestamp, run, archiveWriter, progress);
+
+                    if (progress.isLimitReached()) {
+                        return;
+                    }
+
+                    timestamp = timestamps.next();
+                }
+
+                if (record.getAttachment() != null) {
+                    // The attachment is read from the database connection of the session, hence the container is
+                    // streamed to the archive by this thread after the containers submitted before it
+                    pipeline.flush();
+                    writeToArchive(archiveWriter, record, null);
+                } else {
+                    pipeline.submit(record);
+                }
+
+                progress.recordsArchived++;
+                //evict record from persistence context to avoid running out of memory
+                session.detach(record);
+            }
+        }
+
+        while (true) {
+            archiveTimestamp(timestamp, run, archiveWriter, progress);
+
+            if (progress.isLimitReached() || !timestamps.hasNext()) {
+                return;
+            }
+
+            timestamp = timestamps.next();
+        }
+    }
+
+    private static void writeToArchive(LogArchiveWriter archiveWriter, MessageRecord record, byte[] asicContainer)
+            throws Exception {
+        boolean rotated = asicContainer != null
+                ? archiveWriter.write(record, asicContainer) : archiveWriter.write(record);
+
+        if (rotated) {
+            runTransferCommand(getArchiveTransferCommand());
+        }
+    }
+
+    private static void archiveTimestamp(TimestampRecord timestamp, ArchiveRun run, LogArchiveWriter archiveWriter,
+            BatchProgress progress) throws Exception {
+        archiveWriter.write(timestamp);
+
+        run.lastTimestampId = timestamp.getId();
+        progress.recordsArchived++;
+        progress.timestampsArchived++;
+    }
+
+    private LogArchiveWriter createLogArchiveWriter(LogArchiveBase archiveBase) {
         return new LogArchiveWriter(
                 getArchivePath(),
-                this.new HibernateLogArchiveBase(session)
+                archiveBase
         );
     }
 
@@ -171,7 +266,7 @@ public class LogArchiver extends UntypedAbstractActor {
     }
 
     protected List<TimestampRecord> getNonArchivedTimestampRecords(Session session, int maxRecordsToGet,
-            long maxTimestampId) {
+            long afterTimestampId, long maxTimestampId) {
 
         final CriteriaBuilder cb = session.getCriteriaBuilder();
         final CriteriaQuery<TimestampRecord> query = cb.createQuery(TimestampRecord.class);
@@ -179,9 +274,10 @@ public class LogArchiver extends UntypedAbstractActor {
 
         query.select(t).where(cb.and(
                 cb.isFalse(t.get(PROPERTY_NAME_ARCHIVED))),
+                cb.gt(t.get("id"), afterTimestampId),
                 cb.le(t.get("id"), maxTimestampId)).orderBy(cb.asc(t.get("id")));
 
-        return session.createQuery(query).setMaxResults(maxRecordsToGet).getResultList();
+        return session.createQuery(query).setMaxResults(maxRecordsToGet).setReadOnly(true).getResultList();
     }
 
     protected Long getMaxTimestampId(Session session) {
@@ -193,15 +289,32 @@ public class LogArchiver extends UntypedAbstractActor {
         return session.createQuery(query).uniqueResult();
     }
 
-    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, Long timestampRecordNumber) {
+    protected Long countNonArchivedTimestampRecords(Session session, long maxTimestampId) {
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        final Root<TimestampRecord> t = query.from(TimestampRecord.class);
+
+        query.select(cb.count(t)).where(cb.and(
+                cb.isFalse(t.get(PROPERTY_NAME_ARCHIVED)),
+                cb.le(t.get("id"), maxTimestampId)));
+        return session.createQuery(query).uniqueResult();
+    }
+
+    /**
+     * Returns the non-archived message records of the time-stamp records in the given id range, ordered by
+     * the time-stamp record.
+     */
+    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, long afterTimestampId,
+            long lastTimestampId) {
         final CriteriaBuilder cb = session.getCriteriaBuilder();
         final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
         final Root<MessageRecord> m = query.from(MessageRecord.class);
 
         query.select(m).where(cb.and(
                 cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
-                cb.equal(m.get("timestampRecord").get("id"), timestampRecordNumber)
-        ));
+                cb.gt(m.get("timestampRecord").get("id"), afterTimestampId),
+                cb.le(m.get("timestampRecord").get("id"), lastTimestampId)
+        )).orderBy(cb.asc(m.get("timestampRecord").get("id")), cb.asc(m.get("id")));
 
         return session
                 .createQuery(query)
@@ -219,6 +332,21 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
+    private static ExecutorService createContainerExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "log-archiver-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    private static long recordsPerSecond(long records, long elapsedMillis) {
+        return records * MILLIS_PER_SECOND / Math.max(1, elapsedMillis);
+    }
+
     private static void runTransferCommand(String transferCommand) {
         if (isBlank(transferCommand)) {
             return;
@@ -258,10 +386,64 @@ public class LogArchiver extends UntypedAbstractActor {
         }
     }
 
-    @Value
+    /**
+     * Progress of one archiving run. Time-stamp records are read in primary key order, the run continues after
+     * the last archived time-stamp record.
+     */
+    private static final class ArchiveRun {
+        private final long maxTimestampId;
+        private final long start = System.currentTimeMillis();
+
+        private long lastTimestampId;
+        private long backlog;
+        private long recordsArchived;
+
+        private ArchiveRun(long maxTimestampId, Long backlog) {
+            this.maxTimestampId = maxTimestampId;
+            this.backlog = backlog != null ? backlog : 0;
+        }
+
+        private void add(BatchProgress progress) {
+            recordsArchived += progress.recordsArchived;
+            backlog = Math.max(0, backlog - progress.timestampsArchived);
+        }
+
+        private long getBacklog() {
+            return backlog;
+        }
+
+        private long getElapsedMillis() {
+            return System.currentTimeMillis() - start;
+        }
+
+        private long getRecordsPerSecond() {
+            return recordsPerSecond(recordsArchived, getElapsedMillis());
+        }
+    }
+
+    /**
+     * Progress of archiving in one transaction.
+     */
+    @RequiredArgsConstructor
+    private static final class BatchProgress {
+        private final int limit;
+
+        private int recordsArchived;
+        private int timestampsArchived;
+
+        private boolean isLimitReached() {
+            return recordsArchived >= limit;
+        }
+    }
+
+    /**
+     * Collects the archived time-stamp records and marks them and their message records archived in bulk.
+     */
+    @RequiredArgsConstructor
     private class HibernateLogArchiveBase implements LogArchiveBase {
 
-        private Session session;
+        private final Session session;
+        private final List<Long> archivedTimestampIds = new ArrayList<>();
 
         @Override
         public void markArchiveCreated(DigestEntry lastArchive) throws Exception {
@@ -271,14 +453,27 @@ public class LogArchiver extends UntypedAbstractActor {
         @Override
         public void markRecordArchived(LogRecord logRecord) {
             if (logRecord instanceof TimestampRecord) {
-                logRecord.setArchived(true);
-                session.createQuery(
-                        "UPDATE MessageRecord m set m.archived = true where m.timestampRecord = ?1")
-                        .setParameter(1, logRecord)
-                        .executeUpdate();
+                archivedTimestampIds.add(logRecord.getId());
             }
         }
 
+        void updateArchivedRecords() {
+            if (archivedTimestampIds.isEmpty()) {
+                return;
+            }
+
+            session.createQuery(
+                    "UPDATE MessageRecord m set m.archived = true where m.timestampRecord.id in (:ids)")
+                    .setParameterList("ids", archivedTimestampIds)
+                    .executeUpdate();
+            session.createQuery(
+                    "UPDATE TimestampRecord t set t.archived = true where t.id in (:ids)")
+                    .setParameterList("ids", archivedTimestampIds)
+                    .executeUpdate();
+
+            archivedTimestampIds.clear();
+        }
+
         @Override
         public DigestEntry loadLastArchive() {
             List<DigestEntry> lastArchiveEntries =
@@ -24,30 +24,47 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 
+import akka.actor.ActorRef;
 import akka.actor.UntypedAbstractActor;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.query.Query;
 import org.joda.time.DateTime;
 
+import java.util.List;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 
 
 /**
- * Deletes all archived log records from the database.
+ * Deletes all archived log records from the database. Reloads the query id filter when started and after
+ * the records are removed.
  */
 @Slf4j
 public class LogCleaner extends UntypedAbstractActor {
 
     public static final String START_CLEANING = "doClean";
+    public static final String LOAD_QUERY_ID_FILTER = "loadQueryIdFilter";
     public static final int CLEAN_BATCH_LIMIT = MessageLogProperties.getCleanTransactionBatchSize();
+    public static final int PARTITIONS_CREATED_AHEAD_DAYS = 7;
+
+    @Override
+    public void preStart() throws Exception {
+        if (LogRecordManager.getQueryIdFilter().isEnabled()) {
+            getSelf().tell(LOAD_QUERY_ID_FILTER, ActorRef.noSender());
+        }
+    }
 
     @Override
     public void onReceive(Object message) {
         log.trace("onReceive({})", message);
 
-        if (message.equals(START_CLEANING)) {
+        if (message.equals(LOAD_QUERY_ID_FILTER)) {
+            loadQueryIdFilter();
+        } else if (message.equals(START_CLEANING)) {
             try {
                 log.info("Removing archived records from database...");
                 final long removed = handleClean();
@@ -59,14 +76,42 @@ public class LogCleaner extends UntypedAbstractActor {
             } catch (Exception e) {
                 log.error("Error when cleaning archived records from database", e);
             }
+
+            // the filter is rebuilt only if it could not hold all the query ids before the clean
+            if (LogRecordManager.getQueryIdFilter().needsLoad()) {
+                loadQueryIdFilter();
+            }
         } else {
             unhandled(message);
         }
     }
 
     protected long handleClean() throws Exception {
+        return removeExpiredRecords(new DateTime().minusDays(MessageLogProperties.getKeepRecordsForDays()).getMillis());
+    }
+
+    /**
+     * Removes the archived records older than the given time. With partitioned retention, the expired daily
+     * partitions are dropped first. If the database does not have the partitioned layout or dropping fails,
+     * the records are removed row by row.
+     * @param time record time limit in milliseconds
+     * @return number of records removed row by row
+     * @throws Exception if removing the records fails
+     */
+    static long removeExpiredRecords(long time) throws Exception {
+        if (MessageLogProperties.isPartitionedRetentionEnabled()) {
+            try {
+                if (isPartitioned()) {
+                    dropExpiredPartitions(time);
+                } else {
+                    log.warn("Partitioned retention is enabled, but the logrecord table is not partitioned");
+                }
+            } catch (Exception e) {
+                log.error("Error when dropping expired log record partitions, removing the records row by row", e);
+            }
+        }
 
-        final Long time = new DateTime().minusDays(MessageLogProperties.getKeepRecordsForDays()).getMillis();
+        // records of the legacy and default partitions (or of a non-partitioned table) are removed row by row
         long count = 0;
         int removed;
         do {
@@ -81,4 +126,52 @@ public class LogCleaner extends UntypedAbstractActor {
         } while (removed > 0);
         return count;
     }
+
+    private static void loadQueryIdFilter() {
+        try {
+            log.info("Loaded {} query ids to the query id filter", LogRecordManager.loadQueryIdFilter());
+        } catch (Exception e) {
+            log.error("Error when loading the query id filter", e);
+        }
+    }
+
+    private static boolean isPartitioned() throws Exception {
+        return Boolean.TRUE.equals(doInTransaction(session -> session
+                .getNamedQuery("logrecord-partitioned")
+                .uniqueResult()));
+    }
+
+    private static void dropExpiredPartitions(long time) throws Exception {
+        final Integer created = doInTransaction(session -> (Integer) session
+                .getNamedQuery("create-logrecord-partitions")
+                .setParameter("days", PARTITIONS_CREATED_AHEAD_DAYS)
+                .uniqueResult());
+        log.debug("Created {} log record partitions", created);
+
+        @SuppressWarnings("unchecked")
+        final List<Object[]> expired = doInTransaction(session -> session
+                .getNamedQuery("expired-logrecord-partitions")
+                .setParameter("time", time)
+                .list());
+
+        for (Object[] partition : expired) {
+            final String name = (String) partition[0];
+            final Long unlinked = doInTransaction(session -> {
+                final Long count = (Long) session.getNamedQuery("unlink-logrecord-attachments")
+                        .setParameter("start", partition[1])
+                        .setParameter("end", partition[2])
+                        .uniqueResult();
+
+                // rolls back the unlinked attachments if the partition could not be dropped
+                if (!Boolean.TRUE.equals(session.getNamedQuery("drop-logrecord-partition")
+                        .setParameter("name", name)
+                        .uniqueResult())) {
+                    throw new CodedException(X_INTERNAL_ERROR, "Could not drop log record partition %s", name);
+                }
+
+                return count;
+            });
+            log.info("Dropped log record partition {} ({} attachments removed)", name, unlinked);
+        }
+    }
 }
@@ -66,11 +66,16 @@ import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
 import static ee.ria.xroad.common.ErrorCodes.X_MLOG_TIMESTAMPER_FAILED;
+import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getAcceptableTimestampFailurePeriodSeconds;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveInterval;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getCleanInterval;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getHashAlg;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getTimestampRetryDelay;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteBatchLinger;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteBatchSize;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriteQueueSize;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.isGroupCommitEnabled;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.shouldTimestampImmediately;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
@@ -106,6 +111,9 @@ public class LogManager extends AbstractLogManager {
     private final ActorRef timestamper;
     private final ActorRef timestamperJob;
 
+    // Saves message records in batches, null if group commit is disabled
+    private final MessageRecordWriter recordWriter;
+
     // package private for testing
     final ActorRef taskQueueRef;
     final ActorRef logArchiver;
@@ -119,6 +127,31 @@ public class LogManager extends AbstractLogManager {
         timestamperJob = createTimestamperJob();
         logArchiver = createArchiver(jobManager);
         logCleaner = createCleaner(jobManager);
+        recordWriter = createRecordWriter();
+    }
+
+    private MessageRecordWriter createRecordWriter() {
+        if (!isGroupCommitEnabled()) {
+            return null;
+        }
+
+        log.info("Using group commit for message records (batch size {}, linger {} ms, queue size {})",
+                getWriteBatchSize(), getWriteBatchLinger(), getWriteQueueSize());
+
+        MessageRecordWriter writer = new MessageRecordWriter(getWriteBatchSize(), getWriteBatchLinger(),
+                getWriteQueueSize());
+        writer.start();
+
+        return writer;
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (recordWriter != null) {
+            recordWriter.stop();
+        }
+
+        super.postStop();
     }
 
     private ActorRef createTaskQueue() {
@@ -164,19 +197,29 @@ public class LogManager extends AbstractLogManager {
 
         verifyCanLogMessage(shouldTimestampImmediately);
 
-        MessageRecord logRecord;
-        if (message instanceof SoapLogMessage) {
-            logRecord = createMessageRecord((SoapLogMessage) message);
-        } else {
-            logRecord = createMessageRecord((RestLogMessage) message);
-        }
-        logRecord = saveMessageRecord(logRecord);
+        MessageRecord logRecord = saveMessageRecord(createMessageRecord(message));
 
         if (shouldTimestampImmediately) {
             timestampImmediately(logRecord);
         }
     }
 
+    /**
+     * Queues the message record to the group commit writer. The sender is answered only after the batch
+     * containing the record has been committed, so the message is still logged before the response is sent.
+     */
+    private void logInBatch(LogMessage message) throws Exception {
+        verifyCanLogMessage(false);
+
+        MessageRecord logRecord = createMessageRecord(message);
+
+        final ActorRef sender = getSender();
+        final ActorRef self = getSelf();
+
+        recordWriter.write(logRecord).whenComplete((saved, error) ->
+                sender.tell(error != null ? translateException(error) : new Object(), self));
+    }
+
     @Override
     protected TimestampRecord timestamp(Long messageRecordId) throws Exception {
         log.trace("timestamp({})", messageRecordId);
@@ -212,6 +255,8 @@ public class LogManager extends AbstractLogManager {
                 getSender().tell(statusMap, getSelf());
             } else if (message instanceof SetTimestampingStatusMessage) {
                 setTimestampingStatus((SetTimestampingStatusMessage) message);
+            } else if (message instanceof LogMessage && recordWriter != null && !shouldTimestampImmediately()) {
+                logInBatch((LogMessage) message);
             } else {
                 super.onReceive(message);
             }
@@ -262,6 +307,14 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    private static MessageRecord createMessageRecord(LogMessage message) throws Exception {
+        if (message instanceof SoapLogMessage) {
+            return createMessageRecord((SoapLogMessage) message);
+        } else {
+            return createMessageRecord((RestLogMessage) message);
+        }
+    }
+
     private static MessageRecord createMessageRecord(SoapLogMessage message) throws Exception {
         log.trace("createMessageRecord()");
 
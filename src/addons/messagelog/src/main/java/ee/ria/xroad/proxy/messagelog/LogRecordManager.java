@@ -28,6 +28,7 @@ import ee.ria.xroad.common.db.HibernateUtil;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.LogRecord;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
 
@@ -44,10 +45,17 @@ import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 
@@ -68,10 +76,56 @@ public final class LogRecordManager {
     private static final int INDEX_2 = 2;
     private static final int INDEX_3 = 3;
 
+    private static final int QUERY_ID_FETCH_SIZE = 1000;
+    private static final int BULK_QUERY_IDS_LIMIT = 1000;
+    private static final int BULK_FETCH_SIZE = 100;
+
+    // Message records waiting to be time-stamped, updated after the changes are committed
+    private static final TimestampBacklog TIMESTAMP_BACKLOG = new TimestampBacklog();
+
+    // Query ids of the message records, updated after the changes are committed
+    private static final QueryIdFilter QUERY_ID_FILTER =
+            new QueryIdFilter(MessageLogProperties.getQueryIdFilterCapacity());
 
     private LogRecordManager() {
     }
 
+    static TimestampBacklog getTimestampBacklog() {
+        return TIMESTAMP_BACKLOG;
+    }
+
+    static QueryIdFilter getQueryIdFilter() {
+        return QUERY_ID_FILTER;
+    }
+
+    /**
+     * Loads the query id filter from the query ids of the message records in the database.
+     * @return the number of loaded query ids
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static long loadQueryIdFilter() throws Exception {
+        long queryIdCount = doInTransaction(session -> session
+                .createQuery("select count(m) from MessageRecord m where m.queryId is not null", Long.class)
+                .uniqueResult());
+
+        return QUERY_ID_FILTER.rebuild(queryIdCount, queryIds -> doInTransaction(session -> {
+            long count = 0;
+
+            try (Stream<String> stream = session
+                    .createQuery("select m.queryId from MessageRecord m where m.queryId is not null", String.class)
+                    .setReadOnly(true)
+                    .setFetchSize(QUERY_ID_FETCH_SIZE)
+                    .stream()) {
+                for (String queryId : (Iterable<String>) stream::iterator) {
+                    queryIds.accept(queryId);
+                    count++;
+                }
+            }
+
+            return count;
+        }));
+    }
+
     /**
      * Returns a log record for a given message Query Id, start and end time.
      * @param queryId   the message query id.
@@ -83,6 +137,10 @@ public final class LogRecordManager {
     static LogRecord getByQueryId(String queryId, Date startTime, Date endTime) throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, startTime, endTime);
 
+        if (!QUERY_ID_FILTER.mightContain(queryId)) {
+            return null;
+        }
+
         return doInTransaction(session -> getMessageRecord(session, queryId, startTime, endTime));
     }
 
@@ -99,6 +157,10 @@ public final class LogRecordManager {
             throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, clientId, isResponse);
 
+        if (!QUERY_ID_FILTER.mightContain(queryId)) {
+            return processor.apply(null);
+        }
+
         return doInTransaction(session -> processor.apply(getMessageRecord(session, queryId, clientId, isResponse)));
     }
 
@@ -115,9 +177,66 @@ public final class LogRecordManager {
             throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, clientId, isResponse);
 
+        if (!QUERY_ID_FILTER.mightContain(queryId)) {
+            return processor.apply(Collections.emptyList());
+        }
+
         return doInTransaction(session -> processor.apply(getMessageRecords(session, queryId, clientId, isResponse)));
     }
 
+    /**
+     * Streams the log records of the given message Query Ids and sender Client Id in one transaction, ordered by
+     * Query Id and log record number. The records are detached from the session after processing, so the
+     * processor must not keep references to lazily loaded data.
+     * @param queryIds   the message query ids.
+     * @param clientId   the sender client id.
+     * @param isResponse whether the response records (true), request records (false) or both (null) are retrieved.
+     * @param processor  processes the log records, called within the transaction.
+     * @return the number of processed log records.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    public static long getByQueryIds(Collection<String> queryIds, ClientId clientId, Boolean isResponse,
+            Consumer<MessageRecord> processor) throws Exception {
+        log.trace("getByQueryIds({}, {}, {})", queryIds.size(), clientId, isResponse);
+
+        final SortedSet<String> filtered = new TreeSet<>();
+
+        for (String queryId : queryIds) {
+            if (queryId != null && QUERY_ID_FILTER.mightContain(queryId)) {
+                filtered.add(queryId);
+            }
+        }
+
+        if (filtered.isEmpty()) {
+            return 0;
+        }
+
+        final List<String> candidates = new ArrayList<>(filtered);
+
+        return doInTransaction(session -> {
+            long count = 0;
+
+            for (int i = 0; i < candidates.size(); i += BULK_QUERY_IDS_LIMIT) {
+                final List<String> chunk = candidates.subList(i, Math.min(i + BULK_QUERY_IDS_LIMIT,
+                        candidates.size()));
+
+                try (Stream<MessageRecord> records = session
+                        .createQuery(createBulkRecordCriteria(session, chunk, clientId, isResponse))
+                        .setReadOnly(true)
+                        .setFetchSize(BULK_FETCH_SIZE)
+                        .stream()) {
+                    for (MessageRecord record : (Iterable<MessageRecord>) records::iterator) {
+                        processor.accept(record);
+                        session.detach(record);
+                        count++;
+                    }
+                }
+            }
+
+            return count;
+        });
+    }
+
     /**
      * Returns a log record for a given log record number.
      * @param number the log record number.
@@ -146,6 +265,42 @@ public final class LogRecordManager {
             save(session, messageRecord);
             return null;
         });
+
+        addToTimestampBacklog(messageRecord);
+        QUERY_ID_FILTER.add(messageRecord.getQueryId());
+    }
+
+    /**
+     * Saves the message records to database in one transaction, using a single JDBC batch.
+     * @param messageRecords the message records to be saved.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        doInTransaction(session -> {
+            session.setJdbcBatchSize(Math.max(messageRecords.size(), getConfiguredBatchSize(session)));
+
+            for (MessageRecord messageRecord : messageRecords) {
+                //the blob must be created within hibernate session
+                final InputStream is = messageRecord.getAttachmentStream();
+                if (is != null) {
+                    messageRecord.setAttachment(session.getLobHelper().createBlob(is,
+                            messageRecord.getAttachmentStreamSize()));
+                }
+                save(session, messageRecord);
+            }
+            return null;
+        });
+
+        for (MessageRecord messageRecord : messageRecords) {
+            addToTimestampBacklog(messageRecord);
+            QUERY_ID_FILTER.add(messageRecord.getQueryId());
+        }
+    }
+
+    private static void addToTimestampBacklog(MessageRecord messageRecord) {
+        if (messageRecord.getSignatureHash() != null) {
+            TIMESTAMP_BACKLOG.add(messageRecord.getId(), messageRecord.getSignatureHash());
+        }
     }
 
     /**
@@ -163,6 +318,8 @@ public final class LogRecordManager {
             query.executeUpdate();
             return null;
         });
+
+        TIMESTAMP_BACKLOG.update(messageRecord.getId(), messageRecord.getSignatureHash());
     }
 
     /**
@@ -182,6 +339,8 @@ public final class LogRecordManager {
 
             return null;
         });
+
+        TIMESTAMP_BACKLOG.remove(timestampedLogRecords);
     }
 
     /**
@@ -291,10 +450,28 @@ public final class LogRecordManager {
         final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
         final Root<MessageRecord> m = query.from(MessageRecord.class);
 
+        return query.select(m).where(cb.and(cb.equal(m.get("queryId"), queryId),
+                createClientPredicate(cb, m, clientId, isResponse)));
+    }
+
+    private static CriteriaQuery<MessageRecord> createBulkRecordCriteria(Session session, Collection<String> queryIds,
+            ClientId clientId, Boolean isResponse) {
+
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
+        final Root<MessageRecord> m = query.from(MessageRecord.class);
+
+        return query.select(m)
+                .where(cb.and(m.get("queryId").in(queryIds), createClientPredicate(cb, m, clientId, isResponse)))
+                .orderBy(cb.asc(m.get("queryId")), cb.asc(m.get("id")));
+    }
+
+    // matches the composite index on (queryid, memberclass, membercode, subsystemcode, response)
+    private static Predicate createClientPredicate(CriteriaBuilder cb, Root<MessageRecord> m, ClientId clientId,
+            Boolean isResponse) {
+
         Predicate pred = cb.and(
-                cb.equal(m.get("queryId"), queryId),
                 cb.equal(m.get("memberClass"), clientId.getMemberClass()),
-                cb.equal(m.get("memberCode"), clientId.getMemberCode()),
                 cb.equal(m.get("memberCode"), clientId.getMemberCode()));
 
         final String subsystemCode = clientId.getSubsystemCode();
@@ -308,7 +485,7 @@ public final class LogRecordManager {
             pred = cb.and(pred, cb.equal(m.get("response"), isResponse));
         }
 
-        return query.select(m).where(pred);
+        return pred;
     }
 
     private static int getConfiguredBatchSize(Session session) {
@@ -0,0 +1,252 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
+
+/**
+ * Group commit writer for message records. Message records of concurrent requests are collected into a bounded
+ * queue and saved by a single writer thread, up to the configured batch size in one transaction. The future
+ * returned by {@link #write(MessageRecord)} completes only after the transaction containing the record has been
+ * committed. The queue depth and batch statistics are published as metrics over JMX while the writer is running.
+ */
+@Slf4j
+class MessageRecordWriter {
+
+    private static final long POLL_TIMEOUT_MS = 1000;
+    private static final long STOP_TIMEOUT_MS = 10000;
+
+    private final int maxBatchSize;
+    private final long lingerMs;
+    private final BlockingQueue<PendingRecord> queue;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder recordCount = new LongAdder();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong largestBatchSize = new AtomicLong();
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private JmxReporter reporter;
+
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the writer.
+     * @param maxBatchSize maximum number of records saved in one transaction
+     * @param lingerMs time in milliseconds to wait for more records before a batch is saved
+     * @param queueSize maximum number of records waiting to be saved
+     */
+    MessageRecordWriter(int maxBatchSize, long lingerMs, int queueSize) {
+        if (maxBatchSize < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Batch size and queue size must be positive");
+        }
+
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMs = Math.max(0, lingerMs);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        writerThread = new Thread(this::run, "MessageRecordWriter");
+        writerThread.setDaemon(true);
+
+        registerMetrics();
+    }
+
+    /**
+     * Starts the writer thread and the JMX reporter of the writer metrics.
+     */
+    void start() {
+        reporter = JmxReporter.forRegistry(metrics).build();
+        reporter.start();
+
+        writerThread.start();
+    }
+
+    /**
+     * Queues the message record for saving.
+     * @param messageRecord the message record
+     * @return future that is completed with the saved record when it has been committed to the database
+     */
+    CompletableFuture<MessageRecord> write(MessageRecord messageRecord) {
+        PendingRecord pending = new PendingRecord(messageRecord);
+
+        if (!running) {
+            pending.future.completeExceptionally(
+                    new CodedException(X_LOGGING_FAILED_X, "Message record writer is stopped"));
+        } else if (!queue.offer(pending)) {
+            pending.future.completeExceptionally(
+                    new CodedException(X_LOGGING_FAILED_X, "Message record write queue is full"));
+        }
+
+        return pending.future;
+    }
+
+    /**
+     * Stops the writer. Records already in the queue are saved before the writer thread exits.
+     */
+    void stop() {
+        running = false;
+
+        try {
+            writerThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (reporter != null) {
+            reporter.stop();
+        }
+    }
+
+    /**
+     * @return the queue depth, batch count, record count, last batch size and largest batch size gauges
+     */
+    MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Saves the records in one transaction. Can be overridden in tests.
+     * @param records the records to save
+     * @throws Exception if saving fails
+     */
+    protected void saveBatch(List<MessageRecord> records) throws Exception {
+        LogRecordManager.saveMessageRecords(records);
+    }
+
+    private void registerMetrics() {
+        // Number of records waiting to be saved
+        metrics.register(name(MessageRecordWriter.class, "queueDepth"), (Gauge<Integer>) queue::size);
+
+        // Number of batches and records saved
+        metrics.register(name(MessageRecordWriter.class, "batchCount"), (Gauge<Long>) batchCount::sum);
+        metrics.register(name(MessageRecordWriter.class, "recordCount"), (Gauge<Long>) recordCount::sum);
+
+        // Sizes of the last and the largest saved batch
+        metrics.register(name(MessageRecordWriter.class, "lastBatchSize"), (Gauge<Long>) lastBatchSize::get);
+        metrics.register(name(MessageRecordWriter.class, "largestBatchSize"), (Gauge<Long>) largestBatchSize::get);
+    }
+
+    private void run() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // the writer thread is owned by this class, stop taking new records and save the queued ones
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+
+        log.trace("Message record writer stopped");
+    }
+
+    private void collectBatch(List<PendingRecord> batch) throws InterruptedException {
+        PendingRecord first = running ? queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS) : queue.poll();
+
+        if (first == null) {
+            return;
+        }
+
+        batch.add(first);
+        queue.drainTo(batch, maxBatchSize - batch.size());
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+
+        while (batch.size() < maxBatchSize && running) {
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0) {
+                break;
+            }
+
+            PendingRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+            if (next == null) {
+                break;
+            }
+
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void flush(List<PendingRecord> batch) {
+        List<MessageRecord> records = new ArrayList<>(batch.size());
+        batch.forEach(p -> records.add(p.messageRecord));
+
+        try {
+            saveBatch(records);
+        } catch (Throwable e) {
+            log.error("Saving a batch of {} message records failed", records.size(), e);
+
+            batch.forEach(p -> p.future.completeExceptionally(e));
+
+            return;
+        }
+
+        batchCount.increment();
+        recordCount.add(records.size());
+        lastBatchSize.set(records.size());
+        largestBatchSize.accumulateAndGet(records.size(), Math::max);
+
+        log.debug("Saved a batch of {} message records, {} records waiting", records.size(), queue.size());
+
+        batch.forEach(p -> p.future.complete(p.messageRecord));
+    }
+
+    private static final class PendingRecord {
+        private final MessageRecord messageRecord;
+        private final CompletableFuture<MessageRecord> future = new CompletableFuture<>();
+
+        private PendingRecord(MessageRecord messageRecord) {
+            this.messageRecord = messageRecord;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * In-memory Bloom filter of the query ids of the message records in the database, so that lookups of query ids that
+ * were never logged can be answered without querying the database. The filter is loaded from the database when the
+ * message log starts and updated after each committed message record. If the database holds more query ids than the
+ * filter is sized for, the filter is disabled and loaded again once the old records have been removed. Until the
+ * filter is loaded (or if it is disabled) every query id might be present.
+ */
+@Slf4j
+final class QueryIdFilter {
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    /**
+     * Loads the query ids of the message records from the database.
+     */
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * @param queryIds receives the query ids
+         * @return the number of loaded query ids
+         * @throws Exception if loading the query ids fails
+         */
+        long load(Consumer<String> queryIds) throws Exception;
+    }
+
+    private final int capacity;
+
+    // the filter used for the lookups, null until loaded
+    private volatile Entries current;
+    // the filter being loaded, receives the query ids committed during the load as well
+    private volatile Entries next;
+    // set when the query ids did not fit in the filter, cleared by a successful load
+    private volatile boolean overCapacity;
+
+    /**
+     * @param capacity number of query ids the filter is sized for, 0 disables the filter
+     */
+    QueryIdFilter(int capacity) {
+        this.capacity = capacity;
+    }
+
+    boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @return true if the filter is not loaded or has been disabled because the query ids did not fit in it
+     */
+    boolean needsLoad() {
+        return isEnabled() && (current == null || overCapacity);
+    }
+
+    /**
+     * @param queryId query id
+     * @return false if no message record with the query id is stored in the database
+     */
+    boolean mightContain(String queryId) {
+        Entries filter = current;
+
+        return filter == null || queryId == null || filter.bloom.mightContain(queryId);
+    }
+
+    /**
+     * Adds the query id of a committed message record.
+     * @param queryId query id
+     */
+    void add(String queryId) {
+        if (queryId == null) {
+            return;
+        }
+
+        Entries pending = next;
+
+        if (pending != null) {
+            pending.put(queryId);
+        }
+
+        Entries filter = current;
+
+        if (filter != null && !filter.put(queryId)) {
+            disable(filter);
+        }
+    }
+
+    /**
+     * Replaces the filter with a new one loaded from the database. Query ids of the removed records are dropped,
+     * the query ids added during the load are kept. The previous filter stays in use if loading fails. If the
+     * database holds more query ids than the capacity, the filter is disabled instead.
+     * Must not be called concurrently.
+     * @param count number of query ids in the database
+     * @param loader loads the query ids from the database
+     * @return the number of loaded query ids
+     * @throws Exception if loading the query ids fails
+     */
+    long rebuild(long count, Loader loader) throws Exception {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        if (count > capacity) {
+            disable(count);
+
+            return 0;
+        }
+
+        Entries filter = new Entries(capacity);
+        next = filter;
+
+        try {
+            long loaded = loader.load(filter::put);
+
+            if (filter.isFull()) {
+                disable(loaded);
+            } else {
+                overCapacity = false;
+                current = filter;
+            }
+
+            return loaded;
+        } finally {
+            next = null;
+        }
+    }
+
+    private void disable(long count) {
+        log.warn("The database holds {} query ids, more than the query id filter capacity {}, the filter is "
+                + "disabled until the old records are removed", count, capacity);
+
+        overCapacity = true;
+        current = null;
+    }
+
+    private void disable(Entries filter) {
+        if (!overCapacity) {
+            log.warn("More than {} query ids were added to the query id filter, the filter is disabled "
+                    + "until the old records are removed", capacity);
+        }
+
+        overCapacity = true;
+
+        if (current == filter) {
+            current = null;
+        }
+    }
+
+    private static final class Entries {
+        private final BloomFilter<CharSequence> bloom;
+        private final AtomicLong remaining;
+
+        Entries(int capacity) {
+            bloom = BloomFilter.create(Funnels.stringFunnel(UTF_8), capacity, FALSE_POSITIVE_PROBABILITY);
+            remaining = new AtomicLong(capacity);
+        }
+
+        /**
+         * @return false if the filter is over its capacity after adding the query id
+         */
+        boolean put(String queryId) {
+            bloom.put(queryId);
+
+            return remaining.decrementAndGet() >= 0;
+        }
+
+        boolean isFull() {
+            return remaining.get() < 0;
+        }
+    }
+}
@@ -35,16 +35,27 @@ import akka.actor.UntypedAbstractActor;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.Session;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.proxy.messagelog.LogManager.TIMESTAMPER_NAME;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 
 /**
  * Handles the TaskQueues -- adds tasks to the queue and sends the active queue for time-stamping.
+ *
+ * The tasks are taken from the in-memory time-stamping backlog, which is loaded from the database when the task
+ * queue starts.
+ *
+ * Up to timestamp-concurrent-requests batches are time-stamped at the same time. While batches are in progress,
+ * only records after the last record sent for time-stamping are picked up, records of failed batches are picked up
+ * again once all the batches in progress are completed. A batch without a result by its deadline, e.g. because
+ * its worker died, is reclaimed on the next time-stamping tick so that its request slot is not lost.
  */
 @Slf4j
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
@@ -54,6 +65,22 @@ public class TaskQueue extends UntypedAbstractActor {
     static final String START_TIMESTAMPING_RETRY_MODE = "StartTimestampingRetryMode";
     static final double TIMESTAMPED_RECORDS_RATIO_THRESHOLD = 0.7;
     static final int TIMESTAMP_RECORDS_LIMIT_RETRY_MODE = 1;
+    static final int BACKLOG_LOAD_FETCH_SIZE = 1000;
+
+    // A batch is reclaimed when it has no result after this many times the TSP connect and read timeouts
+    static final int BATCH_DEADLINE_TIMEOUTS = 3;
+
+    private final TimestampBacklog backlog = LogRecordManager.getTimestampBacklog();
+    private boolean backlogLoaded;
+
+    private final BatchesInProgress batchesInProgress = new BatchesInProgress();
+    // Whether the last query for time-stamp tasks reached its limit
+    private boolean backlogRemaining;
+
+    @Override
+    public void preStart() {
+        loadBacklog();
+    }
 
     @Override
     public void onReceive(Object message) throws Exception {
@@ -62,7 +89,7 @@ public class TaskQueue extends UntypedAbstractActor {
         if (message.equals(START_TIMESTAMPING)) {
             handleStartTimestamping();
         } else if (message.equals(START_TIMESTAMPING_RETRY_MODE)) {
-            handleStartTimestamping(TIMESTAMP_RECORDS_LIMIT_RETRY_MODE);
+            handleStartTimestamping(TIMESTAMP_RECORDS_LIMIT_RETRY_MODE, 1);
         } else if (message instanceof Timestamper.TimestampSucceeded) {
             handleTimestampSucceeded((Timestamper.TimestampSucceeded) message);
         } else if (message instanceof Timestamper.TimestampFailed) {
@@ -75,6 +102,8 @@ public class TaskQueue extends UntypedAbstractActor {
     protected void handleTimestampSucceeded(TimestampSucceeded message) {
         log.trace("handleTimestampSucceeded");
 
+        batchCompleted(message.getMessageRecords());
+
         if (log.isTraceEnabled()) {
             log.trace("Time-stamped message records {}", Arrays.toString(message.getMessageRecords()));
         }
@@ -90,11 +119,10 @@ public class TaskQueue extends UntypedAbstractActor {
         } finally {
             if (succeeded) {
                 indicateSuccess();
-                // If time-stamped records count equals to time-stamp records limit, there are probably
-                // still records to be time-stamped. Init another another time-stamping round to prevent
-                // messagelog records to begin to bloat.
-                if (message.getMessageRecords().length == MessageLogProperties.getTimestampRecordsLimit()) {
-                    log.info("Time-stamped records count equaled to time-stamp records limit");
+                // If the time-stamp tasks query reached its limit, there are probably still records to be
+                // time-stamped. Fill the free request slot to prevent messagelog records to begin to bloat.
+                if (backlogRemaining) {
+                    log.info("Time-stamped records count reached the time-stamp records limit");
                     handleStartTimestamping();
                 }
             } else {
@@ -134,41 +162,97 @@ public class TaskQueue extends UntypedAbstractActor {
     protected void handleTimestampFailed(TimestampFailed message) {
         log.trace("handleTimestampFailed");
 
+        batchCompleted(message.getMessageRecords());
+
         indicateFailure();
     }
 
+    private void batchCompleted(Long[] messageRecords) {
+        if (!batchesInProgress.completed(messageRecords)) {
+            log.warn("Received time-stamping result for message records {} after the deadline",
+                    Arrays.toString(messageRecords));
+        }
+    }
+
     protected void handleStartTimestamping() {
-        handleStartTimestamping(MessageLogProperties.getTimestampRecordsLimit());
+        handleStartTimestamping(MessageLogProperties.getTimestampRecordsLimit(),
+                MessageLogProperties.getTimestampConcurrentRequests());
     }
 
-    protected void handleStartTimestamping(int timestampRecordsLimit) {
-        List<Task> timestampTasks;
+    protected void handleStartTimestamping(int timestampRecordsLimit, int concurrentRequests) {
+        int reclaimed = batchesInProgress.reclaim(System.currentTimeMillis());
 
-        try {
-            timestampTasks = doInTransaction(session -> getTimestampTasks(session, timestampRecordsLimit));
-        } catch (Exception e) {
-            log.error("Error getting time-stamp tasks", e);
+        if (reclaimed > 0) {
+            log.warn("Reclaimed {} time-stamping batches without a result by the deadline", reclaimed);
+        }
 
+        int freeRequests = concurrentRequests - batchesInProgress.size();
+
+        if (freeRequests <= 0) {
+            log.trace("Time-stamping {} batches already in progress", batchesInProgress.size());
+
+            return;
+        }
+
+        if (!loadBacklog()) {
             return;
         }
 
+        int maxRecords = timestampRecordsLimit * freeRequests;
+        List<Task> timestampTasks = backlog.getTasks(batchesInProgress.getLastRecord(), maxRecords);
+
+        backlogRemaining = timestampTasks.size() == maxRecords;
+
         if (timestampTasks.isEmpty()) {
             log.trace("Nothing to time-stamp, task queue is empty");
 
             return;
         }
 
-        int timestampTasksSize = timestampTasks.size();
+        List<List<Task>> batches = splitIntoBatches(timestampTasks, timestampRecordsLimit);
 
-        log.info("Start time-stamping {} message records", timestampTasksSize);
+        log.info("Start time-stamping {} message records in {} batches ({} message records waiting)",
+                timestampTasks.size(), batches.size(), backlog.size());
 
-        if (timestampTasksSize / (double) MessageLogProperties.getTimestampRecordsLimit()
+        if (batches.get(0).size() / (double) MessageLogProperties.getTimestampRecordsLimit()
                 >= TIMESTAMPED_RECORDS_RATIO_THRESHOLD) {
             log.warn("Number of time-stamped records is over {} % of 'timestamp-records-limit' value",
                     TIMESTAMPED_RECORDS_RATIO_THRESHOLD * 100);
         }
 
-        sendToTimestamper(createTimestampTask(timestampTasks));
+        long deadline = System.currentTimeMillis() + getBatchTimeoutMillis();
+
+        for (List<Task> batch : batches) {
+            sendToTimestamper(createTimestampTask(batch));
+
+            batchesInProgress.started(batch, deadline);
+        }
+    }
+
+    private static long getBatchTimeoutMillis() {
+        return BATCH_DEADLINE_TIMEOUTS * ((long) MessageLogProperties.getTimestamperClientConnectTimeout()
+                + MessageLogProperties.getTimestamperClientReadTimeout());
+    }
+
+    /**
+     * Splits the time-stamp tasks (in message record order) into as few batches as the limit allows, the batch sizes
+     * differ by one record at most.
+     * @param timestampTasks time-stamp tasks
+     * @param timestampRecordsLimit maximum number of records in one batch
+     * @return the batches
+     */
+    static List<List<Task>> splitIntoBatches(List<Task> timestampTasks, int timestampRecordsLimit) {
+        int count = (timestampTasks.size() + timestampRecordsLimit - 1) / timestampRecordsLimit;
+        List<List<Task>> batches = new ArrayList<>(count);
+        int from = 0;
+
+        for (int i = 0; i < count; i++) {
+            int to = from + (timestampTasks.size() - from + count - i - 1) / (count - i);
+            batches.add(timestampTasks.subList(from, to));
+            from = to;
+        }
+
+        return batches;
     }
 
     private void sendToTimestamper(TimestampTask timestampTask) {
@@ -188,32 +272,100 @@ public class TaskQueue extends UntypedAbstractActor {
         return new TimestampTask(messageRecords, signatureHashes);
     }
 
-    private static boolean isTaskQueueEmpty() {
-        try {
-            return doInTransaction(TaskQueue::getTasksQueueSize) == 0L;
-        } catch (Exception e) {
-            log.error("Could not read timestamp task queue status", e);
+    private boolean isTaskQueueEmpty() {
+        return backlogLoaded && backlog.isEmpty();
+    }
 
-            return false;
+    /**
+     * Loads the message records waiting to be time-stamped from the database, unless already loaded.
+     * @return true if the backlog is loaded
+     */
+    private boolean loadBacklog() {
+        if (!backlogLoaded) {
+            try {
+                // records saved meanwhile are added by the write path, adding them again is harmless
+                backlog.clear();
+
+                doInTransaction(session -> {
+                    try (Stream<Task> tasks = session.createQuery(getTaskQueueQuery(), Task.class)
+                            .setReadOnly(true)
+                            .setFetchSize(BACKLOG_LOAD_FETCH_SIZE)
+                            .stream()) {
+                        tasks.forEach(task -> backlog.add(task.getMessageRecordNo(), task.getSignatureHash()));
+                    }
+
+                    return null;
+                });
+
+                backlogLoaded = true;
+
+                log.info("Loaded {} message records waiting to be time-stamped", backlog.size());
+            } catch (Exception e) {
+                log.error("Error loading time-stamp tasks", e);
+            }
         }
-    }
 
-    @SuppressWarnings("unchecked")
-    private List<Task> getTimestampTasks(Session session, int timestampRecordsLimit) {
-        return session.createQuery(getTaskQueueQuery()).setMaxResults(timestampRecordsLimit).list();
+        return backlogLoaded;
     }
 
-    @SuppressWarnings("unchecked")
-    private static Long getTasksQueueSize(Session session) {
-        return (Long) session.createQuery(getTaskQueueSizeQuery()).uniqueResult();
+    /**
+     * Time-stamp tasks sent to the timestamper without a result yet, by the first message record number of the task.
+     */
+    static final class BatchesInProgress {
+
+        private final Map<Long, Long> deadlines = new HashMap<>();
+
+        // Highest message record number sent for time-stamping while batches are in progress
+        private long lastRecord;
+
+        void started(List<Task> batch, long deadline) {
+            deadlines.put(batch.get(0).getMessageRecordNo(), deadline);
+            lastRecord = Math.max(lastRecord, batch.get(batch.size() - 1).getMessageRecordNo());
+        }
+
+        /**
+         * @param messageRecords message records of the completed task
+         * @return false if the task was not in progress, e.g. it was already reclaimed
+         */
+        boolean completed(Long[] messageRecords) {
+            boolean inProgress = messageRecords.length > 0 && deadlines.remove(messageRecords[0]) != null;
+
+            resetIfEmpty();
+
+            return inProgress;
+        }
+
+        /**
+         * Forgets the tasks whose deadline has passed.
+         * @param now current time in milliseconds
+         * @return number of reclaimed tasks
+         */
+        int reclaim(long now) {
+            int before = deadlines.size();
+
+            deadlines.values().removeIf(deadline -> deadline <= now);
+            resetIfEmpty();
+
+            return before - deadlines.size();
+        }
+
+        int size() {
+            return deadlines.size();
+        }
+
+        long getLastRecord() {
+            return lastRecord;
+        }
+
+        private void resetIfEmpty() {
+            if (deadlines.isEmpty()) {
+                lastRecord = 0;
+            }
+        }
     }
 
     static String getTaskQueueQuery() {
         return "select new " + Task.class.getName() + "(m.id, m.signatureHash) "
                 + "from MessageRecord m where m.signatureHash is not null";
     }
-
-    private static String getTaskQueueSizeQuery() {
-        return "select COUNT(*) from MessageRecord m where m.signatureHash is not null";
-    }
 }
@@ -0,0 +1,106 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index of the message records waiting to be time-stamped, in message record order. The database stays
+ * the source of truth: the index is loaded from the database when the message log starts and updated after each
+ * committed change of the time-stamping state, so that the task queue does not need to scan the log records.
+ */
+final class TimestampBacklog {
+
+    private final ConcurrentNavigableMap<Long, String> records = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Adds a message record waiting to be time-stamped.
+     * @param messageRecord message record number
+     * @param signatureHash signature hash of the message record
+     */
+    void add(Long messageRecord, String signatureHash) {
+        if (records.put(messageRecord, signatureHash) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Updates the signature hash of a message record still waiting to be time-stamped.
+     * @param messageRecord message record number
+     * @param signatureHash new signature hash
+     */
+    void update(Long messageRecord, String signatureHash) {
+        records.replace(messageRecord, signatureHash);
+    }
+
+    /**
+     * Removes time-stamped message records.
+     * @param messageRecords message record numbers
+     */
+    void remove(Long... messageRecords) {
+        for (Long messageRecord : messageRecords) {
+            if (records.remove(messageRecord) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    void clear() {
+        records.keySet().forEach(this::remove);
+    }
+
+    /**
+     * @param afterRecord only message records with a greater number are returned
+     * @param maxRecords maximum number of tasks to return
+     * @return time-stamp tasks in message record order
+     */
+    List<Task> getTasks(long afterRecord, int maxRecords) {
+        List<Task> tasks = new ArrayList<>(Math.min(maxRecords, size()));
+
+        for (Map.Entry<Long, String> record : records.tailMap(afterRecord, false).entrySet()) {
+            if (tasks.size() == maxRecords) {
+                break;
+            }
+
+            tasks.add(new Task(record.getKey(), record.getValue()));
+        }
+
+        return tasks;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.messagelog.MessageRecord;
@@ -37,13 +38,19 @@ import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
+import java.util.Arrays;
+
+import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 
 /**
- * Timestamper is responsible for routing timestamping tasks to the timestamp worker.
+ * Timestamper is responsible for routing timestamping tasks to the timestamp workers. The workers run concurrently
+ * and share the statistics used for choosing the time-stamping provider.
  */
 @Slf4j
 public class Timestamper extends UntypedAbstractActor {
 
+    private final TspStatistics tspStatistics = new TspStatistics();
+
     @Data
     @RequiredArgsConstructor
     @ToString(exclude = "signatureHashes")
@@ -92,11 +99,28 @@ public class Timestamper extends UntypedAbstractActor {
 
     private void handleTimestampTask(TimestampTask message) {
         if (!GlobalConf.isValid()) {
+            // the task queue keeps track of the tasks in progress and must get a result for every task
+            getSender().tell(new TimestampFailed(message.getMessageRecords(),
+                    new CodedException(X_OUTDATED_GLOBALCONF, "Global configuration is not valid")), getSelf());
+
+            return;
+        }
+
+        ActorRef worker;
+
+        try {
+            // Spawn a new temporary child actor that will do the actual time stamping, which is probably lengthy
+            // process.
+            worker = getContext().actorOf(Props.create(getWorkerImpl(), ServerConf.getTspUrl(), tspStatistics));
+        } catch (Exception e) {
+            log.error("Failed to start time-stamping message records {}", Arrays.toString(message.getMessageRecords()),
+                    e);
+
+            getSender().tell(new TimestampFailed(message.getMessageRecords(), e), getSelf());
+
             return;
         }
 
-        // Spawn a new temporary child actor that will do the actual time stamping, which is probably lengthy process.
-        ActorRef worker = getContext().actorOf(Props.create(getWorkerImpl(), ServerConf.getTspUrl()));
         worker.tell(message, getSender());
     }
 }
@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampTask;
 
 import akka.actor.ActorRef;
@@ -34,6 +35,8 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.Arrays;
 import java.util.List;
 
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+
 /**
  * Timestamper worker is responsible for creating timestamps.
  */
@@ -42,6 +45,7 @@ import java.util.List;
 public class TimestamperWorker extends UntypedAbstractActor {
 
     private final List<String> tspUrls;
+    private final TspStatistics tspStatistics;
 
     @Override
     public void onReceive(Object message) throws Exception {
@@ -52,6 +56,11 @@ public class TimestamperWorker extends UntypedAbstractActor {
                 handleTimestampTask((TimestampTask) message);
             } catch (Exception e) {
                 handleFailure((TimestampTask) message, e);
+            } catch (Error e) {
+                // the task queue must get a result for every task, also when the worker dies
+                handleFailure((TimestampTask) message, new CodedException(X_INTERNAL_ERROR, e));
+
+                throw e;
             } finally {
                 getContext().stop(getSelf());
             }
@@ -92,12 +101,18 @@ public class TimestamperWorker extends UntypedAbstractActor {
         AbstractTimestampRequest tsRequest =
                 createTimestampRequest(logRecords, signatureHashes);
 
-        Timestamper.TimestampResult result = tsRequest.execute(tspUrls);
+        Timestamper.TimestampResult result = tsRequest.execute(tspStatistics.order(tspUrls), tspStatistics);
 
         log.info("Timestamped {} message records in {} ms",
                 message.getMessageRecords().length,
                 (System.currentTimeMillis() - start));
 
+        if (result instanceof Timestamper.TimestampSucceeded) {
+            String url = ((Timestamper.TimestampSucceeded) result).getUrl();
+
+            log.debug("Time-stamping provider {}: {}", url, tspStatistics.getMetrics(url));
+        }
+
         getSender().tell(result, ActorRef.noSender());
     }
 
@@ -0,0 +1,156 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps track of the observed latency and success rate of the time-stamping providers and decides the order in
+ * which the providers are tried. Shared by the concurrently running timestamper workers.
+ */
+final class TspStatistics {
+
+    // weight of the latest observation in the moving averages
+    private static final double SMOOTHING = 0.2;
+    // keeps failing providers in the rotation so that they are noticed when they recover
+    private static final double MIN_SUCCESS_RATE = 0.05;
+
+    private final ConcurrentMap<String, Provider> providers = new ConcurrentHashMap<>();
+
+    /**
+     * Time-stamping provider metrics.
+     */
+    @Value
+    static class Metrics {
+        long requests;
+        long failures;
+        double latencyMillis;
+        double successRate;
+    }
+
+    void recordSuccess(String url, long latencyMillis) {
+        provider(url).record(true, latencyMillis);
+    }
+
+    void recordFailure(String url, long latencyMillis) {
+        provider(url).record(false, latencyMillis);
+    }
+
+    Metrics getMetrics(String url) {
+        return provider(url).getMetrics();
+    }
+
+    /**
+     * Orders the given providers for a time-stamping request. The first provider is picked at random weighted by
+     * its success rate and inverse latency, so that concurrent requests are spread over the providers in proportion
+     * to their observed performance. The rest follow in the order of their weight and are used when the preceding
+     * providers fail. Providers without any observations are tried first.
+     * @param urls time-stamping provider URLs
+     * @return the URLs in the order they should be tried
+     */
+    List<String> order(List<String> urls) {
+        List<String> ordered = new ArrayList<>(urls);
+
+        if (ordered.size() < 2) {
+            return ordered;
+        }
+
+        // snapshot of the weights, the statistics are updated concurrently
+        Map<String, Double> weights = new HashMap<>();
+        double total = 0;
+
+        for (String url : ordered) {
+            double weight = provider(url).getWeight();
+
+            if (Double.isInfinite(weight)) {
+                // not observed yet
+                ordered.remove(url);
+                ordered.add(0, url);
+
+                return ordered;
+            }
+
+            weights.put(url, weight);
+            total += weight;
+        }
+
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        int first = 0;
+
+        while (first < ordered.size() - 1 && pick >= weights.get(ordered.get(first))) {
+            pick -= weights.get(ordered.get(first++));
+        }
+
+        String selected = ordered.remove(first);
+
+        ordered.sort(Comparator.comparing(weights::get, Comparator.reverseOrder()));
+        ordered.add(0, selected);
+
+        return ordered;
+    }
+
+    private Provider provider(String url) {
+        return providers.computeIfAbsent(url, u -> new Provider());
+    }
+
+    private static final class Provider {
+        private long requests;
+        private long failures;
+        private double latencyMillis;
+        private double successRate = 1;
+
+        synchronized void record(boolean success, long latency) {
+            requests++;
+
+            if (!success) {
+                failures++;
+            }
+
+            latencyMillis = requests == 1 ? latency : latencyMillis + SMOOTHING * (latency - latencyMillis);
+            successRate += SMOOTHING * ((success ? 1 : 0) - successRate);
+        }
+
+        synchronized double getWeight() {
+            if (requests == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            return Math.max(successRate, MIN_SUCCESS_RATE) / Math.max(latencyMillis, 1);
+        }
+
+        synchronized Metrics getMetrics() {
+            return new Metrics(requests, failures, latencyMillis, successRate);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.asic.AsicContainer;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the pipeline creating ASiC containers of archived message records.
+ */
+public class AsicContainerPipelineTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Containers are consumed in the submission order even if they are created in a different order.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void containersAreConsumedInSubmissionOrder() throws Exception {
+        CountDownLatch lastCreated = new CountDownLatch(1);
+        List<String> consumed = new ArrayList<>();
+
+        AsicContainerPipeline pipeline = new AsicContainerPipeline(executor, 10,
+                (record, container) -> consumed.add(new String(container, StandardCharsets.UTF_8)));
+
+        pipeline.submit(record("first", lastCreated, null));
+        pipeline.submit(record("second", null, null));
+        pipeline.submit(record("third", null, lastCreated));
+
+        assertEquals(3, pipeline.getPendingCount());
+
+        pipeline.flush();
+
+        assertEquals(0, pipeline.getPendingCount());
+        assertEquals("[first, second, third]", consumed.toString());
+    }
+
+    /**
+     * Submitting more records than the maximum number of pending containers consumes the eldest containers.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void pendingContainersAreBounded() throws Exception {
+        List<String> consumed = new ArrayList<>();
+
+        AsicContainerPipeline pipeline = new AsicContainerPipeline(executor, 2,
+                (record, container) -> consumed.add(new String(container, StandardCharsets.UTF_8)));
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(record("record" + i, null, null));
+
+            assertTrue(pipeline.getPendingCount() <= 2);
+        }
+
+        assertEquals("[record0, record1, record2]", consumed.toString());
+
+        pipeline.flush();
+
+        assertEquals(5, consumed.size());
+    }
+
+    /**
+     * Failure to create a container is thrown to the archiver.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void containerFailureIsPropagated() throws Exception {
+        AsicContainerPipeline pipeline = new AsicContainerPipeline(executor, 10, (record, container) -> { });
+
+        MessageRecord failing = mock(MessageRecord.class);
+        AsicContainer container = mock(AsicContainer.class);
+        doThrow(new IllegalStateException("broken")).when(container).write(any(OutputStream.class));
+        when(failing.toAsicContainer()).thenReturn(container);
+
+        pipeline.submit(failing);
+
+        try {
+            pipeline.flush();
+            fail("Expected container creation to fail");
+        } catch (Exception e) {
+            assertEquals("broken", e.getCause().getMessage());
+        }
+    }
+
+    private static MessageRecord record(String content, CountDownLatch awaitBeforeCreate,
+            CountDownLatch signalAfterCreate) throws Exception {
+        MessageRecord record = mock(MessageRecord.class);
+        AsicContainer container = mock(AsicContainer.class);
+
+        doAnswer(invocation -> {
+            if (awaitBeforeCreate != null) {
+                assertTrue(awaitBeforeCreate.await(5, TimeUnit.SECONDS));
+            }
+
+            OutputStream os = (OutputStream) invocation.getArguments()[0];
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+
+            if (signalAfterCreate != null) {
+                signalAfterCreate.countDown();
+            }
+
+            return null;
+        }).when(container).write(any(OutputStream.class));
+
+        when(record.toAsicContainer()).thenReturn(container);
+
+        return record;
+    }
+}
@@ -27,6 +27,7 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ExpectedCodedException;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.AbstractLogRecord;
@@ -61,7 +62,10 @@ import java.io.File;
 import java.io.FileFilter;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -191,8 +195,10 @@ public class MessageLogTest extends AbstractMessageLogTest {
     public void testTimestampRecordsLimit() throws Exception {
         log.trace("testTimestampRecordsLimit()");
         int orig = MessageLogProperties.getTimestampRecordsLimit();
+        int origConcurrentRequests = MessageLogProperties.getTimestampConcurrentRequests();
         try {
             System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, "2");
+            System.setProperty(MessageLogProperties.TIMESTAMP_CONCURRENT_REQUESTS, "1");
             log(createMessage(), createSignature());
             log(createMessage(), createSignature());
             log(createMessage(), createSignature());
@@ -208,6 +214,8 @@ public class MessageLogTest extends AbstractMessageLogTest {
             assertEquals(2, timestamp.getMessageRecords().length);
         } finally {
             System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, String.valueOf(orig));
+            System.setProperty(MessageLogProperties.TIMESTAMP_CONCURRENT_REQUESTS,
+                    String.valueOf(origConcurrentRequests));
         }
     }
 
@@ -399,6 +407,40 @@ public class MessageLogTest extends AbstractMessageLogTest {
         assertNull(findByQueryId("foo", "02-04-2014 12:34:56.100", "02-04-2014 12:34:59.100"));
     }
 
+    /**
+     * Get messages of several query ids in one pass, before and after the query id filter is loaded.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void getByQueryIds() throws Exception {
+        log.trace("getByQueryIds()");
+
+        log(createMessage("message1"), createSignature());
+        log(createMessage("message2"), createSignature());
+        log(createMessage("message2"), createSignature());
+
+        ClientId client = createMessage().getClient();
+        List<String> queryIds = Arrays.asList("message2", "foo", "message1", "message3");
+
+        assertEquals(Arrays.asList("message1", "message2", "message2"), getByQueryIds(queryIds, client));
+
+        assertEquals(3, LogRecordManager.loadQueryIdFilter());
+        log(createMessage("message3"), createSignature());
+
+        assertEquals(Arrays.asList("message1", "message2", "message2", "message3"),
+                getByQueryIds(queryIds, client));
+        assertTrue(getByQueryIds(queryIds,
+                ClientId.create(client.getXRoadInstance(), client.getMemberClass(), "other")).isEmpty());
+        assertTrue(getByQueryIds(Arrays.asList("foo"), client).isEmpty());
+    }
+
+    private static List<String> getByQueryIds(List<String> queryIds, ClientId client) throws Exception {
+        List<String> found = new ArrayList<>();
+        LogRecordManager.getByQueryIds(queryIds, client, null, record -> found.add(record.getQueryId()));
+
+        return found;
+    }
+
     /**
      * Wants to time-stamp, but no TSP urls configured.
      * @throws Exception in case of any unexpected errors
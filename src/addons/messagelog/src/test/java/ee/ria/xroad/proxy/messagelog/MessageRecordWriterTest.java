@@ -0,0 +1,238 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the group commit message record writer.
+ */
+public class MessageRecordWriterTest {
+
+    private TestMessageRecordWriter writer;
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.release();
+            writer.stop();
+        }
+    }
+
+    /**
+     * Records queued while a batch is being saved are saved together in the next batch.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void recordsQueuedDuringSaveAreSavedInOneBatch() throws Exception {
+        writer = new TestMessageRecordWriter(10, 10);
+        writer.start();
+
+        CompletableFuture<MessageRecord> first = writer.write(record("first"));
+        assertTrue(writer.saveStarted.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<MessageRecord>> rest = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rest.add(writer.write(record("rest" + i)));
+        }
+
+        assertEquals(5, gauge("queueDepth"));
+        assertFalse(first.isDone());
+
+        writer.release();
+
+        assertEquals("first", first.get(5, TimeUnit.SECONDS).getQueryId());
+        for (CompletableFuture<MessageRecord> f : rest) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, writer.batches.size());
+        assertEquals(1, writer.batches.get(0).size());
+        assertEquals(5, writer.batches.get(1).size());
+        assertEquals(2, gauge("batchCount"));
+        assertEquals(6, gauge("recordCount"));
+        assertEquals(5, gauge("largestBatchSize"));
+        assertEquals(0, gauge("queueDepth"));
+    }
+
+    /**
+     * Batches do not exceed the maximum batch size.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void batchSizeIsLimited() throws Exception {
+        writer = new TestMessageRecordWriter(2, 10);
+        writer.start();
+
+        writer.write(record("first"));
+        assertTrue(writer.saveStarted.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<MessageRecord>> rest = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rest.add(writer.write(record("rest" + i)));
+        }
+
+        writer.release();
+
+        for (CompletableFuture<MessageRecord> f : rest) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(4, writer.batches.size());
+        writer.batches.forEach(b -> assertTrue(b.size() <= 2));
+    }
+
+    /**
+     * Failing to save a batch fails all the records in it.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void failedSaveCompletesFutureExceptionally() throws Exception {
+        writer = new TestMessageRecordWriter(10, 10);
+        writer.start();
+        writer.failure = new RuntimeException("Database is down");
+        writer.release();
+
+        CompletableFuture<MessageRecord> future = writer.write(record("failing"));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertSame(writer.failure, e.getCause());
+        }
+
+        assertEquals(0, gauge("recordCount"));
+    }
+
+    /**
+     * Records are rejected when the queue is full.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void fullQueueRejectsRecords() throws Exception {
+        writer = new TestMessageRecordWriter(10, 1);
+        writer.start();
+
+        writer.write(record("first"));
+        assertTrue(writer.saveStarted.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<MessageRecord> queued = writer.write(record("queued"));
+        CompletableFuture<MessageRecord> rejected = writer.write(record("rejected"));
+
+        assertTrue(rejected.isCompletedExceptionally());
+
+        try {
+            rejected.get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CodedException);
+        }
+
+        writer.release();
+        queued.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The writer metrics are published over JMX while the writer is running.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void metricsArePublishedOverJmx() throws Exception {
+        ObjectName queueDepth = new ObjectName("metrics", "name", name(MessageRecordWriter.class, "queueDepth"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        writer = new TestMessageRecordWriter(10, 10);
+        writer.start();
+
+        assertTrue(server.isRegistered(queueDepth));
+
+        writer.release();
+        writer.stop();
+
+        assertFalse(server.isRegistered(queueDepth));
+    }
+
+    private long gauge(String metric) {
+        return ((Number) writer.getMetrics().getGauges().get(name(MessageRecordWriter.class, metric)).getValue())
+                .longValue();
+    }
+
+    private static MessageRecord record(String queryId) {
+        return new MessageRecord(queryId, "message", "signature", false,
+                ClientId.create("EE", "BUSINESS", "consumer"), null);
+    }
+
+    private static class TestMessageRecordWriter extends MessageRecordWriter {
+        private final CountDownLatch saveStarted = new CountDownLatch(1);
+        private final CountDownLatch saveAllowed = new CountDownLatch(1);
+        private final List<List<MessageRecord>> batches = new CopyOnWriteArrayList<>();
+        private volatile RuntimeException failure;
+
+        TestMessageRecordWriter(int maxBatchSize, int queueSize) {
+            super(maxBatchSize, 0, queueSize);
+        }
+
+        void release() {
+            saveAllowed.countDown();
+        }
+
+        @Override
+        protected void saveBatch(List<MessageRecord> records) throws Exception {
+            saveStarted.countDown();
+            saveAllowed.await();
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            batches.add(new ArrayList<>(records));
+        }
+    }
+}
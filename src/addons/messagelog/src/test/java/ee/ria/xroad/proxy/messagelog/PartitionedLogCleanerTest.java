@@ -0,0 +1,242 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for dropping the expired daily partitions of the partitioned logrecord table. Requires a PostgreSQL 11 (or
+ * later) database migrated with messagelog-changelog.xml using the "partitioned" context, the tests are skipped
+ * unless the system property messagelog.test.postgresql points to a database properties file with the
+ * messagelog.hibernate.connection.* properties of the database (gradle -PmessagelogPostgresql=file).
+ */
+public class PartitionedLogCleanerTest {
+
+    private static final String DATABASE_PROPERTIES_FILE = System.getProperty("messagelog.test.postgresql");
+
+    private static final long FIRST_ID = 1_000_000_000L;
+    private static final DateTimeFormatter PARTITION_DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final int UNIQUE_VIOLATION = 23505;
+
+    private static Properties connectionProperties;
+
+    @BeforeClass
+    public static void setUpDatabase() throws Exception {
+        assumeTrue("PostgreSQL database not configured", DATABASE_PROPERTIES_FILE != null);
+
+        Properties properties = new Properties();
+
+        try (InputStream in = new FileInputStream(DATABASE_PROPERTIES_FILE)) {
+            properties.load(in);
+        }
+
+        connectionProperties = properties;
+
+        System.setProperty(SystemProperties.DATABASE_PROPERTIES, DATABASE_PROPERTIES_FILE);
+        System.setProperty(MessageLogProperties.PARTITIONED_RETENTION_ENABLED, "true");
+
+        MessageLogDatabaseCtx.get().closeSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownDatabase() {
+        if (connectionProperties != null) {
+            MessageLogDatabaseCtx.get().closeSessionFactory();
+        }
+
+        System.clearProperty(SystemProperties.DATABASE_PROPERTIES);
+        System.clearProperty(MessageLogProperties.PARTITIONED_RETENTION_ENABLED);
+    }
+
+    @Before
+    public void createPartitions() throws Exception {
+        try (Connection connection = connect()) {
+            execute(connection, "SELECT logrecord_create_partitions(7)");
+        }
+    }
+
+    @After
+    public void removeRecords() throws Exception {
+        try (Connection connection = connect();
+                PreparedStatement delete = connection.prepareStatement("DELETE FROM logrecord WHERE id >= ?")) {
+            delete.setLong(1, FIRST_ID);
+            delete.executeUpdate();
+        }
+    }
+
+    @Test
+    public void dropsExpiredPartitionAndUnlinksAttachments() throws Exception {
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).plusDays(2);
+        long attachment;
+
+        try (Connection connection = connect()) {
+            attachment = insertRecord(connection, FIRST_ID, start(day) + 1, true, true);
+            insertRecord(connection, FIRST_ID + 1, start(day) + 2, true, false);
+
+            assertTrue(partitionExists(connection, day));
+            assertTrue(largeObjectExists(connection, attachment));
+        }
+
+        LogCleaner.removeExpiredRecords(start(day.plusDays(1)));
+
+        try (Connection connection = connect()) {
+            assertFalse(partitionExists(connection, day));
+            assertFalse(largeObjectExists(connection, attachment));
+            assertEquals(0, countRecords(connection));
+        }
+    }
+
+    @Test
+    public void keepsPartitionWithRecordsNotArchived() throws Exception {
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).plusDays(4);
+
+        try (Connection connection = connect()) {
+            insertRecord(connection, FIRST_ID, start(day) + 1, true, true);
+            insertRecord(connection, FIRST_ID + 1, start(day) + 2, false, false);
+        }
+
+        LogCleaner.removeExpiredRecords(start(day.plusDays(1)));
+
+        try (Connection connection = connect()) {
+            assertTrue(partitionExists(connection, day));
+            // the archived record of a kept partition is removed row by row
+            assertEquals(1, countRecords(connection));
+        }
+    }
+
+    @Test
+    public void primaryKeyIncludesRecordTime() throws Exception {
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).plusDays(5);
+
+        try (Connection connection = connect()) {
+            insertRecord(connection, FIRST_ID, start(day) + 1, true, false);
+            // the same id is allowed in another partition
+            insertRecord(connection, FIRST_ID, start(day.plusDays(1)) + 1, true, false);
+
+            try {
+                insertRecord(connection, FIRST_ID, start(day) + 1, true, false);
+                fail("Should not allow duplicate id and time");
+            } catch (SQLException expected) {
+                assertEquals(String.valueOf(UNIQUE_VIOLATION), expected.getSQLState());
+            }
+
+            assertEquals(2, countRecords(connection));
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(
+                connectionProperties.getProperty("messagelog.hibernate.connection.url"),
+                connectionProperties.getProperty("messagelog.hibernate.connection.username"),
+                connectionProperties.getProperty("messagelog.hibernate.connection.password"));
+    }
+
+    private static long start(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static long insertRecord(Connection connection, long id, long time, boolean archived,
+            boolean withAttachment) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO logrecord "
+                + "(id, discriminator, time, archived, queryid, message, attachment) VALUES (?, 'm', ?, ?, ?, "
+                + "'message', CASE WHEN ? THEN lo_from_bytea(0, 'attachment'::bytea) END) RETURNING attachment")) {
+            insert.setLong(1, id);
+            insert.setLong(2, time);
+            insert.setBoolean(3, archived);
+            insert.setString(4, "query" + id);
+            insert.setBoolean(5, withAttachment);
+
+            try (ResultSet rs = insert.executeQuery()) {
+                rs.next();
+
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static boolean partitionExists(Connection connection, LocalDate day) throws SQLException {
+        return queryBoolean(connection, "SELECT to_regclass(?) IS NOT NULL", "logrecord_" + day.format(PARTITION_DAY));
+    }
+
+    private static boolean largeObjectExists(Connection connection, long oid) throws SQLException {
+        return queryBoolean(connection, "SELECT EXISTS (SELECT 1 FROM pg_largeobject_metadata WHERE oid = ?::oid)",
+                oid);
+    }
+
+    private static long countRecords(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT count(*) FROM logrecord WHERE id >= ?")) {
+            select.setLong(1, FIRST_ID);
+
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static boolean queryBoolean(Connection connection, String sql, Object parameter) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(sql)) {
+            select.setObject(1, parameter);
+
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+
+                return rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.execute();
+        }
+    }
+}
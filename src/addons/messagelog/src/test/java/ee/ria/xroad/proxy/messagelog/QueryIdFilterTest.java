@@ -0,0 +1,196 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the in-memory filter of the query ids of the message records.
+ */
+public class QueryIdFilterTest {
+
+    private final QueryIdFilter filter = new QueryIdFilter(1000);
+
+    @Test
+    public void acceptsAllUntilLoaded() {
+        assertTrue(filter.mightContain("missing"));
+
+        filter.add("queryId");
+
+        assertTrue(filter.mightContain("missing"));
+    }
+
+    @Test
+    public void rejectsQueryIdsNotLoadedOrAdded() throws Exception {
+        assertEquals(2, filter.rebuild(2, queryIds -> {
+            queryIds.accept("loaded1");
+            queryIds.accept("loaded2");
+            return 2;
+        }));
+
+        filter.add("added");
+
+        assertTrue(filter.mightContain("loaded1"));
+        assertTrue(filter.mightContain("loaded2"));
+        assertTrue(filter.mightContain("added"));
+        assertTrue(filter.mightContain(null));
+        assertFalse(filter.mightContain("missing"));
+    }
+
+    @Test
+    public void keepsQueryIdsAddedDuringRebuild() throws Exception {
+        filter.rebuild(0, queryIds -> 0);
+
+        filter.rebuild(0, queryIds -> {
+            filter.add("added");
+            return 0;
+        });
+
+        assertTrue(filter.mightContain("added"));
+    }
+
+    @Test
+    public void dropsRemovedQueryIdsOnRebuild() throws Exception {
+        filter.rebuild(1, queryIds -> {
+            queryIds.accept("removed");
+            return 1;
+        });
+
+        filter.rebuild(0, queryIds -> 0);
+
+        assertFalse(filter.mightContain("removed"));
+    }
+
+    @Test
+    public void keepsPreviousFilterIfRebuildFails() throws Exception {
+        filter.rebuild(1, queryIds -> {
+            queryIds.accept("loaded");
+            return 1;
+        });
+
+        try {
+            filter.rebuild(1, queryIds -> {
+                throw new IllegalStateException("Database not available");
+            });
+            fail("Should fail to rebuild");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        filter.add("added");
+
+        assertTrue(filter.mightContain("loaded"));
+        assertTrue(filter.mightContain("added"));
+    }
+
+    @Test
+    public void acceptsAllIfDisabled() throws Exception {
+        QueryIdFilter disabled = new QueryIdFilter(0);
+        AtomicReference<String> loaded = new AtomicReference<>();
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, disabled.rebuild(1, queryIds -> {
+            loaded.set("called");
+            return 1;
+        }));
+
+        assertEquals(null, loaded.get());
+        assertTrue(disabled.mightContain("missing"));
+    }
+
+    @Test
+    public void loadsOnlyWhenNotLoadedOrOverCapacity() throws Exception {
+        assertTrue(filter.needsLoad());
+
+        filter.rebuild(0, queryIds -> 0);
+
+        assertFalse(filter.needsLoad());
+        assertFalse(new QueryIdFilter(0).needsLoad());
+    }
+
+    @Test
+    public void disablesFilterIfDatabaseHoldsMoreQueryIdsThanCapacity() throws Exception {
+        QueryIdFilter small = new QueryIdFilter(2);
+        AtomicReference<String> loaded = new AtomicReference<>();
+
+        assertEquals(0, small.rebuild(3, queryIds -> {
+            loaded.set("called");
+            return 3;
+        }));
+
+        assertEquals(null, loaded.get());
+        assertTrue(small.mightContain("missing"));
+        assertTrue(small.needsLoad());
+    }
+
+    @Test
+    public void disablesFilterWhenAddedQueryIdsExceedCapacity() throws Exception {
+        QueryIdFilter small = new QueryIdFilter(2);
+
+        small.rebuild(1, queryIds -> {
+            queryIds.accept("loaded");
+            return 1;
+        });
+        small.add("added");
+
+        assertFalse(small.mightContain("missing"));
+        assertFalse(small.needsLoad());
+
+        small.add("overflow");
+
+        assertTrue(small.mightContain("missing"));
+        assertTrue(small.needsLoad());
+
+        small.rebuild(1, queryIds -> {
+            queryIds.accept("loaded");
+            return 1;
+        });
+
+        assertFalse(small.mightContain("missing"));
+        assertFalse(small.needsLoad());
+    }
+
+    @Test
+    public void disablesFilterIfQueryIdsAddedDuringRebuildExceedCapacity() throws Exception {
+        QueryIdFilter small = new QueryIdFilter(2);
+
+        small.rebuild(2, queryIds -> {
+            queryIds.accept("loaded1");
+            queryIds.accept("loaded2");
+            small.add("added");
+            return 2;
+        });
+
+        assertTrue(small.mightContain("missing"));
+        assertTrue(small.needsLoad());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for splitting the time-stamp tasks into batches.
+ */
+public class TaskQueueTest {
+
+    @Test
+    public void splitIntoBatches() {
+        assertBatchSizes(tasks(1), 2, 1);
+        assertBatchSizes(tasks(2), 2, 2);
+        assertBatchSizes(tasks(5), 2, 2, 2, 1);
+        assertBatchSizes(tasks(7), 3, 3, 2, 2);
+        assertBatchSizes(tasks(12), 3, 3, 3, 3, 3);
+    }
+
+    @Test
+    public void keepsRecordOrder() {
+        List<Task> tasks = tasks(7);
+        List<Task> joined = new ArrayList<>();
+
+        TaskQueue.splitIntoBatches(tasks, 3).forEach(joined::addAll);
+
+        assertEquals(tasks, joined);
+    }
+
+    @Test
+    public void completedBatchesFreeTheirSlots() {
+        TaskQueue.BatchesInProgress batches = new TaskQueue.BatchesInProgress();
+        List<Task> tasks = tasks(4);
+
+        batches.started(tasks.subList(0, 2), 1000);
+        batches.started(tasks.subList(2, 4), 1000);
+
+        assertEquals(2, batches.size());
+        assertEquals(4, batches.getLastRecord());
+
+        assertTrue(batches.completed(new Long[] {1L, 2L}));
+        assertEquals(1, batches.size());
+        assertEquals(4, batches.getLastRecord());
+
+        assertTrue(batches.completed(new Long[] {3L, 4L}));
+        assertEquals(0, batches.size());
+        assertEquals(0, batches.getLastRecord());
+    }
+
+    @Test
+    public void reclaimsBatchesWithoutResultByDeadline() {
+        TaskQueue.BatchesInProgress batches = new TaskQueue.BatchesInProgress();
+        List<Task> tasks = tasks(4);
+
+        batches.started(tasks.subList(0, 2), 1000);
+        batches.started(tasks.subList(2, 4), 2000);
+
+        assertEquals(0, batches.reclaim(999));
+        assertEquals(1, batches.reclaim(1000));
+        assertEquals(1, batches.size());
+
+        // a late result of a reclaimed batch does not free another slot
+        assertFalse(batches.completed(new Long[] {1L, 2L}));
+        assertEquals(1, batches.size());
+
+        assertEquals(1, batches.reclaim(2000));
+        assertEquals(0, batches.size());
+        assertEquals(0, batches.getLastRecord());
+    }
+
+    private static void assertBatchSizes(List<Task> tasks, int limit, int... expectedSizes) {
+        List<List<Task>> batches = TaskQueue.splitIntoBatches(tasks, limit);
+
+        assertEquals(expectedSizes.length, batches.size());
+
+        for (int i = 0; i < expectedSizes.length; i++) {
+            assertEquals(expectedSizes[i], batches.get(i).size());
+        }
+    }
+
+    private static List<Task> tasks(int count) {
+        List<Task> tasks = new ArrayList<>();
+
+        for (long i = 1; i <= count; i++) {
+            tasks.add(new Task(i, "hash" + i));
+        }
+
+        return tasks;
+    }
+}
@@ -39,8 +39,8 @@ class TestTimestamperWorker extends TimestamperWorker {
 
     private static volatile Boolean shouldFail;
 
-    TestTimestamperWorker(List<String> tspUrls) {
-        super(tspUrls);
+    TestTimestamperWorker(List<String> tspUrls, TspStatistics tspStatistics) {
+        super(tspUrls, tspStatistics);
     }
 
     public static void failNextTimestamping(boolean failureExpected) {
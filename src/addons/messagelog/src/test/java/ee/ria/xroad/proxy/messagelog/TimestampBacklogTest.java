@@ -0,0 +1,79 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the in-memory index of message records waiting to be time-stamped.
+ */
+public class TimestampBacklogTest {
+
+    private final TimestampBacklog backlog = new TimestampBacklog();
+
+    @Test
+    public void returnsTasksInRecordOrder() {
+        backlog.add(3L, "hash3");
+        backlog.add(1L, "hash1");
+        backlog.add(2L, "hash2");
+        backlog.add(2L, "hash2");
+
+        assertEquals(3, backlog.size());
+        assertEquals(Arrays.asList(new Task(1L, "hash1"), new Task(2L, "hash2")), backlog.getTasks(0, 2));
+        assertEquals(Collections.singletonList(new Task(3L, "hash3")), backlog.getTasks(2, 2));
+    }
+
+    @Test
+    public void updatesOnlyWaitingRecords() {
+        backlog.add(1L, "hash1");
+
+        backlog.update(1L, "updated");
+        backlog.update(2L, "hash2");
+
+        assertEquals(Collections.singletonList(new Task(1L, "updated")), backlog.getTasks(0, 10));
+    }
+
+    @Test
+    public void removesTimestampedRecords() {
+        backlog.add(1L, "hash1");
+        backlog.add(2L, "hash2");
+
+        backlog.remove(1L, 3L);
+
+        assertEquals(1, backlog.size());
+        assertEquals(Collections.singletonList(new Task(2L, "hash2")), backlog.getTasks(0, 10));
+
+        backlog.clear();
+
+        assertTrue(backlog.isEmpty());
+        assertTrue(backlog.getTasks(0, 10).isEmpty());
+    }
+}
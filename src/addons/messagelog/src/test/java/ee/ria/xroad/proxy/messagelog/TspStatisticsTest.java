@@ -0,0 +1,89 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the time-stamping provider statistics.
+ */
+public class TspStatisticsTest {
+
+    private static final String FAST = "http://fast";
+    private static final String SLOW = "http://slow";
+    private static final String FAILING = "http://failing";
+
+    private final TspStatistics statistics = new TspStatistics();
+
+    @Test
+    public void triesProvidersWithoutObservationsFirst() {
+        statistics.recordSuccess(FAST, 10);
+
+        assertEquals(Arrays.asList(SLOW, FAST), statistics.order(Arrays.asList(FAST, SLOW)));
+    }
+
+    @Test
+    public void prefersFastAndSuccessfulProviders() {
+        for (int i = 0; i < 10; i++) {
+            statistics.recordSuccess(FAST, 10);
+            statistics.recordSuccess(SLOW, 1000);
+            statistics.recordFailure(FAILING, 10);
+        }
+
+        int fastFirst = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            List<String> ordered = statistics.order(Arrays.asList(SLOW, FAILING, FAST));
+
+            assertEquals(3, ordered.size());
+
+            if (FAST.equals(ordered.get(0))) {
+                fastFirst++;
+                assertEquals(Arrays.asList(FAST, FAILING, SLOW), ordered);
+            }
+        }
+
+        assertTrue("fast provider selected " + fastFirst + " times", fastFirst > 800);
+    }
+
+    @Test
+    public void collectsMetrics() {
+        statistics.recordSuccess(FAST, 100);
+        statistics.recordFailure(FAST, 200);
+
+        TspStatistics.Metrics metrics = statistics.getMetrics(FAST);
+
+        assertEquals(2, metrics.getRequests());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(120, metrics.getLatencyMillis(), 0.001);
+        assertEquals(0.8, metrics.getSuccessRate(), 0.001);
+    }
+}
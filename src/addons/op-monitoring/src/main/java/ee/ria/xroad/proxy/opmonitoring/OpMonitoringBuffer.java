@@ -29,14 +29,12 @@ import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonHttpClient;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
-import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
-import ee.ria.xroad.common.util.JsonUtils;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataEntity;
 import ee.ria.xroad.common.util.TimeUtils;
 
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
-import com.google.gson.Gson;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
@@ -44,10 +42,7 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.net.NetworkInterface;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import static java.net.NetworkInterface.getNetworkInterfaces;
@@ -57,6 +52,10 @@ import static java.util.Collections.list;
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
  * monitoring daemon (using OpMonitoringDaemonSender).
+ *
+ * Records are kept in a preallocated ring. At most one batch is in flight at a
+ * time; the batch array and the HTTP entity streaming it are reused, so
+ * sending does not copy the records or build the request JSON in memory.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -78,27 +77,16 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final int CLIENT_SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
-    private static final Gson GSON = JsonUtils.getSerializer();
-
     private Cancellable tick;
 
-    final Map<Long, OpMonitoringData> buffer =
-            new LinkedHashMap<Long, OpMonitoringData>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    boolean overflow = size() > MAX_BUFFER_SIZE;
+    final OpMonitoringDataRing buffer;
 
-                    if (overflow) {
-                        log.warn("Operational monitoring buffer overflow, removing eldest record: {}", eldest.getKey());
-                    }
+    private final OpMonitoringData[] batch;
 
-                    return overflow;
-                }
-            };
+    private final StoreOpMonitoringDataEntity batchEntity;
 
-    private long bufferIndex = 0;
-
-    private final Set<Long> processedBufferIndices = new HashSet<>();
+    // Sequence number following the last record of the batch in flight, 0 if nothing is in flight
+    private long inFlightEnd = 0;
 
     private final CloseableHttpClient httpClient;
 
@@ -114,9 +102,15 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             log.info("Operational monitoring buffer is switched off, no operational monitoring data is stored");
 
+            buffer = null;
+            batch = null;
+            batchEntity = null;
             httpClient = null;
             sender = null;
         } else {
+            buffer = new OpMonitoringDataRing((int) MAX_BUFFER_SIZE);
+            batch = new OpMonitoringData[MAX_RECORDS_IN_MESSAGE];
+            batchEntity = new StoreOpMonitoringDataEntity(batch);
             httpClient = createHttpClient();
             sender = createSender();
         }
@@ -140,7 +134,7 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
         data.setSecurityServerInternalIp(getIpAddress());
 
-        buffer.put(getNextBufferIndex(), data);
+        buffer.add(data);
 
         send();
     }
@@ -151,36 +145,25 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
             return;
         }
 
-        String json = prepareMonitoringMessage();
-
-        sender.tell(json, getSelf());
-    }
-
-    private boolean canSend() {
-        return !buffer.isEmpty() && processedBufferIndices.isEmpty();
-    }
+        int count = buffer.copyEldest(batch);
 
-    private String prepareMonitoringMessage() {
-        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
-
-        for (Map.Entry<Long, OpMonitoringData> entry : buffer.entrySet()) {
-            processedBufferIndices.add(entry.getKey());
-            request.addRecord(entry.getValue().getData());
-
-            if (request.getRecords().size() == MAX_RECORDS_IN_MESSAGE) {
-                break;
-            }
-        }
+        batchEntity.setCount(count);
+        inFlightEnd = buffer.getFirst() + count;
 
         log.debug("Op monitoring buffer records count: {}", buffer.size());
 
-        return GSON.toJson(request);
+        sender.tell(batchEntity, getSelf());
+    }
+
+    private boolean canSend() {
+        return !buffer.isEmpty() && inFlightEnd == 0;
     }
 
     @Override
     protected void sendingSuccess() throws Exception {
-        processedBufferIndices.forEach(buffer::remove);
-        processedBufferIndices.clear();
+        // Records of the batch overwritten by an overflow meanwhile are skipped
+        buffer.removeBefore(inFlightEnd);
+        batchSent();
 
         if (canSend()) {
             send();
@@ -189,15 +172,15 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
     @Override
     protected void sendingFailure() throws Exception {
-        processedBufferIndices.clear();
+        batchSent();
 
         // Do not worry, scheduled sending retries..
     }
 
-    long getNextBufferIndex() {
-        bufferIndex = bufferIndex == Long.MAX_VALUE ? 0 : bufferIndex + 1;
-
-        return bufferIndex;
+    private void batchSent() {
+        Arrays.fill(batch, 0, batchEntity.getCount(), null);
+        batchEntity.setCount(0);
+        inFlightEnd = 0;
     }
 
     private void scheduleSendMonitoringData() {
@@ -30,7 +30,6 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.JsonUtils;
-import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
@@ -40,6 +39,7 @@ import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 
 import java.net.URI;
@@ -71,13 +71,13 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
 
     @Override
     public void onReceive(Object message) throws Exception {
-        if (message instanceof String) {
-            String json = (String) message;
+        if (message instanceof HttpEntity) {
+            HttpEntity entity = (HttpEntity) message;
 
-            log.trace("onReceive: {}", json);
+            log.trace("onReceive: {}", entity);
 
             try {
-                send(json);
+                send(entity);
                 success();
             } catch (Exception e) {
                 log.error("Sending operational monitoring data failed", e);
@@ -97,12 +97,12 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
         getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, ActorRef.noSender());
     }
 
-    private void send(String json) throws Exception {
+    private void send(HttpEntity entity) throws Exception {
         try (HttpSender sender = new HttpSender(httpClient)) {
             sender.setConnectionTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
             sender.setSocketTimeout(SOCKET_TIMEOUT_MILLISECONDS);
 
-            sender.doPost(getAddress(), json, MimeTypes.JSON);
+            sender.doPost(getAddress(), entity);
 
             String responseJson = IOUtils.toString(sender.getResponseContent(), MimeUtils.UTF8);
             StoreOpMonitoringDataResponse response;
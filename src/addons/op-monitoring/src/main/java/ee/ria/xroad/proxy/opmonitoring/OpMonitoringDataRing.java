@@ -0,0 +1,123 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fixed capacity ring of operational monitoring data records. Every record
+ * gets a sequence number, starting from 1. When the ring is full, adding a
+ * record overwrites the eldest one. The slot array is allocated once, so
+ * storing and removing records does not allocate.
+ *
+ * Not thread safe, meant to be used from within the buffer actor only.
+ */
+@Slf4j
+class OpMonitoringDataRing {
+
+    private final OpMonitoringData[] slots;
+
+    // Sequence number of the eldest record in the ring
+    private long first = 1;
+
+    // Sequence number given to the next added record
+    private long next = 1;
+
+    OpMonitoringDataRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        slots = new OpMonitoringData[capacity];
+    }
+
+    /**
+     * Adds a record, overwriting the eldest one if the ring is full.
+     * @param data the record
+     * @return sequence number of the added record
+     */
+    long add(OpMonitoringData data) {
+        if (size() == slots.length) {
+            log.warn("Operational monitoring buffer overflow, removing eldest record: {}", first);
+
+            first++;
+        }
+
+        long sequence = next++;
+        slots[slot(sequence)] = data;
+
+        return sequence;
+    }
+
+    /**
+     * Copies the eldest records to the start of the given array.
+     * @param target the array to copy to
+     * @return number of records copied, at most target.length
+     */
+    int copyEldest(OpMonitoringData[] target) {
+        int count = (int) Math.min(size(), target.length);
+
+        for (int i = 0; i < count; i++) {
+            target[i] = slots[slot(first + i)];
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes all records with a sequence number less than the given one.
+     * Records already overwritten are skipped.
+     * @param sequence sequence number of the first record to keep
+     */
+    void removeBefore(long sequence) {
+        long end = Math.min(sequence, next);
+
+        for (; first < end; first++) {
+            slots[slot(first)] = null;
+        }
+    }
+
+    boolean contains(long sequence) {
+        return sequence >= first && sequence < next;
+    }
+
+    long getFirst() {
+        return first;
+    }
+
+    int size() {
+        return (int) (next - first);
+    }
+
+    boolean isEmpty() {
+        return next == first;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % slots.length);
+    }
+}
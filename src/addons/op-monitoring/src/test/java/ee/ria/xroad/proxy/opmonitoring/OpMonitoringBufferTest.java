@@ -24,7 +24,12 @@
  */
 package ee.ria.xroad.proxy.opmonitoring;
 
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataEntity;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
+import ee.ria.xroad.common.util.JsonUtils;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
@@ -33,7 +38,11 @@ import akka.testkit.TestActorRef;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * Tests operational monitoring buffer.
@@ -58,7 +67,7 @@ public class OpMonitoringBufferTest {
 
         @Override
         protected void store(OpMonitoringData data) throws Exception {
-            buffer.put(getNextBufferIndex(), data);
+            buffer.add(data);
         }
     }
 
@@ -81,7 +90,59 @@ public class OpMonitoringBufferTest {
         opMonitoringBuffer.store(opMonitoringData);
 
         assertEquals(2, opMonitoringBuffer.buffer.size());
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(2L));
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(3L));
+        assertEquals(true, opMonitoringBuffer.buffer.contains(2L));
+        assertEquals(true, opMonitoringBuffer.buffer.contains(3L));
+    }
+
+    @Test
+    public void overflowWhileSending() {
+        OpMonitoringDataRing ring = new OpMonitoringDataRing(3);
+        OpMonitoringData[] batch = new OpMonitoringData[2];
+
+        for (int i = 0; i < 3; i++) {
+            ring.add(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, i));
+        }
+
+        // Records 1 and 2 are in flight when records 4 and 5 overwrite records 1 and 2
+        int count = ring.copyEldest(batch);
+        long inFlightEnd = ring.getFirst() + count;
+
+        ring.add(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 3));
+        ring.add(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 4));
+        ring.removeBefore(inFlightEnd);
+
+        assertEquals(2, count);
+        assertEquals(3, ring.size());
+        assertFalse(ring.contains(2L));
+        assertEquals(true, ring.contains(3L));
+        assertEquals(true, ring.contains(5L));
+    }
+
+    @Test
+    public void streamedBatchMatchesRequestJson() throws Exception {
+        OpMonitoringData[] records = new OpMonitoringData[3];
+
+        for (int i = 0; i < records.length; i++) {
+            OpMonitoringData data = new OpMonitoringData(OpMonitoringData.SecurityServerType.PRODUCER, 100 + i);
+            data.setClientId(ClientId.create("EE", "GOV", "consumer"));
+            data.setServiceId(ServiceId.create("EE", "GOV", "producer", "sub", "getState", null));
+            data.setMessageId("message \"" + i + "\" <&>");
+            data.setRequestSize(1024);
+            data.setSucceeded(i % 2 == 0);
+
+            records[i] = data;
+        }
+
+        StoreOpMonitoringDataEntity entity = new StoreOpMonitoringDataEntity(records);
+        entity.setCount(2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+        request.addRecord(records[0].getData());
+        request.addRecord(records[1].getData());
+
+        assertEquals(JsonUtils.getSerializer().toJson(request), new String(out.toByteArray(), StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.benchmarks;
+
+import ee.ria.xroad.common.hashchain.HashChainBuilder;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MessageFileNames;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+
+/**
+ * Benchmarks building hash chains with {@link HashChainBuilder}. Every input
+ * consists of the hashes of a message and one attachment, like a signing
+ * request of a message with an attachment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class HashChainBuilderBenchmark {
+
+    private static final String HASH_ALGORITHM = CryptoUtils.DEFAULT_DIGEST_ALGORITHM_ID;
+
+    @Param({"1", "10", "100", "1000"})
+    private int inputCount;
+
+    private byte[][][] inputs;
+
+    /**
+     * Calculates the input hashes.
+     * @throws Exception in case of any errors
+     */
+    @Setup
+    public void setUp() throws Exception {
+        inputs = new byte[inputCount][][];
+
+        for (int i = 0; i < inputCount; i++) {
+            inputs[i] = new byte[][] {
+                calculateDigest(HASH_ALGORITHM, Payloads.randomBytes(2 * i + 1)),
+                calculateDigest(HASH_ALGORITHM, Payloads.randomBytes(2 * i + 2))
+            };
+        }
+    }
+
+    /**
+     * @return the hash chains
+     * @throws Exception in case of any errors
+     */
+    @Benchmark
+    public String[] build() throws Exception {
+        HashChainBuilder builder = new HashChainBuilder(HASH_ALGORITHM);
+
+        for (byte[][] input : inputs) {
+            builder.addInputHash(input);
+        }
+
+        builder.finishBuilding();
+        builder.getHashChainResult(MessageFileNames.SIG_HASH_CHAIN);
+
+        return builder.getHashChains(MessageFileNames.MESSAGE);
+    }
+}
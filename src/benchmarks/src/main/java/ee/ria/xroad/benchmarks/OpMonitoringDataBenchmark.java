@@ -0,0 +1,133 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.benchmarks;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataEntity;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
+import ee.ria.xroad.common.util.JsonUtils;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks serializing operational monitoring data to JSON the way the
+ * operational monitoring buffer sends it to the daemon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class OpMonitoringDataBenchmark {
+
+    private static final Gson GSON = JsonUtils.getSerializer();
+
+    @Param({"1", "100", "1000"})
+    private int recordCount;
+
+    private List<OpMonitoringData> records;
+
+    private StoreOpMonitoringDataEntity entity;
+
+    private ByteArrayOutputStream out;
+
+    /**
+     * Creates the monitoring data records.
+     */
+    @Setup
+    public void setUp() {
+        records = new ArrayList<>(recordCount);
+
+        for (int i = 0; i < recordCount; i++) {
+            long now = System.currentTimeMillis();
+
+            OpMonitoringData data = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, now);
+            data.setSecurityServerInternalIp("10.0.0.1");
+            data.setClientId(ClientId.create("EE", "BUSINESS", "consumer", "subsystem"));
+            data.setServiceId(ServiceId.create("EE", "BUSINESS", "producer", "subsystem", "getState", "v1"));
+            data.setMessageId("message-" + i);
+            data.setMessageUserId("EE37702211234");
+            data.setMessageProtocolVersion("4.0");
+            data.setClientSecurityServerAddress("ss1.example.org");
+            data.setServiceSecurityServerAddress("ss2.example.org");
+            data.setRequestOutTs(now + 1);
+            data.setResponseInTs(now + 10);
+            data.setResponseOutTs(now + 11, true);
+            data.setRequestSize(1024);
+            data.setResponseSize(4096);
+            data.setServiceType("WSDL");
+            data.setSucceeded(true);
+
+            records.add(data);
+        }
+
+        entity = new StoreOpMonitoringDataEntity(records.toArray(new OpMonitoringData[0]));
+        entity.setCount(recordCount);
+        out = new ByteArrayOutputStream();
+    }
+
+    /**
+     * @return the JSON message
+     */
+    @Benchmark
+    public String serialize() {
+        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+        records.forEach(data -> request.addRecord(data.getData()));
+
+        return GSON.toJson(request);
+    }
+
+    /**
+     * @return number of bytes streamed by the buffer's request entity
+     * @throws IOException if writing fails
+     */
+    @Benchmark
+    public int stream() throws IOException {
+        out.reset();
+        entity.writeTo(out);
+
+        return out.size();
+    }
+}
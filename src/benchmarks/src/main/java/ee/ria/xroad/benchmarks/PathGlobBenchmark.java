@@ -0,0 +1,85 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.benchmarks;
+
+import ee.ria.xroad.common.conf.serverconf.PathGlob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks matching REST request paths against endpoint globs with {@link PathGlob}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class PathGlobBenchmark {
+
+    private static final String PATH = "/api/v1/pets/1234/owners/5678/documents";
+
+    /**
+     * @return true if the exact glob matches
+     */
+    @Benchmark
+    public boolean exact() {
+        return PathGlob.matches("/api/v1/pets/1234/owners/5678/documents", PATH);
+    }
+
+    /**
+     * @return true if the segment wildcard glob matches
+     */
+    @Benchmark
+    public boolean segmentWildcard() {
+        return PathGlob.matches("/api/v1/pets/*/owners/*/documents", PATH);
+    }
+
+    /**
+     * @return true if the multi-segment wildcard glob matches
+     */
+    @Benchmark
+    public boolean multiSegmentWildcard() {
+        return PathGlob.matches("/api/**/documents", PATH);
+    }
+
+    /**
+     * @return true if the non-matching glob matches
+     */
+    @Benchmark
+    public boolean noMatch() {
+        return PathGlob.matches("/api/v2/**", PATH);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates the payloads used by the benchmarks.
+ */
+final class Payloads {
+
+    private static final String SOAP_START = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
+            + "        xmlns:xroad=\"http://x-road.eu/xsd/xroad.xsd\"\n"
+            + "        xmlns:id=\"http://x-road.eu/xsd/identifiers\">\n"
+            + "    <SOAP-ENV:Header>\n"
+            + "        <xroad:client id:objectType=\"MEMBER\">\n"
+            + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+            + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+            + "            <id:memberCode>consumer</id:memberCode>\n"
+            + "        </xroad:client>\n"
+            + "        <xroad:service id:objectType=\"SERVICE\">\n"
+            + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+            + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+            + "            <id:memberCode>producer</id:memberCode>\n"
+            + "            <id:serviceCode>testQuery</id:serviceCode>\n"
+            + "        </xroad:service>\n"
+            + "        <xroad:userId>EE37702211234</xroad:userId>\n"
+            + "        <xroad:id>1234567890</xroad:id>\n"
+            + "        <xroad:protocolVersion>4.0</xroad:protocolVersion>\n"
+            + "    </SOAP-ENV:Header>\n"
+            + "    <SOAP-ENV:Body>\n"
+            + "        <ns1:testQuery xmlns:ns1=\"http://consumer.x-road.eu\">\n";
+
+    private static final String SOAP_END = "        </ns1:testQuery>\n"
+            + "    </SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>\n";
+
+    private static final String ITEM = "            <item><name>foo &amp; bar</name><age>35</age></item>\n";
+
+    private Payloads() {
+    }
+
+    /**
+     * @param size approximate size of the message in bytes
+     * @return X-Road SOAP request whose body is filled with elements up to the given size
+     */
+    static byte[] soapMessage(int size) {
+        StringBuilder message = new StringBuilder(size + ITEM.length() + SOAP_END.length());
+        message.append(SOAP_START);
+
+        do {
+            message.append(ITEM);
+        } while (message.length() + SOAP_END.length() < size);
+
+        message.append(SOAP_END);
+
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param size number of bytes
+     * @return reproducible random bytes
+     */
+    static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        return data;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.benchmarks;
+
+import ee.ria.xroad.common.message.SaxSoapParserImpl;
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.proxy.protocol.ProxyMessage;
+import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
+import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding a proxy message with {@link ProxyMessageEncoder} and
+ * decoding it back with {@link ProxyMessageDecoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class ProxyMessageCodecBenchmark {
+
+    private static final String HASH_ALGORITHM = CryptoUtils.DEFAULT_DIGEST_ALGORITHM_ID;
+
+    @Param({"1024", "102400", "1048576"})
+    private int payloadSize;
+
+    @Param({"0", "102400", "1048576"})
+    private int attachmentSize;
+
+    private SoapMessageImpl message;
+    private SignatureData signature;
+    private byte[] attachment;
+
+    /**
+     * Parses the message and loads the signature.
+     * @throws Exception in case of any errors
+     */
+    @Setup
+    public void setUp() throws Exception {
+        message = (SoapMessageImpl) new SaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(Payloads.soapMessage(payloadSize)));
+        signature = new SignatureData(FileUtils.readFileToString(
+                new File("../proxy/src/test/queries/signature.xml"), StandardCharsets.UTF_8), null, null);
+        attachment = Payloads.randomBytes(attachmentSize);
+    }
+
+    /**
+     * @return the decoded message
+     * @throws Exception in case of any errors
+     */
+    @Benchmark
+    public ProxyMessage roundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProxyMessageEncoder encoder = new ProxyMessageEncoder(out, HASH_ALGORITHM);
+
+        encoder.soap(message, new HashMap<>());
+
+        if (attachmentSize > 0) {
+            encoder.attachment(MimeTypes.BINARY, new ByteArrayInputStream(attachment), null);
+        }
+
+        encoder.signature(signature);
+        encoder.close();
+
+        ProxyMessage proxyMessage = new ProxyMessage(encoder.getContentType());
+        ProxyMessageDecoder decoder = new ProxyMessageDecoder(proxyMessage, encoder.getContentType(),
+                HASH_ALGORITHM);
+        decoder.parse(new ByteArrayInputStream(out.toByteArray()));
+
+        proxyMessage.consume();
+
+        return proxyMessage;
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JMH results to a stored baseline and fails if any benchmark has
+ * regressed more than the given percentage. A change is only counted as a
+ * regression if the 99.9% confidence intervals of the baseline and the result
+ * do not overlap, so that run-to-run noise does not fail the check.
+ *
+ * Usage: RegressionCheck &lt;baseline.json&gt; &lt;results.json&gt; &lt;threshold percent&gt;
+ */
+public final class RegressionCheck {
+
+    private static final double PERCENT = 100.0;
+    private static final int ARGUMENT_COUNT = 3;
+
+    private RegressionCheck() {
+    }
+
+    /**
+     * Program entry point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != ARGUMENT_COUNT) {
+            System.err.println("Usage: RegressionCheck <baseline.json> <results.json> <threshold percent>");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = load(args[0]);
+        Map<String, Result> results = load(args[1]);
+        double threshold = Double.parseDouble(args[2]);
+
+        int regressions = 0;
+
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result base = baseline.get(entry.getKey());
+
+            if (base == null) {
+                System.out.printf("%-100s %12s%n", entry.getKey(), "NO BASELINE");
+                continue;
+            }
+
+            double change = entry.getValue().regressionPercent(base);
+            boolean regressed = change > threshold && entry.getValue().isWorseThan(base);
+
+            if (regressed) {
+                regressions++;
+            }
+
+            System.out.printf("%-100s %12.3f +- %-10.3f %12.3f +- %-10.3f %-8s %+7.1f%% %s%n", entry.getKey(),
+                    base.score, base.error, entry.getValue().score, entry.getValue().error, entry.getValue().unit,
+                    change, regressed ? "REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            System.err.printf("%d benchmark(s) regressed more than %.1f%%%n", regressions, threshold);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> load(String file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+
+            for (JsonElement element : runs) {
+                JsonObject run = element.getAsJsonObject();
+                JsonObject metric = run.getAsJsonObject("primaryMetric");
+
+                results.put(key(run), new Result(run.get("mode").getAsString(), metric.get("score").getAsDouble(),
+                        errorOf(metric), metric.get("scoreUnit").getAsString()));
+            }
+        }
+
+        return results;
+    }
+
+    // JMH reports NaN as the error of a benchmark that has too few measurements
+    private static double errorOf(JsonObject metric) {
+        JsonElement error = metric.get("scoreError");
+
+        if (error == null || !error.isJsonPrimitive() || !error.getAsJsonPrimitive().isNumber()) {
+            return 0;
+        }
+
+        return error.getAsDouble();
+    }
+
+    private static String key(JsonObject run) {
+        StringBuilder key = new StringBuilder(run.get("benchmark").getAsString());
+
+        if (run.has("params")) {
+            Map<String, String> params = new TreeMap<>();
+            run.getAsJsonObject("params").entrySet()
+                    .forEach(param -> params.put(param.getKey(), param.getValue().getAsString()));
+
+            key.append(params);
+        }
+
+        return key.toString();
+    }
+
+    private static final class Result {
+        private final String mode;
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        /**
+         * @return how many percent worse this result is than the baseline, negative if it is better
+         */
+        double regressionPercent(Result base) {
+            double change = (score - base.score) / base.score * PERCENT;
+
+            // for throughput a higher score is better, for the time based modes a lower score is better
+            return "thrpt".equals(mode) ? -change : change;
+        }
+
+        /**
+         * @return true, if the confidence interval of this result is entirely on the worse side of the
+         * confidence interval of the baseline
+         */
+        boolean isWorseThan(Result base) {
+            return "thrpt".equals(mode)
+                    ? score + error < base.score - base.error
+                    : score - error > base.score + base.error;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.benchmarks;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.ActorSystem;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import com.typesafe.config.ConfigFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the round trip (serialize and deserialize) of the Signer
+ * protocol messages with the binary serializer and with Java serialization,
+ * the way Akka remoting does it between the proxy and the signer. The
+ * serialized size of the message is logged when the benchmark starts.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class SignerProtocolSerializationBenchmark {
+
+    private static final ClientId MEMBER = ClientId.create("EE", "BUSINESS", "producer");
+
+    @Param({"signer-protocol", "java"})
+    private String serializer;
+
+    @Param({"Sign", "SignResponse", "GetOcspResponsesResponse", "TokenInfo"})
+    private String message;
+
+    private ActorSystem actorSystem;
+    private Serialization serialization;
+    private Object payload;
+
+    /**
+     * Starts an actor system that uses the benchmarked serializer and creates the message.
+     */
+    @Setup
+    public void setUp() {
+        actorSystem = ActorSystem.create("benchmark", ConfigFactory.parseString(
+                SystemProperties.AKKA_SIGNER_PROTOCOL_SERIALIZER + " = " + serializer)
+                .withFallback(ConfigFactory.parseResources("akka-signer-protocol.conf"))
+                .withFallback(ConfigFactory.parseResources("akka-global.conf"))
+                .resolve());
+        serialization = SerializationExtension.get(actorSystem);
+        payload = createMessage();
+
+        log.info("{} serialized with {}: {} bytes", message, serializer,
+                serialization.serialize(payload).get().length);
+    }
+
+    /**
+     * Stops the actor system.
+     */
+    @TearDown
+    public void tearDown() {
+        actorSystem.terminate();
+    }
+
+    /**
+     * @return the deserialized message
+     */
+    @Benchmark
+    public Object roundTrip() {
+        byte[] bytes = serialization.serialize(payload).get();
+        Serializer used = serialization.findSerializerFor(payload);
+
+        return serialization.deserialize(bytes, used.identifier(), Serializers.manifestFor(used, payload)).get();
+    }
+
+    private Object createMessage() {
+        Random random = new Random(1);
+
+        switch (message) {
+            case "Sign":
+                return new Sign("5A8E9D6C0F", "SHA256withRSA", bytes(random, 51));
+            case "SignResponse":
+                return new SignResponse(bytes(random, 256));
+            case "GetOcspResponsesResponse":
+                return new GetOcspResponsesResponse(new String[] {base64(random, 1800), base64(random, 1800)});
+            case "TokenInfo":
+                return createTokenInfo(random);
+            default:
+                throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static TokenInfo createTokenInfo(Random random) {
+        List<KeyInfo> keys = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            List<CertificateInfo> certs = new ArrayList<>();
+
+            for (int j = 0; j < 2; j++) {
+                certs.add(new CertificateInfo(MEMBER, true, true, CertificateInfo.STATUS_REGISTERED,
+                        "cert" + i + j, bytes(random, 1400), bytes(random, 1800)));
+            }
+
+            keys.add(new KeyInfo(true, KeyUsageInfo.SIGNING, "key" + i, "keyId" + i, "label" + i,
+                    base64(random, 294), certs, Collections.emptyList(), "CKM_RSA_PKCS"));
+        }
+
+        Map<String, String> info = new HashMap<>();
+        info.put("Manufacturer", "SoftHSM");
+        info.put("Model", "SoftHSM v2");
+
+        return new TokenInfo("softToken", "softToken-0", "0", false, true, true, null, null, 0,
+                TokenStatusInfo.OK, keys, info);
+    }
+
+    private static byte[] bytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+
+        return bytes;
+    }
+
+    private static String base64(Random random, int size) {
+        return Base64.getEncoder().encodeToString(bytes(random, size));
+    }
+}
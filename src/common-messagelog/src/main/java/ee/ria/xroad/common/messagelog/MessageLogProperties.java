@@ -47,6 +47,8 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_TIMESTAMP_RECORDS_LIMIT = 10000;
 
+    private static final int DEFAULT_TIMESTAMP_CONCURRENT_REQUESTS = 4;
+
     private static final int DEFAULT_TIMESTAMPER_CLIENT_CONNECT_TIMEOUT = 20000;
 
     private static final int DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT = 60000;
@@ -54,7 +56,13 @@ public final class MessageLogProperties {
     private static final int DEFAULT_TIMESTAMP_RETRY_DELAY = 60;
 
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
+    private static final int DEFAULT_ARCHIVE_WORKER_THREADS = 4;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
+    private static final int DEFAULT_QUERY_ID_FILTER_CAPACITY = 1000000;
+
+    private static final int DEFAULT_WRITE_BATCH_SIZE = 100;
+    private static final int DEFAULT_WRITE_BATCH_LINGER = 0;
+    private static final int DEFAULT_WRITE_QUEUE_SIZE = 10000;
 
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
@@ -71,6 +79,9 @@ public final class MessageLogProperties {
 
     public static final String TIMESTAMP_RECORDS_LIMIT = PREFIX + "timestamp-records-limit";
 
+    /** Property name of the maximum number of concurrent batch time-stamping requests **/
+    public static final String TIMESTAMP_CONCURRENT_REQUESTS = PREFIX + "timestamp-concurrent-requests";
+
     /** Property name of the timestamp retry delay (seconds). */
     public static final String TIMESTAMP_RETRY_DELAY = PREFIX + "timestamp-retry-delay";
 
@@ -86,10 +97,19 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSACTION_BATCH = PREFIX + "archive-transaction-batch";
 
+    /** Property name of the number of threads creating ASiC containers for the log archive **/
+    public static final String ARCHIVE_WORKER_THREADS = PREFIX + "archive-worker-threads";
+
     public static final String CLEAN_INTERVAL = PREFIX + "clean-interval";
 
     private static final String CLEAN_TRANSACTION_BATCH = "clean-transaction-batch";
 
+    /** Property name for toggling the dropping of expired partitions of the partitioned log record table **/
+    public static final String PARTITIONED_RETENTION_ENABLED = PREFIX + "partitioned-retention-enabled";
+
+    /** Property name of the number of query ids the in-memory query id filter is sized for **/
+    public static final String QUERY_ID_FILTER_CAPACITY = PREFIX + "query-id-filter-capacity";
+
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
 
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
@@ -121,6 +141,18 @@ public final class MessageLogProperties {
     /** is truncating body in logging allowed **/
     private static final String REST_TRUNCATED_BODY_ALLOWED = PREFIX + "truncated-body-allowed";
 
+    /** Property name for toggling the group commit of message records on/off **/
+    public static final String GROUP_COMMIT_ENABLED = PREFIX + "group-commit-enabled";
+
+    /** Property name of the maximum number of message records saved in one transaction **/
+    public static final String WRITE_BATCH_SIZE = PREFIX + "write-batch-size";
+
+    /** Property name of the time (milliseconds) a write batch waits for more message records **/
+    public static final String WRITE_BATCH_LINGER = PREFIX + "write-batch-linger";
+
+    /** Property name of the maximum number of message records waiting to be saved **/
+    public static final String WRITE_QUEUE_SIZE = PREFIX + "write-queue-size";
+
     public static final int NUM_COMPONENTS = 4;
     public static final int FIRST_COMPONENT = 0;
     public static final int SECOND_COMPONENT = 1;
@@ -172,6 +204,14 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(TIMESTAMP_RECORDS_LIMIT), DEFAULT_TIMESTAMP_RECORDS_LIMIT);
     }
 
+    /**
+     * @return the maximum number of batch time-stamping requests in progress at the same time.
+     */
+    public static int getTimestampConcurrentRequests() {
+        return Math.max(1, getInt(System.getProperty(TIMESTAMP_CONCURRENT_REQUESTS),
+                DEFAULT_TIMESTAMP_CONCURRENT_REQUESTS));
+    }
+
     /**
      * @return the time period in seconds, how long is time-stamping allowed to be failed before message log stops
      * accepting any more messages.
@@ -195,6 +235,13 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(ARCHIVE_TRANSACTION_BATCH), DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the number of threads creating ASiC containers of the archived message records, '4' by default.
+     */
+    public static int getArchiveWorkerThreads() {
+        return Math.max(1, getInt(System.getProperty(ARCHIVE_WORKER_THREADS), DEFAULT_ARCHIVE_WORKER_THREADS));
+    }
+
     /**
      * @return the time interval as Cron expression for cleaning archived records from online database.
      */
@@ -237,6 +284,38 @@ public final class MessageLogProperties {
         return System.getProperty(ARCHIVE_TRANSFER_COMMAND, null);
     }
 
+    /**
+     * @return true if message records of concurrent requests are collected and saved to the database in batches.
+     * 'false' by default.
+     */
+    public static boolean isGroupCommitEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(GROUP_COMMIT_ENABLED, "false"));
+    }
+
+    /**
+     * @return the maximum number of message records saved in one transaction when group commit is enabled.
+     * '100' by default.
+     */
+    public static int getWriteBatchSize() {
+        return getInt(System.getProperty(WRITE_BATCH_SIZE), DEFAULT_WRITE_BATCH_SIZE);
+    }
+
+    /**
+     * @return the time in milliseconds a write batch waits for more message records before it is saved.
+     * '0' by default, i.e. a batch contains the message records that are already waiting.
+     */
+    public static int getWriteBatchLinger() {
+        return getInt(System.getProperty(WRITE_BATCH_LINGER), DEFAULT_WRITE_BATCH_LINGER);
+    }
+
+    /**
+     * @return the maximum number of message records waiting to be saved when group commit is enabled.
+     * '10000' by default.
+     */
+    public static int getWriteQueueSize() {
+        return getInt(System.getProperty(WRITE_QUEUE_SIZE), DEFAULT_WRITE_QUEUE_SIZE);
+    }
+
     private static int getInt(String value, int defaultValue) {
         try {
             return Integer.parseInt(value);
@@ -298,6 +377,22 @@ public final class MessageLogProperties {
         return Integer.getInteger(CLEAN_TRANSACTION_BATCH, DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return true if the log record table is partitioned by day and expired partitions are dropped as a whole
+     * instead of deleting the records one by one. Requires the partitioned database layout. 'false' by default.
+     */
+    public static boolean isPartitionedRetentionEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(PARTITIONED_RETENTION_ENABLED, "false"));
+    }
+
+    /**
+     * @return the number of query ids the in-memory query id filter is sized for, 0 disables the filter.
+     * 1000000 by default.
+     */
+    public static int getQueryIdFilterCapacity() {
+        return Math.max(0, getInt(System.getProperty(QUERY_ID_FILTER_CAPACITY), DEFAULT_QUERY_ID_FILTER_CAPACITY));
+    }
+
     private static String getMessageBodyLoggingOverrideParameterName(boolean enable, boolean local) {
         String prefix = enable ? MESSAGE_BODY_LOGGING_ENABLE : MESSAGE_BODY_LOGGING_DISABLE;
         String postfix = local ? MESSAGE_BODY_LOGGING_LOCAL_PRODUCER : MESSAGE_BODY_LOGGING_REMOTE_PRODUCER;
@@ -87,10 +87,18 @@ class LogArchiveCache implements Closeable {
     }
 
     void add(MessageRecord messageRecord) throws Exception {
+        add(messageRecord, out -> messageRecord.toAsicContainer().write(out));
+    }
+
+    void add(MessageRecord messageRecord, byte[] asicContainer) throws Exception {
+        add(messageRecord, out -> out.write(asicContainer));
+    }
+
+    private void add(MessageRecord messageRecord, ContainerWriter containerWriter) throws Exception {
         try {
             validateMessageRecord(messageRecord);
             handleRotation();
-            cacheRecord(messageRecord);
+            cacheRecord(messageRecord, containerWriter);
             updateState();
         } catch (Exception e) {
             handleCacheError(e);
@@ -166,7 +174,7 @@ class LogArchiveCache implements Closeable {
     }
 
     @SuppressWarnings("checkstyle:InnerAssignment")
-    private void cacheRecord(MessageRecord messageRecord) throws Exception {
+    private void cacheRecord(MessageRecord messageRecord, ContainerWriter containerWriter) throws Exception {
         final Date creationTime = new Date(messageRecord.getTime());
 
         if (minCreationTime == null && maxCreationTime == null) {
@@ -176,7 +184,7 @@ class LogArchiveCache implements Closeable {
         } else if (creationTime.after(maxCreationTime)) {
             maxCreationTime = creationTime;
         }
-        addContainerToArchive(messageRecord);
+        addContainerToArchive(messageRecord, containerWriter);
     }
 
     private void updateState() {
@@ -187,7 +195,7 @@ class LogArchiveCache implements Closeable {
         return archivesTotalSize > getArchiveMaxFilesize();
     }
 
-    private void addContainerToArchive(MessageRecord record) throws Exception {
+    private void addContainerToArchive(MessageRecord record, ContainerWriter containerWriter) throws Exception {
         String archiveFilename =
                 nameGenerator.getArchiveFilename(record.getQueryId(),
                         record.isResponse() ? AsicContainerNameGenerator.TYPE_RESPONSE
@@ -201,7 +209,7 @@ class LogArchiveCache implements Closeable {
             // ZipOutputStream writing directly to a DigestOutputStream is extremely inefficient, hence the additional
             // buffering. Digesting a stream instead of an in-memory buffer because the archive can be
             // large (over 1GiB)
-            record.toAsicContainer().write(bos);
+            containerWriter.write(bos);
             archivesTotalSize += cos.getCount();
         }
         archiveTmp.closeEntry();
@@ -247,6 +255,11 @@ class LogArchiveCache implements Closeable {
         nameGenerator = new AsicContainerNameGenerator(randomGenerator, MAX_RANDOM_GEN_ATTEMPTS);
     }
 
+    @FunctionalInterface
+    private interface ContainerWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
     static class EntryStream extends FilterOutputStream {
 
         EntryStream(OutputStream out) {
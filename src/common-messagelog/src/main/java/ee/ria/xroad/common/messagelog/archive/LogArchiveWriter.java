@@ -100,6 +100,29 @@ public class LogArchiveWriter implements Closeable {
             logArchiveCache.add((MessageRecord)logRecord);
         }
 
+        return afterWrite(logRecord);
+    }
+
+    /**
+     * Write a message record whose ASiC container has already been created.
+     * @param messageRecord the message record
+     * @param asicContainer the serialized ASiC container of the message record
+     * @return true if the a archive file was rotated
+     * @throws Exception in case of any errors
+     */
+    public boolean write(MessageRecord messageRecord, byte[] asicContainer) throws Exception {
+        if (messageRecord == null || asicContainer == null) {
+            throw new IllegalArgumentException("message record and ASiC container must not be null");
+        }
+
+        if (log.isTraceEnabled()) log.trace("write({})", messageRecord.getId());
+
+        logArchiveCache.add(messageRecord, asicContainer);
+
+        return afterWrite(messageRecord);
+    }
+
+    private boolean afterWrite(LogRecord logRecord) throws Exception {
         archiveBase.markRecordArchived(logRecord);
 
         if (logArchiveCache.isRotating()) {
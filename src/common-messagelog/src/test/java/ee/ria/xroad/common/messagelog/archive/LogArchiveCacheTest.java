@@ -212,6 +212,27 @@ public class LogArchiveCacheTest {
         assertZip(expectedConflictingEntryNames(), getArchiveBytes());
     }
 
+    /**
+     * Test to ensure already created ASiC containers are added like the ones created by the cache.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void addCreatedContainersWithRotation() throws Exception {
+        setMaxArchiveSizeMedium();
+
+        cache.add(createRequestRecordNormal(), containerOfNormalSize());
+
+        assertFalse("Step 1: no need to rotate yet.", cache.isRotating());
+
+        cache.add(createRequestRecordTooLarge(), containerTooLarge());
+
+        assertTrue("Step 2: should be rotated.", cache.isRotating());
+        assertEquals(largeRequestCreationTime(), cache.getStartTime());
+        assertEquals(normalRequestCreationTime(), cache.getEndTime());
+        assertZip(expectedNormalAndLargeRequestEntryNames(), getArchiveBytes());
+    }
+
     private byte[] getArchiveBytes() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         final Path archive = cache.getArchiveFile();
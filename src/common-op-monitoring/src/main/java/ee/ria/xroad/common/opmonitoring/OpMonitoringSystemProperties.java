@@ -152,6 +152,12 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_MAX_RECORDS_IN_PAYLOAD =
             PREFIX + "op-monitor.max-records-in-payload";
 
+    /**
+     * Property name of the flag for storing operational data records in bulk, bypassing the Hibernate session.
+     */
+    private static final String OP_MONITOR_BULK_STORE_ENABLED =
+            PREFIX + "op-monitor.bulk-store-enabled";
+
     private OpMonitoringSystemProperties() {
     }
 
@@ -283,6 +289,14 @@ public final class OpMonitoringSystemProperties {
         return payload;
     }
 
+    /**
+     * @return true if operational data records are stored in bulk (PostgreSQL COPY or JDBC batch inserts) instead of
+     * through the Hibernate session, false by default.
+     */
+    public static boolean isOpMonitorBulkStoreEnabled() {
+        return Boolean.parseBoolean(System.getProperty(OP_MONITOR_BULK_STORE_ENABLED, "false"));
+    }
+
     /**
      * @return the offset seconds used to calculate timestamp to which the operational data records are available,
      * 60 by default.
@@ -0,0 +1,164 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.opmonitoring;
+
+import ee.ria.xroad.common.util.JsonUtils;
+import ee.ria.xroad.common.util.MimeTypes;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * HTTP entity that streams a batch of operational monitoring data records
+ * to the operational monitoring daemon as a store data request. The JSON is
+ * written straight into the request output stream, so the batch is never
+ * materialized as a request object or a string.
+ *
+ * The entity wraps the given record array without copying it; the owner must
+ * not modify the records in range while the entity is being sent. The
+ * produced JSON is identical to serializing a StoreOpMonitoringDataRequest
+ * with JsonUtils.getSerializer().
+ */
+public class StoreOpMonitoringDataEntity extends AbstractHttpEntity {
+
+    private static final Gson GSON = JsonUtils.getSerializer();
+
+    private static final String RECORDS = "records";
+
+    private final OpMonitoringData[] records;
+
+    private int count;
+
+    /**
+     * Creates an entity backed by the given record array.
+     * @param records the record array, the first count elements are sent
+     */
+    public StoreOpMonitoringDataEntity(OpMonitoringData[] records) {
+        this.records = records;
+
+        setContentType(ContentType.create(MimeTypes.JSON, StandardCharsets.UTF_8).toString());
+        setChunked(true);
+    }
+
+    /**
+     * @param newCount number of records from the start of the backing array to send
+     */
+    public void setCount(int newCount) {
+        if (newCount < 0 || newCount > records.length) {
+            throw new IllegalArgumentException("Invalid record count: " + newCount);
+        }
+
+        count = newCount;
+    }
+
+    /**
+     * @return number of records sent with this entity
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        // Buffered, since the encoder copies every string it is given. Not closing the writer,
+        // the output stream is owned by the caller.
+        JsonWriter writer = GSON.newJsonWriter(
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+
+        writer.beginObject();
+        writer.name(RECORDS);
+        writer.beginArray();
+
+        for (int i = 0; i < count; i++) {
+            writeRecord(writer, records[i].getData());
+        }
+
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private static void writeRecord(JsonWriter writer, Map<String, Object> data) throws IOException {
+        writer.beginObject();
+
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            Object value = entry.getValue();
+
+            // Null values are omitted, as Gson does by default
+            if (value == null) {
+                continue;
+            }
+
+            writer.name(entry.getKey());
+
+            if (value instanceof String) {
+                writer.value((String) value);
+            } else if (value instanceof Number) {
+                writer.value((Number) value);
+            } else if (value instanceof Boolean) {
+                writer.value((Boolean) value);
+            } else {
+                GSON.toJson(value, value.getClass(), writer);
+            }
+        }
+
+        writer.endObject();
+    }
+}
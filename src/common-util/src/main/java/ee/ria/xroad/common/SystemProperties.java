@@ -51,6 +51,13 @@ public final class SystemProperties {
     public static final String CONFIGURATION_PATH =
             PREFIX + "common.configuration-path";
 
+    /**
+     * Property name of the Akka serializer used for sending the Signer protocol messages,
+     * "signer-protocol" (binary) or "java". Read by the Akka configuration in akka-signer-protocol.conf.
+     */
+    public static final String AKKA_SIGNER_PROTOCOL_SERIALIZER =
+            PREFIX + "common.akka-signer-protocol-serializer";
+
     /** Current version number of the global configuration **/
     public static final int CURRENT_GLOBAL_CONFIGURATION_VERSION = 2;
 
@@ -259,12 +266,66 @@ public final class SystemProperties {
     public static final String CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD =
             PREFIX + "proxy.client-fastest-connecting-ssl-uri-cache-period";
 
+    public static final String CLIENTPROXY_TARGET_SELECTION =
+            PREFIX + "proxy.client-target-selection";
+
+    public static final String CLIENTPROXY_TARGET_SELECTION_STAGGER_DELAY =
+            PREFIX + "proxy.client-target-selection-stagger-delay";
+
     private static final String CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS =
             PREFIX + "proxy.pool-validate-connections-after-inactivity-of-millis";
 
     private static final String CLIENTPROXY_POOL_REUSE_CONNECTIONS =
             PREFIX + "proxy.pool-enable-connection-reuse";
 
+    /**
+     * Property name of the switch that makes the client proxy decode, encode and sign SOAP requests on the
+     * request thread into a buffered request entity before sending, instead of a piped handler thread
+     */
+    private static final String CLIENTPROXY_SOAP_STREAMING_ENTITY_ENABLED =
+            PREFIX + "proxy.client-soap-streaming-entity-enabled";
+
+    /**
+     * Property name of the switch that makes the proxy parse SOAP messages into spill-to-disk buffers, computing
+     * the message hash while reading
+     */
+    private static final String PROXY_SOAP_STREAMING_PARSER_ENABLED = PREFIX + "proxy.soap-streaming-parser-enabled";
+
+    /**
+     * Property name of the number of bytes of a streamed SOAP message that are kept in memory before the rest of the
+     * message is written to a temporary file
+     */
+    private static final String PROXY_SOAP_STREAMING_MEMORY_THRESHOLD =
+            PREFIX + "proxy.soap-streaming-memory-threshold";
+
+    /**
+     * Property name of the number of bytes of a cached attachment or REST body that are kept in memory before the
+     * rest of the data is written to a temporary file
+     */
+    private static final String PROXY_CACHING_STREAM_MEMORY_THRESHOLD =
+            PREFIX + "proxy.caching-stream-memory-threshold";
+
+    /**
+     * Property name of the maximum number of pooled direct memory buffers used by cached attachments and REST bodies
+     */
+    private static final String PROXY_CACHING_STREAM_BUFFER_POOL_SIZE =
+            PREFIX + "proxy.caching-stream-buffer-pool-size";
+
+    /**
+     * Property name of the maximum number of signing requests in one batch signature
+     */
+    private static final String PROXY_BATCH_SIGNER_MAX_BATCH_SIZE = PREFIX + "proxy.batch-signer-max-batch-size";
+
+    /**
+     * Property name of the time in milliseconds a batch is kept open for more signing requests
+     */
+    private static final String PROXY_BATCH_SIGNER_LINGER_MS = PREFIX + "proxy.batch-signer-linger-ms";
+
+    /**
+     * Property name of the maximum number of batch signatures being created at the same time with one key
+     */
+    private static final String PROXY_BATCH_SIGNER_MAX_IN_FLIGHT = PREFIX + "proxy.batch-signer-max-in-flight";
+
     private static final String PROXY_HEALTH_CHECK_INTERFACE = PREFIX + "proxy.health-check-interface";
 
     private static final String PROXY_HEALTH_CHECK_PORT = PREFIX + "proxy.health-check-port";
@@ -316,6 +377,30 @@ public final class SystemProperties {
 
     private static final String DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD = "3600";
 
+    /** Provider selection that connects to all targets and uses the fastest one to connect */
+    public static final String CLIENTPROXY_TARGET_SELECTION_FASTEST = "fastest";
+
+    /** Provider selection based on the measured latencies and error rates of the targets */
+    public static final String CLIENTPROXY_TARGET_SELECTION_LATENCY_AWARE = "latency-aware";
+
+    private static final String DEFAULT_CLIENTPROXY_TARGET_SELECTION_STAGGER_DELAY = "250";
+
+    private static final String DEFAULT_CLIENTPROXY_SOAP_STREAMING_ENTITY_ENABLED = "false";
+
+    private static final String DEFAULT_PROXY_SOAP_STREAMING_PARSER_ENABLED = "false";
+
+    private static final String DEFAULT_PROXY_SOAP_STREAMING_MEMORY_THRESHOLD = "1048576";
+
+    private static final String DEFAULT_PROXY_CACHING_STREAM_MEMORY_THRESHOLD = "65536";
+
+    private static final String DEFAULT_PROXY_CACHING_STREAM_BUFFER_POOL_SIZE = "1024";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNER_MAX_BATCH_SIZE = "1000";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNER_LINGER_MS = "0";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNER_MAX_IN_FLIGHT = "1";
+
     private static final String DEFAULT_ENV_MONITOR_LIMIT_REMOTE_DATA_SET = "false";
 
     private static final String DEFAULT_CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS = "2000";
@@ -339,6 +424,9 @@ public final class SystemProperties {
 
     private static final int OCSP_VERIFIER_CACHE_PERIOD_MAX = 180;
 
+    private static final String OCSP_VERIFIER_CACHE_SIZE =
+            PREFIX + "proxy.ocsp-verifier-cache-size";
+
 
     // Signer -----------------------------------------------------------------
 
@@ -389,6 +477,22 @@ public final class SystemProperties {
 
     public static final String DEFAULT_SIGNER_MODULE_MANAGER_UPDATE_INTERVAL = "60";
 
+    public static final String SIGNER_SOFTWARE_TOKEN_PARALLEL_SIGNING_ENABLED =
+            PREFIX + "signer.software-token-parallel-signing-enabled";
+
+    public static final String SIGNER_SOFTWARE_TOKEN_SIGNING_THREADS =
+            PREFIX + "signer.software-token-signing-threads";
+
+    public static final String SIGNER_SOFTWARE_TOKEN_SIGNING_QUEUE_SIZE =
+            PREFIX + "signer.software-token-signing-queue-size";
+
+    private static final String DEFAULT_SIGNER_SOFTWARE_TOKEN_SIGNING_QUEUE_SIZE = "1000";
+
+    public static final String SIGNER_HARDWARE_TOKEN_SIGNING_QUEUE_SIZE =
+            PREFIX + "signer.hardware-token-signing-queue-size";
+
+    private static final String DEFAULT_SIGNER_HARDWARE_TOKEN_SIGNING_QUEUE_SIZE = "1000";
+
     // AntiDos ----------------------------------------------------------------
 
     /** Property name of the AntiDos on/off switch */
@@ -411,6 +515,10 @@ public final class SystemProperties {
     public static final String ANTIDOS_MAX_HEAP_USAGE =
             PREFIX + "anti-dos.max-heap-usage";
 
+    /** Property name of the interval at which the system resources are checked */
+    public static final String ANTIDOS_RESOURCE_CHECK_INTERVAL =
+            PREFIX + "anti-dos.resource-check-interval";
+
     // Configuration client ---------------------------------------------------
 
     public static final String CONFIGURATION_CLIENT_PORT =
@@ -927,6 +1035,38 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_MODULE_MANAGER_UPDATE_INTERVAL));
     }
 
+    /**
+     * @return whether the software token signs requests in parallel on a worker pool instead of
+     * on the token worker actor, false by default
+     */
+    public static boolean isSoftwareTokenParallelSigningEnabled() {
+        return Boolean.parseBoolean(System.getProperty(SIGNER_SOFTWARE_TOKEN_PARALLEL_SIGNING_ENABLED, "false"));
+    }
+
+    /**
+     * @return the number of software token signing threads, the number of available processors by default
+     */
+    public static int getSoftwareTokenSigningThreads() {
+        return Math.max(1, Integer.getInteger(SIGNER_SOFTWARE_TOKEN_SIGNING_THREADS,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @return the maximum number of sign requests waiting for a software token signing thread, 1000 by default
+     */
+    public static int getSoftwareTokenSigningQueueSize() {
+        return Integer.parseInt(System.getProperty(SIGNER_SOFTWARE_TOKEN_SIGNING_QUEUE_SIZE,
+                DEFAULT_SIGNER_SOFTWARE_TOKEN_SIGNING_QUEUE_SIZE));
+    }
+
+    /**
+     * @return the maximum number of sign requests waiting for a hardware token signing session, 1000 by default
+     */
+    public static int getHardwareTokenSigningQueueSize() {
+        return Integer.parseInt(System.getProperty(SIGNER_HARDWARE_TOKEN_SIGNING_QUEUE_SIZE,
+                DEFAULT_SIGNER_HARDWARE_TOKEN_SIGNING_QUEUE_SIZE));
+    }
+
     /**
      * @return the HTTP port on which the configuration client is listening, '5665' by default.
      */
@@ -1249,6 +1389,14 @@ public final class SystemProperties {
         return Double.parseDouble(System.getProperty(ANTIDOS_MAX_HEAP_USAGE, "1.1"));
     }
 
+    /**
+     * @return the interval in milliseconds at which Anti-Dos samples the free
+     * file handles, CPU load and heap usage, '100' by default.
+     */
+    public static int getAntiDosResourceCheckInterval() {
+        return Integer.parseInt(System.getProperty(ANTIDOS_RESOURCE_CHECK_INTERVAL, "100"));
+    }
+
     /**
      * @return whether Anti-Dos should be used, 'true' by default.
      */
@@ -1331,6 +1479,14 @@ public final class SystemProperties {
         return period < OCSP_VERIFIER_CACHE_PERIOD_MAX ? period : OCSP_VERIFIER_CACHE_PERIOD_MAX;
     }
 
+    /**
+     * @return the maximum number of verified OCSP responses the verifier keeps cached, '10000' by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static long getOcspVerifierCacheSize() {
+        return Long.getLong(OCSP_VERIFIER_CACHE_SIZE, 10000);
+    }
+
     /**
      * @return serverproxy initial idle time (used until the request processing starts)
      */
@@ -1462,6 +1618,94 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD));
     }
 
+    /**
+     * @return how the client proxy selects the service provider's security server when there are several
+     * addresses, 'fastest' (default) or 'latency-aware'
+     */
+    public static String getClientProxyTargetSelection() {
+        return System.getProperty(CLIENTPROXY_TARGET_SELECTION, CLIENTPROXY_TARGET_SELECTION_FASTEST);
+    }
+
+    /**
+     * @return delay in milliseconds after which the latency-aware provider selection starts connecting to the
+     * next address if the previous ones have not connected, '250' by default
+     */
+    public static int getClientProxyTargetSelectionStaggerDelay() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_TARGET_SELECTION_STAGGER_DELAY,
+                DEFAULT_CLIENTPROXY_TARGET_SELECTION_STAGGER_DELAY));
+    }
+
+    /**
+     * @return true if the client proxy should process SOAP requests on a single thread, buffering the encoded
+     * and signed proxy message (in memory up to the caching stream memory threshold, then in a temporary file)
+     * before sending it to the server proxy. 'false' by default.
+     */
+    public static boolean isClientProxySoapStreamingEntityEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_SOAP_STREAMING_ENTITY_ENABLED,
+                DEFAULT_CLIENTPROXY_SOAP_STREAMING_ENTITY_ENABLED));
+    }
+
+    /**
+     * @return true if the proxy should parse SOAP messages in streaming mode, keeping only the message headers and
+     * a bounded part of the message in memory. 'false' by default.
+     */
+    public static boolean isProxySoapStreamingParserEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PROXY_SOAP_STREAMING_PARSER_ENABLED,
+                DEFAULT_PROXY_SOAP_STREAMING_PARSER_ENABLED));
+    }
+
+    /**
+     * @return the number of bytes of a streamed SOAP message that are kept in memory before spilling the message
+     * to a temporary file, 1048576 by default.
+     */
+    public static int getProxySoapStreamingMemoryThreshold() {
+        return Integer.parseInt(System.getProperty(PROXY_SOAP_STREAMING_MEMORY_THRESHOLD,
+                DEFAULT_PROXY_SOAP_STREAMING_MEMORY_THRESHOLD));
+    }
+
+    /**
+     * @return the number of bytes of a cached attachment or REST body that are kept in memory before spilling the
+     * data to a temporary file, 65536 by default.
+     */
+    public static int getCachingStreamMemoryThreshold() {
+        return Integer.parseInt(System.getProperty(PROXY_CACHING_STREAM_MEMORY_THRESHOLD,
+                DEFAULT_PROXY_CACHING_STREAM_MEMORY_THRESHOLD));
+    }
+
+    /**
+     * @return the maximum number of 16 KB direct memory buffers pooled for cached attachments and REST bodies,
+     * 1024 by default.
+     */
+    public static int getCachingStreamBufferPoolSize() {
+        return Integer.parseInt(System.getProperty(PROXY_CACHING_STREAM_BUFFER_POOL_SIZE,
+                DEFAULT_PROXY_CACHING_STREAM_BUFFER_POOL_SIZE));
+    }
+
+    /**
+     * @return the maximum number of signing requests in one batch signature, 1000 by default.
+     */
+    public static int getBatchSignerMaxBatchSize() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_MAX_BATCH_SIZE,
+                DEFAULT_PROXY_BATCH_SIGNER_MAX_BATCH_SIZE)));
+    }
+
+    /**
+     * @return the time in milliseconds a batch is kept open for more signing requests before it is signed,
+     * 0 by default.
+     */
+    public static long getBatchSignerLingerMs() {
+        return Math.max(0, Long.parseLong(System.getProperty(PROXY_BATCH_SIGNER_LINGER_MS,
+                DEFAULT_PROXY_BATCH_SIGNER_LINGER_MS)));
+    }
+
+    /**
+     * @return the maximum number of batch signatures being created at the same time with one key, 1 by default.
+     */
+    public static int getBatchSignerMaxInFlight() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_MAX_IN_FLIGHT,
+                DEFAULT_PROXY_BATCH_SIGNER_MAX_IN_FLIGHT)));
+    }
+
     /**
      * @return the time in milliseconds, after which connections in a pool should be check for validity, ie.
      * after this time, check if pooled connections are still alive, don't just assume they are.
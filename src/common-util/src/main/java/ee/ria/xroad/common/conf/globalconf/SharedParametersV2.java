@@ -59,6 +59,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.translateException;
@@ -91,6 +92,13 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
     private final Set<String> knownAddresses = new HashSet<>();
     private final Map<SecurityServerId, SecurityServerType> securityServersById = new HashMap<>();
 
+    // Source of the parameter versions, incremented every time any shared parameters are (re)loaded from file
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // Version of these parameters, taken from VERSIONS when the parameters are (re)loaded from file
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong version = new AtomicLong();
+
     SharedParametersV2() {
         super(ObjectFactory.class, SharedParametersSchemaValidatorV2.class);
     }
@@ -181,6 +189,22 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         } catch (Exception e) {
             throw translateException(e);
         }
+
+        version.set(VERSIONS.incrementAndGet());
+    }
+
+    /**
+     * @return the version of these parameters, changes every time the parameters are (re)loaded
+     */
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return the latest version of any shared parameters, changes every time some parameters are (re)loaded
+     */
+    static long getLatestVersion() {
+        return VERSIONS.get();
     }
 
     static MemberType getOwner(SecurityServerType serverType) {
@@ -24,17 +24,37 @@
  */
 package ee.ria.xroad.common.hashchain;
 
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.DEROctetString;
-import org.bouncycastle.asn1.DERSequence;
-import org.bouncycastle.asn1.DERUTF8String;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
-import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
-import static org.bouncycastle.asn1.ASN1Encoding.DER;
 
+/**
+ * DER encoding of the DigestList data structure hashed in the hash steps:
+ *
+ * DigestList ::= SEQUENCE OF SingleDigest
+ * SingleDigest ::= SEQUENCE {
+ *     digest OCTET STRING,
+ *     algorithm UTF8String,
+ *     transforms SEQUENCE OF ... }
+ *
+ * The transforms are always empty. The structure is encoded directly into a byte array of the exact size.
+ */
 final class DigestList {
 
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_UTF8_STRING = 0x0c;
+
+    private static final int SHORT_LENGTH_LIMIT = 0x80;
+    private static final int BYTE_BITS = 8;
+    private static final int BYTE_MASK = 0xff;
+
+    // encoding of the empty transforms sequence
+    private static final int EMPTY_SEQUENCE_LENGTH = 2;
+
     private DigestList() {
     }
 
@@ -44,53 +64,128 @@ final class DigestList {
      */
     static byte[] digestHashStep(String digestMethod, byte[]... items)
             throws Exception {
-        return calculateDigest(digestMethod,
-                concatDigests(getDigestAlgorithmURI(digestMethod), items));
+        return new StepDigester(digestMethod).digest(items);
     }
 
     /**
      * Takes as input a sequence of hashes and combines them using DigestList
      * data structure.
      */
-    static byte[] concatDigests(String digestMethodUri, byte[]... items)
-            throws Exception {
-        ASN1Encodable[] digestList = new ASN1Encodable[items.length];
+    static byte[] concatDigests(String digestMethodUri, byte[]... items) {
+        return concatDigests(digestMethodUri.getBytes(StandardCharsets.UTF_8), items);
+    }
 
-        for (int i = 0; i < items.length; ++i) {
-            digestList[i] = singleDigest(digestMethodUri, items[i]);
-        }
+    private static byte[] concatDigests(byte[] digestMethodUri, byte[]... items) {
+        byte[][] uris = new byte[items.length][];
+        Arrays.fill(uris, digestMethodUri);
 
-        DERSequence step = new DERSequence(digestList);
-        return step.getEncoded(DER);
+        return encode(uris, items);
     }
 
     /**
      * Takes as input a sequence of hashes and combines them using DigestList
      * data structure.
      */
-    static byte[] concatDigests(DigestValue... items) throws Exception {
-        ASN1Encodable[] digestList = new ASN1Encodable[items.length];
+    static byte[] concatDigests(DigestValue... items) {
+        byte[][] uris = new byte[items.length][];
+        byte[][] digests = new byte[items.length][];
 
         for (int i = 0; i < items.length; ++i) {
-            digestList[i] = singleDigest(items[i].getDigestMethod(),
-                    items[i].getDigestValue());
+            uris[i] = items[i].getDigestMethod().getBytes(StandardCharsets.UTF_8);
+            digests[i] = items[i].getDigestValue();
         }
 
-        DERSequence step = new DERSequence(digestList);
-        return step.getEncoded(DER);
+        return encode(uris, digests);
+    }
+
+    private static byte[] encode(byte[][] uris, byte[][] digests) {
+        int[] singleDigestLengths = new int[digests.length];
+        int digestListLength = 0;
+
+        for (int i = 0; i < digests.length; ++i) {
+            singleDigestLengths[i] = encodedLength(digests[i].length) + encodedLength(uris[i].length)
+                    + EMPTY_SEQUENCE_LENGTH;
+            digestListLength += encodedLength(singleDigestLengths[i]);
+        }
+
+        byte[] out = new byte[encodedLength(digestListLength)];
+        int pos = writeHeader(out, 0, TAG_SEQUENCE, digestListLength);
+
+        for (int i = 0; i < digests.length; ++i) {
+            pos = writeHeader(out, pos, TAG_SEQUENCE, singleDigestLengths[i]);
+            pos = writeValue(out, pos, TAG_OCTET_STRING, digests[i]);
+            pos = writeValue(out, pos, TAG_UTF8_STRING, uris[i]);
+            pos = writeHeader(out, pos, TAG_SEQUENCE, 0);
+        }
+
+        return out;
     }
 
     /**
-     * Encodes hash value as SingleDigest data structure.
+     * Returns the length of the DER encoding with the given content length.
      */
-    private static DERSequence singleDigest(String digestMethodUri,
-            byte[] digest) throws Exception {
-        DEROctetString digestValue = new DEROctetString(digest);
-        DERUTF8String digestMethod = new DERUTF8String(digestMethodUri);
+    private static int encodedLength(int contentLength) {
+        return 1 + lengthOctets(contentLength) + contentLength;
+    }
+
+    private static int lengthOctets(int length) {
+        if (length < SHORT_LENGTH_LIMIT) {
+            return 1;
+        }
 
-        DERSequence transforms = new DERSequence();
+        int octets = 1;
 
-        return new DERSequence(new ASN1Encodable[] {
-                digestValue, digestMethod, transforms });
+        for (int l = length; l > 0; l >>>= BYTE_BITS) {
+            octets++;
+        }
+
+        return octets;
+    }
+
+    private static int writeHeader(byte[] out, int pos, int tag, int length) {
+        out[pos++] = (byte) tag;
+
+        int octets = lengthOctets(length);
+
+        if (octets == 1) {
+            out[pos++] = (byte) length;
+        } else {
+            out[pos++] = (byte) (SHORT_LENGTH_LIMIT | (octets - 1));
+
+            for (int i = octets - 2; i >= 0; i--) {
+                out[pos++] = (byte) ((length >>> (i * BYTE_BITS)) & BYTE_MASK);
+            }
+        }
+
+        return pos;
+    }
+
+    private static int writeValue(byte[] out, int pos, int tag, byte[] value) {
+        pos = writeHeader(out, pos, tag, value.length);
+        System.arraycopy(value, 0, out, pos, value.length);
+
+        return pos + value.length;
+    }
+
+    /**
+     * Computes digests of hash steps with a single hash algorithm, reusing the message digest instance.
+     * Not thread-safe.
+     */
+    static final class StepDigester {
+
+        private final MessageDigest messageDigest;
+        private final byte[] digestMethodUri;
+
+        StepDigester(String digestMethod) throws NoSuchAlgorithmException {
+            this.messageDigest = MessageDigest.getInstance(digestMethod);
+            this.digestMethodUri = getDigestAlgorithmURI(digestMethod).getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Combines the hashes using DigestList data structure and computes hash of the data structure.
+         */
+        byte[] digest(byte[]... items) {
+            return messageDigest.digest(concatDigests(digestMethodUri, items));
+        }
     }
 }
@@ -24,20 +24,16 @@
  */
 package ee.ria.xroad.common.hashchain;
 
+import ee.ria.xroad.common.hashchain.DigestList.StepDigester;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.Marshaller;
-
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static ee.ria.xroad.common.hashchain.DigestList.digestHashStep;
 import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
 import static ee.ria.xroad.common.util.MessageFileNames.attachment;
 import static java.lang.Integer.numberOfLeadingZeros;
@@ -48,10 +44,11 @@ import static java.lang.Integer.numberOfLeadingZeros;
  *
  * First, call the add method to add inputs to the tree. Then call
  * finishBuilding to compute the tree.
- * After computing, three methods are available to get the results.
+ * After computing, four methods are available to get the results.
  * - getTreeTop -- returns topmost hash of the Merkle tree that can be
  *   signed/time-stamped.
  * - getHashChainResult -- returns XML-encoded form of the hash chain result.
+ * - getHashChain -- returns XML-encoded hash chain of one input data item.
  * - getHashChains -- returns array of XML-encoded hash chains, one for
  *   each input data item.
  *
@@ -60,11 +57,13 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * children can be calculated from the parent.
  * See http://en.wikipedia.org/wiki/Binary_tree#Arrays for details.
  *
- * Physically, the tree is stored in two separate arrays: inputs (leaf nodes)
- * and nodes (non-leaf nodes). In terms of index calculations these are
- * treated as a single array consisting of nodes+inputs.
+ * The tree is stored in a single array, the non-leaf nodes followed by
+ * the inputs (leaf nodes). For incomplete binary trees, some nodes can be
+ * null.
  *
- * For incomplete binary trees, some inputs and nodes can be null.
+ * The hash steps are digested with a single message digest instance and
+ * the hash chains are written with HashChainXmlWriter only when requested.
+ * The builder is not thread-safe.
  */
 public final class HashChainBuilder {
 
@@ -73,9 +72,6 @@ public final class HashChainBuilder {
     private static final Logger LOG =
             LoggerFactory.getLogger(HashChainBuilder.class);
 
-    /** For accessing JAXB functionality. Shared between all the builders. */
-    private static JAXBContext jaxbCtx;
-
     /**
      * Index of the root of the tree.
      */
@@ -83,13 +79,16 @@ public final class HashChainBuilder {
 
     private static final String STEP = "STEP";
 
-    /** Hash algorithm used to hash tree nodes and inputs. */
-    private final String hashAlgorithm;
-
     /** Hash algorithm URI used in XML. */
     private final String hashAlgorithmUri;
 
-    /** Array of input hashes. */
+    /** Digests the hash steps. */
+    private final StepDigester stepDigester;
+
+    /** Writes the hash chains, reused for all the inputs. */
+    private final HashChainXmlWriter xmlWriter = new HashChainXmlWriter();
+
+    /** List of input hashes, collected until the tree is finished. */
     private final List<byte[]> inputs = new ArrayList<>();
 
     /**
@@ -98,21 +97,15 @@ public final class HashChainBuilder {
      */
     private final Map<Integer, byte[][]> multiparts = new HashMap<>();
 
-    /** The file name to be used for data refs. */
-    private String dataRefFileName;
+    /** Intermediate Merkle tree nodes followed by the inputs. */
+    private byte[][] tree;
 
-    /** Array of intermediate Merkle tree nodes. */
-    private byte[][] nodes;
+    /** Number of intermediate Merkle tree nodes. */
+    private int nodesCount;
 
     /** Maximum index a tree node can have. */
     private int maxIndex;
 
-    /** Used for serializing XML objects. */
-    private Marshaller marshaller;
-
-    /** Factory for creating XML objects. */
-    private ObjectFactory objectFactory = new ObjectFactory();
-
     /**
      * Constructs a hash chain builder.
      * @param hashAlgorithm Identifier (not URL) of the hash algorithm
@@ -122,12 +115,8 @@ public final class HashChainBuilder {
      * @throws Exception in case of errors
      */
     public HashChainBuilder(String hashAlgorithm) throws Exception {
-        this.hashAlgorithm = hashAlgorithm;
         hashAlgorithmUri = getDigestAlgorithmURI(hashAlgorithm);
-
-        marshaller = jaxbCtx.createMarshaller();
-        // Format the XML, good for debugging.
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        stepDigester = new StepDigester(hashAlgorithm);
     }
 
     /**
@@ -135,7 +124,7 @@ public final class HashChainBuilder {
      * @param hash input hash to add
      */
     public void addInputHash(byte[] hash) {
-        if (nodes != null) {
+        if (tree != null) {
             throw new IllegalStateException(
                     "Cannot add inputs to finished tree");
         }
@@ -150,7 +139,7 @@ public final class HashChainBuilder {
      * @throws Exception in case of errors
      */
     public void addInputHash(byte[][] hashes) throws Exception {
-        if (nodes != null) {
+        if (tree != null) {
             throw new IllegalStateException(
                     "Cannot add inputs to finished tree");
         }
@@ -159,7 +148,7 @@ public final class HashChainBuilder {
             inputs.add(hashes[0]);
         } else {
             // Digest the attachments and add a single input.
-            inputs.add(digestHashStep(hashAlgorithm, hashes));
+            inputs.add(stepDigester.digest(hashes));
             // Record the original inputs in separate map.
             multiparts.put(inputs.size() - 1, hashes);
         }
@@ -170,15 +159,20 @@ public final class HashChainBuilder {
      * @throws Exception in case of errors
      */
     public void finishBuilding() throws Exception {
-        // Create array for intermediate nodes.
-        nodes = new byte[getNodesCount()][];
+        // Create array for intermediate nodes and inputs.
+        nodesCount = getNodesCount();
+        tree = new byte[nodesCount + inputs.size()][];
+
+        for (int i = 0; i < inputs.size(); ++i) {
+            tree[nodesCount + i] = inputs.get(i);
+        }
 
         // For special cases of 0 or 1 inputs, we behave differently.
         if (inputs.size() < 2) {
             return;
         }
 
-        maxIndex = nodes.length + inputs.size();
+        maxIndex = tree.length;
 
         // Hash input data items to produce lowest level of non-leaf nodes.
         hashInputs();
@@ -201,28 +195,14 @@ public final class HashChainBuilder {
      */
     public String getHashChainResult(String hashChainFileName)
             throws Exception {
-        if (nodes == null) {
-            throw new IllegalStateException("Tree must be finished");
-        }
-
-        if (inputs.isEmpty()) {
+        if (!hasHashChains()) {
             // Nothing to do for empty tree.
             return null;
         }
 
-        if (inputs.size() == 1 && multiparts.isEmpty()) {
-            throw new IllegalStateException(
-                    "Hash chains cannot be constructed for single input "
-                            + "without attachments.");
-        }
-
-        HashChainResultType result = new HashChainResultType();
-
-        result.setDigestValue(getTreeTop());
-        result.setDigestMethod(digestMethod());
-        result.setURI(hashChainFileName + "#" + STEP + "0");
-
-        return elementToString(objectFactory.createHashChainResult(result));
+        return HashChainXmlWriter.hashChainResult(
+                hashChainFileName + "#" + STEP + "0", hashAlgorithmUri,
+                getTreeTop());
     }
 
     /**
@@ -232,46 +212,79 @@ public final class HashChainBuilder {
      * @throws Exception in case of any errors
      */
     public String[] getHashChains(String dataFileName) throws Exception {
-        if (nodes == null) {
-            throw new IllegalStateException("Tree must be finished");
+        if (!hasHashChains()) {
+            return null;
         }
 
-        if (inputs.isEmpty()) {
-            return null;
+        String[] ret = new String[inputs.size()];
+
+        for (int i = 0; i < inputs.size(); ++i) {
+            ret[i] = getHashChain(dataFileName, i);
         }
 
-        if (inputs.size() == 1 && multiparts.isEmpty()) {
-            throw new IllegalStateException(
-                    "Hash chains cannot be constructed for single input "
-                            + "without attachments.");
+        return ret;
+    }
+
+    /**
+     * Returns XML-encoded hash chain for a n-th input data item.
+     * @param dataFileName name of the file containing data input items
+     * @param itemIndex index of the input data item
+     * @return XML-encoded hash chain for the input data item
+     * @throws Exception in case of any errors
+     */
+    public String getHashChain(String dataFileName, int itemIndex)
+            throws Exception {
+        if (!hasHashChains()) {
+            throw new IllegalStateException("Tree has no inputs");
         }
 
-        this.dataRefFileName = dataFileName;
         if (dataFileName == null) {
             throw new IllegalArgumentException(
                     "dataRefFileName must not be null");
         }
 
-        String[] ret = new String[inputs.size()];
+        if (itemIndex < 0 || itemIndex >= inputs.size()) {
+            throw new IllegalArgumentException(
+                    "Invalid input index " + itemIndex);
+        }
 
         if (inputs.size() > 1) {
-            for (int i = 0; i < inputs.size(); ++i) {
-                ret[i] = makeHashChain(i);
-            }
+            return makeHashChain(dataFileName, itemIndex);
         } else {
             // Special case for one input.
-            ret[0] = makeSingleInputHashChain();
+            return makeSingleInputHashChain(dataFileName);
+        }
+    }
+
+    /**
+     * Checks that the tree is finished and hash chains can be
+     * constructed for it.
+     * @return false if the tree has no inputs
+     */
+    private boolean hasHashChains() {
+        if (tree == null) {
+            throw new IllegalStateException("Tree must be finished");
         }
 
-        return ret;
+        if (inputs.isEmpty()) {
+            return false;
+        }
+
+        if (inputs.size() == 1 && multiparts.isEmpty()) {
+            throw new IllegalStateException(
+                    "Hash chains cannot be constructed for single input "
+                            + "without attachments.");
+        }
+
+        return true;
     }
 
     /**
      * Hashes the non-leaf nodes of the tree, breadth-first, bottom-up.
      */
-    private void hashNodes() throws Exception {
+    private void hashNodes() {
         // levelStart -- index of first node for this level (depth)
-        for (int levelStart = nodes.length / 2; levelStart > 0;
+        for (int levelStart = nodesCount / 2; levelStart > 0;
                 levelStart /= 2) {
             // End of nodes for this level.
             int levelEnd = levelStart * 2;
@@ -279,16 +292,15 @@ public final class HashChainBuilder {
             LOG.trace("Combining: {}-{}", levelStart, levelEnd);
             // Walk through the pairs in this level.
             for (int i = levelStart;
-                    i < levelEnd && nodes[i] != null && nodes[i + 1] != null;
+                    i < levelEnd && tree[i] != null && tree[i + 1] != null;
                     i += 2) {
-                // Combine nodes[i] and nodes[i + 1]
+                // Combine tree[i] and tree[i + 1]
                 LOG.trace("Nodes: Combining {} and {}", i, i + 1);
-                byte[] stepDigest = digestHashStep(hashAlgorithm,
-                        nodes[i], nodes[i + 1]);
+                byte[] stepDigest = stepDigester.digest(tree[i], tree[i + 1]);
 
                 // Store the digest as parent of two inputs.
                 LOG.trace("Storing at {}", parentIdx(i));
-                nodes[parentIdx(i)] = stepDigest;
+                tree[parentIdx(i)] = stepDigest;
             }
         }
     }
@@ -297,19 +309,19 @@ public final class HashChainBuilder {
      * Walks over pairs of inputs and combines them to create lowest
      * level of non-leaf nodes.
      */
-    private void hashInputs() throws Exception {
+    private void hashInputs() {
         for (int i = 0; i < inputs.size() - 1; i += 2) {
-            // Compute the index for nodes.
-            int itemIdx = nodes.length + i;
+            // Compute the index for the tree.
+            int itemIdx = nodesCount + i;
 
             // Combine inputs[i] and inputs[i + 1]
             LOG.trace("Inputs: Combining {} and {}", i, i + 1);
-            byte[] stepDigest = digestHashStep(hashAlgorithm,
-                    inputs.get(i), inputs.get(i + 1));
+            byte[] stepDigest = stepDigester.digest(tree[itemIdx],
+                    tree[itemIdx + 1]);
 
             // Store the digest as parent of two inputs.
             LOG.trace("Storing at {}", parentIdx(itemIdx));
-            nodes[parentIdx(itemIdx)] = stepDigest;
+            tree[parentIdx(itemIdx)] = stepDigest;
         }
     }
 
@@ -318,11 +330,11 @@ public final class HashChainBuilder {
      */
     byte[] getTreeTop() {
         if (inputs.size() == 1) {
-            // For single input, we do not build the nodes array
+            // For single input, we do not build the nodes
             // and directly return the input.
             return inputs.get(0);
         } else {
-            return nodes[ROOT_IDX];
+            return tree[ROOT_IDX];
         }
     }
 
@@ -332,7 +344,7 @@ public final class HashChainBuilder {
      * discovers the missing nodes and, if necessary, creates them.
      * @return the hash of the fixed tree node.
      */
-    private byte[] fixTree(int nodeIdx) throws Exception {
+    private byte[] fixTree(int nodeIdx) {
         LOG.trace("fixTree({})", nodeIdx);
 
         if (nodeIdx >= maxIndex) {
@@ -367,26 +379,19 @@ public final class HashChainBuilder {
 
         // We have values from both left and right subtrees.
         // Combine them and store in the current node.
-        byte[] stepDigest = digestHashStep(hashAlgorithm,
-                leftValue, rightValue);
+        byte[] stepDigest = stepDigester.digest(leftValue, rightValue);
         LOG.trace("Fixing: {} + {} -> {}", new Object[] {
                 leftIdx(nodeIdx), rightIdx(nodeIdx), nodeIdx });
-        nodes[nodeIdx] = stepDigest;
+        tree[nodeIdx] = stepDigest;
         return stepDigest;
     }
 
     /**
-     * Treats nodes+inputs as a single large array and returns data
-     * at a given index.
+     * Returns tree data at a given index, null for indexes past the
+     * end of the tree.
      */
     private byte[] get(int index) {
-        if (index < nodes.length) {
-            return nodes[index];
-        } else if (index < maxIndex) {
-            return inputs.get(index - nodes.length);
-        } else {
-            return null;
-        }
+        return index < maxIndex ? tree[index] : null;
     }
 
     /**
@@ -408,11 +413,10 @@ public final class HashChainBuilder {
     /**
      * Returns XML-encoded hash chain for a n-th input data item.
      */
-    private String makeHashChain(int itemIndex) throws Exception {
+    private String makeHashChain(String dataFileName, int itemIndex) {
         LOG.trace("makeHashChain({})", itemIndex);
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        xmlWriter.startHashChain(hashAlgorithmUri);
 
         // Hash step count is used to generate references.
         int stepCount = 0;
@@ -423,7 +427,7 @@ public final class HashChainBuilder {
         int currentLevel = ceilingLog2(inputs.size()) - 1;
 
         // Walk the tree downwards from the root node.
-        while (currentNodeIdx < nodes.length) {
+        while (currentNodeIdx < nodesCount) {
             // Indicates whether we are interested in
             // left (0) or right (1) child.
             int myDirection = (itemIndex & (1 << currentLevel)) >> currentLevel;
@@ -441,35 +445,20 @@ public final class HashChainBuilder {
                 --currentLevel;
             }
 
-            // For the other node, we always use hash value.
-            AbstractValueType otherData = hashValue(getDeep(otherChildIdx));
-            AbstractValueType myData;
+            // Construct the hash step, the values are written in the
+            // order of the children.
+            xmlWriter.startHashStep(STEP + stepCount);
 
-            // If the child is leaf node and there are no attachments,
-            // use the data ref. Otherwise use the StepRef.
-            if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
-                // Plain data ref.
-                myData = dataRef(get(myChildIdx));
+            if (myDirection == 0) {
+                writeMyData(dataFileName, itemIndex, myChildIdx, stepCount);
+                // For the other node, we always use hash value.
+                xmlWriter.hashValue(getDeep(otherChildIdx));
             } else {
-                // Non-leaf nodes refer to other hash steps.
-                myData = stepRef(stepCount + 1);
+                xmlWriter.hashValue(getDeep(otherChildIdx));
+                writeMyData(dataFileName, itemIndex, myChildIdx, stepCount);
             }
 
-            // Construct the hash step.
-            HashStepType hashStep = new HashStepType();
-            hashStep.setId(STEP + stepCount);
-            // Create two elements.
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-
-            // Set the data items.
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    myDirection, myData);
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    1 - myDirection, otherData);
-
-            // Add to chain
-            hashChain.getHashStep().add(hashStep);
+            xmlWriter.endHashStep();
 
             // Update state variables.
             ++stepCount;
@@ -481,99 +470,58 @@ public final class HashChainBuilder {
         // step that references all the individual parts.
         if (multiparts.containsKey(itemIndex)) {
             LOG.trace("Adding attachments");
-            hashChain.getHashStep().add(
-                    multipartStep(multiparts.get(itemIndex), stepCount));
+            multipartStep(dataFileName, multiparts.get(itemIndex), stepCount);
         }
 
-        return elementToString(objectFactory.createHashChain(hashChain));
-    }
-
-    /**
-     * Creates reference to input data.
-     */
-    private DataRefType dataRef(byte[] digest) {
-        return dataRef(dataRefFileName, digest);
+        return xmlWriter.endHashChain();
     }
 
     /**
-     * Creates reference to input data with given file name.
+     * Writes the value of the hash step on the path to the input.
+     * If the child is leaf node and there are no attachments,
+     * uses the data ref. Otherwise uses the StepRef.
      */
-    private static DataRefType dataRef(String fileName, byte[] digest) {
-        DataRefType dataRef = new DataRefType();
-        dataRef.setURI(fileName);
-        dataRef.setDigestValue(digest);
-        return dataRef;
-    }
-
-    /**
-     * Creates reference to another hash step.
-     */
-    private static StepRefType stepRef(int stepCount) {
-        StepRefType stepRef = new StepRefType();
-        stepRef.setURI("#" + STEP + stepCount);
-        return stepRef;
-    }
-
-    /**
-     * Creates a concrete hash value.
-     */
-    private static HashValueType hashValue(byte[] data) {
-        HashValueType hashValue = new HashValueType();
-        hashValue.setDigestValue(data);
-        return hashValue;
+    private void writeMyData(String dataFileName, int itemIndex,
+            int myChildIdx, int stepCount) {
+        if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
+            // Plain data ref.
+            xmlWriter.dataRef(dataFileName, get(myChildIdx));
+        } else {
+            // Non-leaf nodes refer to other hash steps.
+            xmlWriter.stepRef("#" + STEP + (stepCount + 1));
+        }
     }
 
     /**
      * Makes hash chain for special case of inputs.size() == 1.
      */
-    private String makeSingleInputHashChain() throws Exception {
+    private String makeSingleInputHashChain(String dataFileName) {
         LOG.trace("makeSingleInputHashChain()");
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        xmlWriter.startHashChain(hashAlgorithmUri);
 
         // This is a multipart input. Add single step for all
         // the input parts
-        hashChain.getHashStep().add(multipartStep(multiparts.get(0), 0));
+        multipartStep(dataFileName, multiparts.get(0), 0);
 
-        return elementToString(objectFactory.createHashChain(hashChain));
+        return xmlWriter.endHashChain();
     }
 
-    private HashStepType multipartStep(byte[][] inputSet, int stepCount) {
-        HashStepType ret = new HashStepType();
-        ret.setId(STEP + stepCount);
+    private void multipartStep(String dataFileName, byte[][] inputSet,
+            int stepCount) {
+        xmlWriter.startHashStep(STEP + stepCount);
 
         for (int i = 0; i < inputSet.length; ++i) {
             if (i == 0) {
                 // The first input is message
-                ret.getHashValueOrStepRefOrDataRef().add(dataRef(inputSet[i]));
+                xmlWriter.dataRef(dataFileName, inputSet[i]);
             } else {
                 // All the other inputs are attachments, starting from 1.
-                ret.getHashValueOrStepRefOrDataRef().add(
-                        dataRef(attachment(i), inputSet[i]));
+                xmlWriter.dataRef(attachment(i), inputSet[i]);
             }
         }
 
-        return ret;
-    }
-
-    /**
-     * Creates a DigestMethod element, based on the current hash algorithm.
-     */
-    private DigestMethodType digestMethod() {
-        DigestMethodType digestMethod = new DigestMethodType();
-        digestMethod.setAlgorithm(hashAlgorithmUri);
-        return digestMethod;
-    }
-
-    /**
-     * Serializes the given XML element to a string.
-     */
-    private <T> String elementToString(JAXBElement<T> element)
-            throws Exception {
-        StringWriter writer = new StringWriter();
-        marshaller.marshal(element, writer);
-        return writer.toString();
+        xmlWriter.endHashStep();
     }
 
     /**
@@ -608,7 +556,7 @@ public final class HashChainBuilder {
      * Returns true, if node identified by nodeIdx is a leaf node.
      */
     private boolean isLeaf(int nodeIdx) {
-        return nodeIdx >= nodes.length;
+        return nodeIdx >= nodesCount;
     }
 
     /**
@@ -626,12 +574,4 @@ public final class HashChainBuilder {
     private static int pow2(int n) {
         return 1 << n;
     }
-
-    static {
-        try {
-            jaxbCtx = JAXBContext.newInstance(ObjectFactory.class);
-        } catch (Exception ex) {
-            LOG.error("Failed to initialize JAXB context", ex);
-        }
-    }
 }
@@ -49,6 +49,7 @@ import javax.xml.validation.Schema;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -89,6 +90,15 @@ public final class HashChainVerifier {
     /** Records set of inputs that were used by the hash chain calculation. */
     private Set<String> usedInputs = new HashSet<>();
 
+    /**
+     * Message digests of the hash steps, reused for all the steps of the verification.
+     * Map from digest method URI to message digest.
+     */
+    private Map<String, MessageDigest> messageDigests = new HashMap<>();
+
+    /** Parses all the hash chain documents of the verification. */
+    private Unmarshaller unmarshaller;
+
     /**
      * Verifies a set of inputs with respect to hash chain result.
      * Silently returns when all the inputs are correctly referenced by the hash chain. Throws exception on error.
@@ -122,8 +132,7 @@ public final class HashChainVerifier {
         byte[] hashStepData = resolveHashStep(hashChainResult.getURI(), null);
 
         // Digest the last hash step result.
-        byte[] digestedData = calculateDigest(
-                getAlgorithmId(hashChainResult.getDigestMethod().getAlgorithm()), hashStepData);
+        byte[] digestedData = digest(hashChainResult.getDigestMethod().getAlgorithm(), hashStepData);
 
         // Compare with the signed hash chain result.
         if (!Arrays.equals(digestedData, hashChainResult.getDigestValue())) {
@@ -146,24 +155,27 @@ public final class HashChainVerifier {
         }
     }
 
-    private static HashChainResultType parseHashChainResult(InputStream xml) throws Exception {
+    private HashChainResultType parseHashChainResult(InputStream xml) throws Exception {
         return validateAndParse(xml, HashChainResultType.class);
     }
 
 
-    private static HashChainType parseHashChain(InputStream xml) throws Exception {
+    private HashChainType parseHashChain(InputStream xml) throws Exception {
         return validateAndParse(xml, HashChainType.class);
     }
 
     @SuppressWarnings("unchecked")
-    private static <T> T validateAndParse(InputStream xml, Class<T> type) throws Exception {
+    private <T> T validateAndParse(InputStream xml, Class<T> type) throws Exception {
         // They have made it rather impossible to get the actual source from JAXBSource so let's
         // pass StreamSource which we are actually able to handle later in SchemaVerfier.
         byte[] xmlBytes = IOUtils.toByteArray(xml);
 
         HashChainValidator.validate(new StreamSource(new ByteArrayInputStream(xmlBytes)));
 
-        Unmarshaller unmarshaller = jaxbCtx.createUnmarshaller();
+        if (unmarshaller == null) {
+            unmarshaller = jaxbCtx.createUnmarshaller();
+        }
+
         JAXBElement<T> element = (JAXBElement<T>) unmarshaller.unmarshal(new ByteArrayInputStream(xmlBytes));
 
         return element.getValue();
@@ -218,7 +230,19 @@ public final class HashChainVerifier {
         String digestMethodUri = getValueDigestMethodUri(stepRef, currentChain);
 
         // Digest the hash step result.
-        return new DigestValue(digestMethodUri, calculateDigest(getAlgorithmId(digestMethodUri), resolved));
+        return new DigestValue(digestMethodUri, digest(digestMethodUri, resolved));
+    }
+
+    /** Digests the hash step data with the message digest of the verifier. */
+    private byte[] digest(String digestMethodUri, byte[] data) throws Exception {
+        MessageDigest messageDigest = messageDigests.get(digestMethodUri);
+
+        if (messageDigest == null) {
+            messageDigest = MessageDigest.getInstance(getAlgorithmId(digestMethodUri));
+            messageDigests.put(digestMethodUri, messageDigest);
+        }
+
+        return messageDigest.digest(data);
     }
 
     private DigestValue resolveDataRef(DataRefType dataRef, HashChainType currentChain) throws Exception {
@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import java.util.Base64;
+
+/**
+ * Writes the hash chain XML documents from string templates. The output is identical to the formatted output of
+ * the JAXB marshaller for the HashChainResult and HashChain elements, so the hash chains can be created without
+ * building and marshalling an object graph for every input. Not thread-safe.
+ */
+final class HashChainXmlWriter {
+
+    private static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String NAMESPACES =
+            " xmlns=\"http://www.w3.org/2000/09/xmldsig#\" xmlns:ns2=\"http://cyber.ee/hashchain\"";
+
+    private static final String INDENT = "    ";
+    private static final String STEP_VALUE_INDENT = INDENT + INDENT;
+    private static final String DIGEST_VALUE_INDENT = STEP_VALUE_INDENT + INDENT;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final Base64.Encoder BASE64 = Base64.getEncoder();
+
+    private final StringBuilder xml = new StringBuilder(INITIAL_CAPACITY);
+
+    /**
+     * Creates the HashChainResult document.
+     * @param uri reference to the last hash step
+     * @param digestMethodUri digest method of the result
+     * @param digest digest of the last hash step
+     * @return the XML document
+     */
+    static String hashChainResult(String uri, String digestMethodUri, byte[] digest) {
+        HashChainXmlWriter writer = new HashChainXmlWriter();
+
+        writer.xml.append(XML_DECLARATION).append("<ns2:HashChainResult URI=\"");
+        writer.appendAttribute(uri).append('"').append(NAMESPACES).append(">\n");
+        writer.digestMethod(INDENT + "<DigestMethod", digestMethodUri);
+        writer.xml.append(INDENT).append("<DigestValue>");
+        writer.appendBase64(digest).append("</DigestValue>\n</ns2:HashChainResult>\n");
+
+        return writer.xml.toString();
+    }
+
+    /**
+     * Starts a HashChain document.
+     * @param defaultDigestMethodUri default digest method of the hash chain
+     * @return this writer
+     */
+    HashChainXmlWriter startHashChain(String defaultDigestMethodUri) {
+        xml.setLength(0);
+        xml.append(XML_DECLARATION).append("<ns2:HashChain").append(NAMESPACES).append(">\n");
+        digestMethod(INDENT + "<ns2:DefaultDigestMethod", defaultDigestMethodUri);
+
+        return this;
+    }
+
+    HashChainXmlWriter startHashStep(String id) {
+        xml.append(INDENT).append("<ns2:HashStep id=\"");
+        appendAttribute(id).append("\">\n");
+
+        return this;
+    }
+
+    HashChainXmlWriter stepRef(String uri) {
+        xml.append(STEP_VALUE_INDENT).append("<ns2:StepRef URI=\"");
+        appendAttribute(uri).append("\"/>\n");
+
+        return this;
+    }
+
+    HashChainXmlWriter hashValue(byte[] digest) {
+        xml.append(STEP_VALUE_INDENT).append("<ns2:HashValue>\n");
+        digestValue(digest);
+        xml.append(STEP_VALUE_INDENT).append("</ns2:HashValue>\n");
+
+        return this;
+    }
+
+    HashChainXmlWriter dataRef(String uri, byte[] digest) {
+        xml.append(STEP_VALUE_INDENT).append("<ns2:DataRef URI=\"");
+        appendAttribute(uri).append("\">\n");
+        digestValue(digest);
+        xml.append(STEP_VALUE_INDENT).append("</ns2:DataRef>\n");
+
+        return this;
+    }
+
+    HashChainXmlWriter endHashStep() {
+        xml.append(INDENT).append("</ns2:HashStep>\n");
+
+        return this;
+    }
+
+    /**
+     * Ends the HashChain document.
+     * @return the XML document
+     */
+    String endHashChain() {
+        return xml.append("</ns2:HashChain>\n").toString();
+    }
+
+    private void digestMethod(String element, String algorithm) {
+        xml.append(element).append(" Algorithm=\"");
+        appendAttribute(algorithm).append("\"/>\n");
+    }
+
+    private void digestValue(byte[] digest) {
+        xml.append(DIGEST_VALUE_INDENT).append("<DigestValue>");
+        appendBase64(digest).append("</DigestValue>\n");
+    }
+
+    private StringBuilder appendBase64(byte[] data) {
+        return xml.append(BASE64.encodeToString(data));
+    }
+
+    /**
+     * Appends an attribute value, escaped like the JAXB marshaller does.
+     */
+    private StringBuilder appendAttribute(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '&':
+                    xml.append("&amp;");
+                    break;
+                case '<':
+                    xml.append("&lt;");
+                    break;
+                case '>':
+                    xml.append("&gt;");
+                    break;
+                case '"':
+                    xml.append("&quot;");
+                    break;
+                default:
+                    xml.append(c);
+            }
+        }
+
+        return xml;
+    }
+}
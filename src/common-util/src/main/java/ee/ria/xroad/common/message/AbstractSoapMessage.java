@@ -62,6 +62,6 @@ public abstract class AbstractSoapMessage<T> implements SoapMessage {
 
     @Override
     public String getXml() throws UnsupportedEncodingException {
-        return new String(bytes, charset);
+        return new String(getBytes(), charset);
     }
 }
@@ -86,7 +86,7 @@ public class MultipartSoapMessageEncoder implements SoapMessageEncoder {
                      Map<String, String> additionalHeaders) throws Exception {
         multipart.startPart(soapMessage.getContentType(),
                 convertHeaders(additionalHeaders));
-        multipart.write(soapMessage.getBytes());
+        IOUtils.copy(soapMessage.getContent(), multipart);
     }
 
     @Override
@@ -25,11 +25,13 @@
 package ee.ria.xroad.common.message;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.identifier.XRoadObjectType;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.XmlUtils;
 
@@ -38,10 +40,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.bouncycastle.operator.DigestCalculator;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
@@ -75,11 +80,17 @@ import static ee.ria.xroad.common.ErrorCodes.X_MISSING_HEADER;
 import static ee.ria.xroad.common.ErrorCodes.X_MISSING_HEADER_FIELD;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.message.SoapUtils.validateMimeType;
+import static ee.ria.xroad.common.util.CryptoUtils.createDigestCalculator;
 import static ee.ria.xroad.common.util.MimeUtils.UTF8;
 import static ee.ria.xroad.common.util.MimeUtils.hasUtf8Charset;
 
 /**
  * SOAP message parser that does not construct a DOM tree of the message.
+ *
+ * In streaming mode the message content is written to a buffer that spills to
+ * a temporary file past the configured memory threshold and the message hash
+ * is calculated while the message is read. The resulting message must be
+ * released with {@link SoapMessageImpl#consume()}.
  */
 @Slf4j
 public class SaxSoapParserImpl implements SoapParser {
@@ -170,6 +181,24 @@ public class SaxSoapParserImpl implements SoapParser {
 
     private static final SAXParserFactory PARSER_FACTORY = createSaxParserFactory();
 
+    private final boolean streaming;
+
+    /**
+     * Constructs a parser that keeps the message content in memory.
+     */
+    public SaxSoapParserImpl() {
+        this(false);
+    }
+
+    /**
+     * Constructs a parser.
+     * @param streaming if true, the message content is kept in a spill-to-disk
+     * buffer and the message hash is calculated while parsing
+     */
+    public SaxSoapParserImpl(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     @Override
     public Soap parse(String contentType, InputStream is) {
         String mimeType = MimeUtils.getBaseContentType(contentType);
@@ -184,7 +213,9 @@ public class SaxSoapParserImpl implements SoapParser {
         }
 
         try {
-            return parseMessage(is, mimeType, contentType, charset);
+            return streaming
+                    ? parseMessageStreaming(is, mimeType, contentType, charset)
+                    : parseMessage(is, mimeType, contentType, charset);
         } catch (Exception e) {
             throw translateException(e);
         }
@@ -202,7 +233,7 @@ public class SaxSoapParserImpl implements SoapParser {
 
         CodedException fault = handler.getFault();
         if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
+            return createSoapFault(charset, rawXml.toByteArray(), fault);
         }
 
         byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
@@ -210,6 +241,56 @@ public class SaxSoapParserImpl implements SoapParser {
         return createSoapMessage(contentType, charset, handler, xmlBytes);
     }
 
+    private Soap parseMessageStreaming(InputStream is, String mimeType, String contentType, String charset)
+            throws Exception {
+        log.trace("parseMessageStreaming({}, {})", mimeType, charset);
+
+        int memoryThreshold = SystemProperties.getProxySoapStreamingMemoryThreshold();
+
+        CachingStream rawXml = new CachingStream(memoryThreshold);
+        CachingStream processedXml = new CachingStream(memoryThreshold);
+
+        try {
+            // Whether the processed XML is used is only known after parsing,
+            // so both versions are hashed while they are written.
+            DigestCalculator rawDigest = createDigestCalculator(SoapUtils.getHashAlgoId());
+            DigestCalculator processedDigest = createDigestCalculator(SoapUtils.getHashAlgoId());
+
+            InputStream proxyStream = excludeUtf8Bom(contentType,
+                    new TeeInputStream(is, new TeeOutputStream(rawXml, rawDigest.getOutputStream())));
+            Writer outputWriter = new OutputStreamWriter(
+                    new TeeOutputStream(processedXml, processedDigest.getOutputStream()), charset);
+            XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+
+            rawXml.flush();
+
+            CodedException fault = handler.getFault();
+            if (fault != null) {
+                Soap soapFault = createSoapFault(charset, IOUtils.toByteArray(rawXml.getCachedContents()), fault);
+
+                rawXml.consume();
+                processedXml.consume();
+
+                return soapFault;
+            }
+
+            if (isProcessedXmlRequired()) {
+                rawXml.consume();
+
+                return createSoapMessage(contentType, charset, handler, processedXml, processedDigest.getDigest());
+            } else {
+                processedXml.consume();
+
+                return createSoapMessage(contentType, charset, handler, rawXml, rawDigest.getDigest());
+            }
+        } catch (Exception e) {
+            rawXml.consume();
+            processedXml.consume();
+
+            throw e;
+        }
+    }
+
     private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
             throws Exception {
         try (BufferedWriter out = new BufferedWriter(writer)) {
@@ -234,11 +315,17 @@ public class SaxSoapParserImpl implements SoapParser {
                 null, handler.getServiceName(), handler.isRpc(), contentType);
     }
 
+    private static Soap createSoapMessage(String contentType, String charset,
+            XRoadSoapHandler handler, CachingStream content, byte[] hash) throws Exception {
+        return new SoapMessageImpl(content, hash, charset, handler.getHeader(),
+                handler.getServiceName(), handler.isRpc(), contentType);
+    }
+
     private static Soap createSoapFault(String charset,
-            ByteArrayOutputStream rawXml, CodedException fault) {
+            byte[] rawXml, CodedException fault) {
         return new SoapFault(fault.getFaultCode(), fault.getFaultString(),
                 fault.getFaultActor(), fault.getFaultDetail(),
-                rawXml.toByteArray(), charset);
+                rawXml, charset);
     }
 
     @SneakyThrows
@@ -26,6 +26,8 @@ package ee.ria.xroad.common.message;
 
 import ee.ria.xroad.common.util.MimeTypes;
 
+import org.apache.commons.io.IOUtils;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -58,7 +60,7 @@ public class SimpleSoapEncoder implements SoapMessageEncoder {
         if (additionalHeaders != null && additionalHeaders.size() > 0) {
             throw new IllegalArgumentException("Additional headers not supported!");
         }
-        outputStream.write(message.getBytes());
+        IOUtils.copyLarge(message.getContent(), outputStream);
     }
 
     @Override
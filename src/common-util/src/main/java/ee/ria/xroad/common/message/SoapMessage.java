@@ -28,6 +28,9 @@ import ee.ria.xroad.common.util.MimeTypes;
 
 import javax.xml.soap.SOAPMessage;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
 /**
  * Describes a Soap message that is received from the client or service.
  */
@@ -43,6 +46,20 @@ public interface SoapMessage extends Soap {
      */
     byte[] getBytes();
 
+    /**
+     * @return stream of the raw byte content of the message.
+     */
+    default InputStream getContent() {
+        return new ByteArrayInputStream(getBytes());
+    }
+
+    /**
+     * @return length of the raw byte content of the message.
+     */
+    default long getContentLength() {
+        return getBytes().length;
+    }
+
     /**
      * @return the original charset of the message.
      */
@@ -28,11 +28,16 @@ import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.util.CachingStream;
 
 import lombok.SneakyThrows;
+import org.apache.commons.io.IOUtils;
 
 import javax.xml.soap.SOAPMessage;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
 import static ee.ria.xroad.common.message.SoapUtils.isResponseMessage;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 
@@ -43,6 +48,8 @@ public class SoapMessageImpl extends AbstractSoapMessage<SoapHeader> {
 
     private byte[] hash;
 
+    private CachingStream content;
+
     SoapMessageImpl(byte[] rawXml, String charset, SoapHeader header,
             SOAPMessage soap, String serviceName, boolean isRpcEncoded,
             String originalContentType) throws Exception {
@@ -50,6 +57,53 @@ public class SoapMessageImpl extends AbstractSoapMessage<SoapHeader> {
                 isRpcEncoded, originalContentType);
     }
 
+    /**
+     * Creates a message whose content is held in a streaming buffer. The hash
+     * of the message has been calculated while the content was read.
+     */
+    SoapMessageImpl(CachingStream content, byte[] hash, String charset,
+            SoapHeader header, String serviceName, boolean isRpcEncoded,
+            String originalContentType) throws Exception {
+        super(null, charset, header, null, isResponseMessage(serviceName),
+                isRpcEncoded, originalContentType);
+
+        this.content = content;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the raw byte content of the message. For streamed messages the
+     * content is read from the buffer on every invocation, prefer
+     * {@link #getContent()} and {@link #getContentLength()} where possible.
+     * @return the raw byte content of the message
+     */
+    @Override
+    @SneakyThrows
+    public byte[] getBytes() {
+        return content != null ? IOUtils.toByteArray(content.getCachedContents(), content.size()) : super.getBytes();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return content != null ? content.getCachedContents() : new ByteArrayInputStream(super.getBytes());
+    }
+
+    @Override
+    public long getContentLength() {
+        return content != null ? content.size() : super.getBytes().length;
+    }
+
+    /**
+     * Releases the memory buffers and the temporary file holding the content
+     * of a streamed message.
+     * The message content is not available after this.
+     */
+    public void consume() {
+        if (content != null) {
+            content.consume();
+        }
+    }
+
     /**
      * Lazy method to retrieve the hash of the message, will calculate it
      * on the first invocation of the method.
@@ -28,7 +28,10 @@ import ee.ria.xroad.common.util.CryptoUtils;
 
 import lombok.Data;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.util.function.Supplier;
 
 
 /**
@@ -49,6 +52,61 @@ public final class MessagePart implements Serializable {
     /** Optionally holds the message if this is a message part */
     private final byte[] message;
 
+    /** Optionally provides the message if this is a message part that is not held in memory */
+    private final transient Supplier<InputStream> messageContent;
+
+    /**
+     * Creates a new part.
+     * @param name name of the part
+     * @param hashAlgoId identifier of the algorithm used to calculate the hash
+     * @param data the data
+     * @param message the message, or null if this is not a message part
+     */
+    public MessagePart(String name, String hashAlgoId, byte[] data, byte[] message) {
+        this(name, hashAlgoId, data, message, null);
+    }
+
+    private MessagePart(String name, String hashAlgoId, byte[] data, byte[] message,
+            Supplier<InputStream> messageContent) {
+        this.name = name;
+        this.hashAlgoId = hashAlgoId;
+        this.data = data;
+        this.message = message;
+        this.messageContent = messageContent;
+    }
+
+    /**
+     * Creates a message part whose message is read from the given content every time it is digested,
+     * so that the message does not have to be held in memory.
+     * @param name name of the part
+     * @param hashAlgoId identifier of the algorithm used to calculate the hash
+     * @param data the data
+     * @param messageContent provides a new stream of the message
+     * @return the message part
+     */
+    public static MessagePart withMessageContent(String name, String hashAlgoId, byte[] data,
+            Supplier<InputStream> messageContent) {
+        return new MessagePart(name, hashAlgoId, data, null, messageContent);
+    }
+
+    /**
+     * @return true, if this part has a message
+     */
+    public boolean hasMessage() {
+        return message != null || messageContent != null;
+    }
+
+    /**
+     * @return new stream of the message, or null if this part has no message
+     */
+    public InputStream getMessageContent() {
+        if (message != null) {
+            return new ByteArrayInputStream(message);
+        }
+
+        return messageContent != null ? messageContent.get() : null;
+    }
+
     /**
      * @return the raw data
      */
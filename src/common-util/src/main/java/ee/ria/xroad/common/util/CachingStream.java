@@ -26,42 +26,75 @@ package ee.ria.xroad.common.util;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory and in a temporary file. Contents are kept in pooled
+ * buffers until they grow past the memory threshold, after which they are
+ * written to a temporary file.
  */
 @Slf4j
-public class CachingStream extends FilterOutputStream {
-    private SeekableByteChannel channel;
+public class CachingStream extends OutputStream {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final BufferPool BUFFER_POOL = new BufferPool(SystemProperties.getCachingStreamBufferPoolSize());
+
+    private static final AtomicLong STREAM_COUNT = new AtomicLong();
+    private static final AtomicLong SPILL_COUNT = new AtomicLong();
+
+    private final int memoryThreshold;
+
+    private List<ByteBuffer> buffers = new ArrayList<>();
+    private long size;
+
+    private FileChannel channel;
+    private OutputStream out;
     private Path tempFile;
 
+    private volatile boolean consumed;
+
+    // Readers of the memory buffers hold the read lock while reading, so that the buffers are
+    // not returned to the pool and reused while a read is in progress. Readers opened before the
+    // contents were written to the temporary file continue reading from the file.
+    private final ReadWriteLock contentLock = new ReentrantReadWriteLock();
+
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
-     *
-     * @throws IOException if I/O errors occurred
+     * Constructs a new caching stream that keeps up to the configured memory
+     * threshold of data in memory and caches the rest in a temporary file.
      */
-    public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
-        super(null);
+    public CachingStream() {
+        this(SystemProperties.getCachingStreamMemoryThreshold());
+    }
 
-        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    /**
+     * Constructs a new caching stream that keeps up to the given number of
+     * bytes in memory and caches the rest in a temporary file.
+     *
+     * @param memoryThreshold number of bytes kept in memory
+     */
+    public CachingStream(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+        STREAM_COUNT.incrementAndGet();
     }
 
     @Override
@@ -70,10 +103,51 @@ public class CachingStream extends FilterOutputStream {
         flush();
     }
 
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+        if (consumed) {
+            throw new IOException("Caching stream has been consumed");
+        }
+
+        if (out == null && size + len > memoryThreshold) {
+            spill();
+        }
+
+        if (out != null) {
+            out.write(b, off, len);
+        } else {
+            int offset = off;
+            int remaining = len;
+
+            while (remaining > 0) {
+                ByteBuffer buffer = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+
+                if (buffer == null || !buffer.hasRemaining()) {
+                    buffer = BUFFER_POOL.acquire();
+                    buffers.add(buffer);
+                }
+
+                int count = Math.min(remaining, buffer.remaining());
+                buffer.put(b, offset, count);
+
+                offset += count;
+                remaining -= count;
+            }
+        }
+
+        size += len;
     }
 
     /**
@@ -83,21 +157,215 @@ public class CachingStream extends FilterOutputStream {
      */
     public CacheInputStream getCachedContents() {
         try {
-            return new CacheInputStream(channel);
+            return channel != null
+                    ? new CacheInputStream(channel)
+                    : new CacheInputStream(new BufferListInputStream(), size);
         } catch (IOException ex) { // the position shouldn't really throw
             throw ErrorCodes.translateException(ex);
         }
     }
 
     /**
-     * Finalize caching stream. Use to avoid file handle leaks.
+     * @return number of bytes written to the stream
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the contents have been written to a temporary file
+     */
+    public boolean isSpilled() {
+        return channel != null;
+    }
+
+    /**
+     * Finalize caching stream. Use to avoid file handle leaks and to return
+     * the memory buffers to the pool. Streams returned by {@link #getCachedContents()}
+     * fail with an IOException after the caching stream has been consumed.
      */
     public void consume() {
+        contentLock.writeLock().lock();
+
         try {
-            channel.close();
-        } catch (IOException e) {
-            log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            // open readers fail on their next read instead of reading buffers that have been reused
+            consumed = true;
+
+            releaseBuffers();
+        } finally {
+            contentLock.writeLock().unlock();
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            }
         }
     }
 
+    /**
+     * @return number of caching streams created
+     */
+    public static long getStreamCount() {
+        return STREAM_COUNT.get();
+    }
+
+    /**
+     * @return number of caching streams that have been written to a temporary file
+     */
+    public static long getSpillCount() {
+        return SPILL_COUNT.get();
+    }
+
+    private void spill() throws IOException {
+        log.trace("Caching stream exceeded {} bytes, writing contents to a temporary file", memoryThreshold);
+
+        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        FileChannel fileChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+
+        for (ByteBuffer buffer : buffers) {
+            ByteBuffer data = (ByteBuffer) buffer.duplicate().flip();
+
+            while (data.hasRemaining()) {
+                fileChannel.write(data);
+            }
+        }
+
+        contentLock.writeLock().lock();
+
+        try {
+            // open readers of the memory buffers switch to the file on their next read
+            channel = fileChannel;
+
+            releaseBuffers();
+        } finally {
+            contentLock.writeLock().unlock();
+        }
+
+        out = Channels.newOutputStream(channel);
+
+        SPILL_COUNT.incrementAndGet();
+    }
+
+    private void releaseBuffers() {
+        if (buffers != null) {
+            buffers.forEach(BUFFER_POOL::release);
+            buffers = null;
+        }
+    }
+
+    /**
+     * Reads the contents kept in memory, or the same contents from the temporary file once the memory
+     * buffers have been written to it. Every stream has its own position.
+     */
+    private final class BufferListInputStream extends InputStream {
+        private final ByteBuffer[] data;
+        private final long limit;
+        private int index;
+        private long position;
+
+        BufferListInputStream() {
+            List<ByteBuffer> contents = buffers != null ? buffers : new ArrayList<>();
+
+            data = contents.stream()
+                    .map(buffer -> (ByteBuffer) buffer.duplicate().flip())
+                    .toArray(ByteBuffer[]::new);
+            limit = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            return read(b, 0, 1) == -1 ? -1 : Byte.toUnsignedInt(b[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            contentLock.readLock().lock();
+
+            try {
+                if (consumed) {
+                    throw new IOException("Caching stream has been consumed");
+                }
+
+                if (position >= limit) {
+                    return -1;
+                }
+
+                int count = buffers == null ? readFile(b, off, len) : readBuffers(b, off, len);
+
+                if (count > 0) {
+                    position += count;
+                }
+
+                return count;
+            } finally {
+                contentLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            return channel == null && index < data.length ? data[index].remaining() : 0;
+        }
+
+        private int readBuffers(byte[] b, int off, int len) {
+            while (!data[index].hasRemaining()) {
+                index++;
+            }
+
+            int count = Math.min(len, data[index].remaining());
+            data[index].get(b, off, count);
+
+            return count;
+        }
+
+        private int readFile(byte[] b, int off, int len) throws IOException {
+            // positional read, does not move the position the contents are written at
+            return channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, limit - position)), position);
+        }
+    }
+
+    /**
+     * Pool of direct memory buffers. At most the given number of direct
+     * buffers are allocated, heap buffers are used when the pool is exhausted.
+     */
+    private static final class BufferPool {
+        private final int capacity;
+        private final BlockingQueue<ByteBuffer> pool;
+        private final AtomicInteger allocated = new AtomicInteger();
+
+        BufferPool(int capacity) {
+            this.capacity = capacity;
+            this.pool = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer buffer = pool.poll();
+
+            if (buffer != null) {
+                return buffer;
+            }
+
+            if (allocated.incrementAndGet() <= capacity) {
+                return ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+
+            allocated.decrementAndGet();
+
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        void release(ByteBuffer buffer) {
+            if (buffer.isDirect()) {
+                buffer.clear();
+                pool.offer(buffer);
+            }
+        }
+    }
 }
@@ -0,0 +1,93 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.junit.Test;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA512_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmURI;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests to verify the DER encoding of the DigestList data structure.
+ */
+public class DigestListTest {
+
+    /**
+     * Test to ensure the digest list encoding is identical to the ASN.1
+     * encoding with short and long lengths.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void sameAsAsn1Encoding() throws Exception {
+        for (int count : new int[] {0, 1, 2, 3, 10, 1000}) {
+            byte[][] digests = new byte[count][];
+            for (int i = 0; i < count; ++i) {
+                digests[i] = new byte[i % 300];
+            }
+
+            assertArrayEquals(encode(SHA256_ID, digests),
+                    DigestList.concatDigests(
+                            getDigestAlgorithmURI(SHA256_ID), digests));
+        }
+    }
+
+    /**
+     * Test to ensure the hash step digest is calculated from the ASN.1
+     * encoding of the digest list.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void digestHashStep() throws Exception {
+        byte[][] digests = {new byte[] {1, 2, 3 }, new byte[200] };
+
+        assertArrayEquals(
+                calculateDigest(SHA512_ID, encode(SHA512_ID, digests)),
+                DigestList.digestHashStep(SHA512_ID, digests));
+    }
+
+    private static byte[] encode(String digestMethod, byte[][] digests)
+            throws Exception {
+        DERUTF8String uri = new DERUTF8String(
+                getDigestAlgorithmURI(digestMethod));
+
+        ASN1EncodableVector list = new ASN1EncodableVector();
+        for (byte[] digest : digests) {
+            ASN1EncodableVector value = new ASN1EncodableVector();
+            value.add(new DEROctetString(digest));
+            value.add(uri);
+            value.add(new DERSequence());
+            list.add(new DERSequence(value));
+        }
+
+        return new DERSequence(list).getEncoded();
+    }
+}
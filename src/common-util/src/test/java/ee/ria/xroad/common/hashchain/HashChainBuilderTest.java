@@ -28,6 +28,11 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 
 import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
@@ -174,6 +179,57 @@ public class HashChainBuilderTest {
         printChains(builder);
     }
 
+    /**
+     * Test that ensures the hash chains are identical to the JAXB
+     * marshaller output of the same hash chains.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void sameAsJaxbOutput() throws Exception {
+        LOG.info("sameAsJaxbOutput()");
+
+        JAXBContext jaxbCtx = JAXBContext.newInstance(ObjectFactory.class);
+
+        for (int treeSize = 1; treeSize < 20; ++treeSize) {
+            HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+            for (int i = 0; i < treeSize; ++i) {
+                if (i % 3 == 0) {
+                    builder.addInputHash(new byte[][] {
+                            new byte[] {(byte) i },
+                            new byte[] {(byte) (i + 100) }
+                    });
+                } else {
+                    builder.addInputHash(new byte[] {(byte) i });
+                }
+            }
+            builder.finishBuilding();
+
+            String result = builder.getHashChainResult("/foo&bar");
+            assertEquals(result, remarshal(jaxbCtx, result));
+
+            String[] hashChains = builder.getHashChains("/foo&bar");
+            for (int i = 0; i < treeSize; ++i) {
+                assertEquals(hashChains[i], remarshal(jaxbCtx, hashChains[i]));
+                assertEquals(hashChains[i],
+                        builder.getHashChain("/foo&bar", i));
+            }
+        }
+    }
+
+    private static String remarshal(JAXBContext jaxbCtx, String xml)
+            throws Exception {
+        Object element = jaxbCtx.createUnmarshaller().unmarshal(
+                new StringReader(xml));
+
+        Marshaller marshaller = jaxbCtx.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+
+        StringWriter writer = new StringWriter();
+        marshaller.marshal(element, writer);
+
+        return writer.toString();
+    }
+
     /**
      * Test that ensures a hash chain without input is correct.
      * @throws Exception in case of unexpected errors
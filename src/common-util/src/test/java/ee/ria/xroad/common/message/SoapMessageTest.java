@@ -24,11 +24,13 @@
  */
 package ee.ria.xroad.common.message;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.ExpectedCodedException;
 import ee.ria.xroad.common.util.MimeTypes;
+import ee.ria.xroad.common.util.MimeUtils;
 
 import org.apache.commons.io.IOUtils;
 import org.bouncycastle.util.Arrays;
@@ -58,7 +60,10 @@ import static ee.ria.xroad.common.message.SoapMessageTestUtil.createResponse;
 import static ee.ria.xroad.common.message.SoapMessageTestUtil.createSoapMessage;
 import static ee.ria.xroad.common.message.SoapMessageTestUtil.fileToBytes;
 import static ee.ria.xroad.common.message.SoapMessageTestUtil.messageToBytes;
+import static ee.ria.xroad.common.message.SoapMessageTestUtil.newQueryInputStream;
 import static ee.ria.xroad.common.message.SoapUtils.getChildElements;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -424,4 +429,55 @@ public class SoapMessageTest {
         thrown.expectError(X_INVALID_PROTOCOL_VERSION);
         createRequest("wrong-version.query");
     }
+
+    /**
+     * Test that a message parsed in streaming mode has the same content and hash as the original message.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void streamingRequest() throws Exception {
+        byte[] original = fileToBytes("simple.query");
+
+        SoapMessageImpl message = (SoapMessageImpl) new SaxSoapParserImpl(true).parse(MimeTypes.TEXT_XML_UTF8,
+                newQueryInputStream("simple.query"));
+
+        try {
+            assertEquals("1234567890", message.getQueryId());
+            assertEquals(original.length, message.getContentLength());
+            assertArrayEquals(original, message.getBytes());
+            assertArrayEquals(original, IOUtils.toByteArray(message.getContent()));
+            assertArrayEquals(calculateDigest(SoapUtils.getHashAlgoId(), original), message.getHash());
+        } finally {
+            message.consume();
+        }
+    }
+
+    /**
+     * Test that a message larger than the streaming memory threshold is read back intact from the temporary file.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void streamingRequestAboveMemoryThreshold() throws Exception {
+        byte[] original = fileToBytes("simple.query");
+
+        System.setProperty(SystemProperties.PREFIX + "proxy.soap-streaming-memory-threshold", "64");
+
+        SoapMessageImpl message;
+        try {
+            message = (SoapMessageImpl) new SaxSoapParserImpl(true).parse(MimeTypes.TEXT_XML_UTF8,
+                    newQueryInputStream("simple.query"));
+        } finally {
+            System.clearProperty(SystemProperties.PREFIX + "proxy.soap-streaming-memory-threshold");
+        }
+
+        try {
+            assertEquals(original.length, message.getContentLength());
+            assertArrayEquals(original, message.getBytes());
+            assertArrayEquals(original, IOUtils.toByteArray(message.getContent()));
+            assertArrayEquals(calculateDigest(SoapUtils.getHashAlgoId(), original), message.getHash());
+            assertEquals(new String(original, MimeUtils.UTF8), message.getXml());
+        } finally {
+            message.consume();
+        }
+    }
 }
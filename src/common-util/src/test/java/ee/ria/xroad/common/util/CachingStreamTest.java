@@ -0,0 +1,197 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link CachingStream}
+ */
+public class CachingStreamTest {
+    private static final int MEMORY_THRESHOLD = 64 * 1024;
+
+    /**
+     * Ensure that contents below the memory threshold are not written to a temporary file.
+     */
+    @Test
+    public void smallContentsStayInMemory() throws Exception {
+        byte[] data = randomBytes(MEMORY_THRESHOLD);
+        long spillCount = CachingStream.getSpillCount();
+
+        CachingStream stream = new CachingStream(MEMORY_THRESHOLD);
+        try {
+            stream.write(data, 0, 100);
+            stream.write(data[100]);
+            stream.write(data, 101, data.length - 101);
+            stream.close();
+
+            assertFalse(stream.isSpilled());
+            assertEquals(spillCount, CachingStream.getSpillCount());
+            assertContents(data, stream);
+        } finally {
+            stream.consume();
+        }
+    }
+
+    /**
+     * Ensure that contents above the memory threshold are written to a temporary file and read back intact.
+     */
+    @Test
+    public void largeContentsSpillToFile() throws Exception {
+        byte[] data = randomBytes(MEMORY_THRESHOLD * 3 + 17);
+        long spillCount = CachingStream.getSpillCount();
+
+        CachingStream stream = new CachingStream(MEMORY_THRESHOLD);
+        try {
+            stream.write(data, 0, MEMORY_THRESHOLD - 1);
+            stream.write(data, MEMORY_THRESHOLD - 1, data.length - MEMORY_THRESHOLD + 1);
+            stream.close();
+
+            assertTrue(stream.isSpilled());
+            assertEquals(spillCount + 1, CachingStream.getSpillCount());
+            assertContents(data, stream);
+        } finally {
+            stream.consume();
+        }
+    }
+
+    /**
+     * Ensure that in-memory contents can not be read after the stream has been consumed.
+     */
+    @Test(expected = IOException.class)
+    public void consumedContentsCannotBeRead() throws Exception {
+        CachingStream stream = new CachingStream(MEMORY_THRESHOLD);
+        stream.write(randomBytes(100));
+
+        CacheInputStream contents = stream.getCachedContents();
+        stream.consume();
+
+        IOUtils.toByteArray(contents);
+    }
+
+    /**
+     * Ensure that a reader opened before the stream was consumed does not read buffers that have
+     * been returned to the pool and reused by another stream.
+     */
+    @Test
+    public void openReaderDoesNotReadReusedBuffers() throws Exception {
+        CachingStream stream = new CachingStream(MEMORY_THRESHOLD);
+        stream.write(randomBytes(100));
+
+        CacheInputStream contents = stream.getCachedContents();
+        assertEquals(50, contents.read(new byte[50]));
+
+        stream.consume();
+
+        CachingStream other = new CachingStream(MEMORY_THRESHOLD);
+        other.write(new byte[100]);
+
+        try {
+            contents.read(new byte[50]);
+            fail("Expected exception");
+        } catch (IOException expected) {
+            // the reader fails instead of returning the contents of the other stream
+        } finally {
+            other.consume();
+        }
+    }
+
+    /**
+     * Ensure that a reader opened before the contents were written to a temporary file continues
+     * reading the same contents from the file, and not from buffers reused by another stream.
+     */
+    @Test
+    public void openReaderContinuesFromSpilledFile() throws Exception {
+        byte[] data = randomBytes(MEMORY_THRESHOLD * 2);
+
+        CachingStream stream = new CachingStream(MEMORY_THRESHOLD);
+        CachingStream other = new CachingStream(MEMORY_THRESHOLD);
+        try {
+            stream.write(data, 0, MEMORY_THRESHOLD);
+
+            CacheInputStream contents = stream.getCachedContents();
+            byte[] head = new byte[100];
+            assertEquals(head.length, contents.read(head));
+
+            stream.write(data, MEMORY_THRESHOLD, MEMORY_THRESHOLD);
+            assertTrue(stream.isSpilled());
+
+            other.write(new byte[MEMORY_THRESHOLD]);
+
+            byte[] expected = new byte[MEMORY_THRESHOLD - head.length];
+            System.arraycopy(data, head.length, expected, 0, expected.length);
+
+            // the reader sees the contents written before it was opened
+            assertArrayEquals(expected, IOUtils.toByteArray(contents));
+
+            stream.close();
+            assertContents(data, stream);
+        } finally {
+            stream.consume();
+            other.consume();
+        }
+    }
+
+    /**
+     * Ensure that writing to a consumed stream fails with an I/O error.
+     */
+    @Test(expected = IOException.class)
+    public void consumedStreamCannotBeWritten() throws Exception {
+        CachingStream stream = new CachingStream(MEMORY_THRESHOLD);
+        stream.write(randomBytes(100));
+        stream.consume();
+
+        stream.write(randomBytes(100));
+    }
+
+    private static void assertContents(byte[] expected, CachingStream stream) throws IOException {
+        assertEquals(expected.length, stream.size());
+
+        // contents can be read more than once
+        for (int i = 0; i < 2; i++) {
+            CacheInputStream contents = stream.getCachedContents();
+
+            assertEquals(expected.length, contents.size());
+            assertArrayEquals(expected, IOUtils.toByteArray(contents));
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+
+        return data;
+    }
+}
@@ -25,6 +25,7 @@
 package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.certificateprofile.AuthCertificateProfileInfo;
 import ee.ria.xroad.common.certificateprofile.CertificateProfileInfoProvider;
@@ -35,10 +36,7 @@ import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.ApprovedTSAType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.CentralServiceType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.GlobalGroupType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.MemberClassType;
-import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.MemberType;
-import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.OcspInfoType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SecurityServerType;
-import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SubsystemType;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.GlobalGroupId;
@@ -63,8 +61,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -87,6 +90,19 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     private ConfigurationDirectoryV2 confDir;
 
+    // Indexed view of the shared parameters, replaced whenever the configuration version changes
+    private volatile GlobalConfSnapshot snapshot;
+    private volatile long snapshotCheckedAt;
+    private volatile long snapshotVersion;
+
+    // Snapshots of shared parameters that are not part of the current snapshot, by instance identifier
+    private final Map<String, GlobalConfSnapshot> instanceSnapshots = new ConcurrentHashMap<>();
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    private final long snapshotCheckIntervalMillis =
+            TimeUnit.SECONDS.toMillis(SystemProperties.getConfigurationClientUpdateIntervalSeconds());
+
     GlobalConfImpl(boolean reloadIfChanged) {
         try {
             confDir = new CachingConfigurationDirectory(getConfigurationPath(),
@@ -122,9 +138,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public List<String> getInstanceIdentifiers() {
-        return getSharedParameters().stream()
-                .map(SharedParametersV2::getInstanceIdentifier)
-                .collect(Collectors.toList());
+        return new ArrayList<>(getSnapshot().getInstanceIdentifiers());
     }
 
     @Override
@@ -153,13 +167,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
         List<SecurityServerId> serverIds = new ArrayList<SecurityServerId>();
 
         for (SharedParametersV2 p : getSharedParameters(instanceIdentifiers)) {
-            for (SecurityServerType s : p.getSecurityServers()) {
-                MemberType owner = SharedParametersV2.getOwner(s);
-                serverIds.add(SecurityServerId.create(
-                        p.getInstanceIdentifier(),
-                        owner.getMemberClass().getCode(),
-                        owner.getMemberCode(), s.getServerCode()));
-            }
+            serverIds.addAll(getSnapshot(p).getSecurityServers(p.getInstanceIdentifier()));
         }
 
         return serverIds;
@@ -170,15 +178,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
         List<MemberInfo> clients = new ArrayList<>();
 
         for (SharedParametersV2 p : getSharedParameters(instanceIdentifiers)) {
-            for (MemberType member : p.getMembers()) {
-                clients.add(new MemberInfo(p.createMemberId(member), member
-                        .getName()));
-
-                for (SubsystemType subsystem : member.getSubsystem()) {
-                    clients.add(new MemberInfo(p.createSubsystemId(member,
-                            subsystem), member.getName()));
-                }
-            }
+            clients.addAll(getSnapshot(p).getMembers(p.getInstanceIdentifier()));
         }
 
         return clients;
@@ -186,18 +186,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public String getMemberName(ClientId clientId) {
-        SharedParametersV2 p;
-        try {
-            p = confDir.getShared(clientId.getXRoadInstance());
-        } catch (Exception e) {
-            throw new CodedException(X_INTERNAL_ERROR, e);
-        }
-
-        return p == null ? null : p.getMembers().stream()
-                .filter(m -> p.createMemberId(m).memberEquals(clientId))
-                .map(MemberType::getName)
-                .findFirst()
-                .orElse(null);
+        return getSnapshot().getMemberName(clientId);
     }
 
     @Override
@@ -229,18 +218,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public String getGlobalGroupDescription(GlobalGroupId globalGroupId) {
-        SharedParametersV2 p;
-        try {
-            p = confDir.getShared(globalGroupId.getXRoadInstance());
-        } catch (Exception e) {
-            throw new CodedException(X_INTERNAL_ERROR, e);
-        }
-
-        return p == null ? null : p.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(
-                        globalGroupId.getGroupCode()))
-                .map(GlobalGroupType::getDescription)
-                .findFirst().orElse(null);
+        return getSnapshot().getGlobalGroupDescription(globalGroupId);
     }
 
     @Override
@@ -285,26 +263,11 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throws Exception {
         List<String> responders = new ArrayList<>();
 
-        for (SharedParametersV2 p : getSharedParameters()) {
-            List<OcspInfoType> caOcspData = null;
-            X509Certificate caCert;
-            try {
-                if (!certificateIsCA) {
-                    caCert = getCaCert(null, certificate);
-                } else {
-                    caCert = certificate;
-                }
-                caOcspData = p.getCaCertsAndOcspData().get(caCert);
-            } catch (CodedException e) {
-                log.error("Unable to determine OCSP responders: {}", e);
-            }
-            if (caOcspData == null) {
-                continue;
-            }
-            caOcspData.stream().map(OcspInfoType::getUrl)
-                    .filter(StringUtils::isNotBlank)
-                    .map(String::trim)
-                    .forEach(responders::add);
+        try {
+            X509Certificate caCert = certificateIsCA ? certificate : getCaCert(null, certificate);
+            responders.addAll(getSnapshot().getOcspResponderAddresses(caCert));
+        } catch (CodedException e) {
+            log.error("Unable to determine OCSP responders: {}", e);
         }
 
         String uri = CertUtils.getOcspResponderUriFromCert(certificate);
@@ -323,23 +286,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public List<X509Certificate> getOcspResponderCertificates() {
-        List<X509Certificate> responderCerts = new ArrayList<>();
-        try {
-            for (SharedParametersV2 p : getSharedParameters()) {
-                for (List<OcspInfoType> ocspTypes
-                        : p.getCaCertsAndOcspData().values()) {
-                    ocspTypes.stream().map(OcspInfoType::getCert)
-                            .filter(Objects::nonNull)
-                            .map(CryptoUtils::readCertificate)
-                            .forEach(responderCerts::add);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error while getting OCSP responder certificates", e);
-            return Collections.emptyList();
-        }
-
-        return responderCerts;
+        return new ArrayList<>(getSnapshot().getOcspResponderCerts());
     }
 
     @Override
@@ -353,14 +300,11 @@ public class GlobalConfImpl implements GlobalConfProvider {
         X509CertificateHolder ch = new X509CertificateHolder(
                 memberCert.getEncoded());
 
-        String[] instances = instanceIdentifier != null
-                ? new String[] {instanceIdentifier} : new String[] {};
+        X509Certificate caCert = instanceIdentifier != null
+                ? getSharedParameters(instanceIdentifier).getSubjectsAndCaCerts().get(ch.getIssuer())
+                : getSnapshot().getCaCert(ch.getIssuer());
 
-        return getSharedParameters(instances)
-                .stream()
-                .map(p -> p.getSubjectsAndCaCerts().get(ch.getIssuer()))
-                .filter(Objects::nonNull)
-                .findFirst()
+        return Optional.ofNullable(caCert)
                 .orElseThrow(
                         () -> new CodedException(X_INTERNAL_ERROR,
                                 "Certificate is not issued by approved "
@@ -409,13 +353,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean isOcspResponderCert(X509Certificate ca,
             X509Certificate ocspCert) {
-        return getSharedParameters().stream()
-                .map(p -> p.getCaCertsAndOcspData().get(ca))
-                .filter(Objects::nonNull).flatMap(o -> o.stream())
-                .map(OcspInfoType::getCert).filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
-                .filter(c -> c.equals(ocspCert))
-                .findFirst().isPresent();
+        return getSnapshot().isOcspResponderCert(ca, ocspCert);
     }
 
     @Override
@@ -431,33 +369,12 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public SecurityServerId getServerId(X509Certificate cert)
             throws Exception {
-        String b64 = encodeBase64(certHash(cert));
-
-        for (SharedParametersV2 p : getSharedParameters()) {
-            SecurityServerType serverType = p.getServerByAuthCert().get(b64);
-            if (serverType != null) {
-                MemberType owner = SharedParametersV2.getOwner(serverType);
-                return SecurityServerId.create(p.getInstanceIdentifier(),
-                        owner.getMemberClass().getCode(),
-                        owner.getMemberCode(),
-                        serverType.getServerCode());
-            }
-        }
-
-        return null;
+        return getSnapshot().getServerIdByAuthCertHash(encodeBase64(certHash(cert)));
     }
 
     @Override
     public ClientId getServerOwner(SecurityServerId serverId) {
-        for (SharedParametersV2 p : getSharedParameters()) {
-            SecurityServerType server = p.getSecurityServersById()
-                    .get(serverId);
-            if (server != null) {
-                return p.createMemberId((MemberType) server.getOwner());
-            }
-        }
-
-        return null;
+        return getSnapshot().getServerOwner(serverId);
     }
 
     @Override
@@ -558,26 +475,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean isSubjectInGlobalGroup(ClientId subjectId,
             GlobalGroupId groupId) {
-
-        SharedParametersV2 p;
-        try {
-            p = confDir.getShared(groupId.getXRoadInstance());
-        } catch (Exception e) {
-            p = null;
-            log.warn("Got exception while getting shared parameters.", e);
-        }
-
-        if (p == null) {
-            return false;
-        }
-
-        GlobalGroupType group = p.findGlobalGroup(groupId);
-        if (group == null) {
-            return false;
-        }
-
-        return group.getGroupMember().stream().filter(m -> m.equals(subjectId))
-                .findFirst().isPresent();
+        return getSnapshot().isSubjectInGlobalGroup(subjectId, groupId);
     }
 
     @Override
@@ -654,6 +552,8 @@ public class GlobalConfImpl implements GlobalConfProvider {
     public void load(String fileName) throws Exception {
         confDir.setPath(Paths.get(getConfigurationPath()));
         confDir.reload();
+
+        refreshSnapshot(false);
     }
 
     @Override
@@ -686,7 +586,11 @@ public class GlobalConfImpl implements GlobalConfProvider {
     }
 
     protected SharedParametersV2 getSharedParameters(String instanceIdentifier) {
-        SharedParametersV2 p;
+        SharedParametersV2 p = getSnapshot().getSharedParameters(instanceIdentifier);
+        if (p != null) {
+            return p;
+        }
+
         try {
             p = confDir.getShared(instanceIdentifier);
         } catch (Exception e) {
@@ -704,7 +608,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
     protected List<SharedParametersV2> getSharedParameters(
             String... instanceIdentifiers) {
         if (ArrayUtils.isEmpty(instanceIdentifiers)) {
-            return confDir.getShared();
+            return getSnapshot().getSharedParameters();
         }
 
         return Arrays.stream(instanceIdentifiers)
@@ -712,6 +616,90 @@ public class GlobalConfImpl implements GlobalConfProvider {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the current configuration snapshot without locking. The snapshot is checked against the
+     * configuration directory as soon as any shared parameters have been (re)loaded. The configuration
+     * files are checked for changes on disk once per configuration client update interval.
+     * @return the current configuration snapshot
+     */
+    GlobalConfSnapshot getSnapshot() {
+        GlobalConfSnapshot current = snapshot;
+
+        if (current == null || snapshotVersion != SharedParametersV2.getLatestVersion()) {
+            return refreshSnapshot(false);
+        }
+
+        if (System.currentTimeMillis() - snapshotCheckedAt >= snapshotCheckIntervalMillis) {
+            return refreshSnapshot(true);
+        }
+
+        return current;
+    }
+
+    // Returns the current snapshot, or a snapshot of the given parameters if they are not part of it
+    private GlobalConfSnapshot getSnapshot(SharedParametersV2 p) {
+        GlobalConfSnapshot current = getSnapshot();
+
+        if (current.getSharedParameters(p.getInstanceIdentifier()) == p) {
+            return current;
+        }
+
+        List<SharedParametersV2> parameters = Collections.singletonList(p);
+
+        return instanceSnapshots.compute(p.getInstanceIdentifier(),
+                (instance, cached) -> cached != null && cached.isBuiltFrom(parameters)
+                        ? cached : new GlobalConfSnapshot(parameters));
+    }
+
+    // Rebuilds the snapshot if the shared parameters have changed. If another thread is
+    // already refreshing, the current snapshot is returned instead of waiting for it.
+    private GlobalConfSnapshot refreshSnapshot(boolean checkInstances) {
+        GlobalConfSnapshot current = snapshot;
+
+        if (current != null && !snapshotLock.tryLock()) {
+            return current;
+        } else if (current == null) {
+            snapshotLock.lock();
+        }
+
+        try {
+            current = snapshot;
+
+            // Read before the parameters, so that a concurrent reload is noticed by the next query
+            long latestVersion = SharedParametersV2.getLatestVersion();
+
+            if (checkInstances) {
+                // Lets the configuration directory reload parameters that have changed on disk
+                for (SharedParametersV2 p : confDir.getShared()) {
+                    confDir.getShared(p.getInstanceIdentifier());
+                }
+            }
+
+            List<SharedParametersV2> sharedParameters = confDir.getShared();
+
+            if (current == null || !current.isBuiltFrom(sharedParameters)) {
+                log.trace("Building global configuration snapshot");
+
+                current = new GlobalConfSnapshot(sharedParameters);
+                snapshot = current;
+
+                instanceSnapshots.clear();
+            }
+
+            if (checkInstances) {
+                snapshotCheckedAt = System.currentTimeMillis();
+            }
+
+            snapshotVersion = latestVersion;
+
+            return current;
+        } catch (Exception e) {
+            throw translateException(e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
     private CertificateProfileInfoProvider getCertProfile(
             String instanceIdentifier, X509Certificate cert) throws Exception {
         X509Certificate caCert = getCaCert(instanceIdentifier, cert);
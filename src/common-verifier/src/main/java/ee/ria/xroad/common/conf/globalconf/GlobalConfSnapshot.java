@@ -0,0 +1,286 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.GlobalGroupType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.MemberType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.OcspInfoType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SecurityServerType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SubsystemType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.util.CryptoUtils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+
+/**
+ * Immutable view of the shared parameters of all configuration instances at one configuration version.
+ * Contains hash indexes for the lookups done on the message processing path, so that queries against
+ * a snapshot neither lock nor scan the configuration.
+ */
+@Slf4j
+final class GlobalConfSnapshot {
+
+    private final List<SharedParametersV2> sharedParameters;
+    private final long[] versions;
+
+    private final Map<String, SharedParametersV2> sharedParametersByInstance = new HashMap<>();
+    private final List<String> instanceIdentifiers = new ArrayList<>();
+
+    private final Map<String, List<SecurityServerId>> securityServers = new HashMap<>();
+    private final Map<String, List<MemberInfo>> members = new HashMap<>();
+    private final Map<ClientId, String> memberNames = new HashMap<>();
+
+    private final Map<GlobalGroupId, Set<ClientId>> globalGroupMembers = new HashMap<>();
+    private final Map<GlobalGroupId, String> globalGroupDescriptions = new HashMap<>();
+
+    private final Map<String, SecurityServerId> serverIdsByAuthCert = new HashMap<>();
+    private final Map<SecurityServerId, ClientId> serverOwners = new HashMap<>();
+
+    private final Map<X500Name, X509Certificate> caCertsBySubject = new HashMap<>();
+    private final Map<X509Certificate, List<String>> ocspResponderAddresses = new HashMap<>();
+    private final Map<X509Certificate, Set<X509Certificate>> ocspResponderCertsByCaCert = new HashMap<>();
+    private final List<X509Certificate> ocspResponderCerts = new ArrayList<>();
+
+    /**
+     * Builds the snapshot. The order of the given parameters is kept in all lookups that
+     * combine several configuration instances.
+     * @param sharedParameters shared parameters of all known configuration instances
+     */
+    GlobalConfSnapshot(List<SharedParametersV2> sharedParameters) {
+        this.sharedParameters = Collections.unmodifiableList(new ArrayList<>(sharedParameters));
+        this.versions = versionsOf(sharedParameters);
+
+        for (SharedParametersV2 p : this.sharedParameters) {
+            String instanceIdentifier = p.getInstanceIdentifier();
+
+            if (sharedParametersByInstance.putIfAbsent(instanceIdentifier, p) == null) {
+                instanceIdentifiers.add(instanceIdentifier);
+            }
+
+            indexMembers(p);
+            indexGlobalGroups(p);
+            indexSecurityServers(p);
+            indexCaCerts(p);
+        }
+
+        indexOcspResponders();
+    }
+
+    /**
+     * @param current the shared parameters currently held by the configuration directory
+     * @return true, if this snapshot was built from exactly the given parameters at their current versions
+     */
+    boolean isBuiltFrom(List<SharedParametersV2> current) {
+        if (current.size() != sharedParameters.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < versions.length; i++) {
+            SharedParametersV2 p = current.get(i);
+
+            if (p != sharedParameters.get(i) || p.getVersion() != versions[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    List<SharedParametersV2> getSharedParameters() {
+        return sharedParameters;
+    }
+
+    SharedParametersV2 getSharedParameters(String instanceIdentifier) {
+        return sharedParametersByInstance.get(instanceIdentifier);
+    }
+
+    List<String> getInstanceIdentifiers() {
+        return Collections.unmodifiableList(instanceIdentifiers);
+    }
+
+    List<SecurityServerId> getSecurityServers(String instanceIdentifier) {
+        return securityServers.get(instanceIdentifier);
+    }
+
+    List<MemberInfo> getMembers(String instanceIdentifier) {
+        return members.get(instanceIdentifier);
+    }
+
+    String getMemberName(ClientId clientId) {
+        return memberNames.get(clientId.getMemberId());
+    }
+
+    boolean isSubjectInGlobalGroup(ClientId subjectId, GlobalGroupId groupId) {
+        Set<ClientId> groupMembers = globalGroupMembers.get(groupId);
+
+        return groupMembers != null && groupMembers.contains(subjectId);
+    }
+
+    String getGlobalGroupDescription(GlobalGroupId groupId) {
+        return globalGroupDescriptions.get(groupId);
+    }
+
+    SecurityServerId getServerIdByAuthCertHash(String authCertHash) {
+        return serverIdsByAuthCert.get(authCertHash);
+    }
+
+    ClientId getServerOwner(SecurityServerId serverId) {
+        return serverOwners.get(serverId);
+    }
+
+    X509Certificate getCaCert(X500Name subject) {
+        return caCertsBySubject.get(subject);
+    }
+
+    List<String> getOcspResponderAddresses(X509Certificate caCert) {
+        return ocspResponderAddresses.getOrDefault(caCert, Collections.emptyList());
+    }
+
+    boolean isOcspResponderCert(X509Certificate caCert, X509Certificate ocspCert) {
+        Set<X509Certificate> responderCerts = ocspResponderCertsByCaCert.get(caCert);
+
+        return responderCerts != null && responderCerts.contains(ocspCert);
+    }
+
+    List<X509Certificate> getOcspResponderCerts() {
+        return Collections.unmodifiableList(ocspResponderCerts);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private void indexMembers(SharedParametersV2 p) {
+        List<MemberInfo> instanceMembers = new ArrayList<>();
+
+        for (MemberType member : p.getMembers()) {
+            ClientId memberId = p.createMemberId(member);
+
+            instanceMembers.add(new MemberInfo(memberId, member.getName()));
+            memberNames.putIfAbsent(memberId, member.getName());
+
+            for (SubsystemType subsystem : member.getSubsystem()) {
+                instanceMembers.add(new MemberInfo(p.createSubsystemId(member, subsystem), member.getName()));
+            }
+        }
+
+        members.putIfAbsent(p.getInstanceIdentifier(), Collections.unmodifiableList(instanceMembers));
+    }
+
+    private void indexGlobalGroups(SharedParametersV2 p) {
+        for (GlobalGroupType group : p.getGlobalGroups()) {
+            GlobalGroupId groupId = p.createGlobalGroupId(group);
+
+            if (!globalGroupMembers.containsKey(groupId)) {
+                globalGroupMembers.put(groupId, Collections.unmodifiableSet(new HashSet<>(group.getGroupMember())));
+                globalGroupDescriptions.put(groupId, group.getDescription());
+            }
+        }
+    }
+
+    private void indexSecurityServers(SharedParametersV2 p) {
+        List<SecurityServerId> serverIds = new ArrayList<>();
+
+        for (SecurityServerType server : p.getSecurityServers()) {
+            MemberType owner = SharedParametersV2.getOwner(server);
+            SecurityServerId serverId = SecurityServerId.create(p.getInstanceIdentifier(),
+                    owner.getMemberClass().getCode(), owner.getMemberCode(), server.getServerCode());
+
+            serverIds.add(serverId);
+            serverOwners.putIfAbsent(serverId, p.createMemberId(owner));
+
+            for (byte[] certHash : server.getAuthCertHash()) {
+                serverIdsByAuthCert.putIfAbsent(encodeBase64(certHash), serverId);
+            }
+        }
+
+        securityServers.putIfAbsent(p.getInstanceIdentifier(), Collections.unmodifiableList(serverIds));
+    }
+
+    private void indexCaCerts(SharedParametersV2 p) {
+        p.getSubjectsAndCaCerts().forEach(caCertsBySubject::putIfAbsent);
+    }
+
+    private void indexOcspResponders() {
+        Map<X509Certificate, List<String>> addresses = new LinkedHashMap<>();
+
+        for (SharedParametersV2 p : sharedParameters) {
+            p.getCaCertsAndOcspData().forEach((caCert, ocspTypes) -> ocspTypes.stream()
+                    .map(OcspInfoType::getUrl)
+                    .filter(StringUtils::isNotBlank)
+                    .map(String::trim)
+                    .forEach(url -> addresses.computeIfAbsent(caCert, c -> new ArrayList<>()).add(url)));
+        }
+
+        addresses.forEach((caCert, urls) -> ocspResponderAddresses.put(caCert, Collections.unmodifiableList(urls)));
+
+        try {
+            for (SharedParametersV2 p : sharedParameters) {
+                for (Map.Entry<X509Certificate, List<OcspInfoType>> e : p.getCaCertsAndOcspData().entrySet()) {
+                    List<X509Certificate> responderCerts = e.getValue().stream()
+                            .map(OcspInfoType::getCert)
+                            .filter(Objects::nonNull)
+                            .map(CryptoUtils::readCertificate)
+                            .collect(Collectors.toList());
+
+                    ocspResponderCerts.addAll(responderCerts);
+                    ocspResponderCertsByCaCert.computeIfAbsent(e.getKey(), c -> new HashSet<>())
+                            .addAll(responderCerts);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error while getting OCSP responder certificates", e);
+
+            ocspResponderCerts.clear();
+            ocspResponderCertsByCaCert.clear();
+        }
+    }
+
+    private static long[] versionsOf(List<SharedParametersV2> sharedParameters) {
+        long[] result = new long[sharedParameters.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sharedParameters.get(i).getVersion();
+        }
+
+        return result;
+    }
+}
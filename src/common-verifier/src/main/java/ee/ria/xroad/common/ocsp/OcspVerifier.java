@@ -27,8 +27,13 @@ package ee.ria.xroad.common.ocsp;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
-import ee.ria.xroad.common.conf.globalconf.TimeBasedObjectCache;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
 import org.bouncycastle.asn1.DERBitString;
@@ -51,10 +56,13 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
 import static ee.ria.xroad.common.ErrorCodes.X_INCORRECT_VALIDATION_INFO;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA1_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.createCertId;
 import static ee.ria.xroad.common.util.CryptoUtils.createDefaultContentVerifier;
@@ -67,7 +75,6 @@ public final class OcspVerifier {
 
     private static final String ID_KP_OCSPSIGNING = "1.3.6.1.5.5.7.3.9";
 
-    private static final String SINGLE_RESP = "single_resp";
     private static final String SIGNATURE = "signature";
     private static final String CERTIFICATE = "certificate";
 
@@ -75,8 +82,15 @@ public final class OcspVerifier {
 
     private final OcspVerifierOptions options;
 
-    private static final TimeBasedObjectCache CACHE = new TimeBasedObjectCache(SystemProperties
-            .getOcspVerifierCachePeriod());;
+    /**
+     * Verified single responses keyed by the response digest and the certificates it was verified against.
+     * Bounded in size; entries expire after the configured verifier cache period.
+     */
+    private static final Cache<CacheKey, SingleResp> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(SystemProperties.getOcspVerifierCacheSize())
+            .expireAfterWrite(SystemProperties.getOcspVerifierCachePeriod(), TimeUnit.SECONDS)
+            .recordStats()
+            .build();
 
     /**
      * Constructor
@@ -180,15 +194,31 @@ public final class OcspVerifier {
         }
     }
 
-    private synchronized SingleResp verifyResponseValidityCached(OCSPResp response, X509Certificate subject,
-                                                                 X509Certificate issuer)
+    private SingleResp verifyResponseValidityCached(OCSPResp response, X509Certificate subject,
+                                                    X509Certificate issuer)
             throws Exception {
-        String key = SINGLE_RESP + response.hashCode() + subject.hashCode() + issuer.hashCode();
-        if (!CACHE.isValid(key)) {
-            CACHE.setValue(key, verifyResponseValidity(response, subject, issuer));
+        CacheKey key = new CacheKey(calculateDigest(SHA256_ID, response.getEncoded()), subject, issuer);
+
+        try {
+            return CACHE.get(key, () -> verifyResponseValidity(response, subject, issuer));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        } finally {
+            if (log.isTraceEnabled()) {
+                log.trace("OCSP verifier cache stats: {}", CACHE.stats());
+            }
         }
+    }
 
-        return (SingleResp) CACHE.getValue(key);
+    /**
+     * @return hit, miss and eviction statistics of the OCSP response validity cache
+     */
+    public static CacheStats getCacheStats() {
+        return CACHE.stats();
     }
 
     private SingleResp verifyResponseValidity(OCSPResp response, X509Certificate subject, X509Certificate issuer)
@@ -398,4 +428,12 @@ public final class OcspVerifier {
 
         return false;
     }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class CacheKey {
+        private final byte[] responseDigest;
+        private final X509Certificate subject;
+        private final X509Certificate issuer;
+    }
 }
@@ -64,7 +64,9 @@ import static java.util.Collections.singleton;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -143,6 +145,52 @@ public class GlobalConfTest {
         assertNull("Description", GlobalConf.getGlobalGroupDescription(GlobalGroupId.create("EE", "foo")));
     }
 
+    /**
+     * Tests checking global group membership.
+     */
+    @Test
+    public void isSubjectInGlobalGroup() {
+        GlobalGroupId group = GlobalGroupId.create("EE", "Test group");
+
+        assertTrue(GlobalConf.isSubjectInGlobalGroup(ClientId.create("EE", "BUSINESS", "member2"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(ClientId.create("EE", "BUSINESS", "producer"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(ClientId.create("EE", "BUSINESS", "member2"),
+                GlobalGroupId.create("EE", "foo")));
+    }
+
+    /**
+     * Tests that the configuration snapshot is rebuilt as soon as shared parameters are reloaded.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void snapshotFollowsParameterReload() throws Exception {
+        ConfigurationDirectoryV2 confDir = new ConfigurationDirectoryV2(getConfigurationPath());
+        GlobalConfImpl conf = new GlobalConfImpl(confDir);
+
+        GlobalConfSnapshot first = conf.getSnapshot();
+        assertSame(first, conf.getSnapshot());
+
+        confDir.getShared("EE").reload();
+
+        GlobalConfSnapshot second = conf.getSnapshot();
+        assertNotSame(first, second);
+        assertSame(second, conf.getSnapshot());
+        assertEquals("Experimental producer", second.getMemberName(ClientId.create("EE", "BUSINESS", "producer")));
+    }
+
+    /**
+     * Tests getting member names for members and subsystems.
+     */
+    @Test
+    public void getMemberName() {
+        assertEquals("Experimental producer", GlobalConf.getMemberName(ClientId.create("EE", "BUSINESS", "producer")));
+        assertEquals("Experimental consumer",
+                GlobalConf.getMemberName(ClientId.create("EE", "BUSINESS", "consumer", "subsys")));
+        assertNull(GlobalConf.getMemberName(ClientId.create("EE", "BUSINESS", "nonexistent")));
+        assertNull(GlobalConf.getMemberName(ClientId.create("XX", "BUSINESS", "producer")));
+    }
+
     /**
      * Tests getting the actual service identifier for a given identifier.
      *
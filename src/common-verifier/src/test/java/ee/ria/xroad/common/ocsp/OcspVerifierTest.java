@@ -49,6 +49,7 @@ import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
 import static ee.ria.xroad.common.ErrorCodes.X_INCORRECT_VALIDATION_INFO;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -203,6 +204,30 @@ public class OcspVerifierTest {
         verifier.verifyValidityAndStatus(ocsp, subject, issuer);
     }
 
+    /**
+     * Tests that a verified response is served from the cache only for the
+     * same response and certificates.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedValidityIsBoundToCertificates() throws Exception {
+        Date thisUpdate = new DateTime().plusDays(1).toDate();
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD,
+                thisUpdate, null);
+
+        OcspVerifier verifier =
+                new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(true), new OcspVerifierOptions(true));
+        verifier.verifyValidityAndStatus(ocsp, subject, issuer);
+
+        long hits = OcspVerifier.getCacheStats().hitCount();
+        verifier.verifyValidityAndStatus(new OCSPResp(ocsp.getEncoded()), subject, issuer);
+        assertEquals(hits + 1, OcspVerifier.getCacheStats().hitCount());
+
+        thrown.expectError(X_INCORRECT_VALIDATION_INFO);
+        verifier.verifyValidityAndStatus(ocsp, subject, subject);
+    }
+
     /**
      * Tests that verifying succeeds if certificate status is revoked.
      * @throws Exception if an error occurs
@@ -39,6 +39,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -128,6 +129,21 @@ public class SignatureVerifierTest {
                 resolver).verify(CONSUMER_ID, CORRECT_VALIDATION_DATE);
     }
 
+    /**
+     * Tests that verifying a valid signature succeeds when the message is read from its content.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void verifyValidSignatureWithMessageContent() throws Exception {
+        byte[] messageBytes = fileToBytes("../common-test/src/test/signatures/message-0.xml");
+
+        SignatureVerifier verifier = createSignatureVerifier("../common-test/src/test/signatures/sign-0.xml");
+        verifier.addPart(MessagePart.withMessageContent(MessageFileNames.MESSAGE, SHA512_ID,
+                calculateDigest(SHA512_ID, messageBytes), () -> new ByteArrayInputStream(messageBytes)));
+
+        verifier.verify(CONSUMER_ID, CORRECT_VALIDATION_DATE);
+    }
+
     /**
      * Tests that verifying backward compatible (not conforming to specification) valid signature succeeds.
      * @throws Exception if error occurs
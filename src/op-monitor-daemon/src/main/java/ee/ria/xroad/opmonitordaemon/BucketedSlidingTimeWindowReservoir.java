@@ -0,0 +1,296 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reservoir that summarizes the values of a sliding window of time in a
+ * fixed number of time buckets, instead of keeping every value like
+ * SlidingTimeWindowReservoir does. Updates take constant time, snapshots
+ * take time proportional to the number of buckets and the memory used does
+ * not depend on the rate of updates.
+ *
+ * The minimum, maximum, mean and standard deviation of a snapshot are exact.
+ * Quantiles are estimated from power-of-two bins and individual values are
+ * not available. The window slides one bucket at a time, so a snapshot
+ * covers at least window - window / buckets of time.
+ */
+class BucketedSlidingTimeWindowReservoir implements Reservoir {
+
+    // Number of buckets used for windows of at least this many seconds
+    static final int MAX_BUCKETS = 60;
+
+    private static final int BINS = Long.SIZE;
+
+    private final Clock clock;
+
+    private final long bucketNanos;
+
+    private final Bucket[] buckets;
+
+    /**
+     * Creates a reservoir with the given window of time.
+     * @param window the window of time
+     * @param windowUnit the unit of {@code window}
+     */
+    BucketedSlidingTimeWindowReservoir(long window, TimeUnit windowUnit) {
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    BucketedSlidingTimeWindowReservoir(long window, TimeUnit windowUnit, Clock clock) {
+        int bucketCount = getBucketCount(window, windowUnit);
+
+        this.clock = clock;
+        this.bucketNanos = windowUnit.toNanos(window) / bucketCount;
+        this.buckets = new Bucket[bucketCount];
+
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * @param window the window of time
+     * @param windowUnit the unit of {@code window}
+     * @return the number of buckets used for the window: one bucket per
+     * second, at most MAX_BUCKETS
+     */
+    static int getBucketCount(long window, TimeUnit windowUnit) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+
+        return (int) Math.max(1, Math.min(windowUnit.toSeconds(window), MAX_BUCKETS));
+    }
+
+    @Override
+    public synchronized int size() {
+        long epoch = currentEpoch();
+        long size = 0;
+
+        for (Bucket bucket : buckets) {
+            if (isLive(bucket.epoch, epoch)) {
+                size += bucket.count;
+            }
+        }
+
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized void update(long value) {
+        long epoch = currentEpoch();
+        Bucket bucket = buckets[(int) Math.floorMod(epoch, (long) buckets.length)];
+
+        if (bucket.epoch != epoch) {
+            bucket.reset(epoch);
+        }
+
+        bucket.add(value);
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        long epoch = currentEpoch();
+        Bucket total = new Bucket();
+
+        for (Bucket bucket : buckets) {
+            if (isLive(bucket.epoch, epoch) && bucket.count > 0) {
+                total.merge(bucket);
+            }
+        }
+
+        return new BucketedSnapshot(total);
+    }
+
+    private long currentEpoch() {
+        return Math.floorDiv(clock.getTick(), bucketNanos);
+    }
+
+    private boolean isLive(long bucketEpoch, long epoch) {
+        return bucketEpoch > epoch - buckets.length && bucketEpoch <= epoch;
+    }
+
+    // Index of the power-of-two bin of the value, bin i >= 1 holds values
+    // from 2^(i - 1) to 2^i - 1 and bin 0 holds values less than 1.
+    private static int bin(long value) {
+        return value < 1 ? 0 : BINS - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long binLowerBound(int bin) {
+        return bin == 0 ? 0 : 1L << (bin - 1);
+    }
+
+    private static long binUpperBound(int bin) {
+        return bin == 0 ? 0 : (1L << (bin - 1)) + ((1L << (bin - 1)) - 1);
+    }
+
+    /**
+     * Running statistics of the values of one bucket, using Welford's
+     * algorithm for the variance.
+     */
+    private static final class Bucket {
+        private long epoch = Long.MIN_VALUE;
+        private long count;
+        private long min;
+        private long max;
+        private double mean;
+        private double m2;
+        private final int[] bins = new int[BINS];
+
+        void reset(long newEpoch) {
+            epoch = newEpoch;
+            count = 0;
+            min = 0;
+            max = 0;
+            mean = 0;
+            m2 = 0;
+
+            Arrays.fill(bins, 0);
+        }
+
+        void add(long value) {
+            if (count == 0 || value < min) {
+                min = value;
+            }
+
+            if (count == 0 || value > max) {
+                max = value;
+            }
+
+            count++;
+
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+
+            bins[bin(value)]++;
+        }
+
+        void merge(Bucket other) {
+            if (count == 0 || other.min < min) {
+                min = other.min;
+            }
+
+            if (count == 0 || other.max > max) {
+                max = other.max;
+            }
+
+            long total = count + other.count;
+            double delta = other.mean - mean;
+
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * count * other.count / total;
+            count = total;
+
+            for (int i = 0; i < BINS; i++) {
+                bins[i] += other.bins[i];
+            }
+        }
+    }
+
+    private static final class BucketedSnapshot extends Snapshot {
+        private final Bucket values;
+
+        BucketedSnapshot(Bucket values) {
+            this.values = values;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+
+            if (values.count == 0) {
+                return 0.0;
+            }
+
+            double rank = quantile * values.count;
+            long seen = 0;
+
+            for (int i = 0; i < BINS; i++) {
+                int inBin = values.bins[i];
+
+                if (inBin > 0 && seen + inBin >= rank) {
+                    long lower = Math.max(binLowerBound(i), values.min);
+                    long upper = Math.min(binUpperBound(i), values.max);
+
+                    return lower + (upper - lower) * ((rank - seen) / inBin);
+                }
+
+                seen += inBin;
+            }
+
+            return values.max;
+        }
+
+        /**
+         * @return an empty array, the individual values are not kept
+         */
+        @Override
+        public long[] getValues() {
+            return new long[0];
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(values.count, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return values.max;
+        }
+
+        @Override
+        public double getMean() {
+            return values.mean;
+        }
+
+        @Override
+        public long getMin() {
+            return values.min;
+        }
+
+        @Override
+        public double getStdDev() {
+            // Sample standard deviation, as in the snapshot of SlidingTimeWindowReservoir
+            return values.count <= 1 ? 0 : Math.sqrt(values.m2 / (values.count - 1));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            // The individual values are not kept
+        }
+    }
+}
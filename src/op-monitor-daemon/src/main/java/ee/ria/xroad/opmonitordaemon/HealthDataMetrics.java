@@ -32,7 +32,6 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.HashMap;
@@ -65,6 +64,12 @@ final class HealthDataMetrics {
     static final String MONITORING_STARTUP_TIMESTAMP =
             "monitoringStartupTimestamp";
 
+    // The names of metrics describing the storing of operational data:
+    // the rate of stored records and the lag between handling a request
+    // and storing its record.
+    static final String STORED_RECORDS = "storedRecords";
+    static final String STORE_LAG_MILLIS = "storeLagMillis";
+
     // The timestamps of last successful and unsuccessful requests are stored
     // for each service that is handled for, and are provided when the
     // respective gauge is queried.
@@ -124,6 +129,26 @@ final class HealthDataMetrics {
         }
     }
 
+    /**
+     * Update the metrics of storing operational data.
+     * @param registry       the metric registry of the operational monitoring daemon
+     * @param records        the operational data records that were stored
+     * @param storedAtMillis the time when the records were stored
+     */
+    static void processStoredRecords(MetricRegistry registry,
+            List<OperationalDataRecord> records, long storedAtMillis) {
+        registry.meter(STORED_RECORDS).mark(records.size());
+
+        Histogram lag = registry.histogram(STORE_LAG_MILLIS,
+                () -> new Histogram(new BucketedSlidingTimeWindowReservoir(
+                        OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
+                        TimeUnit.SECONDS)));
+
+        for (OperationalDataRecord rec : records) {
+            lag.update(storedAtMillis - rec.getResponseOutTs());
+        }
+    }
+
     private static void registerOrUpdateGauges(MetricRegistry registry,
             ServiceId serviceId, OperationalDataRecord rec) {
         // last request timestamp
@@ -183,7 +208,7 @@ final class HealthDataMetrics {
         if (histogram == null) {
             // Add a histogram corresponding to the service and update it.
             histogram = registry.register(histogramName,
-                    new Histogram(new SlidingTimeWindowReservoir(
+                    new Histogram(new BucketedSlidingTimeWindowReservoir(
                             OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
                             TimeUnit.SECONDS)));
         }
@@ -39,6 +39,11 @@ import java.io.Serializable;
  */
 final class OpMonitorDaemonDatabaseCtx {
 
+    private static final String SOAP_FAULT_STRING = "faultString";
+
+    private static final int FAULT_MAX_LENGTH = 2048;
+    private static final int MAX_LENGTH = 255;
+
     private static final DatabaseCtx CTX = new DatabaseCtx("op-monitor",
             new StringValueTruncator());
 
@@ -64,13 +69,30 @@ final class OpMonitorDaemonDatabaseCtx {
         return CTX.doInTransaction(callback);
     }
 
-    private static class StringValueTruncator extends EmptyInterceptor {
-        private static final long serialVersionUID = 1L;
+    /**
+     * Truncates the string properties of an operational data record state to
+     * the column lengths of the operational_data table.
+     * @param state the property values of the record
+     * @param propertyNames the property names
+     * @param types the property types
+     */
+    static void truncateStringProperties(Object[] state,
+            String[] propertyNames, Type[] types) {
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] instanceof StringType) {
+                int maxLength = MAX_LENGTH;
+                if (propertyNames[i].equals(SOAP_FAULT_STRING)) {
+                    maxLength = FAULT_MAX_LENGTH;
+                }
 
-        private static final String SOAP_FAULT_STRING = "faultString";
+                state[i] = StringUtils.substring((String) state[i], 0,
+                        maxLength);
+            }
+        }
+    }
 
-        private static final int FAULT_MAX_LENGTH = 2048;
-        private static final int MAX_LENGTH = 255;
+    private static class StringValueTruncator extends EmptyInterceptor {
+        private static final long serialVersionUID = 1L;
 
         @Override
         public boolean onFlushDirty(Object entity, Serializable id,
@@ -94,21 +116,5 @@ final class OpMonitorDaemonDatabaseCtx {
 
             return false;
         }
-
-        private static void truncateStringProperties(Object[] state,
-                String[] propertyNames, Type[] types) {
-            for (int i = 0; i < types.length; i++) {
-                if (types[i] instanceof StringType) {
-                    int maxLength = MAX_LENGTH;
-                    if (propertyNames[i].equals(SOAP_FAULT_STRING)) {
-                        maxLength = FAULT_MAX_LENGTH;
-                    }
-
-                    state[i] = StringUtils.substring((String) state[i], 0,
-                            maxLength);
-                }
-            }
-        }
-
     }
 }
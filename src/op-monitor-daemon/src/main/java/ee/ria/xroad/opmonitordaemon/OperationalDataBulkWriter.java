@@ -0,0 +1,220 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.db.HibernateUtil;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.truncateStringProperties;
+
+/**
+ * Writes operational data records to the operational_data table in bulk,
+ * bypassing the Hibernate persistence context. Record IDs are still taken
+ * from the mapped identifier generator and string values are truncated as
+ * on a regular save, so the stored rows are identical to the ones written
+ * by session.save().
+ *
+ * On PostgreSQL the rows are streamed with COPY, on other databases they
+ * are written with JDBC batch inserts.
+ */
+@Slf4j
+final class OperationalDataBulkWriter {
+
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    private static final char CSV_SEPARATOR = ',';
+    private static final char CSV_QUOTE = '"';
+    private static final char CSV_ROW_END = '\n';
+
+    private final SessionImplementor session;
+
+    private final AbstractEntityPersister persister;
+
+    private final String[] propertyNames;
+
+    private final Type[] propertyTypes;
+
+    private final String columnList;
+
+    private OperationalDataBulkWriter(Session session) {
+        this.session = session.unwrap(SessionImplementor.class);
+        this.persister = (AbstractEntityPersister) this.session.getFactory().getMetamodel()
+                .entityPersister(OperationalDataRecord.class);
+        this.propertyNames = persister.getPropertyNames();
+        this.propertyTypes = persister.getPropertyTypes();
+        this.columnList = persister.getIdentifierColumnNames()[0] + IntStream.range(0, propertyNames.length)
+                .mapToObj(i -> ", " + persister.getPropertyColumnNames(i)[0])
+                .collect(Collectors.joining());
+    }
+
+    /**
+     * Stores the records in the current transaction of the session. Sets the
+     * ID and the monitoring data timestamp of each record.
+     * @param session the database session
+     * @param records the records to store
+     * @param timestamp the monitoring data timestamp of the records
+     */
+    static void write(Session session, List<OperationalDataRecord> records, long timestamp) {
+        new OperationalDataBulkWriter(session).write(records, timestamp);
+    }
+
+    private void write(List<OperationalDataRecord> records, long timestamp) {
+        for (OperationalDataRecord record : records) {
+            record.setMonitoringDataTs(timestamp);
+            record.setId((Long) persister.getIdentifierGenerator().generate(session, record));
+        }
+
+        int batchSize = HibernateUtil.getConfiguredBatchSize(session, DEFAULT_BATCH_SIZE);
+
+        session.doWork(connection -> {
+            if (connection.isWrapperFor(PGConnection.class)) {
+                copy(connection, records, batchSize);
+            } else {
+                insert(connection, records, batchSize);
+            }
+        });
+    }
+
+    private Object[] getState(OperationalDataRecord record) {
+        Object[] state = persister.getPropertyValues(record);
+        truncateStringProperties(state, propertyNames, propertyTypes);
+
+        return state;
+    }
+
+    private void insert(Connection connection, List<OperationalDataRecord> records, int batchSize)
+            throws SQLException {
+        String sql = "INSERT INTO " + persister.getTableName() + " (" + columnList + ") VALUES (?"
+                + String.join("", Collections.nCopies(propertyNames.length, ", ?")) + ")";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int batched = 0;
+
+            for (OperationalDataRecord record : records) {
+                Object[] state = getState(record);
+
+                statement.setLong(1, record.getId());
+
+                for (int i = 0; i < state.length; i++) {
+                    propertyTypes[i].nullSafeSet(statement, state[i], i + 2, session);
+                }
+
+                statement.addBatch();
+
+                if (++batched % batchSize == 0) {
+                    statement.executeBatch();
+                }
+            }
+
+            if (batched % batchSize != 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private void copy(Connection connection, List<OperationalDataRecord> records, int batchSize)
+            throws SQLException {
+        String sql = "COPY " + persister.getTableName() + " (" + columnList + ") FROM STDIN WITH (FORMAT csv)";
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+
+        try {
+            StringBuilder rows = new StringBuilder();
+            int buffered = 0;
+
+            for (OperationalDataRecord record : records) {
+                appendRow(rows, record.getId(), getState(record));
+
+                if (++buffered % batchSize == 0) {
+                    writeRows(copyIn, rows);
+                }
+            }
+
+            writeRows(copyIn, rows);
+
+            long copied = copyIn.endCopy();
+
+            log.trace("Copied {} operational data records", copied);
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private static void writeRows(CopyIn copyIn, StringBuilder rows) throws SQLException {
+        if (rows.length() > 0) {
+            byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            rows.setLength(0);
+        }
+    }
+
+    private static void appendRow(StringBuilder row, long id, Object[] state) {
+        row.append(id);
+
+        for (Object value : state) {
+            row.append(CSV_SEPARATOR);
+
+            if (value instanceof String) {
+                // Quoted, so that an empty string is not read as NULL
+                row.append(CSV_QUOTE);
+
+                String string = (String) value;
+
+                for (int i = 0; i < string.length(); i++) {
+                    char c = string.charAt(i);
+
+                    if (c == CSV_QUOTE) {
+                        row.append(CSV_QUOTE);
+                    }
+
+                    row.append(c);
+                }
+
+                row.append(CSV_QUOTE);
+            } else if (value != null) {
+                row.append(value);
+            }
+        }
+
+        row.append(CSV_ROW_END);
+    }
+}
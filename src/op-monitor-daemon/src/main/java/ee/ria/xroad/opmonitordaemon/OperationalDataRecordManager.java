@@ -33,10 +33,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.MONITORING_DATA_TS;
@@ -50,6 +53,8 @@ final class OperationalDataRecordManager {
 
     private static final int DEFAULT_BATCH_SIZE = 50;
 
+    private static final int FETCH_SIZE = 1000;
+
     @Setter
     private static int maxRecordsInPayload = OpMonitoringSystemProperties.getOpMonitorMaxRecordsInPayload();
 
@@ -62,6 +67,14 @@ final class OperationalDataRecordManager {
         doInTransaction(session -> storeInTransaction(session, records, timestamp));
     }
 
+    static void storeRecordsInBulk(List<OperationalDataRecord> records, long timestamp) throws Exception {
+        doInTransaction(session -> {
+            OperationalDataBulkWriter.write(session, records, timestamp);
+
+            return null;
+        });
+    }
+
     static OperationalDataRecords queryAllRecords() throws Exception {
         return doInTransaction(OperationalDataRecordManager::queryAllOperationalDataInTransaction);
     }
@@ -77,14 +90,21 @@ final class OperationalDataRecordManager {
 
     static OperationalDataRecords queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
             ClientId serviceProviderFilter, Set<String> outputFields) throws Exception {
-        OperationalDataRecords records = doInTransaction(session -> queryOperationalDataInTransaction(session,
-                recordsFrom, recordsTo, clientFilter, serviceProviderFilter, outputFields));
+        OperationalDataRecords records = new OperationalDataRecords(new ArrayList<>());
 
-        removeMonitoringDataTsIfNotSpecified(records, outputFields);
+        records.setNextRecordsFrom(queryRecords(recordsFrom, recordsTo, clientFilter, serviceProviderFilter,
+                outputFields, records.getRecords()::add));
 
         return records;
     }
 
+    static Long queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
+            ClientId serviceProviderFilter, Set<String> outputFields, Consumer<OperationalDataRecord> consumer)
+            throws Exception {
+        return doInTransaction(session -> streamOperationalDataInTransaction(session, recordsFrom, recordsTo,
+                clientFilter, serviceProviderFilter, outputFields, consumer));
+    }
+
     private static Void storeInTransaction(Session session, List<OperationalDataRecord> records, long timestamp) {
         int storedCount = 0;
         int batchSize = getConfiguredBatchSize(session);
@@ -118,77 +138,59 @@ final class OperationalDataRecordManager {
     }
 
     /**
-     * Queries operational data records from the database using search criteria parameters. The number of returned
-     * records is limited by the configured value maxRecordsInPayload plus overflow records with the same
-     * monitorindDataTs timestamp as the last included record.
+     * Streams operational data records matching the search criteria parameters from the database to the consumer,
+     * in the order of their monitoringDataTs timestamps, using a database cursor. The number of records is limited
+     * by the configured value maxRecordsInPayload plus overflow records with the same monitoringDataTs timestamp as
+     * the last included record. The record following the overflow records, if any, ends the query.
      * @param session               database session
      * @param recordsFrom           records from timestamp seconds
      * @param recordsTo             records to timestamp seconds
      * @param clientFilter          filter records by client (if not null)
      * @param serviceProviderFilter filter records by service provider (if not null)
      * @param outputFields          list of the requested operational data field
-     * @return operational data records.
+     * @param consumer              consumer of the records
+     * @return the timestamp from which the records left out can be queried, or null if all the records were included
      */
-    @SuppressWarnings("unchecked")
-    private static OperationalDataRecords queryOperationalDataInTransaction(Session session, long recordsFrom,
-            long recordsTo, ClientId clientFilter, ClientId serviceProviderFilter, Set<String> outputFields) {
-
+    private static Long streamOperationalDataInTransaction(Session session, long recordsFrom, long recordsTo,
+            ClientId clientFilter, ClientId serviceProviderFilter, Set<String> outputFields,
+            Consumer<OperationalDataRecord> consumer) {
         final OperationalDataRecordQuery
                 query = new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
         query.between(recordsFrom, recordsTo);
         query.orderByAsc(MONITORING_DATA_TS);
-        query.setMaxRecords(maxRecordsInPayload);
-        OperationalDataRecords records = new OperationalDataRecords(query.list());
 
-        // Check overflow.
-        if (records.size() == maxRecordsInPayload) {
-            log.trace("Check possible records overflow");
+        int count = 0;
+        Long lastMonitoringDataTs = null;
 
-            long lastMonitoringDataTs = records.getLastMonitoringDataTs();
-            final OperationalDataRecordQuery overflow =
-                    new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
-            overflow.addOverflowCriteria(lastMonitoringDataTs);
-            OperationalDataRecords overflowRecords = new OperationalDataRecords(overflow.list());
+        try (Stream<OperationalDataRecord> records = query.stream(FETCH_SIZE)) {
+            Iterator<OperationalDataRecord> iterator = records.iterator();
 
-            records.removeRecordsByMonitoringDataTs(lastMonitoringDataTs);
-            records.append(overflowRecords);
+            while (iterator.hasNext()) {
+                OperationalDataRecord record = iterator.next();
 
-            if (recordsOverflow(session, lastMonitoringDataTs, recordsTo, clientFilter, serviceProviderFilter)) {
-                log.debug("Records overflow, set nextRecordsFrom to {}", lastMonitoringDataTs + 1);
+                if (lastMonitoringDataTs != null && record.getMonitoringDataTs() > lastMonitoringDataTs) {
+                    log.debug("Records overflow, set nextRecordsFrom to {}", lastMonitoringDataTs + 1);
 
-                records.setNextRecordsFrom(lastMonitoringDataTs + 1);
-            }
-        }
+                    return lastMonitoringDataTs + 1;
+                }
 
-        return records;
-    }
+                if (++count == maxRecordsInPayload) {
+                    log.trace("Include possible overflow records");
 
-    private static void removeMonitoringDataTsIfNotSpecified(OperationalDataRecords records, Set<String> outputFields) {
-        if (!outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS)) {
-            records.getRecords().forEach(i -> i.setMonitoringDataTs(null));
+                    lastMonitoringDataTs = record.getMonitoringDataTs();
+                }
+
+                removeMonitoringDataTsIfNotSpecified(record, outputFields);
+                consumer.accept(record);
+            }
         }
-    }
 
-    private static boolean recordsOverflow(Session session, long lastMonitoringDataTs, long recordsTo,
-            ClientId clientFilter, ClientId serviceProviderFilter) {
-        // Indicate overflow only if some records are not included.
-        return lastMonitoringDataTs < recordsTo && hasRecordsLeft(session, lastMonitoringDataTs, recordsTo,
-                clientFilter, serviceProviderFilter);
+        return null;
     }
 
-    private static boolean hasRecordsLeft(Session session, long lastMonitoringDataTs, long recordsTo,
-            ClientId clientFilter, ClientId serviceProviderFilter) {
-        if (lastMonitoringDataTs == recordsTo) {
-            return false;
+    private static void removeMonitoringDataTsIfNotSpecified(OperationalDataRecord record, Set<String> outputFields) {
+        if (!outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS)) {
+            record.setMonitoringDataTs(null);
         }
-
-        final OperationalDataRecordQuery query =
-                new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter,
-                        Collections.singleton(MONITORING_DATA_TS));
-        // BETWEEN treats the endpoint values as included in the range.
-        query.between(lastMonitoringDataTs + 1, recordsTo);
-        query.setMaxRecords(1);
-
-        return query.list().size() > 0;
     }
 }
@@ -26,7 +26,6 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.identifier.ClientId;
 
-import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Session;
 
@@ -47,6 +46,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CLASS;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CODE;
@@ -69,9 +69,6 @@ final class OperationalDataRecordQuery {
     private final Root<OperationalDataRecord> from;
     private final Session session;
 
-    @Setter
-    private int maxRecords = Integer.MAX_VALUE;
-
     private Predicate pred;
     private List<Selection<?>> projection = new ArrayList<>();
     private javax.persistence.criteria.Order order = null;
@@ -150,19 +147,20 @@ final class OperationalDataRecordQuery {
                                 member.getSubsystemCode()));
     }
 
-    void addOverflowCriteria(long monitoringDataTs) {
-        pred = cb.and(pred, cb.equal(from.get(MONITORING_DATA_TS), monitoringDataTs));
-    }
-
-    List<OperationalDataRecord> list() {
+    /**
+     * Streams the query results from a forward-only database cursor. The stream must be closed after use.
+     * @param fetchSize number of rows fetched from the database at a time
+     */
+    Stream<OperationalDataRecord> stream(int fetchSize) {
         query.multiselect(projection).where(pred);
         if (order != null) {
             query.orderBy(order);
         }
-        return transform(session.createQuery(query)
+        return session.createQuery(query)
                 .setReadOnly(true)
-                .setMaxResults(maxRecords)
-                .getResultList());
+                .setFetchSize(fetchSize)
+                .stream()
+                .map(OperationalDataRecordQuery::transform);
     }
 
     void between(long fromTs, long toTs) {
@@ -174,7 +172,7 @@ final class OperationalDataRecordQuery {
     }
 
     /**
-     * Transforms a list of Tuple to list of OperationalDataRecord
+     * Transforms a Tuple to OperationalDataRecord
      *
      * A tuple represents a partial OperationalDataRecord. Assumes that the column aliases in a tuple match the field
      * names and a setter for the field exists (uses reflection). Assumes that the values can
@@ -182,24 +180,19 @@ final class OperationalDataRecordQuery {
      * @see #configureOutputFields
      * @see OperationalDataRecord
      */
-    private static List<OperationalDataRecord> transform(List<Tuple> result) {
-        List<OperationalDataRecord> tmp = new ArrayList<>(result.size());
-
-        for (Tuple t : result) {
-            final OperationalDataRecord record = new OperationalDataRecord();
-            for (TupleElement<?> te : t.getElements()) {
-                final Method method = SETTERS.get(te.getAlias());
-                if (method != null) {
-                    try {
-                        method.invoke(record, t.get(te));
-                    } catch (InvocationTargetException | IllegalAccessException e) {
-                        throw new IllegalArgumentException("Unable to transform", e);
-                    }
+    private static OperationalDataRecord transform(Tuple t) {
+        final OperationalDataRecord record = new OperationalDataRecord();
+        for (TupleElement<?> te : t.getElements()) {
+            final Method method = SETTERS.get(te.getAlias());
+            if (method != null) {
+                try {
+                    method.invoke(record, t.get(te));
+                } catch (InvocationTargetException | IllegalAccessException e) {
+                    throw new IllegalArgumentException("Unable to transform", e);
                 }
             }
-            tmp.add(record);
         }
-        return tmp;
+        return record;
     }
 
     /*
@@ -0,0 +1,81 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import lombok.Getter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes operational data records as the gzip compressed JSON payload of the
+ * request getSecurityServerOperationalData one record at a time. The output
+ * is equal to the compressed {@link OperationalDataRecords#getPayload}.
+ */
+class OperationalDataRecordsWriter
+        implements Consumer<OperationalDataRecord>, Closeable {
+
+    private final Gson gson;
+    private final JsonWriter writer;
+
+    @Getter
+    private int count;
+
+    OperationalDataRecordsWriter(OutputStream out, Gson gson)
+            throws IOException {
+        this.gson = gson;
+        this.writer = gson.newJsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new GZIPOutputStream(out),
+                        StandardCharsets.UTF_8)));
+
+        writer.beginObject();
+        writer.name("records");
+        writer.beginArray();
+    }
+
+    @Override
+    public void accept(OperationalDataRecord record) {
+        gson.toJson(record, OperationalDataRecord.class, writer);
+        count++;
+    }
+
+    /**
+     * Completes the payload and finishes the compressed stream.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.endArray();
+        writer.endObject();
+        writer.close();
+    }
+}
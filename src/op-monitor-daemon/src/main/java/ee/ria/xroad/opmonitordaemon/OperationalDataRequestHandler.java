@@ -45,6 +45,7 @@ import lombok.extern.slf4j.Slf4j;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Marshaller;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.HashMap;
@@ -164,7 +165,6 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
             long recordsFrom, long recordsTo, ClientId filterByServiceProvider,
             Set<String> outputFields, long recordsAvailableBefore)
             throws IOException {
-        OperationalDataRecords responseRecords;
         GetSecurityServerOperationalDataResponseType opDataResponse =
                 OBJECT_FACTORY
                         .createGetSecurityServerOperationalDataResponseType();
@@ -179,22 +179,26 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
             opDataResponse.setNextRecordsFrom(recordsAvailableBefore);
         }
 
-        responseRecords = getOperationalDataRecords(filterByClient,
-                recordsFrom, recordsTo, filterByServiceProvider, outputFields);
+        // The records are streamed from the database straight into the
+        // compressed payload, only the compressed bytes are kept in memory
+        // since the records count precedes the attachment in the response.
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        Long nextRecordsFrom;
 
-        opDataResponse.setRecordsCount(responseRecords.size());
-        String payload = responseRecords.getPayload(GSON);
+        try (OperationalDataRecordsWriter writer =
+                new OperationalDataRecordsWriter(payload, GSON)) {
+            nextRecordsFrom = writeOperationalDataRecords(filterByClient,
+                    recordsFrom, recordsTo, filterByServiceProvider,
+                    outputFields, writer);
 
-        // Optimize memory usage: release records memory before compressing
-        // operation.
-        responseRecords.getRecords().clear();
+            opDataResponse.setRecordsCount(writer.getCount());
+        }
 
-        opDataResponse.setRecords(createAttachmentDataSource(compress(payload),
-                CID, MimeTypes.GZIP));
+        opDataResponse.setRecords(createAttachmentDataSource(
+                payload.toByteArray(), CID, MimeTypes.GZIP));
 
-        if (responseRecords.getNextRecordsFrom() != null) {
-            opDataResponse.setNextRecordsFrom(
-                    responseRecords.getNextRecordsFrom());
+        if (nextRecordsFrom != null) {
+            opDataResponse.setNextRecordsFrom(nextRecordsFrom);
         }
 
         return opDataResponse;
@@ -206,13 +210,14 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 opDataResponse);
     }
 
-    protected OperationalDataRecords getOperationalDataRecords(
+    protected Long writeOperationalDataRecords(
             ClientId filterByClient, long recordsFrom, long recordsTo,
-            ClientId filterByServiceProvider, Set<String> outputFields) {
+            ClientId filterByServiceProvider, Set<String> outputFields,
+            Consumer<OperationalDataRecord> writer) {
         try {
             return OperationalDataRecordManager.queryRecords(recordsFrom,
                     recordsTo, filterByClient, filterByServiceProvider,
-                    outputFields);
+                    outputFields, writer);
         } catch (Exception e) {
             log.error("Failed to get records for response", e);
 
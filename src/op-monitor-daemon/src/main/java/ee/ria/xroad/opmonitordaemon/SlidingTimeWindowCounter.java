@@ -24,15 +24,17 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.Reservoir;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A counter metric that uses the sliding time window reservoir internally to
- * support periodic and configurable resetting.
+ * A counter metric that counts the increments made within a sliding window
+ * of time. The increments are summed up in a fixed number of time buckets
+ * (see BucketedSlidingTimeWindowReservoir), so incrementing takes constant
+ * time and the memory used does not depend on the rate of increments.
  * This counter does not support manually decrementing the count (the dec()
  * methods raise a runtime exception).
  * We extend Counter instead of implementing the Metric and Counting
@@ -41,7 +43,13 @@ import java.util.concurrent.TimeUnit;
  */
 class SlidingTimeWindowCounter extends Counter {
 
-    private final Reservoir reservoir;
+    private final Clock clock;
+
+    private final long bucketNanos;
+
+    private final long[] counts;
+
+    private final long[] epochs;
 
     /**
      * Creates a counter with the given window of time.
@@ -50,27 +58,54 @@ class SlidingTimeWindowCounter extends Counter {
      * @param windowUnit the unit of {@code window}
      */
     SlidingTimeWindowCounter(long window, TimeUnit windowUnit) {
-        reservoir = new SlidingTimeWindowReservoir(window, windowUnit);
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    SlidingTimeWindowCounter(long window, TimeUnit windowUnit, Clock clock) {
+        int bucketCount = BucketedSlidingTimeWindowReservoir.getBucketCount(window, windowUnit);
+
+        this.clock = clock;
+        this.bucketNanos = windowUnit.toNanos(window) / bucketCount;
+        this.counts = new long[bucketCount];
+        this.epochs = new long[bucketCount];
+
+        // no bucket has been used yet, epoch 0 would otherwise count as a live bucket
+        Arrays.fill(this.epochs, Long.MIN_VALUE);
     }
 
     /**
-     * @return the snapshot size of the sliding time window reservoir.
+     * @return the number of increments within the window.
      */
     @Override
-    public long getCount() {
-        return reservoir.getSnapshot().size();
+    public synchronized long getCount() {
+        long epoch = currentEpoch();
+        long count = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            if (epochs[i] > epoch - counts.length && epochs[i] <= epoch) {
+                count += counts[i];
+            }
+        }
+
+        return count;
     }
 
     @Override
     public void inc() {
-        reservoir.update(1L);
+        inc(1);
     }
 
     @Override
-    public void inc(long n) {
-        for (int i = 0; i < n; ++i) {
-            inc();
+    public synchronized void inc(long n) {
+        long epoch = currentEpoch();
+        int i = (int) Math.floorMod(epoch, (long) counts.length);
+
+        if (epochs[i] != epoch) {
+            epochs[i] = epoch;
+            counts[i] = 0;
         }
+
+        counts[i] += n;
     }
 
     @Override
@@ -83,4 +118,7 @@ class SlidingTimeWindowCounter extends Counter {
         throw new RuntimeException("This counter can be incremented only");
     }
 
+    private long currentEpoch() {
+        return Math.floorDiv(clock.getTick(), bucketNanos);
+    }
 }
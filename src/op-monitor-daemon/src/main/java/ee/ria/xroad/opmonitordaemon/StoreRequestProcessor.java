@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.util.JsonUtils;
 
 import com.codahale.metrics.MetricRegistry;
@@ -34,6 +35,8 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
@@ -47,6 +50,8 @@ class StoreRequestProcessor {
 
     private static final Gson GSON = JsonUtils.getSerializer();
 
+    private static final boolean BULK_STORE_ENABLED = OpMonitoringSystemProperties.isOpMonitorBulkStoreEnabled();
+
     /** The servlet request. */
     private HttpServletRequest servletRequest;
 
@@ -65,21 +70,57 @@ class StoreRequestProcessor {
      * @throws Exception in case of any errors
      */
     void process() throws Exception {
-        String rawJson = IOUtils.toString(servletRequest.getInputStream(),
-                StandardCharsets.UTF_8);
+        List<OperationalDataRecord> records;
+
+        if (BULK_STORE_ENABLED) {
+            records = readStoreData();
+        } else {
+            String rawJson = IOUtils.toString(servletRequest.getInputStream(),
+                    StandardCharsets.UTF_8);
 
-        log.trace("Incoming JSON: {}", rawJson);
+            log.trace("Incoming JSON: {}", rawJson);
 
-        List<OperationalDataRecord> records = prepareRawStoreData(rawJson);
+            records = prepareRawStoreData(rawJson);
+        }
 
         log.debug("Process {} record{}", records.size(),
                 records.size() == 1 ? "" : "s");
 
-        OperationalDataRecordManager.storeRecords(records, getEpochSecond());
+        long start = System.currentTimeMillis();
+
+        if (BULK_STORE_ENABLED) {
+            OperationalDataRecordManager.storeRecordsInBulk(records, getEpochSecond());
+        } else {
+            OperationalDataRecordManager.storeRecords(records, getEpochSecond());
+        }
+
+        long stored = System.currentTimeMillis();
+
+        log.debug("Stored {} records in {} ms", records.size(), stored - start);
 
+        HealthDataMetrics.processStoredRecords(healthMetricRegistry, records, stored);
         HealthDataMetrics.processRecords(healthMetricRegistry, records);
     }
 
+    // Parse the operational data straight from the request stream, without
+    // reading the whole request into a string first.
+    private List<OperationalDataRecord> readStoreData() throws Exception {
+        OperationalDataRecords records;
+
+        try (Reader reader = new InputStreamReader(servletRequest.getInputStream(), StandardCharsets.UTF_8)) {
+            records = GSON.fromJson(GSON.newJsonReader(reader), OperationalDataRecords.class);
+        } catch (Exception e) {
+            throw new Exception("Received invalid request", e);
+        }
+
+        if (records == null) {
+            throw new Exception(
+                    "No data was found in the request to store data");
+        }
+
+        return records.getRecords();
+    }
+
     // Get usable operational data to be stored. If no such data is found,
     // send an error message right away.
     private static List<OperationalDataRecord> prepareRawStoreData(
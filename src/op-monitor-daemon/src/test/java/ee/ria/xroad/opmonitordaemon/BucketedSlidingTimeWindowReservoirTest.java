@@ -0,0 +1,136 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the bucketed sliding time window reservoir.
+ */
+public class BucketedSlidingTimeWindowReservoirTest {
+
+    private static final double DELTA = 1e-9;
+
+    private final ManualClock clock = new ManualClock();
+
+    private final BucketedSlidingTimeWindowReservoir reservoir =
+            new BucketedSlidingTimeWindowReservoir(10, TimeUnit.SECONDS, clock);
+
+    @Test
+    public void emptySnapshot() {
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(0, snapshot.size());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean(), DELTA);
+        assertEquals(0.0, snapshot.getStdDev(), DELTA);
+        assertEquals(0.0, snapshot.getMedian(), DELTA);
+    }
+
+    @Test
+    public void statisticsMatchUniformSnapshot() {
+        long[] values = {3, 120, 7, 7, 1024, 0, 55, 9000, 42};
+
+        for (int i = 0; i < values.length; i++) {
+            // Spread the values over several buckets
+            clock.advance(i % 3, TimeUnit.SECONDS);
+            reservoir.update(values[i]);
+        }
+
+        Snapshot expected = new UniformSnapshot(values);
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(expected.getMin(), snapshot.getMin());
+        assertEquals(expected.getMax(), snapshot.getMax());
+        assertEquals(expected.getMean(), snapshot.getMean(), DELTA);
+        assertEquals(expected.getStdDev(), snapshot.getStdDev(), DELTA);
+        assertEquals(0.0, snapshot.getValue(0.0), 0.0);
+        assertEquals(9000.0, snapshot.getValue(1.0), 0.0);
+    }
+
+    @Test
+    public void valuesExpireWithTheirBucket() {
+        reservoir.update(100);
+        clock.advance(5, TimeUnit.SECONDS);
+        reservoir.update(200);
+
+        assertEquals(2, reservoir.size());
+
+        clock.advance(5, TimeUnit.SECONDS);
+
+        assertEquals(1, reservoir.size());
+        assertEquals(200, reservoir.getSnapshot().getMin());
+
+        clock.advance(5, TimeUnit.SECONDS);
+
+        assertEquals(0, reservoir.size());
+    }
+
+    @Test
+    public void quantilesAreEstimatedWithinBins() {
+        for (long i = 1; i <= 1000; i++) {
+            reservoir.update(i);
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        // Power-of-two bins bound the error of an estimate to the width of its bin
+        assertEquals(500.0, snapshot.getMedian(), 256.0);
+        assertEquals(990.0, snapshot.get99thPercentile(), 512.0);
+    }
+
+    @Test
+    public void bucketCount() {
+        assertEquals(1, BucketedSlidingTimeWindowReservoir.getBucketCount(500, TimeUnit.MILLISECONDS));
+        assertEquals(10, BucketedSlidingTimeWindowReservoir.getBucketCount(10, TimeUnit.SECONDS));
+        assertEquals(BucketedSlidingTimeWindowReservoir.MAX_BUCKETS,
+                BucketedSlidingTimeWindowReservoir.getBucketCount(600, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Clock advanced by the test.
+     */
+    static class ManualClock extends Clock {
+        private long tick = -TimeUnit.SECONDS.toNanos(1000);
+
+        void advance(long amount, TimeUnit unit) {
+            tick += unit.toNanos(amount);
+        }
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
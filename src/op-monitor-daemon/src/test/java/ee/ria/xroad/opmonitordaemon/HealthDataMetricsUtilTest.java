@@ -28,6 +28,8 @@ import ee.ria.xroad.common.identifier.ServiceId;
 
 import org.junit.Test;
 
+import java.util.regex.Pattern;
+
 import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getLastRequestTimestampGaugeName;
 import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestCounterName;
 import static ee.ria.xroad.opmonitordaemon.HealthDataMetricsUtil.getRequestDurationName;
@@ -62,33 +64,33 @@ public class HealthDataMetricsUtilTest {
         assertEquals(jmxKey, "lastSuccessfulRequestTimestamp("
                 + serviceId.toShortString() + ")");
 
-        String regex = HealthDataMetricsUtil.formatMetricMatchRegexp(jmxKey);
+        String regex = formatMetricMatchRegexp(jmxKey);
         assertTrue(jmxKey.matches(regex));
 
         jmxKey = getLastRequestTimestampGaugeName(serviceId, false);
         assertEquals(jmxKey, "lastUnsuccessfulRequestTimestamp("
                     + serviceId.toShortString() + ")");
 
-        regex = HealthDataMetricsUtil.formatMetricMatchRegexp(jmxKey);
+        regex = formatMetricMatchRegexp(jmxKey);
         assertTrue(jmxKey.matches(regex));
 
         jmxKey = getRequestCounterName(serviceId, true);
         assertEquals(jmxKey, "successfulRequestCount("
                         + serviceId.toShortString() + ")");
 
-        regex = HealthDataMetricsUtil.formatMetricMatchRegexp(jmxKey);
+        regex = formatMetricMatchRegexp(jmxKey);
         assertTrue(jmxKey.matches(regex));
 
         jmxKey = getRequestCounterName(serviceId, false);
         assertEquals(jmxKey, "unsuccessfulRequestCount("
                         + serviceId.toShortString() + ")");
 
-        regex = HealthDataMetricsUtil.formatMetricMatchRegexp(jmxKey);
+        regex = formatMetricMatchRegexp(jmxKey);
         assertTrue(jmxKey.matches(regex));
 
         jmxKey = getServiceTypeName(serviceId);
         assertEquals(jmxKey, "serviceType(" + serviceId.toShortString() + ")");
-        regex = HealthDataMetricsUtil.formatMetricMatchRegexp(jmxKey);
+        regex = formatMetricMatchRegexp(jmxKey);
         assertTrue(jmxKey.matches(regex));
     }
 
@@ -140,7 +142,7 @@ public class HealthDataMetricsUtilTest {
                         + "/testservice_provider/&#91;&quot;Með_suð_í_"
                         + "eyrum&quot;&#93;/v012)");
 
-        String regex = HealthDataMetricsUtil.formatMetricMatchRegexp(
+        String regex = formatMetricMatchRegexp(
                 lastSuccessfulRequestTsKey);
         assertTrue(lastSuccessfulRequestTsKey.matches(regex));
     }
@@ -165,7 +167,7 @@ public class HealthDataMetricsUtilTest {
                         + "/testservice_provider"
                         + "/Закрой&#46;за&#46;мной&#46;дверь&#46;я&#46;ухожу)");
 
-        String regex = HealthDataMetricsUtil.formatMetricMatchRegexp(
+        String regex = formatMetricMatchRegexp(
                 requestDurationKey);
         assertTrue(requestDurationKey.matches(regex));
     }
@@ -190,8 +192,12 @@ public class HealthDataMetricsUtilTest {
                         + "/testmember&#44;&#32;simple/testservice_provider"
                         + "/a&#32;service&#32;with&#32;spaces)");
 
-        String regex = HealthDataMetricsUtil.formatMetricMatchRegexp(
+        String regex = formatMetricMatchRegexp(
                 requestDurationKey);
         assertTrue(requestDurationKey.matches(regex));
     }
+
+    private static String formatMetricMatchRegexp(String metricName) {
+        return String.format("^%s$", Pattern.quote(metricName));
+    }
 }
@@ -37,13 +37,16 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.queryAllRecords;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.queryRecords;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.storeRecords;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.storeRecordsInBulk;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.GSON;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.formatFullOperationalDataAsJson;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.storeFullOperationalDataRecord;
@@ -104,6 +107,31 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
         assertEquals(record, resultRecord);
     }
 
+    @Test
+    public void storeAndQueryOperationalDataInBulk() throws Exception {
+        List<OperationalDataRecord> records = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            OperationalDataRecord record = GSON.fromJson(
+                    formatFullOperationalDataAsJson(), OperationalDataRecord.class);
+            record.setMessageId("message " + i);
+            record.setMessageIssue(i == 0 ? LONG_STRING : null);
+
+            records.add(record);
+        }
+
+        storeRecordsInBulk(records, 1474968979L);
+
+        OperationalDataRecords result =
+                OperationalDataRecordManager.queryAllRecords();
+
+        assertEquals(3, result.size());
+
+        // The bulk store sets the id of the records as well.
+        records.get(0).setMessageIssue(LONG_STRING.substring(0, 255));
+        assertEquals(new HashSet<>(records), new HashSet<>(result.getRecords()));
+    }
+
     @Test
     public void storeAndQueryDataFromPeriods() throws Exception {
         storeFullOperationalDataRecords(1, 1474968960L);
@@ -27,10 +27,15 @@ package ee.ria.xroad.opmonitordaemon;
 import ee.ria.xroad.common.util.JsonUtils;
 
 import com.google.gson.Gson;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 
@@ -55,4 +60,34 @@ public class OperationalDataRecordsTest {
 
         assertEquals("{\"records\":[{},{}]}", records.getPayload(GSON));
     }
+
+    /**
+     * Test that the streamed records payload equals the records payload.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void streamedRecordsPayload() throws Exception {
+        List<OperationalDataRecord> recordList = new ArrayList<>();
+        OperationalDataRecords records = new OperationalDataRecords(recordList);
+
+        recordList.add(GSON.fromJson(
+                OperationalDataTestUtil.formatFullOperationalDataAsJson(),
+                OperationalDataRecord.class));
+        recordList.add(new OperationalDataRecord());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (OperationalDataRecordsWriter writer =
+                new OperationalDataRecordsWriter(out, GSON)) {
+            recordList.forEach(writer);
+
+            assertEquals(2, writer.getCount());
+        }
+
+        String payload = IOUtils.toString(new GZIPInputStream(
+                new ByteArrayInputStream(out.toByteArray())),
+                StandardCharsets.UTF_8);
+
+        assertEquals(records.getPayload(GSON), payload);
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.opmonitordaemon.BucketedSlidingTimeWindowReservoirTest.ManualClock;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sliding time window counter.
+ */
+public class SlidingTimeWindowCounterTest {
+
+    @Test
+    public void countsIncrementsWithinWindow() {
+        ManualClock clock = new ManualClock();
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, clock);
+
+        counter.inc();
+        counter.inc(1_000_000);
+
+        clock.advance(30, TimeUnit.SECONDS);
+        counter.inc(5);
+
+        assertEquals(1_000_006, counter.getCount());
+
+        clock.advance(30, TimeUnit.SECONDS);
+
+        assertEquals(5, counter.getCount());
+
+        clock.advance(2, TimeUnit.MINUTES);
+
+        assertEquals(0, counter.getCount());
+    }
+
+    @Test
+    public void countsIncrementsAtClockOrigin() {
+        ManualClock clock = new ManualClock();
+        clock.advance(1000, TimeUnit.SECONDS);
+
+        SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, clock);
+
+        assertEquals(0, counter.getCount());
+
+        counter.inc(3);
+        clock.advance(59, TimeUnit.SECONDS);
+        counter.inc();
+
+        assertEquals(4, counter.getCount());
+
+        clock.advance(1, TimeUnit.SECONDS);
+
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void decrementNotSupported() {
+        new SlidingTimeWindowCounter(60, TimeUnit.SECONDS).dec();
+    }
+}
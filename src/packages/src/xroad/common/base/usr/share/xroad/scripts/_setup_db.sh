@@ -165,6 +165,10 @@ EOF
   if [[ "$db_user" != "$db_admin_user" ]]; then
     context="--contexts=admin"
   fi
+  # optional changesets, e.g. XROAD_DB_EXTRA_CONTEXTS=partitioned for the partitioned message log
+  if [[ -n "$XROAD_DB_EXTRA_CONTEXTS" ]]; then
+    context="${context},${XROAD_DB_EXTRA_CONTEXTS}"
+  fi
 
   LIQUIBASE_HOME="/usr/share/xroad/db" JAVA_OPTS="-Ddb_user=$db_user -Ddb_schema=$db_schema" /usr/share/xroad/db/liquibase.sh \
     --classpath=/usr/share/xroad/jlib/postgresql.jar \
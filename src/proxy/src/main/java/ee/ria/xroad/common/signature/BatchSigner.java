@@ -34,23 +34,28 @@ import ee.ria.xroad.signer.protocol.message.SignResponse;
 import akka.actor.AbstractActorWithStash;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.actor.UntypedAbstractActor;
 import akka.pattern.Patterns;
-import akka.util.Timeout;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
 import lombok.Data;
 import lombok.Getter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import org.bouncycastle.operator.OperatorCreationException;
-import scala.concurrent.Await;
 
-import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.SIGNER_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
@@ -75,11 +80,23 @@ import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
 public class BatchSigner extends UntypedAbstractActor {
 
     private static final int TIMEOUT_MILLIS = SystemProperties.getSignerClientTimeout();
-    private static final Timeout DEFAULT_TIMEOUT = new Timeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+    // How often the workers check the batches for timeouts when no new requests arrive
+    private static final long TIMEOUT_CHECK_INTERVAL_MILLIS = Math.max(10, Math.min(1000, TIMEOUT_MILLIS / 10));
+
+    private static final MetricRegistry METRICS = new MetricRegistry();
+
+    // Number of signing requests in the batches sent to Signer
+    private static final Histogram BATCH_SIZE = METRICS.histogram(name(BatchSigner.class, "batchSize"));
+
+    // Milliseconds from the first request of a batch to the signature
+    private static final Histogram LATENCY = METRICS.histogram(name(BatchSigner.class, "latency"));
 
     // Holds the actor instance, which sends and receives messages.
     private static ActorRef instance;
 
+    private JmxReporter reporter;
+
     /**
      * Initializes the batch signer with the given actor system.
      *
@@ -91,6 +108,13 @@ public class BatchSigner extends UntypedAbstractActor {
         }
     }
 
+    /**
+     * @return the batch size and latency histograms of the batch signer
+     */
+    public static MetricRegistry getMetrics() {
+        return METRICS;
+    }
+
     /**
      * Submits the given signing request for batch signing.
      *
@@ -102,14 +126,41 @@ public class BatchSigner extends UntypedAbstractActor {
      */
     public static SignatureData sign(String keyId, String signatureAlgorithmId, SigningRequest request)
             throws Exception {
+        return SignerClient.awaitResult(signAsync(keyId, signatureAlgorithmId, request));
+    }
+
+    /**
+     * Submits the given signing request for batch signing without waiting for
+     * the signature.
+     *
+     * @param keyId the signing key
+     * @param signatureAlgorithmId ID of the signature algorithm to use
+     * @param request the signing request
+     * @return future of the signature data
+     */
+    public static CompletableFuture<SignatureData> signAsync(String keyId, String signatureAlgorithmId,
+            SigningRequest request) {
         if (instance == null) {
             throw new IllegalStateException("BatchSigner is not initialized");
         }
 
         // Send the signing request to the actor instance (itself)
-        return SignerClient.result(Await.result(Patterns.ask(instance, new SigningRequestWrapper(
-                keyId, signatureAlgorithmId, request), DEFAULT_TIMEOUT.duration().length()),
-                DEFAULT_TIMEOUT.duration()));
+        return SignerClient.toFuture(Patterns.ask(instance,
+                new SigningRequestWrapper(keyId, signatureAlgorithmId, request), Duration.ofMillis(TIMEOUT_MILLIS)));
+    }
+
+    @Override
+    public void preStart() {
+        reporter = JmxReporter.forRegistry(METRICS).build();
+        reporter.start();
+    }
+
+    @Override
+    public void postStop() {
+        if (reporter != null) {
+            reporter.stop();
+            reporter = null;
+        }
     }
 
     @Override
@@ -156,175 +207,271 @@ public class BatchSigner extends UntypedAbstractActor {
 
     /**
      * This is the worker that does the heavy lifting.
+     *
+     * Signing requests are collected into a batch, which is sent to Signer when there are less than
+     * the maximum number of batches being signed and the batch is either full or has been open for
+     * the linger time. Requests that arrive while the collected batch is full are stashed until there
+     * is room in the next batch. Batches that Signer does not answer in time are failed on a periodic
+     * check, so that they do not hold the in-flight slots when no new requests arrive.
      */
     private static class WorkerImpl extends AbstractActorWithStash {
 
-        // The currently active signing ctx.
-        private BatchSignatureCtx workingSigningCtx;
+        private static final Object LINGER_TIMEOUT = new Object();
+
+        private static final Object TIMEOUT_CHECK = new Object();
+
+        private final int maxBatchSize = SystemProperties.getBatchSignerMaxBatchSize();
+        private final long lingerMillis = SystemProperties.getBatchSignerLingerMs();
+        private final int maxInFlight = SystemProperties.getBatchSignerMaxInFlight();
 
-        // The next signing ctx, if batch signing.
+        // The signing contexts being signed, by the actor waiting for the signature.
+        private final Map<ActorRef, BatchSignatureCtx> inFlightSigningCtxs = new HashMap<>();
+
+        // The signing ctx collecting new requests.
         private BatchSignatureCtx nextSigningCtx;
 
-        private long signStartTime;
-        private boolean workerBusy;
+        private Cancellable lingerTimer;
+
+        private Cancellable timeoutCheckTimer;
 
         private Boolean batchSigningEnabled;
+        private boolean batchSigningEnabledQueried;
 
         @Override
         public Receive createReceive() {
             return receiveBuilder()
                     .match(SigningRequestWrapper.class, this::handleSignRequest)
+                    .match(BatchSigningEnabled.class, this::handleBatchSigningEnabled)
                     .match(SignResponse.class, this::handleSignResponse)
                     .match(Exception.class, this::handleException)
+                    .matchEquals(LINGER_TIMEOUT, this::handleLingerTimeout)
+                    .matchEquals(TIMEOUT_CHECK, this::handleTimeoutCheck)
                     .matchAny(this::unhandled)
                     .build();
         }
 
-        private void handleSignRequest(SigningRequestWrapper signRequest) throws Exception {
+        @Override
+        public void preStart() {
+            Duration interval = Duration.ofMillis(TIMEOUT_CHECK_INTERVAL_MILLIS);
+
+            timeoutCheckTimer = getContext().getSystem().scheduler().scheduleWithFixedDelay(interval, interval,
+                    getSelf(), TIMEOUT_CHECK, getContext().getDispatcher(), ActorRef.noSender());
+        }
+
+        @Override
+        public void postStop() {
+            cancelLingerTimer();
+
+            if (timeoutCheckTimer != null) {
+                timeoutCheckTimer.cancel();
+            }
+        }
+
+        private void handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
 
             // If we do not know whether batch signing is enabled for the token,
-            // we ask from Signer. This call will block until response is
-            // received or error occurs.
+            // we ask from Signer. Until the answer arrives, requests are signed
+            // one at a time.
             if (batchSigningEnabled == null) {
                 queryBatchSigningEnabled(signRequest.getKeyId());
             }
 
-            // Handle incoming sign request. If the token worker is currently
-            // busy (signing, generating key, etc...) and batch signing is
-            // enabled then create signing context and collect all following
-            // sign requests to be signed in batch. Otherwise just sign the
-            // data straight away.
-            if (isWorkerBusy()) {
-                if (batchSigningEnabled) {
-                    doBatchSign(signRequest);
-                } else {
-                    log.trace("Batch signing not enabled, stashing request");
-                    // Batch signing not enabled, but currently busy,
-                    // so stash this message for future.
-                    stash();
-                }
-            } else {
-                doSign(signRequest);
+            failTimedOutSigningCtxs();
+
+            if (nextSigningCtx != null && nextSigningCtx.size() >= getMaxBatchSize()) {
+                log.trace("Next batch is full, stashing request");
+
+                stash();
+
+                return;
+            }
+
+            if (nextSigningCtx == null) {
+                nextSigningCtx = new BatchSignatureCtx(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId());
             }
+
+            nextSigningCtx.add(getSender(), signRequest.getRequest());
+
+            startNextBatchSigning();
         }
 
         private void queryBatchSigningEnabled(String keyId) {
-            try {
-                batchSigningEnabled = SignerClient.execute(new GetTokenBatchSigningEnabled(keyId));
-            } catch (Exception e) {
-                log.error("Failed to query if batch signing is enabled for token with key {}", keyId, e);
+            if (batchSigningEnabledQueried) {
+                return;
             }
-        }
 
-        private void doBatchSign(SigningRequestWrapper wrapper) {
-            log.trace("doBatchSign()");
+            batchSigningEnabledQueried = true;
 
-            if (nextSigningCtx == null) {
-                nextSigningCtx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
-            }
+            ActorRef self = getSelf();
+
+            SignerClient.<Boolean>executeAsync(new GetTokenBatchSigningEnabled(keyId)).whenComplete((enabled, e) -> {
+                if (e != null) {
+                    log.error("Failed to query if batch signing is enabled for token with key {}", keyId, e);
+                }
 
-            nextSigningCtx.add(getSender(), wrapper.getRequest());
+                self.tell(new BatchSigningEnabled(enabled), ActorRef.noSender());
+            });
         }
 
-        private void doSign(SigningRequestWrapper wrapper) throws Exception {
-            log.trace("doSign()");
+        private void handleBatchSigningEnabled(BatchSigningEnabled message) {
+            log.trace("handleBatchSigningEnabled({})", message.getEnabled());
 
-            BatchSignatureCtx ctx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
-            ctx.add(getSender(), wrapper.getRequest());
+            // After a failed query, the next request asks again
+            batchSigningEnabled = message.getEnabled();
+            batchSigningEnabledQueried = false;
 
-            workingSigningCtx = ctx;
+            startNextBatchSigning();
+            unstashAll();
+        }
 
-            doCalculateSignature(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), ctx.getDataToBeSigned());
+        private int getMaxBatchSize() {
+            // Without batch signing, every request is signed separately
+            return Boolean.TRUE.equals(batchSigningEnabled) ? maxBatchSize : 1;
         }
 
         private void handleSignResponse(SignResponse signResponse) {
             log.trace("handleSignResponse()");
 
-            workerBusy = false;
-
             // Handle the (successful) signature calculation result that came
             // from Signer -- send the signature to the clients.
-            sendResponse(signResponse);
+            BatchSignatureCtx ctx = inFlightSigningCtxs.remove(getSender());
 
-            // If batch signing is not enabled, then start signing the next
-            // stashed messages.
-            if (!batchSigningEnabled) {
-                unstashAll();
-            } else if (nextSigningCtx != null) {
-                // Start the next batch signing (if any).
-                startNextBatchSigning();
+            if (ctx != null) {
+                try {
+                    sendSignatureResponse(ctx, signResponse.getSignature());
+                } catch (Exception e) {
+                    sendResponse(ctx, e);
+                }
+
+                ctx.signingFinished();
+            } else {
+                log.warn("Received signature for a batch that has already timed out");
             }
+
+            startNextBatchSigning();
         }
 
         private void handleException(Exception exception) {
             log.trace("handleException()");
 
-            workerBusy = false;
+            BatchSignatureCtx ctx = inFlightSigningCtxs.remove(getSender());
+
+            if (ctx != null) {
+                sendResponse(ctx, exception);
+
+                ctx.signingFinished();
+            }
+
+            startNextBatchSigning();
+        }
+
+        private void handleLingerTimeout(Object timeout) {
+            lingerTimer = null;
+
+            startNextBatchSigning();
+        }
+
+        private void handleTimeoutCheck(Object check) {
+            // The requesters of a batch that has waited for a free slot this long have already given up
+            if (nextSigningCtx != null
+                    && System.currentTimeMillis() - nextSigningCtx.getCreatedAt() >= TIMEOUT_MILLIS) {
+                log.warn("Batch of {} signing requests timed out before it was sent to Signer",
+                        nextSigningCtx.size());
+
+                cancelLingerTimer();
+                sendResponse(nextSigningCtx, signatureTimedOut());
+                nextSigningCtx = null;
+
+                unstashAll();
+            }
 
-            sendResponse(exception);
+            if (failTimedOutSigningCtxs()) {
+                startNextBatchSigning();
+            }
         }
 
         private void startNextBatchSigning() {
+            if (nextSigningCtx == null || inFlightSigningCtxs.size() >= maxInFlight) {
+                return;
+            }
+
+            long lingerLeft = lingerMillis - (System.currentTimeMillis() - nextSigningCtx.getCreatedAt());
+
+            if (nextSigningCtx.size() < getMaxBatchSize() && lingerLeft > 0) {
+                scheduleLingerTimer(lingerLeft);
+
+                return;
+            }
+
             log.trace("startNextBatchSigning()");
 
-            workingSigningCtx = nextSigningCtx;
+            cancelLingerTimer();
+
+            BatchSignatureCtx ctx = nextSigningCtx;
             nextSigningCtx = null;
 
             try {
-                doCalculateSignature(workingSigningCtx.getKeyId(), workingSigningCtx.getSignatureAlgorithmId(),
-                        workingSigningCtx.getDataToBeSigned());
+                doCalculateSignature(ctx);
             } catch (Exception e) {
-                sendResponse(workingSigningCtx, translateException(e));
-
-                workerBusy = true;
-                workingSigningCtx = null;
+                sendResponse(ctx, translateException(e));
             }
-        }
 
-        private boolean isWorkerBusy() {
-            if (isSignatureCreationTimedOut()) {
-                workerBusy = false;
+            // There is room in the next batch for the stashed requests
+            unstashAll();
+        }
 
-                throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
+        private void scheduleLingerTimer(long delayMillis) {
+            if (lingerTimer == null) {
+                lingerTimer = getContext().getSystem().scheduler().scheduleOnce(Duration.ofMillis(delayMillis),
+                        getSelf(), LINGER_TIMEOUT, getContext().getDispatcher(), ActorRef.noSender());
             }
-
-            return workerBusy;
         }
 
-        private boolean isSignatureCreationTimedOut() {
-            return workerBusy && System.currentTimeMillis() - signStartTime >= DEFAULT_TIMEOUT.duration().length();
+        private void cancelLingerTimer() {
+            if (lingerTimer != null) {
+                lingerTimer.cancel();
+                lingerTimer = null;
+            }
         }
 
-        private void doCalculateSignature(String keyId, String signatureAlgorithmId, byte[] data)
-                throws NoSuchAlgorithmException, IOException, OperatorCreationException {
-            workerBusy = true;
-            signStartTime = System.currentTimeMillis();
+        private boolean failTimedOutSigningCtxs() {
+            boolean failed = false;
 
-            byte[] digest = calculateDigest(getDigestAlgorithmId(signatureAlgorithmId), data);
+            Iterator<Map.Entry<ActorRef, BatchSignatureCtx>> it = inFlightSigningCtxs.entrySet().iterator();
 
-            // Proxy this request to the Signer.
-            SignerClient.execute(new Sign(keyId, signatureAlgorithmId, digest), getSelf());
-        }
+            while (it.hasNext()) {
+                Map.Entry<ActorRef, BatchSignatureCtx> entry = it.next();
 
-        private void sendResponse(Object message) {
-            log.trace("sendResponse({})", message);
+                if (System.currentTimeMillis() - entry.getValue().getSignStartTime() >= TIMEOUT_MILLIS) {
+                    sendResponse(entry.getValue(), signatureTimedOut());
 
-            if (workingSigningCtx != null) {
-                try {
-                    if (message instanceof SignResponse) {
-                        sendSignatureResponse(workingSigningCtx, ((SignResponse) message).getSignature());
-                    } else {
-                        sendResponse(workingSigningCtx, message);
-                    }
-                } catch (Exception e) {
-                    sendResponse(workingSigningCtx, e);
-                }
+                    getContext().stop(entry.getKey());
+                    it.remove();
 
-                workingSigningCtx = null;
-            } else {
-                throw new RuntimeException("No signing context");
+                    failed = true;
+                }
             }
+
+            return failed;
+        }
+
+        private static CodedException signatureTimedOut() {
+            return new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
+        }
+
+        private void doCalculateSignature(BatchSignatureCtx ctx)
+                throws Exception {
+            byte[] data = ctx.getDataToBeSigned();
+            byte[] digest = calculateDigest(getDigestAlgorithmId(ctx.getSignatureAlgorithmId()), data);
+
+            // Proxy this request to the Signer. The response is relayed back
+            // by an actor dedicated to this signing ctx.
+            ActorRef requester = getContext().actorOf(Props.create(SignatureRequester.class,
+                    new Sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest)));
+
+            ctx.signingStarted();
+            inFlightSigningCtxs.put(requester, ctx);
         }
 
         private void sendSignatureResponse(BatchSignatureCtx ctx, byte[] signatureValue) throws Exception {
@@ -356,6 +503,39 @@ public class BatchSigner extends UntypedAbstractActor {
 
     }
 
+    /**
+     * Sends one signing request to Signer and relays the response to the
+     * worker that created it.
+     */
+    private static class SignatureRequester extends UntypedAbstractActor {
+
+        private final Sign signRequest;
+
+        SignatureRequester(Sign signRequest) {
+            this.signRequest = signRequest;
+        }
+
+        @Override
+        public void preStart() {
+            SignerClient.execute(signRequest, getSelf());
+        }
+
+        @Override
+        public void onReceive(Object message) {
+            getContext().getParent().tell(message, getSelf());
+            getContext().stop(getSelf());
+        }
+    }
+
+    /**
+     * Answer to the query whether batch signing is enabled for the token,
+     * null if the query failed.
+     */
+    @Value
+    private static class BatchSigningEnabled {
+        private final Boolean enabled;
+    }
+
     /**
      * Convenience class that wraps the request along with the keyId
      * and algorithm id.
@@ -383,6 +563,12 @@ public class BatchSigner extends UntypedAbstractActor {
         @Getter
         private final String keyId;
 
+        @Getter
+        private final long createdAt = System.currentTimeMillis();
+
+        @Getter
+        private long signStartTime;
+
         BatchSignatureCtx(String keyId, String signatureAlgorithmId) {
             super(signatureAlgorithmId);
 
@@ -393,6 +579,20 @@ public class BatchSigner extends UntypedAbstractActor {
             clients.add(client);
             add(request);
         }
+
+        int size() {
+            return clients.size();
+        }
+
+        void signingStarted() {
+            signStartTime = System.currentTimeMillis();
+
+            BATCH_SIZE.update(size());
+        }
+
+        void signingFinished() {
+            LATENCY.update(System.currentTimeMillis() - createdAt);
+        }
     }
 
 }
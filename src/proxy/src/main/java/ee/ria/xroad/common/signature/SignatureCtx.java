@@ -38,9 +38,12 @@ import org.apache.xml.security.utils.resolver.ResourceResolverContext;
 import org.apache.xml.security.utils.resolver.ResourceResolverException;
 import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
@@ -68,7 +71,7 @@ class SignatureCtx {
     private final String digestAlgorithmId;
 
     private String hashChainResult;
-    private String[] hashChains;
+    private HashChainBuilder hashChainBuilder;
 
     private SignatureXmlBuilder builder;
 
@@ -97,9 +100,12 @@ class SignatureCtx {
     /**
      * Returns the signature data for a given signer -- either normal signature
      * or batch signature with corresponding hash chain and hash chain result.
+     * The hash chain of the signer is serialized only when requested.
      */
-    synchronized SignatureData createSignatureData(String signature, int signerIndex) {
-        return new SignatureData(signature, hashChainResult, hashChains != null ? hashChains[signerIndex] : null);
+    synchronized SignatureData createSignatureData(String signature, int signerIndex) throws Exception {
+        String hashChain = hashChainBuilder != null ? hashChainBuilder.getHashChain(MESSAGE, signerIndex) : null;
+
+        return new SignatureData(signature, hashChainResult, hashChain);
     }
 
     /**
@@ -119,22 +125,29 @@ class SignatureCtx {
 
         // If only one single hash (message), then no hash chain
         if (requests.size() == 1 && firstRequest.isSingleMessage()) {
-            return builder.createDataToBeSigned(MESSAGE, createResourceResolver(
-                    firstRequest.getParts().get(0).getMessage()), signatureAlgorithmUri);
+            MessagePart message = firstRequest.getParts().get(0);
+
+            if (!message.hasMessage()) {
+                throw new IllegalArgumentException("Data must not be null");
+            }
+
+            // The message is digested from its content, it is not read into memory
+            return builder.createDataToBeSigned(MESSAGE, createResourceResolver(message::getMessageContent),
+                    signatureAlgorithmUri);
         }
 
         buildHashChain();
 
         byte[] hashChainResultBytes = hashChainResult.getBytes(StandardCharsets.UTF_8);
 
-        return builder.createDataToBeSigned(SIG_HASH_CHAIN_RESULT, createResourceResolver(hashChainResultBytes),
-                signatureAlgorithmUri);
+        return builder.createDataToBeSigned(SIG_HASH_CHAIN_RESULT,
+                createResourceResolver(() -> new ByteArrayInputStream(hashChainResultBytes)), signatureAlgorithmUri);
     }
 
     private void buildHashChain() throws Exception {
         log.trace("buildHashChain()");
 
-        HashChainBuilder hashChainBuilder = new HashChainBuilder(digestAlgorithmId);
+        hashChainBuilder = new HashChainBuilder(digestAlgorithmId);
 
         for (SigningRequest request : requests) {
             hashChainBuilder.addInputHash(getHashChainInputs(request));
@@ -143,7 +156,6 @@ class SignatureCtx {
         hashChainBuilder.finishBuilding();
 
         hashChainResult = hashChainBuilder.getHashChainResult(SIG_HASH_CHAIN);
-        hashChains = hashChainBuilder.getHashChains(MESSAGE);
     }
 
     private static byte[][] getHashChainInputs(SigningRequest request) {
@@ -155,11 +167,7 @@ class SignatureCtx {
     /**
      * This resource resolver will provide the message or hash chain data to be digested.
      */
-    private ResourceResolverSpi createResourceResolver(final byte[] data) {
-        if (data == null) {
-            throw new IllegalArgumentException("Data must not be null");
-        }
-
+    private ResourceResolverSpi createResourceResolver(final Supplier<InputStream> data) {
         return new ResourceResolverSpi() {
             @Override
             public boolean engineCanResolveURI(ResourceResolverContext context) {
@@ -175,7 +183,7 @@ class SignatureCtx {
             @Override
             public XMLSignatureInput engineResolveURI(ResourceResolverContext context)
                     throws ResourceResolverException {
-                return new XMLSignatureInput(data);
+                return new XMLSignatureInput(data.get());
             }
         };
     }
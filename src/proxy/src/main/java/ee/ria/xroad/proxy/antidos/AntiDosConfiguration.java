@@ -58,4 +58,20 @@ class AntiDosConfiguration {
     double getMaxHeapUsage() {
         return SystemProperties.getAntiDosMaxHeapUsage();
     }
+
+    /**
+     * @return the interval in milliseconds at which the system resources
+     * are sampled
+     */
+    int getResourceCheckIntervalMillis() {
+        return SystemProperties.getAntiDosResourceCheckInterval();
+    }
+
+    /**
+     * @return the interval in seconds at which the known partner addresses
+     * are synchronized with the global configuration
+     */
+    int getPartnerSyncIntervalSeconds() {
+        return SystemProperties.getConfigurationClientUpdateIntervalSeconds();
+    }
 }
@@ -30,23 +30,50 @@ import ee.ria.xroad.common.util.SystemMetrics;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ *
+ * Partners with waiting connections are served in round-robin order, one
+ * connection at a time. Accepting and taking a connection are constant time
+ * operations, the known partner addresses are synchronized with the global
+ * configuration separately from accepting connections and the system
+ * resources are sampled at a configured interval.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
-    // Tiny wrapper class for active connections of a partner
+    // Tiny wrapper class for active connections of a partner.
+    // Guarded by the lock of the connection manager.
     private class HostData {
-        final Deque<T> connections = new LinkedBlockingDeque<>();
+        final Deque<T> connections = new ArrayDeque<>();
+
+        // Whether the partner is in the buffer of active partners
+        boolean active;
+    }
+
+    // Sample of the system resources
+    private static final class Resources {
+        final long sampledAt;
+        final long freeFileDescriptorCount;
+        final double cpuLoad;
+        final double heapUsage;
+
+        Resources(long sampledAt, long freeFileDescriptorCount, double cpuLoad, double heapUsage) {
+            this.sampledAt = sampledAt;
+            this.freeFileDescriptorCount = freeFileDescriptorCount;
+            this.cpuLoad = cpuLoad;
+            this.heapUsage = heapUsage;
+        }
     }
 
     // The IP used for unknown members
@@ -55,17 +82,23 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     // Holds the configuration
     protected final AntiDosConfiguration configuration;
 
-    // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    // IP to HostData mapping, replaced as a whole when the known addresses change
+    protected volatile Map<String, HostData> database = new HashMap<>();
 
-    // Buffer of partners with waiting connections
-    protected LinkedBlockingQueue<HostData> activePartners =
-            new LinkedBlockingQueue<>();
+    // Buffer of partners with waiting connections, guarded by the lock
+    protected final Deque<HostData> activePartners = new ArrayDeque<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition partnersAvailable = lock.newCondition();
 
     // Holds a cache of previously known member IPs.
     // Used to determine if should sync the database when conf changed.
     private Set<String> previousKnownOrganizations = new HashSet<>();
 
+    // Latest sample of the system resources
+    private volatile Resources resources;
+
     AntiDosConnectionManager(AntiDosConfiguration configuration) {
         if (configuration == null) {
             throw new IllegalArgumentException("configuration cannot be null");
@@ -86,7 +119,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      * we have at least one free file handle.
      */
     boolean canAccept() {
-        long freeFileHandles = getFreeFileDescriptorCount();
+        long freeFileHandles = getResources().freeFileDescriptorCount;
         log.trace("canAccept({})", freeFileHandles);
         return freeFileHandles > 0;
     }
@@ -94,19 +127,25 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     /**
      * Adds the connection into the partner's connection queue.
      */
-    synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
-
-        // Find the host data for the incoming connection and register
-        // the new connection to this host data
+    void accept(T connection) {
+        // Find the host data for the incoming connection
         HostData currentPartner = getHostData(connection.getHostAddress());
-        currentPartner.connections.addFirst(connection);
 
-        // If the host data is not for an active partner,
-        // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
-            activePartners.add(currentPartner);
+        lock.lock();
+
+        try {
+            // Register the new connection to this host data
+            currentPartner.connections.addFirst(connection);
+
+            // If the host data is not for an active partner,
+            // add it to the connection buffer as the newest partner.
+            if (!currentPartner.active) {
+                currentPartner.active = true;
+                activePartners.addLast(currentPartner);
+                partnersAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -127,24 +166,67 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     }
 
     /**
-     * Retrieves the next connection to be processed. First, it checks that
-     * there are sufficient resources available (free file handles etc.).
-     * If not, then the connection is closed thus freeing some resources.
+     * Synchronizes the known partner addresses with the global configuration.
+     * The connection database is rebuilt only if the addresses have changed.
      */
-    protected T getNextConnection() throws InterruptedException {
-        // Take the oldest partner from the buffer (blocks until available).
-        HostData oldestPartner = activePartners.take();
+    synchronized void syncDatabase() {
+        Set<String> knownAddresses = getAllAddresses();
 
-        // Take the oldest connection.
-        T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
+        if (previousKnownOrganizations.equals(knownAddresses)) {
+            // Nothing has changed, do not sync.
+            return;
         }
 
-        // If there are more connections left for this partner, add the partner
-        // back to the buffer as the first partner.
-        if (!oldestPartner.connections.isEmpty()) {
-            activePartners.add(oldestPartner);
+        Map<String, HostData> currentDatabase = database;
+        Map<String, HostData> newDatabase = new HashMap<>();
+
+        // Retain existing members connections
+        currentDatabase.keySet().stream()
+                .filter(knownAddresses::contains)
+                .forEach(existingAddress -> newDatabase.put(
+                        existingAddress, currentDatabase.get(existingAddress)));
+
+        // Add new members
+        knownAddresses.stream()
+                .filter(knownAddress -> !currentDatabase.containsKey(knownAddress))
+                .forEach(knownAddress ->
+                        registerHostData(newDatabase, knownAddress));
+
+        previousKnownOrganizations = knownAddresses;
+        database = newDatabase;
+    }
+
+    /**
+     * Retrieves the next connection to be processed, blocking until there
+     * is one. Then, it checks that there are sufficient resources available
+     * (free file handles etc.). If not, then the connection is closed thus
+     * freeing some resources.
+     */
+    protected T getNextConnection() throws InterruptedException {
+        T sock;
+
+        lock.lockInterruptibly();
+
+        try {
+            while (activePartners.isEmpty()) {
+                partnersAvailable.await();
+            }
+
+            // Take the oldest partner from the buffer.
+            HostData oldestPartner = activePartners.pollFirst();
+
+            // Take the oldest connection.
+            sock = oldestPartner.connections.pollLast();
+
+            // If there are more connections left for this partner, add the
+            // partner back to the buffer as the newest partner.
+            if (!oldestPartner.connections.isEmpty()) {
+                activePartners.addLast(oldestPartner);
+            } else {
+                oldestPartner.active = false;
+            }
+        } finally {
+            lock.unlock();
         }
 
         // Processing a connection consumes file handles and other resources
@@ -181,34 +263,10 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     }
 
     private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
-    }
-
-    private void syncDatabase() {
-        Set<String> knownAddresses = getAllAddresses();
+        Map<String, HostData> currentDatabase = database;
+        HostData hostData = currentDatabase.get(ip);
 
-        if (previousKnownOrganizations.equals(knownAddresses)) {
-            // Nothing has changed, do not sync.
-            return;
-        }
-
-        Map<String, HostData> newDatabase = new HashMap<>();
-
-        // Retain existing members connections
-        database.keySet().stream()
-                .filter(knownAddresses::contains)
-                .forEach(existingAddress -> newDatabase.put(
-                        existingAddress, database.get(existingAddress)));
-
-        // Add new members
-        knownAddresses.stream()
-                .filter(knownAddress -> !database.containsKey(knownAddress))
-                .forEach(knownAddress ->
-                        registerHostData(newDatabase, knownAddress));
-
-        previousKnownOrganizations = knownAddresses;
-        database = newDatabase;
+        return hostData != null ? hostData : currentDatabase.get(UNKNOWN_ORG_IP);
     }
 
     private void registerHostData(
@@ -217,24 +275,35 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         newDatabase.put(knownAddress, new HostData());
     }
 
+    private Resources getResources() {
+        Resources current = resources;
+        long now = System.nanoTime();
+
+        if (current == null || now - current.sampledAt
+                >= TimeUnit.MILLISECONDS.toNanos(configuration.getResourceCheckIntervalMillis())) {
+            current = new Resources(now, getFreeFileDescriptorCount(), getCpuLoad(), getHeapUsage());
+            resources = current;
+        }
+
+        return current;
+    }
+
     private boolean hasSufficientResources() {
-        long freeFileDescriptorCount = getFreeFileDescriptorCount();
+        Resources current = getResources();
         int minFreeFileHandles = configuration.getMinFreeFileHandles();
-        double cpuLoad = getCpuLoad();
         double maxCpuLoad = configuration.getMaxCpuLoad();
-        double heapUsage = getHeapUsage();
         double maxHeapUsage = configuration.getMaxHeapUsage();
 
         log.trace("Resource usage when considering connection:\n"
                 + "freeFileDescriptorCount: {} ( >= {})\n"
                 + "cpuLoad: {} ( < {})\n"
                 + "heapUsage: {} ( < {})",
-                new Object[] {freeFileDescriptorCount, minFreeFileHandles,
-                    cpuLoad, maxCpuLoad, heapUsage, maxHeapUsage});
+                new Object[] {current.freeFileDescriptorCount, minFreeFileHandles,
+                    current.cpuLoad, maxCpuLoad, current.heapUsage, maxHeapUsage});
 
-        return freeFileDescriptorCount >= minFreeFileHandles
-                && cpuLoad < maxCpuLoad
-                && heapUsage < maxHeapUsage;
+        return current.freeFileDescriptorCount >= minFreeFileHandles
+                && current.cpuLoad < maxCpuLoad
+                && current.heapUsage < maxHeapUsage;
     }
 
     private static Set<String> getAllAddresses() {
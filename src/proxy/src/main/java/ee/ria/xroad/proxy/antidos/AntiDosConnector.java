@@ -39,6 +39,7 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class implements a connector that prevents DoS attacks.
@@ -99,6 +100,8 @@ public class AntiDosConnector extends ServerConnector {
         manager.init();
 
         getExecutor().execute(new QueueManager());
+
+        schedulePartnerSync();
     }
 
     @Override
@@ -139,6 +142,22 @@ public class AntiDosConnector extends ServerConnector {
         };
     }
 
+    private void schedulePartnerSync() {
+        getScheduler().schedule(() -> {
+            if (!isRunning()) {
+                return;
+            }
+
+            try {
+                manager.syncDatabase();
+            } catch (Exception e) {
+                log.error("Error synchronizing known partners with global configuration", e);
+            }
+
+            schedulePartnerSync();
+        }, configuration.getPartnerSyncIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
     private class QueueManager implements Runnable {
         @Override
         public void run() {
@@ -25,6 +25,7 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
@@ -43,6 +44,7 @@ import ee.ria.xroad.common.monitoring.MessageInfo;
 import ee.ria.xroad.common.monitoring.MessageInfo.Origin;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.proxy.conf.KeyConf;
@@ -51,10 +53,15 @@ import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.HttpClient;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 import org.xml.sax.Attributes;
@@ -64,7 +71,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Writer;
@@ -126,11 +135,21 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     /** If the request failed, will contain SOAP fault. */
     private volatile CodedException executionException;
 
+    /**
+     * If true, the request is read, encoded and signed on the calling thread into a {@link SoapRequestEntity}
+     * before the connection to the server proxy is opened, otherwise a separate handler thread writes it into
+     * a pipe.
+     */
+    private final boolean streamingEntity = SystemProperties.isClientProxySoapStreamingEntityEnabled();
+
     /** Holds the proxy message output stream and associated info. */
     private PipedInputStream reqIns;
     private volatile PipedOutputStream reqOuts;
     private volatile String outputContentType;
 
+    /** Holds the encoded and signed request in streaming entity mode. */
+    private SoapRequestEntity requestEntity;
+
     /** Holds the request to the server proxy. */
     private ProxyMessageEncoder request;
     private String xRequestId;
@@ -157,8 +176,12 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
         super(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
+
+        if (!streamingEntity) {
+            this.reqIns = new PipedInputStream();
+            this.reqOuts = new PipedOutputStream(reqIns);
+        }
+
         this.xRequestId = UUID.randomUUID().toString();
     }
 
@@ -169,6 +192,14 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         opMonitoringData.setXRequestId(xRequestId);
         updateOpMonitoringClientSecurityServerAddress();
 
+        if (streamingEntity) {
+            processWithStreamingEntity();
+        } else {
+            processWithPipe();
+        }
+    }
+
+    private void processWithPipe() throws Exception {
         Future<?> soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
 
         try {
@@ -178,12 +209,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             // If the handler thread excepted, do not continue.
             checkError();
 
-            // Verify that the client is registered.
-            ClientId client = requestSoap.getClient();
-            verifyClientStatus(client);
-
-            // Check client authentication mode.
-            verifyClientAuthentication(client);
+            verifyClient();
 
             processRequest();
 
@@ -200,6 +226,37 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             throw e;
         } finally {
+            if (requestSoap != null) {
+                requestSoap.consume();
+            }
+
+            if (response != null) {
+                response.consume();
+            }
+        }
+    }
+
+    private void processWithStreamingEntity() throws Exception {
+        try {
+            // Read, encode, sign and log the request on this thread, the attachments are streamed from the
+            // client request into the encoded request.
+            handleSoap();
+            checkError();
+
+            processRequest();
+
+            if (response != null) {
+                sendResponse();
+            }
+        } finally {
+            if (requestEntity != null) {
+                requestEntity.consume();
+            }
+
+            if (requestSoap != null) {
+                requestSoap.consume();
+            }
+
             if (response != null) {
                 response.consume();
             }
@@ -211,6 +268,15 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         return response != null && response.getFault() == null;
     }
 
+    private void verifyClient() throws Exception {
+        // Verify that the client is registered.
+        ClientId client = requestSoap.getClient();
+        verifyClientStatus(client);
+
+        // Check client authentication mode.
+        verifyClientAuthentication(client);
+    }
+
     private void updateOpMonitoringClientSecurityServerAddress() {
         try {
             opMonitoringData.setClientSecurityServerAddress(getSecurityServerAddress());
@@ -227,7 +293,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             sendRequest(httpSender);
 
             // Check for any errors from the handler thread once more.
-            waitForRequestSent();
+            if (!streamingEntity) {
+                waitForRequestSent();
+            }
+
             checkError();
 
             parseResponse(httpSender);
@@ -251,7 +320,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             try {
                 opMonitoringData.setRequestOutTs(getEpochMillisecond());
-                httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+                httpSender.doPost(getServiceAddress(addresses), createRequestEntity());
                 opMonitoringData.setResponseInTs(getEpochMillisecond());
             } catch (Exception e) {
                 // Failed to connect to server proxy
@@ -267,6 +336,17 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         }
     }
 
+    private HttpEntity createRequestEntity() {
+        if (streamingEntity) {
+            return requestEntity;
+        }
+
+        InputStreamEntity entity = new InputStreamEntity(reqIns, CHUNKED_LENGTH);
+        entity.setContentType(outputContentType);
+
+        return entity;
+    }
+
     private void parseResponse(HttpSender httpSender) throws Exception {
         log.trace("parseResponse()");
 
@@ -290,7 +370,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
     private void updateOpMonitoringDataByResponse(ProxyMessageDecoder decoder) {
         if (response.getSoap() != null) {
-            long responseSize = response.getSoap().getBytes().length;
+            long responseSize = response.getSoap().getContentLength();
 
             opMonitoringData.setResponseSize(responseSize);
             opMonitoringData.setResponseAttachmentCount(decoder.getAttachmentCount());
@@ -471,8 +551,27 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             updateOpMonitoringDataBySoapMessage(opMonitoringData, requestSoap);
 
+            if (streamingEntity) {
+                // The request is signed and logged before it is sent, so the client is verified first.
+                // setError() keeps the first error, handleSoap() does not turn it into a client error.
+                try {
+                    verifyClient();
+                } catch (Exception e) {
+                    setError(e);
+
+                    throw e;
+                }
+            }
+
             if (request == null) {
-                request = new ProxyMessageEncoder(reqOuts, SoapUtils.getHashAlgoId());
+                if (streamingEntity) {
+                    CachingStream cache = new CachingStream();
+                    request = new ProxyMessageEncoder(cache, SoapUtils.getHashAlgoId());
+                    requestEntity = new SoapRequestEntity(request.getContentType(), cache);
+                } else {
+                    request = new ProxyMessageEncoder(reqOuts, SoapUtils.getHashAlgoId());
+                }
+
                 outputContentType = request.getContentType();
             }
 
@@ -526,7 +625,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             opMonitoringData.setRequestAttachmentCount(request.getAttachmentCount());
 
             if (request.getAttachmentCount() > 0) {
-                opMonitoringData.setRequestMimeSize(requestSoap.getBytes().length + request.getAttachmentsByteCount());
+                opMonitoringData.setRequestMimeSize(requestSoap.getContentLength() + request.getAttachmentsByteCount());
             }
         }
 
@@ -559,6 +658,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             if (request != null) {
                 try {
                     request.close();
+
+                    if (requestEntity != null) {
+                        requestEntity.getCache().close();
+                    }
                 } catch (Exception e) {
                     setError(e);
                 }
@@ -566,6 +669,53 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         }
     }
 
+    /**
+     * Request entity that is backed by the cached, already signed request. The entity is repeatable, so the
+     * HTTP client can resend and log it.
+     */
+    static final class SoapRequestEntity extends AbstractHttpEntity {
+
+        @Getter(AccessLevel.PACKAGE)
+        private final CachingStream cache;
+
+        SoapRequestEntity(String contentType, CachingStream cache) {
+            this.cache = cache;
+
+            setContentType(contentType);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return cache.size();
+        }
+
+        @Override
+        public InputStream getContent() {
+            return cache.getCachedContents();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            try (InputStream is = getContent()) {
+                IOUtils.copy(is, outstream);
+            }
+        }
+
+        void consume() {
+            cache.consume();
+        }
+    }
+
     /**
      * Soap parser that changes the CentralServiceId to ServiceId in message
      * header.
@@ -587,6 +737,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
         private SoapHeaderHandler headerHandler;
 
+        RequestSoapParserImpl() {
+            super(SystemProperties.isProxySoapStreamingParserEnabled());
+        }
+
         // do not write processed XML beyond the header if not a central
         // service request, use raw request XML instead
         @Override
@@ -63,6 +63,10 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  *
  * If an SSL session already exists to one of the provided addresses, then
  * that address is selected immediately without previous selection algorithm.
+ *
+ * In the latency-aware selection mode, the target address is selected based on
+ * the measured latencies and error rates of the addresses instead, see
+ * {@link TargetLatencyTracker} and {@link LatencyAwareSocketSelector}.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -86,6 +90,8 @@ class FastestConnectionSelectingSSLSocketFactory
     private final Cache<CacheKey, URI> selectedHosts;
     private final boolean cachingEnabled;
 
+    private final TargetLatencyTracker latencyTracker;
+
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier)null);
         this.socketfactory = sslContext.getSocketFactory();
@@ -94,6 +100,9 @@ class FastestConnectionSelectingSSLSocketFactory
                 .maximumSize(CACHE_MAXIMUM_SIZE)
                 .build();
         this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+        this.latencyTracker = SystemProperties.CLIENTPROXY_TARGET_SELECTION_LATENCY_AWARE.equalsIgnoreCase(
+                SystemProperties.getClientProxyTargetSelection())
+                ? new TargetLatencyTracker(sslContext.getClientSessionContext()) : null;
     }
 
     @Override
@@ -110,6 +119,11 @@ class FastestConnectionSelectingSSLSocketFactory
 
         // Read target addresses from the context.
         final URI[] addressesFromContext = getAddressesFromContext(context);
+
+        if (latencyTracker != null) {
+            return connectLatencyAware(timeout, addressesFromContext, context);
+        }
+
         final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
         final FastestSocketSelector selector = new FastestSocketSelector();
 
@@ -185,6 +199,49 @@ class FastestConnectionSelectingSSLSocketFactory
         throw couldNotConnectException(addressesFromContext, deferredException);
     }
 
+    private Socket connectLatencyAware(int timeout, URI[] addresses, HttpContext context) throws IOException {
+        final LatencyAwareSocketSelector selector = new LatencyAwareSocketSelector(latencyTracker,
+                SystemProperties.getClientProxyTargetSelectionStaggerDelay());
+        selector.addAll(addresses);
+
+        Exception deferredException = null;
+        int connectTimeout = timeout;
+        while (!selector.isEmpty()) {
+            SocketInfo selectedSocket = null;
+            SSLSocket sslSocket = null;
+            try {
+                selectedSocket = selector.select(connectTimeout);
+                sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
+
+                long handshakeStart = System.nanoTime();
+                prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
+                latencyTracker.handshakeCompleted(selectedSocket.getUri(), System.nanoTime() - handshakeStart,
+                        sslSocket.getSession());
+
+                configureSocket(sslSocket);
+                log.trace("Connected to {}", selectedSocket.getUri());
+                updateOpMonitoringData(context, selectedSocket);
+
+                return sslSocket;
+            } catch (IOException | RuntimeException e) {
+                deferredException = e;
+                closeQuietly(sslSocket);
+                if (selectedSocket == null) {
+                    //selection failed, bail out
+                    log.debug("Failed to connect", e);
+                    break;
+                }
+                log.trace("Failed to connect to {}", selectedSocket.getUri(), e);
+                closeQuietly(selectedSocket.getSocket());
+                latencyTracker.failed(selectedSocket.getUri());
+                selector.remove(selectedSocket.getUri());
+                //if there are addresses left, try again but using reduced connection timeout.
+                connectTimeout = Math.max(MIN_TIMEOUT, connectTimeout / 2);
+            }
+        }
+        throw couldNotConnectException(addresses, deferredException);
+    }
+
     @Override
     protected void prepareSocket(final SSLSocket socket) throws IOException {
         socket.setEnabledProtocols(new String[] {CryptoUtils.SSL_PROTOCOL});
@@ -0,0 +1,238 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.closeQuietly;
+
+/**
+ * Given a list of addresses, connects to them in the order given by the
+ * {@link TargetLatencyTracker}. The connection to the next address is
+ * started when the previous ones have failed or have not connected within
+ * the stagger delay, and the first address to connect is selected.
+ *
+ * Note! During selection, the selector will remove addresses from the provided list if the address is
+ * unresolvable or there is an error during connecting to the address.
+ */
+@Slf4j
+final class LatencyAwareSocketSelector {
+
+    private final TargetLatencyTracker tracker;
+    private final long staggerDelayMillis;
+    private final List<URI> addresses = new ArrayList<>();
+
+    // Number of connection attempts in progress
+    private int pending;
+
+    LatencyAwareSocketSelector(TargetLatencyTracker tracker, long staggerDelayMillis) {
+        this.tracker = tracker;
+        this.staggerDelayMillis = staggerDelayMillis;
+    }
+
+    void addAll(URI... address) {
+        for (URI u : address) {
+            addresses.add(u);
+        }
+    }
+
+    boolean remove(URI address) {
+        return addresses.remove(address);
+    }
+
+    boolean isEmpty() {
+        return addresses.isEmpty();
+    }
+
+    /**
+     * @param timeout connect timeout in milliseconds, zero or less for no timeout
+     * @return the first connected socket
+     * @throws IOException if none of the addresses connects
+     */
+    SocketInfo select(int timeout) throws IOException {
+        if (addresses.isEmpty()) {
+            throw new IOException("No addresses to select from");
+        }
+
+        Iterator<URI> candidates = tracker.order(addresses).iterator();
+        boolean hasDeadline = timeout > 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        Selector selector = Selector.open();
+        pending = 0;
+
+        try {
+            while (true) {
+                if (candidates.hasNext()) {
+                    SocketInfo connected = startConnecting(selector, candidates.next());
+
+                    if (connected != null) {
+                        return connected;
+                    }
+                }
+
+                long remainingMillis = hasDeadline
+                        ? TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) : Long.MAX_VALUE;
+
+                if (remainingMillis <= 0 || (pending == 0 && !candidates.hasNext())) {
+                    throw new IOException("Unable to connect to any of the provided addresses.");
+                }
+
+                if (pending == 0) {
+                    // Nothing to wait for, start connecting to the next address right away
+                    continue;
+                }
+
+                // Without a deadline, select(0) blocks until an attempt completes
+                selector.select(candidates.hasNext() ? Math.min(staggerDelayMillis, remainingMillis)
+                        : hasDeadline ? remainingMillis : 0);
+
+                SocketInfo connected = finishConnecting(selector);
+
+                if (connected != null) {
+                    return connected;
+                }
+            }
+        } finally {
+            try {
+                closeSelector(selector);
+            } catch (Exception e) {
+                log.error("Error while closing selector", e);
+            }
+        }
+    }
+
+    private SocketInfo startConnecting(Selector selector, URI target) {
+        InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
+
+        if (address.isUnresolved()) {
+            log.trace("Could not resolve '{}'", target);
+            failed(target);
+
+            return null;
+        }
+
+        Attempt attempt = new Attempt(target);
+        SocketChannel channel = null;
+
+        try {
+            channel = SocketChannel.open();
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+
+            if (channel.connect(address)) {
+                return connected(channel, attempt);
+            }
+
+            channel.register(selector, SelectionKey.OP_CONNECT, attempt);
+            pending++;
+        } catch (Exception e) {
+            closeQuietly(channel);
+            log.trace("Error connecting to '{}': {}", target, e);
+            failed(target);
+        }
+
+        return null;
+    }
+
+    private SocketInfo finishConnecting(Selector selector) {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+
+            if (!key.isValid() || !key.isConnectable()) {
+                continue;
+            }
+
+            SocketChannel channel = (SocketChannel) key.channel();
+            Attempt attempt = (Attempt) key.attachment();
+
+            try {
+                if (channel.finishConnect()) {
+                    key.cancel();
+
+                    return connected(channel, attempt);
+                }
+            } catch (Exception e) {
+                pending--;
+                key.cancel();
+                closeQuietly(channel);
+                log.trace("Error connecting socket channel: {}", e.getMessage());
+                failed(attempt.target);
+            }
+        }
+
+        return null;
+    }
+
+    private SocketInfo connected(SocketChannel channel, Attempt attempt) throws IOException {
+        tracker.connected(attempt.target, System.nanoTime() - attempt.startTime);
+
+        channel.configureBlocking(true);
+
+        return new SocketInfo(attempt.target, channel.socket());
+    }
+
+    private void failed(URI target) {
+        // connection failed, do not consider this address any more
+        addresses.remove(target);
+        tracker.failed(target);
+    }
+
+    private static void closeSelector(Selector selector) throws IOException {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+                closeQuietly(key.channel());
+            }
+        }
+
+        selector.close();
+    }
+
+    private static final class Attempt {
+        private final URI target;
+        private final long startTime = System.nanoTime();
+
+        Attempt(URI target) {
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps exponentially weighted moving averages of the connect and TLS
+ * handshake latencies and of the error rates of service provider addresses,
+ * and orders the addresses for connecting based on them.
+ *
+ * The first address is the better of two randomly picked addresses (power of
+ * two choices), so that the load is spread over the providers instead of
+ * everyone using the single fastest one. The rest of the addresses follow from
+ * the best to the worst. The handshake latency is not counted for addresses
+ * that have a resumable TLS session, and errors count as a fixed penalty.
+ * The error rate decays over time, so that an address that has failed is
+ * preferred again once it has been quiet for a while. The statistics of an
+ * address are also reset an hour after they were created.
+ */
+class TargetLatencyTracker {
+
+    // Weight of a new sample in the moving averages
+    private static final double ALPHA = 0.2;
+
+    // An error rate of 1 costs as much as this much latency
+    private static final double ERROR_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Time in which the error rate halves without new samples
+    private static final double ERROR_HALF_LIFE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int MAXIMUM_SIZE = 10000;
+
+    private static final int EXPIRE_AFTER_WRITE_HOURS = 1;
+
+    private final Cache<URI, TargetStats> stats = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .expireAfterWrite(EXPIRE_AFTER_WRITE_HOURS, TimeUnit.HOURS)
+            .build();
+
+    private final SSLSessionContext sessionContext;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param sessionContext client session context for checking whether TLS sessions are still resumable,
+     * or null if not available
+     */
+    TargetLatencyTracker(SSLSessionContext sessionContext) {
+        this(sessionContext, System::currentTimeMillis);
+    }
+
+    TargetLatencyTracker(SSLSessionContext sessionContext, LongSupplier clock) {
+        this.sessionContext = sessionContext;
+        this.clock = clock;
+    }
+
+    /**
+     * @param addresses the service provider addresses
+     * @return the addresses in the order they should be connected to
+     */
+    List<URI> order(Collection<URI> addresses) {
+        List<Candidate> candidates = new ArrayList<>(addresses.size());
+        long now = clock.getAsLong();
+
+        for (URI address : addresses) {
+            candidates.add(new Candidate(address, getStats(address).score(now, getSessionTimeoutMillis())));
+        }
+
+        List<URI> order = new ArrayList<>(candidates.size());
+
+        if (candidates.size() > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            int first = random.nextInt(candidates.size());
+            int second = random.nextInt(candidates.size() - 1);
+
+            if (second >= first) {
+                second++;
+            }
+
+            Candidate best = candidates.get(first).score <= candidates.get(second).score
+                    ? candidates.get(first) : candidates.get(second);
+
+            order.add(best.address);
+            candidates.remove(best);
+        }
+
+        candidates.sort(Comparator.comparingDouble(c -> c.score));
+        candidates.forEach(c -> order.add(c.address));
+
+        return order;
+    }
+
+    void connected(URI address, long connectNanos) {
+        getStats(address).connected(connectNanos);
+    }
+
+    void handshakeCompleted(URI address, long handshakeNanos, SSLSession session) {
+        getStats(address).handshakeCompleted(handshakeNanos, session, clock.getAsLong());
+    }
+
+    void failed(URI address) {
+        getStats(address).failed(clock.getAsLong());
+    }
+
+    /**
+     * @return the current score of the address, lower is better
+     */
+    double score(URI address) {
+        return getStats(address).score(clock.getAsLong(), getSessionTimeoutMillis());
+    }
+
+    private TargetStats getStats(URI address) {
+        return stats.asMap().computeIfAbsent(address, a -> new TargetStats());
+    }
+
+    private long getSessionTimeoutMillis() {
+        return sessionContext != null ? TimeUnit.SECONDS.toMillis(sessionContext.getSessionTimeout()) : 0;
+    }
+
+    private static final class Candidate {
+        private final URI address;
+        private final double score;
+
+        Candidate(URI address, double score) {
+            this.address = address;
+            this.score = score;
+        }
+    }
+
+    private static final class TargetStats {
+        // Moving averages, NaN until the first sample
+        private double connectNanos = Double.NaN;
+        private double handshakeNanos = Double.NaN;
+        private double errorRate;
+        private long errorRateUpdatedAt;
+
+        private SSLSession session;
+
+        synchronized void connected(long nanos) {
+            connectNanos = average(connectNanos, nanos);
+        }
+
+        synchronized void handshakeCompleted(long nanos, SSLSession newSession, long now) {
+            handshakeNanos = average(handshakeNanos, nanos);
+            updateErrorRate(0, now);
+            session = newSession;
+        }
+
+        synchronized void failed(long now) {
+            updateErrorRate(1, now);
+            session = null;
+        }
+
+        synchronized double score(long now, long sessionTimeoutMillis) {
+            double score = decayedErrorRate(now) * ERROR_PENALTY_NANOS;
+
+            if (!Double.isNaN(connectNanos)) {
+                score += connectNanos;
+            }
+
+            if (!Double.isNaN(handshakeNanos) && !isResumable(now, sessionTimeoutMillis)) {
+                score += handshakeNanos;
+            }
+
+            return score;
+        }
+
+        private boolean isResumable(long now, long sessionTimeoutMillis) {
+            return session != null && session.isValid()
+                    && (sessionTimeoutMillis == 0 || now - session.getCreationTime() < sessionTimeoutMillis);
+        }
+
+        private void updateErrorRate(double sample, long now) {
+            errorRate = average(decayedErrorRate(now), sample);
+            errorRateUpdatedAt = now;
+        }
+
+        private double decayedErrorRate(long now) {
+            long elapsed = now - errorRateUpdatedAt;
+
+            return elapsed > 0 ? errorRate / Math.pow(2, elapsed / ERROR_HALF_LIFE_MILLIS) : errorRate;
+        }
+
+        private static double average(double average, double sample) {
+            return Double.isNaN(average) ? sample : average + ALPHA * (sample - average);
+        }
+    }
+}
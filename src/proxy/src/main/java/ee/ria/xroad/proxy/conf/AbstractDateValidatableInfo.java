@@ -25,12 +25,22 @@
 package ee.ria.xroad.proxy.conf;
 
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Data which may or may not be valid at a given date
  */
 abstract class AbstractDateValidatableInfo {
 
+    private final long createdAt = System.currentTimeMillis();
+
     abstract boolean verifyValidity(Date atDate);
 
+    /**
+     * @return true if the data was created more than the given number of seconds ago
+     */
+    boolean isOlderThan(int seconds) {
+        return System.currentTimeMillis() - createdAt > TimeUnit.SECONDS.toMillis(seconds);
+    }
+
 }
@@ -39,6 +39,7 @@ import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
@@ -46,8 +47,13 @@ import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
@@ -61,6 +67,17 @@ class CachingKeyConfImpl extends KeyConfImpl {
     // Specifies how long data is cached
     private static final int CACHE_PERIOD_SECONDS = 300;
 
+    // Cached data older than this is refreshed in the background, so that
+    // requests do not have to wait for Signer when the data expires
+    private static final int REFRESH_PERIOD_SECONDS = 240;
+
+    // Keys of the cache entries being refreshed
+    private static final Set<Object> REFRESHES_IN_PROGRESS = ConcurrentHashMap.newKeySet();
+
+    // Incremented when the caches are invalidated, so that refreshes started
+    // before do not store outdated data
+    private static final AtomicLong CACHE_GENERATION = new AtomicLong();
+
     private final FileContentChangeChecker keyConfChangeChecker;
 
     private static final Cache<ClientId, SigningInfo> SIGNING_INFO_CACHE;
@@ -98,6 +115,8 @@ class CachingKeyConfImpl extends KeyConfImpl {
             if (!signingInfo.verifyValidity(new Date())) {
                 SIGNING_INFO_CACHE.invalidate(clientId);
                 signingInfo = SIGNING_INFO_CACHE.get(clientId, () -> getSigningInfo(clientId));
+            } else if (signingInfo.isOlderThan(REFRESH_PERIOD_SECONDS)) {
+                refresh(SIGNING_INFO_CACHE, clientId, this::getSigningInfoAsync);
             }
             return signingInfo.getSigningCtx();
 
@@ -111,10 +130,40 @@ class CachingKeyConfImpl extends KeyConfImpl {
      * Invalidates both auth key and signing info caches
      */
     protected static void invalidateCaches() {
+        CACHE_GENERATION.incrementAndGet();
         AUTH_KEY_CACHE.invalidateAll();
         SIGNING_INFO_CACHE.invalidateAll();
     }
 
+    private static <K, V> void refresh(Cache<K, V> cache, K key, AsyncLoader<K, V> loader) {
+        if (!REFRESHES_IN_PROGRESS.add(key)) {
+            return;
+        }
+
+        long generation = CACHE_GENERATION.get();
+
+        log.debug("Refreshing cached data for '{}'", key);
+
+        CompletableFuture<V> future;
+
+        try {
+            future = loader.load(key);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        future.whenComplete((value, e) -> {
+            if (e != null) {
+                log.warn("Failed to refresh cached data for '{}'", key, e);
+            } else if (generation == CACHE_GENERATION.get()) {
+                cache.put(key, value);
+            }
+
+            REFRESHES_IN_PROGRESS.remove(key);
+        });
+    }
+
 
     private static final AuthKey NULL_AUTH_KEY = new AuthKey(null, null);
 
@@ -135,6 +184,8 @@ class CachingKeyConfImpl extends KeyConfImpl {
                 // we likely got an old auth key from cache, and refresh should fix this
                 AUTH_KEY_CACHE.invalidate(serverId);
                 info = AUTH_KEY_CACHE.get(serverId, () -> getAuthKeyInfo(serverId));
+            } else if (info.isOlderThan(REFRESH_PERIOD_SECONDS)) {
+                refresh(AUTH_KEY_CACHE, serverId, this::getAuthKeyInfoAsync);
             }
             return info.getAuthKey();
         } catch (Exception e) {
@@ -159,22 +210,58 @@ class CachingKeyConfImpl extends KeyConfImpl {
 
         CertChain certChain = getAuthCertChain(serverId.getXRoadInstance(), keyInfo.getCert().getCertificateBytes());
 
-        List<OCSPResp> ocspResponses = getOcspResponses(certChain.getAdditionalCerts());
-        ocspResponses.add(new OCSPResp(keyInfo.getCert().getOcspBytes()));
-
-        PrivateKey key = loadAuthPrivateKey(keyInfo);
+        return createAuthKeyInfo(keyInfo, certChain, getOcspResponses(certChain.getAdditionalCerts()));
+    }
 
-        return new AuthKeyInfo(key, certChain, ocspResponses);
+    protected CompletableFuture<AuthKeyInfo> getAuthKeyInfoAsync(SecurityServerId serverId) {
+        log.debug("Refreshing authentication info for security server '{}'", serverId);
+
+        return SignerClient.<ee.ria.xroad.signer.protocol.dto.AuthKeyInfo>executeAsync(new GetAuthKey(serverId))
+                .thenCompose(keyInfo -> {
+                    try {
+                        CertChain certChain = getAuthCertChain(serverId.getXRoadInstance(),
+                                keyInfo.getCert().getCertificateBytes());
+
+                        return getOcspResponsesAsync(certChain.getAdditionalCerts())
+                                .thenApply(ocspResponses -> createAuthKeyInfo(keyInfo, certChain, ocspResponses));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                });
     }
 
     protected SigningInfo getSigningInfo(ClientId clientId) throws Exception {
         log.debug("Retrieving signing info for member '{}'", clientId);
 
-        MemberSigningInfo signingInfo = SignerClient.execute(new GetMemberSigningInfo(clientId));
+        return createSigningInfo(clientId, SignerClient.execute(new GetMemberSigningInfo(clientId)));
+    }
 
+    protected CompletableFuture<SigningInfo> getSigningInfoAsync(ClientId clientId) {
+        log.debug("Refreshing signing info for member '{}'", clientId);
+
+        return SignerClient.<MemberSigningInfo>executeAsync(new GetMemberSigningInfo(clientId))
+                .thenApply(signingInfo -> createSigningInfo(clientId, signingInfo));
+    }
+
+    @SneakyThrows
+    private static AuthKeyInfo createAuthKeyInfo(ee.ria.xroad.signer.protocol.dto.AuthKeyInfo keyInfo,
+            CertChain certChain, List<OCSPResp> ocspResponses) {
+        ocspResponses.add(new OCSPResp(keyInfo.getCert().getOcspBytes()));
+
+        PrivateKey key = loadAuthPrivateKey(keyInfo);
+
+        return new AuthKeyInfo(key, certChain, ocspResponses);
+    }
+
+    @SneakyThrows
+    private static SigningInfo createSigningInfo(ClientId clientId, MemberSigningInfo signingInfo) {
         X509Certificate cert = readCertificate(signingInfo.getCert().getCertificateBytes());
         OCSPResp ocsp = new OCSPResp(signingInfo.getCert().getOcspBytes());
 
         return new SigningInfo(signingInfo.getKeyId(), signingInfo.getSignMechanismName(), clientId, cert, ocsp);
     }
+
+    private interface AsyncLoader<K, V> {
+        CompletableFuture<V> load(K key) throws Exception;
+    }
 }
@@ -45,11 +45,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.io.File;
+import java.io.IOException;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 import static ee.ria.xroad.common.util.CertUtils.getCertHashes;
@@ -138,6 +141,24 @@ class KeyConfImpl implements KeyConfProvider {
                 SignerClient.execute(
                         new GetOcspResponses(getCertHashes(certs)));
 
+        return toOcspResponses(response);
+    }
+
+    /**
+     * Asynchronous version of {@link #getOcspResponses(List)}.
+     */
+    CompletableFuture<List<OCSPResp>> getOcspResponsesAsync(List<X509Certificate> certs) throws Exception {
+        return SignerClient.<GetOcspResponsesResponse>executeAsync(new GetOcspResponses(getCertHashes(certs)))
+                .thenApply(response -> {
+                    try {
+                        return toOcspResponses(response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private static List<OCSPResp> toOcspResponses(GetOcspResponsesResponse response) throws IOException {
         List<OCSPResp> ocspResponses = new ArrayList<>();
         for (String base64Encoded : response.getBase64EncodedResponses()) {
             if (base64Encoded != null) {
@@ -153,6 +174,17 @@ class KeyConfImpl implements KeyConfProvider {
     @Override
     public void setOcspResponses(List<X509Certificate> certs,
             List<OCSPResp> responses) throws Exception {
+        // The responses are only cached, so there is no need to wait for Signer
+        setOcspResponsesAsync(certs, responses);
+    }
+
+    /**
+     * Asynchronous version of {@link #setOcspResponses(List, List)}. A failure
+     * to store the responses is logged and completes the returned future
+     * exceptionally.
+     */
+    CompletableFuture<Void> setOcspResponsesAsync(List<X509Certificate> certs,
+            List<OCSPResp> responses) throws Exception {
         String[] base64EncodedResponses = new String[responses.size()];
 
         for (int i = 0; i < responses.size(); i++) {
@@ -160,8 +192,16 @@ class KeyConfImpl implements KeyConfProvider {
                     encodeBase64(responses.get(i).getEncoded());
         }
 
-        SignerClient.execute(new SetOcspResponses(getCertHashes(certs),
-                base64EncodedResponses));
+        return SignerClient.executeAsync(new SetOcspResponses(getCertHashes(certs), base64EncodedResponses))
+                .handle((result, e) -> {
+                    if (e != null) {
+                        log.error("Failed to store OCSP responses of {} certificates in Signer", certs.size(), e);
+
+                        throw new CompletionException(e);
+                    }
+
+                    return null;
+                });
     }
 
     static SigningCtx createSigningCtx(ClientId subject, String keyId,
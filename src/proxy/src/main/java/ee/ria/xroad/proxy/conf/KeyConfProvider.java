@@ -74,7 +74,8 @@ public interface KeyConfProvider {
 
     /**
      * Updates the existing OCSP response or stores the OCSP response,
-     * if it does not exist for the given certificate.
+     * if it does not exist for the given certificate. The responses may be
+     * stored asynchronously.
      * @param certs list of certificates
      * @param responses list of OCSP responses
      * @throws Exception in case of any errors
@@ -69,8 +69,8 @@ public class Signer {
      * @param soap the message to be signed
      */
     public void addMessagePart(String hashMethod, SoapMessageImpl soap) {
-        builder.addPart(new MessagePart(MessageFileNames.MESSAGE, hashMethod,
-                soap.getHash(), soap.getBytes()));
+        builder.addPart(MessagePart.withMessageContent(MessageFileNames.MESSAGE, hashMethod,
+                soap.getHash(), soap::getContent));
     }
 
     /**
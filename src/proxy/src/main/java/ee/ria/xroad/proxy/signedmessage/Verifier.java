@@ -77,8 +77,8 @@ public class Verifier {
      * @param soap the signed message
      */
     public void addMessagePart(String hashMethod, SoapMessageImpl soap) {
-        parts.add(new MessagePart(MessageFileNames.MESSAGE, hashMethod,
-                soap.getHash(), soap.getBytes()));
+        parts.add(MessagePart.withMessageContent(MessageFileNames.MESSAGE, hashMethod,
+                soap.getHash(), soap::getContent));
     }
 
     /**
@@ -130,7 +130,7 @@ public abstract class MessageProcessorBase {
             opMonitoringData.setMessageProtocolVersion(
                     soapMessage.getProtocolVersion());
             opMonitoringData.setServiceType(DescriptionType.WSDL.name());
-            opMonitoringData.setRequestSize(soapMessage.getBytes().length);
+            opMonitoringData.setRequestSize(soapMessage.getContentLength());
         }
     }
 
@@ -0,0 +1,229 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.util.MessageFileNames;
+import ee.ria.xroad.signer.protocol.SignerClient;
+import ee.ria.xroad.signer.protocol.message.GetTokenBatchSigningEnabled;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedAbstractActor;
+import com.codahale.metrics.MetricRegistry;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA512WITHRSA_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA512_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+import static ee.ria.xroad.signer.protocol.ComponentNames.REQUEST_PROCESSOR;
+import static ee.ria.xroad.signer.protocol.ComponentNames.SIGNER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link BatchSigner} against a stub Signer request processor.
+ */
+public class BatchSignerTest {
+
+    private static final int SIGNER_TIMEOUT_MILLIS = 2000;
+
+    private static final byte[] SIGNATURE = "signature".getBytes(UTF_8);
+
+    private static final BlockingQueue<Sign> SIGN_REQUESTS = new LinkedBlockingQueue<>();
+
+    private static volatile boolean answerSignRequests = true;
+
+    private static ActorSystem actorSystem;
+
+    /**
+     * Starts the batch signer and the stub Signer in an actor system with the Signer address.
+     * @throws Exception in case of any unexpected errors
+     */
+    @BeforeClass
+    public static void startUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        System.setProperty(SystemProperties.SIGNER_PORT, String.valueOf(port));
+        System.setProperty(SystemProperties.SIGNER_CLIENT_TIMEOUT, String.valueOf(SIGNER_TIMEOUT_MILLIS));
+
+        actorSystem = ActorSystem.create(SIGNER, ConfigFactory.parseString(
+                "akka.actor.provider = remote\n"
+                        + "akka.remote.warn-about-direct-use = off\n"
+                        + "akka.remote.artery.transport = tcp\n"
+                        + "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+                        + "akka.remote.artery.canonical.port = " + port));
+
+        actorSystem.actorOf(Props.create(StubSigner.class), REQUEST_PROCESSOR);
+
+        SignerClient.init(actorSystem);
+        BatchSigner.init(actorSystem);
+    }
+
+    /**
+     * Stops the batch signer and checks that its metrics are no longer published.
+     * @throws Exception in case of any unexpected errors
+     */
+    @AfterClass
+    public static void tearDown() throws Exception {
+        actorSystem.terminate();
+        actorSystem.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(batchSizeMetric()));
+    }
+
+    /**
+     * Tests that a request is signed with the signature returned by Signer.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void signsRequest() throws Exception {
+        SignatureData signature = sign(TestCertUtil.getProducer().certChain[0], "producer")
+                .get(5, TimeUnit.SECONDS);
+
+        assertTrue(signature.getSignatureXml().contains(encodeBase64(SIGNATURE)));
+    }
+
+    /**
+     * Tests that the batch signer metrics are published over JMX while the batch signer is running.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void publishesMetricsOverJmx() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!ManagementFactory.getPlatformMBeanServer().isRegistered(batchSizeMetric())) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Batch size metric is not registered");
+            }
+
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Tests that a batch Signer does not answer is failed on the periodic timeout check, so that
+     * the request queued behind it is sent to Signer without waiting for further requests.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void sendsQueuedRequestAfterUnansweredBatchTimesOut() throws Exception {
+        X509Certificate cert = TestCertUtil.getConsumer().certChain[0];
+
+        SIGN_REQUESTS.clear();
+        answerSignRequests = false;
+
+        try {
+            CompletableFuture<SignatureData> unanswered = sign(cert, "unanswered");
+
+            assertNotNull(SIGN_REQUESTS.poll(5, TimeUnit.SECONDS));
+
+            answerSignRequests = true;
+
+            // Queued behind the unanswered batch, since only one batch is signed at a time
+            Thread.sleep(SIGNER_TIMEOUT_MILLIS / 2);
+
+            CompletableFuture<SignatureData> queued = sign(cert, "queued");
+
+            assertNotNull(SIGN_REQUESTS.poll(SIGNER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertTrue(queued.get(5, TimeUnit.SECONDS).getSignatureXml().contains(encodeBase64(SIGNATURE)));
+
+            try {
+                unanswered.get(5, TimeUnit.SECONDS);
+                fail("Expected the unanswered request to fail");
+            } catch (ExecutionException expected) {
+                // timed out
+            }
+        } finally {
+            answerSignRequests = true;
+        }
+    }
+
+    private static CompletableFuture<SignatureData> sign(X509Certificate cert, String message) throws Exception {
+        byte[] data = message.getBytes(UTF_8);
+        MessagePart part = new MessagePart(MessageFileNames.MESSAGE, SHA512_ID, calculateDigest(SHA512_ID, data),
+                data);
+
+        return BatchSigner.signAsync("key", SHA512WITHRSA_ID,
+                new SigningRequest(cert, Collections.singletonList(part)));
+    }
+
+    private static ObjectName batchSizeMetric() throws Exception {
+        return new ObjectName("metrics", "name", MetricRegistry.name(BatchSigner.class, "batchSize"));
+    }
+
+    /**
+     * Stub of the Signer request processor. Batch signing is disabled and sign requests are answered
+     * with a fixed signature unless answering is turned off.
+     */
+    public static class StubSigner extends UntypedAbstractActor {
+
+        @Override
+        public void onReceive(Object message) {
+            if (message instanceof GetTokenBatchSigningEnabled) {
+                getSender().tell(Boolean.FALSE, getSelf());
+            } else if (message instanceof Sign) {
+                boolean answer = answerSignRequests;
+
+                SIGN_REQUESTS.add((Sign) message);
+
+                if (answer) {
+                    getSender().tell(new SignResponse(SIGNATURE), getSelf());
+                }
+            } else {
+                unhandled(message);
+            }
+        }
+    }
+}
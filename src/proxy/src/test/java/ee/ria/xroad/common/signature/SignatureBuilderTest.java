@@ -37,6 +37,7 @@ import org.joda.time.DateTime;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -47,12 +48,16 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test to verify correct signature builder behavior.
@@ -131,6 +136,41 @@ public class SignatureBuilderTest {
         }
     }
 
+    /**
+     * Test to ensure the message is digested from its content when it is not held in memory.
+     * @throws Exception in case of any unexpected error
+     */
+    @Test
+    public void buildSuccessfullyFromMessageContent() throws Exception {
+        byte[] messageBytes = fileToBytes("message-0.xml");
+        byte[] digest = CryptoUtils.calculateDigest(CryptoUtils.SHA512_ID, messageBytes);
+
+        SignatureData fromBytes = buildSignature(
+                new MessagePart(MessageFileNames.MESSAGE, CryptoUtils.SHA512_ID, digest, messageBytes));
+        SignatureData fromContent = buildSignature(MessagePart.withMessageContent(MessageFileNames.MESSAGE,
+                CryptoUtils.SHA512_ID, digest, () -> new ByteArrayInputStream(messageBytes)));
+
+        assertNull(fromContent.getHashChain());
+        assertEquals(getMessageDigestValue(fromBytes), getMessageDigestValue(fromContent));
+    }
+
+    private static SignatureData buildSignature(MessagePart message) throws Exception {
+        SignatureBuilder builder = new SignatureBuilder();
+        builder.addPart(message);
+        builder.setSigningCert(subjectCert);
+
+        return builder.build(new TestSigningKey(subjectKey), CryptoUtils.SHA512_ID);
+    }
+
+    private static String getMessageDigestValue(SignatureData data) {
+        Matcher matcher = Pattern.compile("URI=\"" + MessageFileNames.MESSAGE + "\".*?DigestValue>([^<]+)<",
+                Pattern.DOTALL).matcher(data.getSignatureXml());
+
+        assertTrue(matcher.find());
+
+        return matcher.group(1);
+    }
+
     /**
      * Test to ensure signature with extra certificates is built successfully.
      * @throws Exception in case of any unexpected error
@@ -32,7 +32,10 @@ import org.junit.Test;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -156,6 +159,73 @@ public class AntiDosConnectionManagerTest {
         cm.assertEmpty();
     }
 
+    /**
+     * Test to ensure that new partners are recognized after the known addresses
+     * have been synchronized with the global configuration.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void newPartnersRecognizedAfterSync() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestSocketChannel member4 = createConnection("test4");
+        TestSocketChannel attacker = createConnection("attacker1");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        KNOWN_ADDRESSES.add("test4");
+
+        try {
+            // Not synchronized yet, so test4 shares the queue of unknown addresses
+            cm.accept(member4, member4, attacker);
+            cm.assertConnections(member4, member4, attacker);
+
+            cm.syncDatabase();
+
+            cm.accept(member4, member4, attacker);
+            cm.assertConnections(member4, attacker, member4);
+
+            cm.assertEmpty();
+        } finally {
+            KNOWN_ADDRESSES.remove("test4");
+        }
+    }
+
+    /**
+     * Test to ensure that taking the next connection waits until a connection is accepted.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(timeout = 10000)
+    public void takeNextConnectionWaitsForConnection() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestSocketChannel member1 = createConnection("test1");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        CompletableFuture<TestSocketChannel> next = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cm.takeNextConnection();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        assertFalse(next.isDone());
+
+        cm.accept(member1);
+
+        assertEquals(member1, next.get());
+        cm.assertEmpty();
+    }
+
     // ------------------------------------------------------------------------
 
     private static TestConnectionManager createConnectionManager(
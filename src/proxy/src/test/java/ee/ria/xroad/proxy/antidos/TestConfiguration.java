@@ -32,4 +32,5 @@ import lombok.RequiredArgsConstructor;
 class TestConfiguration extends AntiDosConfiguration {
     private final int minFreeFileHandles;
     private final double maxCpuLoad;
+    private final int resourceCheckIntervalMillis = 0;
 }
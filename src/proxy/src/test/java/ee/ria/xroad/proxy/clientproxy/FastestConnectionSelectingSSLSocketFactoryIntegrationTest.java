@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.proxy.clientproxy;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.TestCertUtil;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.identifier.ServiceId;
@@ -99,6 +100,23 @@ public class FastestConnectionSelectingSSLSocketFactoryIntegrationTest {
     @Test
     public void testWithSender() throws Exception {
         createClient();
+        testWithProxies();
+    }
+
+    @Test
+    public void testWithSenderLatencyAware() throws Exception {
+        System.setProperty(SystemProperties.CLIENTPROXY_TARGET_SELECTION,
+                SystemProperties.CLIENTPROXY_TARGET_SELECTION_LATENCY_AWARE);
+
+        try {
+            createClient();
+            testWithProxies();
+        } finally {
+            System.clearProperty(SystemProperties.CLIENTPROXY_TARGET_SELECTION);
+        }
+    }
+
+    private void testWithProxies() throws Exception {
         int port1 = getFreePort();
         int port2 = getFreePort();
         final URI uri1 = URI.create("https://127.0.0.5:" + port1);
@@ -0,0 +1,193 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the latency-aware target selection.
+ */
+public class LatencyAwareSocketSelectorTest {
+
+    private static final URI FAST = URI.create("https://fast:5500");
+    private static final URI SLOW = URI.create("https://slow:5500");
+    private static final URI FAILING = URI.create("https://failing:5500");
+
+    private static final long MILLISECOND = 1_000_000;
+
+    /**
+     * Test that the better of the two addresses is always selected first.
+     */
+    @Test
+    public void selectsBetterOfTwo() {
+        TargetLatencyTracker tracker = new TargetLatencyTracker(null);
+        tracker.connected(FAST, MILLISECOND);
+        tracker.connected(SLOW, 100 * MILLISECOND);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Arrays.asList(FAST, SLOW), tracker.order(Arrays.asList(SLOW, FAST)));
+        }
+    }
+
+    /**
+     * Test that errors make an address worse than a slow one.
+     */
+    @Test
+    public void penalizesErrors() {
+        TargetLatencyTracker tracker = new TargetLatencyTracker(null);
+        tracker.connected(FAILING, MILLISECOND);
+        tracker.connected(SLOW, 100 * MILLISECOND);
+
+        for (int i = 0; i < 3; i++) {
+            tracker.failed(FAILING);
+        }
+
+        assertTrue(tracker.score(FAILING) > tracker.score(SLOW));
+        assertEquals(Arrays.asList(SLOW, FAILING), tracker.order(Arrays.asList(FAILING, SLOW)));
+    }
+
+    /**
+     * Test that an address that has failed is preferred again after it has been quiet for a while.
+     */
+    @Test
+    public void recoversFromErrorsOverTime() {
+        AtomicLong now = new AtomicLong(TimeUnit.HOURS.toMillis(1));
+        TargetLatencyTracker tracker = new TargetLatencyTracker(null, now::get);
+        tracker.connected(FAILING, MILLISECOND);
+        tracker.connected(SLOW, 100 * MILLISECOND);
+
+        for (int i = 0; i < 3; i++) {
+            tracker.failed(FAILING);
+        }
+
+        assertTrue(tracker.score(FAILING) > tracker.score(SLOW));
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(5));
+
+        assertTrue(tracker.score(FAILING) < tracker.score(SLOW));
+        assertEquals(Arrays.asList(FAILING, SLOW), tracker.order(Arrays.asList(SLOW, FAILING)));
+    }
+
+    /**
+     * Test that the first address is spread over the addresses with equal scores.
+     */
+    @Test
+    public void spreadsLoadOverEqualAddresses() {
+        TargetLatencyTracker tracker = new TargetLatencyTracker(null);
+        URI[] addresses = {FAST, SLOW, FAILING};
+
+        Set<URI> selected = new HashSet<>();
+
+        for (int i = 0; i < 1000; i++) {
+            selected.add(tracker.order(Arrays.asList(addresses)).get(0));
+        }
+
+        assertEquals(3, selected.size());
+    }
+
+    /**
+     * Test that the selector skips an address that refuses the connection and records the failure.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void skipsRefusedAddress() throws Exception {
+        TargetLatencyTracker tracker = new TargetLatencyTracker(null);
+
+        URI refused = URI.create("https://127.0.0.1:" + getClosedPort());
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            URI listening = URI.create("https://127.0.0.1:" + server.getLocalPort());
+
+            // Make the refusing address look better, so that it is tried first
+            tracker.connected(refused, MILLISECOND);
+            tracker.connected(listening, 100 * MILLISECOND);
+
+            LatencyAwareSocketSelector selector = new LatencyAwareSocketSelector(tracker, 1000);
+            selector.addAll(refused, listening);
+
+            SocketInfo selected = selector.select(5000);
+
+            try {
+                assertEquals(listening, selected.getUri());
+                assertTrue(selected.getSocket().isConnected());
+                assertTrue(tracker.score(refused) > tracker.score(listening));
+            } finally {
+                selected.getSocket().close();
+            }
+        }
+    }
+
+    /**
+     * Test that a zero timeout means no timeout.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void zeroTimeoutMeansNoTimeout() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            LatencyAwareSocketSelector selector = new LatencyAwareSocketSelector(new TargetLatencyTracker(null), 1000);
+            selector.addAll(URI.create("https://127.0.0.1:" + server.getLocalPort()));
+
+            SocketInfo selected = selector.select(0);
+
+            try {
+                assertTrue(selected.getSocket().isConnected());
+            } finally {
+                selected.getSocket().close();
+            }
+        }
+    }
+
+    /**
+     * Test that selection fails when no address accepts the connection.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = IOException.class)
+    public void failsWhenNoAddressConnects() throws Exception {
+        LatencyAwareSocketSelector selector = new LatencyAwareSocketSelector(new TargetLatencyTracker(null), 1000);
+        selector.addAll(URI.create("https://127.0.0.1:" + getClosedPort()));
+
+        selector.select(5000);
+    }
+
+    private static int getClosedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
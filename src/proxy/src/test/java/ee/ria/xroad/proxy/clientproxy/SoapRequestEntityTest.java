@@ -0,0 +1,121 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.util.CachingStream;
+import ee.ria.xroad.proxy.clientproxy.ClientMessageProcessor.SoapRequestEntity;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the request entity used by the client proxy in streaming entity mode.
+ */
+public class SoapRequestEntityTest {
+
+    private static final String CONTENT_TYPE = "multipart/mixed; charset=UTF-8; boundary=xtop1234";
+
+    /**
+     * Test that the signed request can be written and read more than once, as the HTTP client
+     * does on retries and redirects.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void contentIsRepeatable() throws Exception {
+        byte[] data = "--xtop1234\r\nsigned request\r\n--xtop1234--".getBytes(StandardCharsets.UTF_8);
+        SoapRequestEntity entity = createEntity(data, 1024);
+
+        assertTrue(entity.isRepeatable());
+        assertEquals(data.length, entity.getContentLength());
+        assertEquals(CONTENT_TYPE, entity.getContentType().getValue());
+
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+
+            assertArrayEquals(data, out.toByteArray());
+
+            try (InputStream is = entity.getContent()) {
+                assertArrayEquals(data, IOUtils.toByteArray(is));
+            }
+        }
+
+        entity.consume();
+    }
+
+    /**
+     * Test that a request larger than the memory threshold is served from the temporary file.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void spilledContent() throws Exception {
+        byte[] data = new byte[64 * 1024];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        SoapRequestEntity entity = createEntity(data, 1024);
+
+        assertTrue(entity.getCache().isSpilled());
+        assertEquals(data.length, entity.getContentLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        assertArrayEquals(data, out.toByteArray());
+
+        entity.consume();
+    }
+
+    /**
+     * Test that the content can not be read once the request has been processed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = IOException.class)
+    public void consumedContent() throws Exception {
+        SoapRequestEntity entity = createEntity("request".getBytes(StandardCharsets.UTF_8), 1024);
+        entity.consume();
+
+        entity.writeTo(new ByteArrayOutputStream());
+    }
+
+    private static SoapRequestEntity createEntity(byte[] data, int memoryThreshold) throws IOException {
+        CachingStream cache = new CachingStream(memoryThreshold);
+        cache.write(data);
+        cache.close();
+
+        return new SoapRequestEntity(CONTENT_TYPE, cache);
+    }
+}
@@ -30,7 +30,6 @@ import ee.ria.xroad.common.conf.InternalSSLKey;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
-import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityCategoryId;
@@ -39,9 +38,8 @@ import ee.ria.xroad.common.identifier.ServiceId;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import lombok.Value;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.Session;
 
 import java.util.Collections;
 import java.util.List;
@@ -50,6 +48,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
+import static ee.ria.xroad.common.ErrorCodes.translateException;
 
 /**
  * Caching implementation for ServerConf
@@ -60,11 +59,14 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     public static final String TSP_URL = "tsp_url";
 
+    // a single service owner can take up at most this fraction of the access right cache
+    private static final int ACL_CACHE_MAX_ENTRY_SHARE = 10;
+
     private final int expireSeconds;
     private volatile SecurityServerId serverId;
     private final Cache<Object, List<String>> tspCache;
     private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
-    private final Cache<AclCacheKey, List<EndpointType>> aclCache;
+    private final Cache<ClientId, ServiceOwnerAcl> aclCache;
     private final Cache<ClientId, Optional<ClientType>> clientCache;
     private final Cache<String, InternalSSLKey> internalKeyCache;
 
@@ -99,9 +101,14 @@ public class CachingServerConfImpl extends ServerConfImpl {
                 .recordStats()
                 .build();
 
+        // The weight of an entry is capped so that a service owner with a very large access right list is
+        // not evicted as soon as it is cached (and reloaded from the database on each request).
+        long aclCacheSize = SystemProperties.getServerConfAclCacheSize();
+        long maxAclWeight = Math.max(1, aclCacheSize / ACL_CACHE_MAX_ENTRY_SHARE);
+
         aclCache = CacheBuilder.newBuilder()
-                .weigher((AclCacheKey k, List<EndpointType> v) -> v.size() + 1)
-                .maximumWeight(SystemProperties.getServerConfAclCacheSize())
+                .weigher((ClientId k, ServiceOwnerAcl v) -> (int) Math.min(v.size() + 1L, maxAclWeight))
+                .maximumWeight(aclCacheSize)
                 .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
                 .build();
@@ -213,21 +220,29 @@ public class CachingServerConfImpl extends ServerConfImpl {
     }
 
     @Override
-    protected List<EndpointType> getEndpoints(Session session, ClientId client, ServiceId service) {
-        final AclCacheKey key = new AclCacheKey(client, service);
+    public boolean isQueryAllowed(ClientId client, ServiceId service, String method, String path) {
+        if (client == null) {
+            return false;
+        }
+
+        return getServiceOwnerAcl(service).isAllowed(client, service.getServiceCode(), method, normalizePath(path));
+    }
+
+    private ServiceOwnerAcl getServiceOwnerAcl(ServiceId service) {
         try {
-            /*
-             * Implementation note. It seems that the loader function is executed in the same thread, in which case the
-             * transaction simply joins the current one. However, this is not explicitly promised by the API,
-             * so we start a transaction if necessary.
-             */
-            return aclCache.get(key, () -> tx(s -> super.getEndpoints(s, client, service)));
-        } catch (ExecutionException e) {
+            return aclCache.get(service.getClientId(), () -> tx(session -> {
+                ClientType serviceOwner = super.getClient(session, service.getClientId());
+                if (serviceOwner == null) {
+                    throw new CodedException(X_UNKNOWN_SERVICE, "Service '%s' owner not found", service);
+                }
+
+                return ServiceOwnerAcl.compile(serviceOwner);
+            }));
+        } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
-            log.debug("Failed get list of endpoints", e);
-            return Collections.emptyList();
+            throw translateException(e.getCause());
         }
     }
 
@@ -268,10 +283,4 @@ public class CachingServerConfImpl extends ServerConfImpl {
                     aclCache.stats().toString());
         }
     }
-
-    @Value
-    private static class AclCacheKey {
-        final ClientId client;
-        final ServiceId serviceId;
-    }
 }
@@ -327,13 +327,21 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @SuppressWarnings("squid:S3776")
     private boolean checkAccessRights(Session session, ClientId client, ServiceId service, String method, String path) {
-        final String normalizedPath;
+        final String normalizedPath = normalizePath(path);
+        return getEndpoints(session, client, service).stream().anyMatch(ep -> ep.matches(method, normalizedPath));
+    }
+
+    /**
+     * Normalizes and percent-decodes the request path for matching against endpoint paths.
+     * @param path the request path or null
+     * @return normalized path or null
+     */
+    protected static String normalizePath(String path) {
         if (path == null) {
-            normalizedPath = null;
-        } else {
-            normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
+            return null;
         }
-        return getEndpoints(session, client, service).stream().anyMatch(ep -> ep.matches(method, normalizedPath));
+
+        return UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
     }
 
     protected List<EndpointType> getEndpoints(Session session, ClientId client, ServiceId service) {
@@ -0,0 +1,275 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Access rights of one service owner compiled into an in-memory decision structure.
+ *
+ * Access rights are grouped by service code and subject. Local groups are resolved to their members when the
+ * structure is compiled, global group membership is checked from the global configuration. The endpoints of a
+ * subject are kept in a path segment trie per HTTP method, so a decision takes time proportional to the length
+ * of the request path and does not need the database.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+public final class ServiceOwnerAcl {
+
+    private static final String PATH_SEPARATOR = "/";
+
+    // service code -> client -> endpoints
+    private final Map<String, Map<XRoadId, EndpointTrie>> clientAcl = new HashMap<>();
+    // service code -> global group -> endpoints
+    private final Map<String, Map<GlobalGroupId, EndpointTrie>> globalGroupAcl = new HashMap<>();
+
+    private final int size;
+
+    private ServiceOwnerAcl(ClientType serviceOwner) {
+        int count = 0;
+
+        for (AccessRightType accessRight : serviceOwner.getAcl()) {
+            XRoadId subject = accessRight.getSubjectId();
+            EndpointType endpoint = accessRight.getEndpoint();
+
+            if (subject instanceof GlobalGroupId) {
+                globalGroupAcl.computeIfAbsent(endpoint.getServiceCode(), k -> new HashMap<>())
+                        .computeIfAbsent((GlobalGroupId) subject, k -> new EndpointTrie())
+                        .add(endpoint);
+            } else if (subject instanceof LocalGroupId) {
+                for (ClientId member : getLocalGroupMembers(serviceOwner, (LocalGroupId) subject)) {
+                    addClientEndpoint(member, endpoint);
+                }
+            } else {
+                addClientEndpoint(subject, endpoint);
+            }
+
+            count++;
+        }
+
+        size = count;
+    }
+
+    /**
+     * Compiles the access rights of the given service owner.
+     * @param serviceOwner the service owner with its access rights and local groups loaded
+     * @return compiled access rights
+     */
+    public static ServiceOwnerAcl compile(ClientType serviceOwner) {
+        return new ServiceOwnerAcl(serviceOwner);
+    }
+
+    /**
+     * Returns true, if the client is allowed to invoke the service.
+     * @param client the client
+     * @param serviceCode code of the service
+     * @param method HTTP method of the request or null
+     * @param normalizedPath normalized and percent-decoded request path or null
+     * @return true, if any access right of the client, or of a group the client belongs to, matches the request
+     */
+    public boolean isAllowed(ClientId client, String serviceCode, String method, String normalizedPath) {
+        if (client == null) {
+            return false;
+        }
+
+        Map<XRoadId, EndpointTrie> clients = clientAcl.get(serviceCode);
+        if (clients != null) {
+            EndpointTrie endpoints = clients.get(client);
+
+            if (endpoints != null && endpoints.matches(method, normalizedPath)) {
+                return true;
+            }
+        }
+
+        Map<GlobalGroupId, EndpointTrie> globalGroups = globalGroupAcl.get(serviceCode);
+        if (globalGroups != null) {
+            for (Map.Entry<GlobalGroupId, EndpointTrie> e : globalGroups.entrySet()) {
+                if (e.getValue().matches(method, normalizedPath)
+                        && GlobalConf.isSubjectInGlobalGroup(client, e.getKey())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return number of compiled access rights
+     */
+    public int size() {
+        return size;
+    }
+
+    private void addClientEndpoint(XRoadId subject, EndpointType endpoint) {
+        clientAcl.computeIfAbsent(endpoint.getServiceCode(), k -> new HashMap<>())
+                .computeIfAbsent(subject, k -> new EndpointTrie())
+                .add(endpoint);
+    }
+
+    private static List<ClientId> getLocalGroupMembers(ClientType groupOwner, LocalGroupId groupId) {
+        List<ClientId> members = new ArrayList<>();
+
+        for (LocalGroupType group : groupOwner.getLocalGroup()) {
+            if (Objects.equals(groupId.getGroupCode(), group.getGroupCode())) {
+                for (GroupMemberType member : group.getGroupMember()) {
+                    members.add(member.getGroupMemberId());
+                }
+            }
+        }
+
+        return members;
+    }
+
+    /**
+     * Endpoints of one subject, indexed by HTTP method and path segments.
+     */
+    private static final class EndpointTrie {
+        private final PathNode anyMethod = new PathNode();
+        private final Map<String, PathNode> byMethod = new HashMap<>();
+
+        void add(EndpointType endpoint) {
+            PathNode root = EndpointType.ANY_METHOD.equals(endpoint.getMethod())
+                    ? anyMethod
+                    : byMethod.computeIfAbsent(endpoint.getMethod().toUpperCase(Locale.ROOT), k -> new PathNode());
+
+            root.add(endpoint.getPath());
+        }
+
+        boolean matches(String method, String path) {
+            if (anyMethod.matches(path)) {
+                return true;
+            }
+
+            if (method == null) {
+                return false;
+            }
+
+            PathNode root = byMethod.get(method.toUpperCase(Locale.ROOT));
+
+            return root != null && root.matches(path);
+        }
+    }
+
+    /**
+     * Node of a path segment trie. Literal segments are looked up from a hash map, segments with a single
+     * segment wildcard are matched one segment at a time and globs containing '**' are matched against the
+     * whole path once the literal prefix before them has matched.
+     */
+    private static final class PathNode {
+        private final Map<String, PathNode> literals = new HashMap<>();
+        private final Map<String, WildcardSegment> wildcards = new HashMap<>();
+        private List<Pattern> tails = Collections.emptyList();
+        private boolean matchesAny;
+        private boolean terminal;
+
+        void add(String glob) {
+            if (EndpointType.ANY_PATH.equals(glob)) {
+                matchesAny = true;
+                return;
+            }
+
+            PathNode node = this;
+
+            for (String segment : glob.split(PATH_SEPARATOR, -1)) {
+                if (segment.contains("**")) {
+                    if (node.tails.isEmpty()) {
+                        node.tails = new ArrayList<>();
+                    }
+
+                    node.tails.add(PathGlob.compile(glob));
+                    return;
+                } else if (segment.indexOf('*') >= 0 || segment.indexOf('\\') >= 0) {
+                    node = node.wildcards.computeIfAbsent(segment, WildcardSegment::new).node;
+                } else {
+                    node = node.literals.computeIfAbsent(segment, k -> new PathNode());
+                }
+            }
+
+            node.terminal = true;
+        }
+
+        boolean matches(String path) {
+            if (matchesAny) {
+                return true;
+            }
+
+            return path != null && matches(path, path.split(PATH_SEPARATOR, -1), 0);
+        }
+
+        private boolean matches(String path, String[] segments, int index) {
+            for (Pattern tail : tails) {
+                if (tail.matcher(path).matches()) {
+                    return true;
+                }
+            }
+
+            if (index == segments.length) {
+                return terminal;
+            }
+
+            PathNode literal = literals.get(segments[index]);
+            if (literal != null && literal.matches(path, segments, index + 1)) {
+                return true;
+            }
+
+            for (WildcardSegment wildcard : wildcards.values()) {
+                if (wildcard.pattern.matcher(segments[index]).matches()
+                        && wildcard.node.matches(path, segments, index + 1)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private static final class WildcardSegment {
+        private final Pattern pattern;
+        private final PathNode node = new PathNode();
+
+        WildcardSegment(String segment) {
+            this.pattern = PathGlob.compile(segment);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.ServiceOwnerAcl;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static ee.ria.xroad.proxy.conf.TestUtil.createAccessRight;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the compiled access rights of a service owner.
+ */
+public class ServiceOwnerAclTest {
+
+    private static final String SERVICE_CODE = "service";
+
+    private static final ClientId CLIENT = ClientId.create("EE", "BUSINESS", "client");
+    private static final ClientId OTHER_CLIENT = ClientId.create("EE", "BUSINESS", "other");
+
+    /**
+     * Restores an empty global configuration.
+     */
+    @After
+    public void tearDown() {
+        GlobalConf.reload(new EmptyGlobalConf());
+    }
+
+    /**
+     * Tests that path decisions are the same as with matching each endpoint separately.
+     */
+    @Test
+    public void pathDecisionsMatchEndpointMatching() {
+        for (Object[] params : PathGlobTest.params()) {
+            String glob = (String) params[0];
+            String path = (String) params[1];
+
+            EndpointType endpoint = new EndpointType(SERVICE_CODE, "GET", glob, false);
+            ServiceOwnerAcl acl = ServiceOwnerAcl.compile(owner(endpoint, CLIENT));
+
+            assertEquals("<" + glob + "> matches <" + path + ">", endpoint.matches("GET", path),
+                    acl.isAllowed(CLIENT, SERVICE_CODE, "GET", path));
+        }
+    }
+
+    /**
+     * Tests method and path matching with several endpoints.
+     */
+    @Test
+    public void methodAndPathMatching() {
+        ClientType owner = owner(new EndpointType(SERVICE_CODE, "GET", "/api/**", false), CLIENT);
+        owner.getAcl().add(createAccessRight(new EndpointType(SERVICE_CODE, "post", "/api/test/*", false), CLIENT));
+        owner.getAcl().add(createAccessRight(new EndpointType(SERVICE_CODE, "*", "/public/*/info", false), CLIENT));
+
+        ServiceOwnerAcl acl = ServiceOwnerAcl.compile(owner);
+
+        assertEquals(3, acl.size());
+        assertTrue(acl.isAllowed(CLIENT, SERVICE_CODE, "GET", "/api/foo/bar"));
+        assertTrue(acl.isAllowed(CLIENT, SERVICE_CODE, "POST", "/api/test/foo"));
+        assertTrue(acl.isAllowed(CLIENT, SERVICE_CODE, "DELETE", "/public/x/info"));
+
+        assertFalse(acl.isAllowed(CLIENT, SERVICE_CODE, "POST", "/api/test/foo/bar"));
+        assertFalse(acl.isAllowed(CLIENT, SERVICE_CODE, "PUT", "/api/test/foo"));
+        assertFalse(acl.isAllowed(CLIENT, SERVICE_CODE, "GET", "/public/x/y/info"));
+        assertFalse(acl.isAllowed(CLIENT, SERVICE_CODE, null, null));
+        assertFalse(acl.isAllowed(CLIENT, "other", "GET", "/api/foo"));
+        assertFalse(acl.isAllowed(OTHER_CLIENT, SERVICE_CODE, "GET", "/api/foo"));
+    }
+
+    /**
+     * Tests that local groups are resolved to their members.
+     */
+    @Test
+    public void localGroupMembers() {
+        ClientType owner = owner(new EndpointType(SERVICE_CODE, "*", "**", false), LocalGroupId.create("group"));
+
+        LocalGroupType group = new LocalGroupType();
+        group.setGroupCode("group");
+        GroupMemberType member = new GroupMemberType();
+        member.setGroupMemberId(CLIENT);
+        group.getGroupMember().add(member);
+        owner.getLocalGroup().add(group);
+
+        ServiceOwnerAcl acl = ServiceOwnerAcl.compile(owner);
+
+        assertTrue(acl.isAllowed(CLIENT, SERVICE_CODE, null, null));
+        assertFalse(acl.isAllowed(OTHER_CLIENT, SERVICE_CODE, null, null));
+    }
+
+    /**
+     * Tests that global group membership is checked from the global configuration.
+     */
+    @Test
+    public void globalGroupMembers() {
+        GlobalGroupId groupId = GlobalGroupId.create("EE", "group");
+
+        GlobalConf.reload(new EmptyGlobalConf() {
+            @Override
+            public boolean isSubjectInGlobalGroup(ClientId subject, GlobalGroupId group) {
+                return CLIENT.equals(subject) && groupId.equals(group);
+            }
+        });
+
+        ServiceOwnerAcl acl = ServiceOwnerAcl.compile(
+                owner(new EndpointType(SERVICE_CODE, "*", "**", false), groupId));
+
+        assertTrue(acl.isAllowed(CLIENT, SERVICE_CODE, "GET", "/"));
+        assertFalse(acl.isAllowed(OTHER_CLIENT, SERVICE_CODE, "GET", "/"));
+    }
+
+    private static ClientType owner(EndpointType endpoint, XRoadId subject) {
+        ClientType owner = new ClientType();
+        owner.getAcl().add(createAccessRight(endpoint, subject));
+
+        return owner;
+    }
+}
@@ -30,11 +30,17 @@ import ee.ria.xroad.common.SystemProperties;
 import akka.actor.ActorRef;
 import akka.actor.ActorSelection;
 import akka.actor.ActorSystem;
+import akka.pattern.AskTimeoutException;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 import scala.concurrent.Await;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -117,6 +123,78 @@ public final class SignerClient {
         }
     }
 
+    /**
+     * Sends a message without waiting for the response. The returned future is
+     * completed with the response, or exceptionally if the response is an
+     * exception or the signer does not respond in time.
+     * @param <T> the type of result
+     * @param message the message
+     * @return future of the response
+     */
+    public static <T> CompletableFuture<T> executeAsync(Object message) {
+        verifyInitialized();
+
+        return toFuture(Patterns.ask(requestProcessor, message, Duration.ofMillis(TIMEOUT_MILLIS)));
+    }
+
+    /**
+     * Converts the response stage of an ask to a future that is completed
+     * with the response, or exceptionally if the response is throwable or
+     * the ask timed out.
+     * @param <T> the type of result
+     * @param response the response stage
+     * @return future of the result
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> toFuture(CompletionStage<Object> response) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        response.whenComplete((result, error) -> {
+            Throwable cause = error != null ? unwrap(error) : null;
+
+            if (cause instanceof AskTimeoutException) {
+                future.completeExceptionally(connectionTimeoutException((Exception) cause));
+            } else if (cause != null) {
+                future.completeExceptionally(cause);
+            } else if (result instanceof Throwable) {
+                future.completeExceptionally((Throwable) result);
+            } else {
+                future.complete((T) result);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Waits for the result of the future at most the signer client timeout,
+     * throwing the exception the future was completed with.
+     * @param <T> the type of result
+     * @param future the future
+     * @return result
+     * @throws Exception if the future completed exceptionally or did not
+     * complete in time
+     */
+    public static <T> T awaitResult(CompletableFuture<T> future) throws Exception {
+        return awaitResult(future, TIMEOUT_MILLIS);
+    }
+
+    static <T> T awaitResult(CompletableFuture<T> future, long timeoutMillis) throws Exception {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw connectionTimeoutException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+
+            throw e;
+        }
+    }
+
     /**
      * Returns the object as the instance or throws exception, if the object
      * is throwable.
@@ -134,6 +212,17 @@ public final class SignerClient {
         }
     }
 
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+
+        while ((cause instanceof CompletionException
+                || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        return cause;
+    }
+
     private static String getSignerPath() {
         return getSignerPath("127.0.0.1");
     }
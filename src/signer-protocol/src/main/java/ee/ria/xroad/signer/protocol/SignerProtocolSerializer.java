@@ -0,0 +1,620 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.signer.protocol.dto.AuthKeyInfo;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfoAndKeyId;
+import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
+import ee.ria.xroad.signer.protocol.message.ConnectionPing;
+import ee.ria.xroad.signer.protocol.message.ConnectionPong;
+import ee.ria.xroad.signer.protocol.message.GetAuthKey;
+import ee.ria.xroad.signer.protocol.message.GetCertificateInfoForHash;
+import ee.ria.xroad.signer.protocol.message.GetCertificateInfoResponse;
+import ee.ria.xroad.signer.protocol.message.GetKeyIdForCertHash;
+import ee.ria.xroad.signer.protocol.message.GetKeyIdForCertHashResponse;
+import ee.ria.xroad.signer.protocol.message.GetMemberCerts;
+import ee.ria.xroad.signer.protocol.message.GetMemberCertsResponse;
+import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.GetSignMechanism;
+import ee.ria.xroad.signer.protocol.message.GetSignMechanismResponse;
+import ee.ria.xroad.signer.protocol.message.GetTokenBatchSigningEnabled;
+import ee.ria.xroad.signer.protocol.message.GetTokenInfo;
+import ee.ria.xroad.signer.protocol.message.GetTokenInfoAndKeyIdForCertHash;
+import ee.ria.xroad.signer.protocol.message.GetTokenInfoForKeyId;
+import ee.ria.xroad.signer.protocol.message.ListTokens;
+import ee.ria.xroad.signer.protocol.message.SetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+import ee.ria.xroad.signer.protocol.message.SuccessResponse;
+
+import akka.serialization.SerializerWithStringManifest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Akka serializer for the Signer protocol messages and DTOs.
+ *
+ * Every supported class has a fixed schema: its fields are written in
+ * declaration order, with variable length integers for lengths and a
+ * leading marker for values that may be null. The class is identified by
+ * the manifest, so no class or field names are written to the payload.
+ *
+ * New fields must be appended to the end of a schema, and new enum
+ * constants to the end of the enum, since enums are written as ordinals.
+ */
+public class SignerProtocolSerializer extends SerializerWithStringManifest {
+
+    /** Serializer identifier, must be unique among the serializers of an actor system. */
+    public static final int IDENTIFIER = 22_001;
+
+    private static final int INITIAL_BUFFER_SIZE = 128;
+
+    // Variable length integers have 7 bits of the value in every byte, the
+    // highest bit tells whether more bytes follow
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_VALUE_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION = 0x80;
+
+    private static final Map<Class<?>, Schema<?>> SCHEMAS_BY_CLASS = new HashMap<>();
+    private static final Map<String, Schema<?>> SCHEMAS_BY_MANIFEST = new HashMap<>();
+
+    static {
+        // Messages without fields
+        schema("ListTokens", ListTokens.class, (out, m) -> { }, in -> new ListTokens());
+        schema("SuccessResponse", SuccessResponse.class, (out, m) -> { }, in -> new SuccessResponse());
+        schema("ConnectionPing", ConnectionPing.class, (out, m) -> { }, in -> new ConnectionPing());
+        schema("ConnectionPong", ConnectionPong.class, (out, m) -> { }, in -> new ConnectionPong());
+
+        // Signing
+        schema("Sign", Sign.class,
+                (out, m) -> {
+                    out.writeString(m.getKeyId());
+                    out.writeString(m.getSignatureAlgorithmId());
+                    out.writeBytes(m.getDigest());
+                },
+                in -> new Sign(in.readString(), in.readString(), in.readBytes()));
+        schema("SignResponse", SignResponse.class,
+                (out, m) -> out.writeBytes(m.getSignature()),
+                in -> new SignResponse(in.readBytes()));
+        schema("GetTokenBatchSigningEnabled", GetTokenBatchSigningEnabled.class,
+                (out, m) -> out.writeString(m.getKeyId()),
+                in -> new GetTokenBatchSigningEnabled(in.readString()));
+        schema("GetSignMechanism", GetSignMechanism.class,
+                (out, m) -> out.writeString(m.getKeyId()),
+                in -> new GetSignMechanism(in.readString()));
+        schema("GetSignMechanismResponse", GetSignMechanismResponse.class,
+                (out, m) -> out.writeString(m.getSignMechanismName()),
+                in -> new GetSignMechanismResponse(in.readString()));
+        schema("GetMemberSigningInfo", GetMemberSigningInfo.class,
+                (out, m) -> out.writeClientId(m.getMemberId()),
+                in -> new GetMemberSigningInfo(in.readClientId()));
+        schema("MemberSigningInfo", MemberSigningInfo.class,
+                (out, m) -> {
+                    out.writeString(m.getKeyId());
+                    out.writeNullable(m.getCert(), SignerProtocolSerializer::writeCertificateInfo);
+                    out.writeString(m.getSignMechanismName());
+                },
+                in -> new MemberSigningInfo(in.readString(),
+                        in.readNullable(SignerProtocolSerializer::readCertificateInfo), in.readString()));
+        schema("GetAuthKey", GetAuthKey.class,
+                (out, m) -> out.writeSecurityServerId(m.getSecurityServer()),
+                in -> new GetAuthKey(in.readSecurityServerId()));
+        schema("AuthKeyInfo", AuthKeyInfo.class,
+                (out, m) -> {
+                    out.writeString(m.getAlias());
+                    out.writeString(m.getKeyStoreFileName());
+                    out.writeChars(m.getPassword());
+                    out.writeNullable(m.getCert(), SignerProtocolSerializer::writeCertificateInfo);
+                },
+                in -> new AuthKeyInfo(in.readString(), in.readString(), in.readChars(),
+                        in.readNullable(SignerProtocolSerializer::readCertificateInfo)));
+
+        // OCSP responses
+        schema("GetOcspResponses", GetOcspResponses.class,
+                (out, m) -> out.writeStrings(m.getCertHash()),
+                in -> new GetOcspResponses(in.readStrings()));
+        schema("GetOcspResponsesResponse", GetOcspResponsesResponse.class,
+                (out, m) -> out.writeStrings(m.getBase64EncodedResponses()),
+                in -> new GetOcspResponsesResponse(in.readStrings()));
+        schema("SetOcspResponses", SetOcspResponses.class,
+                (out, m) -> {
+                    out.writeStrings(m.getCertHashes());
+                    out.writeStrings(m.getBase64EncodedResponses());
+                },
+                in -> new SetOcspResponses(in.readStrings(), in.readStrings()));
+
+        // Certificates
+        schema("GetMemberCerts", GetMemberCerts.class,
+                (out, m) -> out.writeClientId(m.getMemberId()),
+                in -> new GetMemberCerts(in.readClientId()));
+        schema("GetMemberCertsResponse", GetMemberCertsResponse.class,
+                (out, m) -> out.writeList(m.getCerts(), SignerProtocolSerializer::writeCertificateInfo),
+                in -> new GetMemberCertsResponse(in.readList(SignerProtocolSerializer::readCertificateInfo)));
+        schema("GetCertificateInfoForHash", GetCertificateInfoForHash.class,
+                (out, m) -> out.writeString(m.getCertHash()),
+                in -> new GetCertificateInfoForHash(in.readString()));
+        schema("GetCertificateInfoResponse", GetCertificateInfoResponse.class,
+                (out, m) -> out.writeNullable(m.getCertificateInfo(), SignerProtocolSerializer::writeCertificateInfo),
+                in -> new GetCertificateInfoResponse(in.readNullable(SignerProtocolSerializer::readCertificateInfo)));
+        schema("GetKeyIdForCertHash", GetKeyIdForCertHash.class,
+                (out, m) -> out.writeString(m.getCertHash()),
+                in -> new GetKeyIdForCertHash(in.readString()));
+        schema("GetKeyIdForCertHashResponse", GetKeyIdForCertHashResponse.class,
+                (out, m) -> {
+                    out.writeString(m.getKeyId());
+                    out.writeString(m.getSignMechanismName());
+                },
+                in -> new GetKeyIdForCertHashResponse(in.readString(), in.readString()));
+        schema("CertificateInfo", CertificateInfo.class,
+                SignerProtocolSerializer::writeCertificateInfo, SignerProtocolSerializer::readCertificateInfo);
+
+        // Tokens
+        schema("GetTokenInfo", GetTokenInfo.class,
+                (out, m) -> out.writeString(m.getTokenId()),
+                in -> new GetTokenInfo(in.readString()));
+        schema("GetTokenInfoForKeyId", GetTokenInfoForKeyId.class,
+                (out, m) -> out.writeString(m.getKeyId()),
+                in -> new GetTokenInfoForKeyId(in.readString()));
+        schema("GetTokenInfoAndKeyIdForCertHash", GetTokenInfoAndKeyIdForCertHash.class,
+                (out, m) -> out.writeString(m.getCertHash()),
+                in -> new GetTokenInfoAndKeyIdForCertHash(in.readString()));
+        schema("TokenInfoAndKeyId", TokenInfoAndKeyId.class,
+                (out, m) -> {
+                    out.writeNullable(m.getTokenInfo(), SignerProtocolSerializer::writeTokenInfo);
+                    out.writeString(m.getKeyId());
+                },
+                in -> new TokenInfoAndKeyId(in.readNullable(SignerProtocolSerializer::readTokenInfo),
+                        in.readString()));
+        schema("TokenInfo", TokenInfo.class,
+                SignerProtocolSerializer::writeTokenInfo, SignerProtocolSerializer::readTokenInfo);
+        schema("KeyInfo", KeyInfo.class,
+                SignerProtocolSerializer::writeKeyInfo, SignerProtocolSerializer::readKeyInfo);
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        return getSchema(o).manifest;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] toBinary(Object o) {
+        Schema<Object> schema = (Schema<Object>) getSchema(o);
+
+        Output out = new Output();
+        schema.writer.accept(out, o);
+
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        Schema<?> schema = SCHEMAS_BY_MANIFEST.get(manifest);
+
+        if (schema == null) {
+            throw new NotSerializableException("Unknown Signer protocol message manifest '" + manifest + "'");
+        }
+
+        try {
+            return schema.reader.apply(new Input(bytes));
+        } catch (RuntimeException e) {
+            NotSerializableException ex = new NotSerializableException("Malformed Signer protocol message '"
+                    + manifest + "': " + e);
+            ex.initCause(e);
+
+            throw ex;
+        }
+    }
+
+    /**
+     * @return classes that this serializer can serialize
+     */
+    public static Set<Class<?>> getSupportedClasses() {
+        return Collections.unmodifiableSet(SCHEMAS_BY_CLASS.keySet());
+    }
+
+    private static Schema<?> getSchema(Object o) {
+        Schema<?> schema = SCHEMAS_BY_CLASS.get(o.getClass());
+
+        if (schema == null) {
+            throw new IllegalArgumentException("Cannot serialize " + o.getClass().getName());
+        }
+
+        return schema;
+    }
+
+    private static <T> void schema(String manifest, Class<T> clazz, BiConsumer<Output, T> writer,
+            Function<Input, T> reader) {
+        Schema<T> schema = new Schema<>(manifest, writer, reader);
+
+        SCHEMAS_BY_CLASS.put(clazz, schema);
+        SCHEMAS_BY_MANIFEST.put(manifest, schema);
+    }
+
+    private static void writeCertificateInfo(Output out, CertificateInfo cert) {
+        out.writeClientId(cert.getMemberId());
+        out.writeBoolean(cert.isActive());
+        out.writeBoolean(cert.isSavedToConfiguration());
+        out.writeString(cert.getStatus());
+        out.writeString(cert.getId());
+        out.writeBytes(cert.getCertificateBytes());
+        out.writeBytes(cert.getOcspBytes());
+    }
+
+    private static CertificateInfo readCertificateInfo(Input in) {
+        return new CertificateInfo(in.readClientId(), in.readBoolean(), in.readBoolean(), in.readString(),
+                in.readString(), in.readBytes(), in.readBytes());
+    }
+
+    private static void writeCertRequestInfo(Output out, CertRequestInfo certRequest) {
+        out.writeString(certRequest.getId());
+        out.writeClientId(certRequest.getMemberId());
+        out.writeString(certRequest.getSubjectName());
+    }
+
+    private static CertRequestInfo readCertRequestInfo(Input in) {
+        return new CertRequestInfo(in.readString(), in.readClientId(), in.readString());
+    }
+
+    private static void writeKeyInfo(Output out, KeyInfo key) {
+        out.writeBoolean(key.isAvailable());
+        out.writeEnum(key.getUsage());
+        out.writeString(key.getFriendlyName());
+        out.writeString(key.getId());
+        out.writeString(key.getLabel());
+        out.writeString(key.getPublicKey());
+        out.writeList(key.getCerts(), SignerProtocolSerializer::writeCertificateInfo);
+        out.writeList(key.getCertRequests(), SignerProtocolSerializer::writeCertRequestInfo);
+        out.writeString(key.getSignMechanismName());
+    }
+
+    private static KeyInfo readKeyInfo(Input in) {
+        return new KeyInfo(in.readBoolean(), in.readEnum(KeyUsageInfo.values()), in.readString(), in.readString(),
+                in.readString(), in.readString(), in.readList(SignerProtocolSerializer::readCertificateInfo),
+                in.readList(SignerProtocolSerializer::readCertRequestInfo), in.readString());
+    }
+
+    private static void writeTokenInfo(Output out, TokenInfo token) {
+        out.writeString(token.getType());
+        out.writeString(token.getFriendlyName());
+        out.writeString(token.getId());
+        out.writeBoolean(token.isReadOnly());
+        out.writeBoolean(token.isAvailable());
+        out.writeBoolean(token.isActive());
+        out.writeString(token.getSerialNumber());
+        out.writeString(token.getLabel());
+        out.writeVarInt(token.getSlotIndex());
+        out.writeEnum(token.getStatus());
+        out.writeList(token.getKeyInfo(), SignerProtocolSerializer::writeKeyInfo);
+        out.writeStringMap(token.getTokenInfo());
+    }
+
+    private static TokenInfo readTokenInfo(Input in) {
+        return new TokenInfo(in.readString(), in.readString(), in.readString(), in.readBoolean(), in.readBoolean(),
+                in.readBoolean(), in.readString(), in.readString(), in.readVarInt(),
+                in.readEnum(TokenStatusInfo.values()), in.readList(SignerProtocolSerializer::readKeyInfo),
+                in.readStringMap());
+    }
+
+    private static final class Schema<T> {
+        private final String manifest;
+        private final BiConsumer<Output, T> writer;
+        private final Function<Input, T> reader;
+
+        Schema(String manifest, BiConsumer<Output, T> writer, Function<Input, T> reader) {
+            this.manifest = manifest;
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * Writes the primitive values of the format. Lengths are written as
+     * length + 1, so that zero can stand for null.
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        void writeVarInt(int value) {
+            int v = value;
+
+            while ((v & ~VARINT_VALUE_MASK) != 0) {
+                write((v & VARINT_VALUE_MASK) | VARINT_CONTINUATION);
+                v >>>= VARINT_BITS;
+            }
+
+            write(v);
+        }
+
+        void writeBoolean(boolean value) {
+            write(value ? 1 : 0);
+        }
+
+        void writeBytes(byte[] value) {
+            if (value == null) {
+                writeVarInt(0);
+            } else {
+                writeVarInt(value.length + 1);
+                write(value, 0, value.length);
+            }
+        }
+
+        void writeString(String value) {
+            writeBytes(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+        }
+
+        void writeChars(char[] value) {
+            if (value == null) {
+                writeBytes(null);
+            } else {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(value));
+
+                writeVarInt(bytes.remaining() + 1);
+                write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                Arrays.fill(bytes.array(), (byte) 0);
+            }
+        }
+
+        void writeStrings(String[] values) {
+            if (values == null) {
+                writeVarInt(0);
+            } else {
+                writeVarInt(values.length + 1);
+
+                for (String value : values) {
+                    writeString(value);
+                }
+            }
+        }
+
+        void writeEnum(Enum<?> value) {
+            writeVarInt(value != null ? value.ordinal() + 1 : 0);
+        }
+
+        <T> void writeNullable(T value, BiConsumer<Output, T> writer) {
+            writeBoolean(value != null);
+
+            if (value != null) {
+                writer.accept(this, value);
+            }
+        }
+
+        <T> void writeList(List<T> values, BiConsumer<Output, T> writer) {
+            if (values == null) {
+                writeVarInt(0);
+            } else {
+                writeVarInt(values.size() + 1);
+
+                for (T value : values) {
+                    writeNullable(value, writer);
+                }
+            }
+        }
+
+        void writeStringMap(Map<String, String> values) {
+            if (values == null) {
+                writeVarInt(0);
+            } else {
+                writeVarInt(values.size() + 1);
+
+                values.forEach((key, value) -> {
+                    writeString(key);
+                    writeString(value);
+                });
+            }
+        }
+
+        void writeClientId(ClientId id) {
+            writeNullable(id, (out, v) -> {
+                out.writeString(v.getXRoadInstance());
+                out.writeString(v.getMemberClass());
+                out.writeString(v.getMemberCode());
+                out.writeString(v.getSubsystemCode());
+            });
+        }
+
+        void writeSecurityServerId(SecurityServerId id) {
+            writeNullable(id, (out, v) -> {
+                out.writeString(v.getXRoadInstance());
+                out.writeString(v.getMemberClass());
+                out.writeString(v.getMemberCode());
+                out.writeString(v.getServerCode());
+            });
+        }
+    }
+
+    /**
+     * Reads the values written by {@link Output}.
+     */
+    private static final class Input {
+
+        private final ByteBuffer buffer;
+
+        Input(byte[] bytes) {
+            this.buffer = ByteBuffer.wrap(bytes);
+        }
+
+        int readVarInt() {
+            int value = 0;
+
+            for (int shift = 0; shift < Integer.SIZE; shift += VARINT_BITS) {
+                byte b = buffer.get();
+                value |= (b & VARINT_VALUE_MASK) << shift;
+
+                if ((b & VARINT_CONTINUATION) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Malformed variable length integer");
+        }
+
+        boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        byte[] readBytes() {
+            int length = readLength();
+
+            if (length < 0) {
+                return null;
+            }
+
+            byte[] value = new byte[length];
+            buffer.get(value);
+
+            return value;
+        }
+
+        String readString() {
+            byte[] bytes = readBytes();
+
+            return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+        }
+
+        char[] readChars() {
+            byte[] bytes = readBytes();
+
+            if (bytes == null) {
+                return null;
+            }
+
+            CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+            Arrays.fill(bytes, (byte) 0);
+
+            return Arrays.copyOfRange(chars.array(), chars.position(), chars.limit());
+        }
+
+        String[] readStrings() {
+            int length = readLength();
+
+            if (length < 0) {
+                return null;
+            }
+
+            String[] values = new String[length];
+
+            for (int i = 0; i < length; i++) {
+                values[i] = readString();
+            }
+
+            return values;
+        }
+
+        <E extends Enum<E>> E readEnum(E[] values) {
+            int ordinal = readVarInt() - 1;
+
+            return ordinal >= 0 ? values[ordinal] : null;
+        }
+
+        <T> T readNullable(Function<Input, T> reader) {
+            return readBoolean() ? reader.apply(this) : null;
+        }
+
+        <T> List<T> readList(Function<Input, T> reader) {
+            int size = readLength();
+
+            if (size < 0) {
+                return null;
+            }
+
+            List<T> values = new ArrayList<>(size);
+
+            for (int i = 0; i < size; i++) {
+                values.add(readNullable(reader));
+            }
+
+            return values;
+        }
+
+        Map<String, String> readStringMap() {
+            int size = readLength();
+
+            if (size < 0) {
+                return null;
+            }
+
+            Map<String, String> values = new LinkedHashMap<>();
+
+            for (int i = 0; i < size; i++) {
+                values.put(readString(), readString());
+            }
+
+            return values;
+        }
+
+        ClientId readClientId() {
+            return readNullable(in -> ClientId.create(in.readString(), in.readString(), in.readString(),
+                    in.readString()));
+        }
+
+        SecurityServerId readSecurityServerId() {
+            return readNullable(in -> SecurityServerId.create(in.readString(), in.readString(), in.readString(),
+                    in.readString()));
+        }
+
+        private int readLength() {
+            int length = readVarInt() - 1;
+
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("Length " + length + " exceeds the message size");
+            }
+
+            return length;
+        }
+    }
+}
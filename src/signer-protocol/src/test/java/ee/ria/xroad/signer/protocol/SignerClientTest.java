@@ -0,0 +1,144 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.CodedException;
+
+import akka.pattern.AskTimeoutException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_HTTP_ERROR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the response handling of {@link SignerClient}.
+ */
+public class SignerClientTest {
+
+    /**
+     * Tests that the future is completed with the response.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void futureCompletesWithResponse() throws Exception {
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        CompletableFuture<String> future = SignerClient.toFuture(response);
+
+        response.complete("result");
+
+        assertEquals("result", future.get(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that the future fails with an exception sent as the response.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void futureFailsWithExceptionResponse() throws Exception {
+        CodedException error = new CodedException("Signer.Error", "failed");
+        CompletableFuture<Object> response = new CompletableFuture<>();
+
+        CompletableFuture<String> future = SignerClient.toFuture(response);
+        response.complete(error);
+
+        assertSame(error, causeOf(future));
+    }
+
+    /**
+     * Tests that a failed ask is unwrapped and an ask timeout reported as a Signer connection timeout.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void futureFailsWithUnwrappedAskError() throws Exception {
+        IOException error = new IOException("failed");
+        CompletableFuture<Object> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new CompletionException(error));
+
+        assertSame(error, causeOf(SignerClient.toFuture(failed)));
+
+        CompletableFuture<Object> timedOut = new CompletableFuture<>();
+        timedOut.completeExceptionally(new AskTimeoutException("timed out"));
+
+        Throwable cause = causeOf(SignerClient.toFuture(timedOut));
+
+        assertTrue(cause instanceof CodedException);
+        assertEquals(X_HTTP_ERROR, ((CodedException) cause).getFaultCode());
+    }
+
+    /**
+     * Tests that waiting for the result returns the result or throws the exception the future failed with.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void awaitResultReturnsResultOrThrowsCause() throws Exception {
+        assertEquals("result", SignerClient.awaitResult(CompletableFuture.completedFuture("result")));
+
+        IOException error = new IOException("failed");
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(error);
+
+        try {
+            SignerClient.awaitResult(failed);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+    }
+
+    /**
+     * Tests that waiting for the result is limited by the timeout.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void awaitResultTimesOut() throws Exception {
+        try {
+            SignerClient.awaitResult(new CompletableFuture<String>(), 100);
+            fail("Expected CodedException");
+        } catch (CodedException e) {
+            assertEquals(X_HTTP_ERROR, e.getFaultCode());
+        }
+    }
+
+    private static Throwable causeOf(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+
+        fail("Expected the future to fail");
+
+        return null;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.signer.protocol.dto.AuthKeyInfo;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfoAndKeyId;
+import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
+import ee.ria.xroad.signer.protocol.message.GetAuthKey;
+import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.SetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.ActorSystem;
+import akka.serialization.JavaSerializer;
+import akka.serialization.SerializationExtension;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the Signer protocol serializer.
+ */
+public class SignerProtocolSerializerTest {
+
+    private static final ClientId MEMBER = ClientId.create("EE", "BUSINESS", "123", null);
+    private static final ClientId SUBSYSTEM = ClientId.create("EE", "BUSINESS", "123", "subsystem");
+
+    private final SignerProtocolSerializer serializer = new SignerProtocolSerializer();
+
+    /**
+     * Test that the signing messages are restored unchanged.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void signingMessages() throws Exception {
+        assertRoundTrip(new Sign("keyId", "SHA256withRSA", new byte[] {1, 2, 3}));
+        assertRoundTrip(new SignResponse(new byte[256]));
+        assertRoundTrip(new GetMemberSigningInfo(SUBSYSTEM));
+        assertRoundTrip(new MemberSigningInfo("keyId", createCert("cert"), "CKM_RSA_PKCS"));
+        assertRoundTrip(new GetAuthKey(SecurityServerId.create("EE", "BUSINESS", "123", "server")));
+        assertRoundTrip(new AuthKeyInfo("alias", "/etc/xroad/keys.p12", "päss".toCharArray(),
+                createCert("auth")));
+    }
+
+    /**
+     * Test that the OCSP response messages are restored unchanged.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void ocspMessages() throws Exception {
+        assertRoundTrip(new GetOcspResponses(new String[] {"hash1", "hash2"}));
+        assertRoundTrip(new GetOcspResponsesResponse(new String[] {"response", null}));
+        assertRoundTrip(new SetOcspResponses(new String[] {"hash"}, new String[] {"response"}));
+    }
+
+    /**
+     * Test that token info with keys, certificates and null values is restored unchanged.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void tokenInfo() throws Exception {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("Manufacturer", "X-Road");
+        info.put("Model", null);
+
+        KeyInfo signKey = new KeyInfo(true, KeyUsageInfo.SIGNING, "sign", "keyId1", "label", "publicKey",
+                Arrays.asList(createCert("cert1"), createCert("cert2")),
+                Collections.singletonList(new CertRequestInfo("req", MEMBER, "CN=test")), "CKM_RSA_PKCS");
+        KeyInfo unusedKey = new KeyInfo(false, null, null, "keyId2", null, null, Collections.emptyList(),
+                Collections.emptyList(), null);
+
+        TokenInfo token = new TokenInfo(TokenInfo.SOFTWARE_MODULE_TYPE, "softToken", "0", false, true, true,
+                null, null, -1, TokenStatusInfo.OK, Arrays.asList(signKey, unusedKey), info);
+
+        assertRoundTrip(token);
+        assertRoundTrip(new TokenInfoAndKeyId(token, "keyId1"));
+    }
+
+    /**
+     * Test that truncated payloads are rejected.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = NotSerializableException.class)
+    public void rejectTruncatedMessage() throws Exception {
+        byte[] bytes = serializer.toBinary(new Sign("keyId", "SHA256withRSA", new byte[32]));
+
+        serializer.fromBinary(Arrays.copyOf(bytes, bytes.length - 1), "Sign");
+    }
+
+    /**
+     * Test that unknown manifests are rejected.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = NotSerializableException.class)
+    public void rejectUnknownManifest() throws Exception {
+        serializer.fromBinary(new byte[0], "Unknown");
+    }
+
+    /**
+     * Test that the bindings in the Akka configuration cover exactly the supported classes
+     * and that the compatibility switch selects Java serialization.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void akkaConfiguration() throws Exception {
+        Config binary = signerProtocolConfig().resolve();
+
+        Set<Class<?>> bound = new HashSet<>();
+
+        binary.getObject("akka.actor.serialization-bindings").unwrapped().forEach((className, serializerName) -> {
+            if ("signer-protocol".equals(serializerName)) {
+                bound.add(forName(className));
+            }
+        });
+
+        assertEquals(SignerProtocolSerializer.getSupportedClasses(), bound);
+
+        assertEquals(SignerProtocolSerializer.class, findSerializer(binary).getClass());
+
+        Config java = ConfigFactory.parseString("xroad.common.akka-signer-protocol-serializer = java")
+                .withFallback(signerProtocolConfig()).resolve();
+
+        assertEquals(JavaSerializer.class, findSerializer(java).getClass());
+
+        // components without signer-protocol on their classpath use the global configuration only
+        assertFalse(ConfigFactory.parseResources("akka-global.conf").resolve()
+                .hasPath("akka.actor.serializers.signer-protocol"));
+    }
+
+    /**
+     * Test that the binary format is smaller than Java serialization.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void smallerThanJavaSerialization() throws Exception {
+        Object message = new MemberSigningInfo("keyId", createCert("cert"), "CKM_RSA_PKCS");
+
+        ByteArrayOutputStream java = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(java)) {
+            out.writeObject(message);
+        }
+
+        assertTrue(serializer.toBinary(message).length < java.size());
+    }
+
+    private void assertRoundTrip(Object message) throws Exception {
+        byte[] bytes = serializer.toBinary(message);
+
+        assertEquals(message, serializer.fromBinary(bytes, serializer.manifest(message)));
+    }
+
+    private static CertificateInfo createCert(String id) {
+        return new CertificateInfo(MEMBER, true, true, CertificateInfo.STATUS_REGISTERED, id, new byte[1024],
+                null);
+    }
+
+    private static Config signerProtocolConfig() {
+        return ConfigFactory.parseResources("akka-signer-protocol.conf")
+                .withFallback(ConfigFactory.parseResources("akka-global.conf"));
+    }
+
+    private static Object findSerializer(Config config) {
+        ActorSystem system = ActorSystem.create("test", config);
+
+        try {
+            return SerializationExtension.get(system).findSerializerFor(new Sign("keyId", "alg", new byte[0]));
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static Class<?> forName(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
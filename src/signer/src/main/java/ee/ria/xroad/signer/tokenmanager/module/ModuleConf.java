@@ -76,6 +76,7 @@ public final class ModuleConf {
     private static final String OS_LOCKING_OK_PARAM = "os_locking_ok";
     private static final String SIGN_VERIFY_PIN_PARAM = "sign_verify_pin";
     private static final String BATCH_SIGNING_ENABLED_PARAM = "batch_signing_enabled";
+    private static final String SIGN_SESSION_POOL_SIZE_PARAM = "sign_session_pool_size";
     private static final String READ_ONLY_PARAM = "read_only";
     private static final String TOKEN_ID_FORMAT_PARAM = "token_id_format";
     private static final String SIGN_MECHANISM_PARAM = "sign_mechanism";
@@ -219,6 +220,7 @@ public final class ModuleConf {
 
         boolean verifyPin = getBoolean(section, SIGN_VERIFY_PIN_PARAM, false);
         boolean batchSigning = getBoolean(section, BATCH_SIGNING_ENABLED_PARAM, true);
+        int signSessionPoolSize = getInt(section, SIGN_SESSION_POOL_SIZE_PARAM, 1);
         boolean readOnly = getBoolean(section, READ_ONLY_PARAM, false);
         String tokenIdFormat = section.getString(TOKEN_ID_FORMAT_PARAM);
 
@@ -246,9 +248,10 @@ public final class ModuleConf {
 
         log.debug("Read module configuration (UID = {}, library = {}, library_cant_create_os_threads = {}"
                 + ", os_locking_ok = {}, token_id_format = {}, pin_verification_per_signing = {}, batch_signing = {}"
-                + ", sign_mechanism = {}, pub_key_attributes = {}, priv_key_attributes = {})",
+                + ", sign_session_pool_size = {}, sign_mechanism = {}, pub_key_attributes = {}"
+                + ", priv_key_attributes = {})",
                 uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat, verifyPin, batchSigning,
-                signMechanismName, pubKeyAttributes, privKeyAttributes);
+                signSessionPoolSize, signMechanismName, pubKeyAttributes, privKeyAttributes);
 
         if (MODULES.containsKey(uid)) {
             log.warn("Module information already defined for {}, skipping...", uid);
@@ -260,7 +263,8 @@ public final class ModuleConf {
         Set<Long> slotIds = slotIdStrings.stream().map(String::trim).map(Long::parseLong).collect(Collectors.toSet());
 
         MODULES.put(uid, new HardwareModuleType(uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat,
-                verifyPin, batchSigning, readOnly, signMechanismName, privKeyAttributes, pubKeyAttributes, slotIds));
+                verifyPin, batchSigning, signSessionPoolSize, readOnly, signMechanismName, privKeyAttributes,
+                pubKeyAttributes, slotIds));
     }
 
     private static PubKeyAttributes loadPubKeyAttributes(SubnodeConfiguration section) {
@@ -325,6 +329,15 @@ public final class ModuleConf {
         }
     }
 
+    private static int getInt(SubnodeConfiguration section, String key, int defaultValue) {
+        try {
+            return Math.max(1, section.getInt(key, defaultValue));
+        } catch (ConversionException e) {
+            throw new ConversionException(String.format("Invalid value of '%s' for module (%s), skipping...",
+                    key, section.getSubnodeKey()), e);
+        }
+    }
+
     private static String[] getStringArray(SubnodeConfiguration section, String key) {
         try {
             return section.getStringArray(key);
@@ -172,20 +172,25 @@ public abstract class AbstractTokenWorker extends AbstractUpdateableActor {
         sendSuccessResponse();
     }
 
-    private void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+    protected void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
         try {
             byte data[] = SignerUtil.createDataToSign(signRequest.getDigest(), signRequest.getSignatureAlgorithmId());
 
             byte[] signature = sign(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId(), data);
             sendResponse(new CalculatedSignature(signRequest, signature, null));
         } catch (Exception e) { // catch-log-rethrow
-            log.error("Error while signing with key '{}'", signRequest.getKeyId(), e);
-
-            CodedException tr = translateError(customizeException(e)).withPrefix(X_CANNOT_SIGN);
-            sendResponse(new CalculatedSignature(signRequest, null, tr));
+            sendResponse(signatureFailed(signRequest, e));
         }
     }
 
+    protected CalculatedSignature signatureFailed(CalculateSignature signRequest, Exception e) {
+        log.error("Error while signing with key '{}'", signRequest.getKeyId(), e);
+
+        CodedException tr = translateError(customizeException(e)).withPrefix(X_CANNOT_SIGN);
+
+        return new CalculatedSignature(signRequest, null, tr);
+    }
+
     // ------------------------------------------------------------------------
 
     protected abstract void activateToken(ActivateToken message) throws Exception;
@@ -0,0 +1,83 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of reusable {@link Signature} instances of one algorithm. Signature objects are not thread-safe,
+ * so an instance is used by one signing thread at a time and returned to the pool afterwards. Pooled
+ * instances keep a reference to the last key they were initialized with, so the pool is cleared when
+ * the token is deactivated.
+ */
+final class SignaturePool {
+
+    private final String algorithm;
+
+    private final Queue<Signature> idle = new ConcurrentLinkedQueue<>();
+
+    SignaturePool(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Signs the data with the given key.
+     * @param key the private key
+     * @param data the data to sign
+     * @return the signature
+     * @throws Exception if signing fails
+     */
+    byte[] sign(PrivateKey key, byte[] data) throws Exception {
+        Signature signature = idle.poll();
+
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+        }
+
+        signature.initSign(key);
+        signature.update(data);
+
+        byte[] result = signature.sign();
+
+        // A failed instance is left to the garbage collector, its state is undefined
+        idle.offer(signature);
+
+        return result;
+    }
+
+    /**
+     * Discards the idle instances.
+     */
+    void clear() {
+        idle.clear();
+    }
+
+    int getIdleCount() {
+        return idle.size();
+    }
+}
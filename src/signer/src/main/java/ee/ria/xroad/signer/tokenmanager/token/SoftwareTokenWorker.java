@@ -36,8 +36,11 @@ import ee.ria.xroad.signer.protocol.message.ActivateToken;
 import ee.ria.xroad.signer.protocol.message.GenerateKey;
 import ee.ria.xroad.signer.protocol.message.InitSoftwareToken;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
 import ee.ria.xroad.signer.util.SignerUtil;
 
+import akka.actor.ActorRef;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.FileNotFoundException;
@@ -48,9 +51,8 @@ import java.nio.file.Paths;
 import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.PrivateKey;
-import java.security.Signature;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_PIN_INCORRECT;
@@ -82,6 +84,10 @@ import static ee.ria.xroad.signer.util.ExceptionHelper.tokenNotInitialized;
 /**
  * Encapsulates the software token worker which handles software signing and key
  * management.
+ *
+ * In parallel signing mode the worker only checks the sign request and looks up the key;
+ * the signature is calculated on a bounded pool of signing threads which reply to the
+ * requester directly. Key management is still handled one message at a time.
  */
 @Slf4j
 public class SoftwareTokenWorker extends AbstractTokenWorker {
@@ -89,7 +95,11 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     // Use no digesting algorithm, since the input data is already a digest
     private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
 
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    private final SignaturePool signatures = new SignaturePool(SIGNATURE_ALGORITHM);
+
+    private final TokenSigningExecutor signingExecutor;
 
     /**
      * Creates new worker.
@@ -98,6 +108,20 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
      */
     public SoftwareTokenWorker(TokenInfo tokenInfo, SoftwareTokenType ignored) {
         super(tokenInfo);
+
+        signingExecutor = SystemProperties.isSoftwareTokenParallelSigningEnabled()
+                ? createSigningExecutor(getWorkerId()) : null;
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (signingExecutor != null) {
+            signingExecutor.shutdown();
+        }
+
+        signatures.clear();
+
+        super.postStop();
     }
 
     @Override
@@ -177,8 +201,43 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         TokenManager.removeCert(certId);
     }
 
+    @Override
+    protected void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+        if (signingExecutor == null) {
+            super.handleCalculateSignature(signRequest);
+
+            return;
+        }
+
+        ActorRef sender = getSender();
+        ActorRef self = getSelf();
+
+        try {
+            byte[] data = SignerUtil.createDataToSign(signRequest.getDigest(), signRequest.getSignatureAlgorithmId());
+            PrivateKey key = getSigningKey(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId());
+
+            // When the queue is full, the task is run on the actor thread. After the worker
+            // has stopped the task is rejected and the requester gets a failure reply below.
+            signingExecutor.execute(() -> sender.tell(calculateSignature(signRequest, key, data), self));
+        } catch (Exception e) {
+            sender.tell(signatureFailed(signRequest, e), self);
+        }
+    }
+
     @Override
     protected byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
+        return sign(getSigningKey(keyId, signatureAlgorithmId), data);
+    }
+
+    private CalculatedSignature calculateSignature(CalculateSignature signRequest, PrivateKey key, byte[] data) {
+        try {
+            return new CalculatedSignature(signRequest, sign(key, data), null);
+        } catch (Exception e) {
+            return signatureFailed(signRequest, e);
+        }
+    }
+
+    private PrivateKey getSigningKey(String keyId, String signatureAlgorithmId) throws Exception {
         log.trace("sign({}, {})", keyId, signatureAlgorithmId);
 
         checkSignatureAlgorithm(signatureAlgorithmId);
@@ -199,11 +258,20 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
 
-        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
-        signature.initSign(key);
-        signature.update(data);
+        return key;
+    }
+
+    private byte[] sign(PrivateKey key, byte[] data) throws Exception {
+        return signatures.sign(key, data);
+    }
+
+    private static TokenSigningExecutor createSigningExecutor(String workerId) {
+        int threads = SystemProperties.getSoftwareTokenSigningThreads();
+
+        log.info("Software token '{}' signs in parallel using {} threads", workerId, threads);
 
-        return signature.sign();
+        return new TokenSigningExecutor("software-token-signer-", threads,
+                SystemProperties.getSoftwareTokenSigningQueueSize(), true);
     }
 
     private static void checkSignatureAlgorithm(String signatureAlgorithmId) throws CodedException {
@@ -341,6 +409,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
     private void deactivateToken() {
         privateKeys.clear();
+        signatures.clear();
 
         setTokenActive(tokenId, false);
     }
@@ -0,0 +1,111 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of signing threads used by token workers that calculate signatures in parallel.
+ * A task that cannot be accepted is never dropped silently: {@link #execute(Runnable)} throws
+ * {@link RejectedExecutionException} after the pool has been shut down, and when the queue is full
+ * unless the pool was created to run such tasks on the calling thread. The caller is expected to
+ * reply to the requester with a failure in that case.
+ */
+public final class TokenSigningExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates the signing pool.
+     * @param threadNamePrefix prefix of the signing thread names
+     * @param threads number of signing threads
+     * @param queueSize maximum number of queued signing tasks
+     * @param callerRunsWhenFull whether a task is run on the calling thread when the queue is full
+     */
+    public TokenSigningExecutor(String threadNamePrefix, int threads, int queueSize, boolean callerRunsWhenFull) {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread thread = new Thread(r, threadNamePrefix + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                },
+                new Rejection(callerRunsWhenFull));
+    }
+
+    /**
+     * Runs the signing task on the pool.
+     * @param task the task
+     * @throws RejectedExecutionException if the pool is shut down or full
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Stops accepting new tasks. Already queued tasks are still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return the number of queued tasks
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    private static final class Rejection implements RejectedExecutionHandler {
+
+        private final boolean callerRuns;
+
+        Rejection(boolean callerRuns) {
+            this.callerRuns = callerRuns;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Signing pool has been shut down");
+            }
+
+            if (!callerRuns) {
+                throw new RejectedExecutionException("Signing queue is full ("
+                        + executor.getQueue().size() + " requests waiting)");
+            }
+
+            task.run();
+        }
+    }
+}
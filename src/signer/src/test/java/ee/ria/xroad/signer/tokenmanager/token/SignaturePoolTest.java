@@ -0,0 +1,116 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SignaturePool} used by the parallel signing path of {@link SoftwareTokenWorker}.
+ */
+public class SignaturePoolTest {
+
+    private static final String ALGORITHM = "NONEwithRSA";
+
+    private static final int THREADS = 4;
+
+    private static final int SIGNATURES_PER_THREAD = 50;
+
+    /**
+     * Tests that signatures calculated concurrently on several threads are all valid.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void signsConcurrently() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+
+        KeyPair keyPair = generator.generateKeyPair();
+        SignaturePool pool = new SignaturePool(ALGORITHM);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+
+            for (int i = 0; i < THREADS * SIGNATURES_PER_THREAD; i++) {
+                byte[] data = MessageDigest.getInstance("SHA-256").digest(("message-" + i).getBytes(UTF_8));
+
+                results.add(executor.submit((Callable<Boolean>) () -> {
+                    byte[] signature = pool.sign(keyPair.getPrivate(), data);
+
+                    Signature verifier = Signature.getInstance(ALGORITHM);
+                    verifier.initVerify(keyPair.getPublic());
+                    verifier.update(data);
+
+                    return verifier.verify(signature);
+                }));
+            }
+
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(pool.getIdleCount() <= THREADS);
+    }
+
+    /**
+     * Tests that instances are reused and discarded on clear.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void reusesAndClearsInstances() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+
+        KeyPair keyPair = generator.generateKeyPair();
+        SignaturePool pool = new SignaturePool(ALGORITHM);
+
+        pool.sign(keyPair.getPrivate(), new byte[32]);
+        pool.sign(keyPair.getPrivate(), new byte[32]);
+
+        assertEquals(1, pool.getIdleCount());
+
+        pool.clear();
+
+        assertEquals(0, pool.getIdleCount());
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link TokenSigningExecutor}.
+ */
+public class TokenSigningExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private TokenSigningExecutor executor;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that tasks are run on the signing threads.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void runsTasksOnSigningThreads() throws Exception {
+        executor = new TokenSigningExecutor("test-signer-", 2, 10, true);
+
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            thread.set(Thread.currentThread());
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(thread.get().getName().startsWith("test-signer-"));
+        assertTrue(thread.get().isDaemon());
+    }
+
+    /**
+     * Tests that a task is run on the calling thread when the queue is full.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void runsTaskOnCallerWhenQueueIsFull() throws Exception {
+        executor = new TokenSigningExecutor("test-signer-", 1, 1, true);
+
+        fill();
+
+        AtomicReference<Thread> thread = new AtomicReference<>();
+
+        executor.execute(() -> thread.set(Thread.currentThread()));
+
+        assertSame(Thread.currentThread(), thread.get());
+    }
+
+    /**
+     * Tests that a task is rejected when the queue is full and the caller must not run it.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void rejectsTaskWhenQueueIsFull() throws Exception {
+        executor = new TokenSigningExecutor("test-signer-", 1, 1, false);
+
+        fill();
+
+        try {
+            executor.execute(() -> fail("Rejected task must not run"));
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            assertEquals(1, executor.getQueueSize());
+        }
+    }
+
+    /**
+     * Tests that a task is rejected instead of silently dropped after shutdown,
+     * also when the caller would otherwise run it.
+     */
+    @Test
+    public void rejectsTaskAfterShutdown() {
+        executor = new TokenSigningExecutor("test-signer-", 1, 1, true);
+        executor.shutdown();
+
+        AtomicReference<Thread> thread = new AtomicReference<>();
+
+        try {
+            executor.execute(() -> thread.set(Thread.currentThread()));
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            assertNotEquals(Thread.currentThread(), thread.get());
+        }
+    }
+
+    // Occupies the only signing thread and the only queue slot
+    private void fill() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.execute(this::awaitRelease);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}